@@ -1,6 +1,8 @@
 module supermarket.simulator.supermarketsimulator {
-    requires javafx.controls;
+    requires transitive javafx.controls;   // MainApp and SimulationLoop extend javafx.graphics classes
     requires javafx.fxml;
+    requires jdk.management;
+    requires static jdk.incubator.vector;   // AgentStore: vector loops with --add-modules jdk.incubator.vector
 
     requires org.controlsfx.controls;
     requires net.synedra.validatorfx;
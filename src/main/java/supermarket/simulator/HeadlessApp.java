@@ -0,0 +1,268 @@
+package supermarket.simulator;
+
+import supermarket.simulator.Pathfinding.PathStrategy;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.services.TilesetLoader;
+import supermarket.simulator.simulation.AllocationMeter;
+import supermarket.simulator.simulation.SimulationKernel;
+import supermarket.simulator.snapshot.WorldSnapshot;
+import supermarket.simulator.trace.TraceRecorder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the simulation without a window or JavaFX toolkit, as fast as the CPU allows, and
+ * reports the tick rate at the end. Run it with --help for the options; a wrong argument
+ * prints that text with the problem instead of a stack trace.
+ *
+ * Usage: HeadlessApp [ticks] [scenario] [options]   e.g. "36000 hypermarket:300 --strategy hierarchical"
+ */
+public class HeadlessApp {
+
+    private static final int STOCK_COLS = 20;
+    private static final int STOCK_ROWS = 24;
+    private static final int CELL_SIZE  = 42;
+    private static final int MIN_HYPERMARKET = 20;   // below that the floor has no room for shelves and checkouts
+
+    private static final String USAGE = """
+            Usage: HeadlessApp [ticks] [scenario] [options]
+              ticks     default 36000 (one hour at the 100 ms tick of the window)
+              scenario  stock (the 20x24 store, default) or hypermarket:SIZE, e.g. hypermarket:300
+            Options:
+              --seed N             random seed, default 42
+              --customers N        max customers inside at once, default 20
+              --spawn-interval N   ticks between arrivals, default 10
+              --stops N            max shelves per customer, default 3
+              --strategy NAME      path planning: %s
+              --threads N          threads that step the customers, default 1
+              --close-at N         stop letting customers in at that tick
+              --random-arrivals    Poisson arrivals instead of one every interval
+              --skip-idle          jump over ticks in which nothing happens
+              --no-pool            allocate every customer new
+              --verify             replay the run and compare the checksum after every tick
+              --load FILE          continue a saved world for [ticks] more ticks instead of
+                                   building a new one; scenario, seed and spawning come from the file
+              --save FILE          write the world at the end
+              --trace FILE         record the run for replay; reports what recording cost
+              --verbose            log what the customers do
+            """;
+
+    /** Command-line settings; every kernel made from the same options runs the same world. */
+    private static final class Options {
+        String scenario        = "stock";
+        long seed              = 42L;
+        int customers          = 20;
+        int spawnInterval      = 10;
+        int stops              = 3;
+        PathStrategy strategy  = null;
+        int threads            = 1;
+        long closeAt           = -1;
+        boolean randomArrivals = false;
+        boolean skipIdle       = false;
+        boolean pooling        = true;
+        boolean verify         = false;
+        boolean verbose        = false;
+        Path load              = null;
+        Path save              = null;
+        Path trace             = null;
+
+        SimulationKernel createKernel() {
+            SimulationKernel kernel = HeadlessApp.createKernel(scenario, seed);
+            kernel.setSpawning(customers, spawnInterval, stops);
+            kernel.setRandomArrivals(randomArrivals);
+            return configure(kernel);
+        }
+
+        /** The saved world; only the run settings below are taken from the command line. */
+        SimulationKernel loadKernel() throws IOException {
+            return configure(WorldSnapshot.load(load, TilesetLoader.headless()));
+        }
+
+        private SimulationKernel configure(SimulationKernel kernel) {
+            kernel.getContext().setLogging(verbose);
+            if (strategy != null) kernel.getContext().setPathStrategy(strategy);
+            kernel.setThreads(threads);
+            kernel.setSkipIdle(skipIdle);
+            kernel.setPooling(pooling);
+            if (closeAt > kernel.getTickCount()) {
+                kernel.scheduleAction(closeAt, () -> kernel.setSpawning(0, 1, stops));
+            }
+            return kernel;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        long ticks      = 36_000;
+        Options options = new Options();
+        try {
+            if (args.length > 0 && (args[0].equals("--help") || args[0].equals("-h"))) {
+                System.out.print(usage());
+                return;
+            }
+            if (args.length > 0) ticks = number(args[0], "ticks");
+            if (args.length > 1) options.scenario = args[1];
+            hypermarketSize(options.scenario);
+
+            for (int i = 2; i < args.length; i++) {
+                String option = args[i];
+                switch (option) {
+                    case "--seed"            -> options.seed           = number(value(args, ++i, option), option);
+                    case "--customers"       -> options.customers      = count(value(args, ++i, option), option);
+                    case "--spawn-interval"  -> options.spawnInterval  = count(value(args, ++i, option), option);
+                    case "--stops"           -> options.stops          = count(value(args, ++i, option), option);
+                    case "--strategy"        -> options.strategy       = strategy(value(args, ++i, option));
+                    case "--threads"         -> options.threads        = count(value(args, ++i, option), option);
+                    case "--close-at"        -> options.closeAt        = number(value(args, ++i, option), option);
+                    case "--random-arrivals" -> options.randomArrivals = true;
+                    case "--skip-idle"       -> options.skipIdle       = true;
+                    case "--no-pool"         -> options.pooling        = false;
+                    case "--verify"          -> options.verify         = true;
+                    case "--load"            -> options.load           = Path.of(value(args, ++i, option));
+                    case "--save"            -> options.save           = Path.of(value(args, ++i, option));
+                    case "--trace"           -> options.trace          = Path.of(value(args, ++i, option));
+                    case "--verbose"         -> options.verbose        = true;
+                    default -> throw new IllegalArgumentException("unknown option " + option);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("HeadlessApp: " + e.getMessage());
+            System.err.print(usage());
+            System.exit(2);
+        }
+
+        long setupStart = System.nanoTime();
+        SimulationKernel kernel = options.load != null ? options.loadKernel() : options.createKernel();
+        long setupNanos = System.nanoTime() - setupStart;
+        long startTick  = kernel.getTickCount();
+        TraceRecorder recorder = options.trace != null
+                ? TraceRecorder.attach(kernel, options.trace, TraceRecorder.DEFAULT_KEYFRAME_INTERVAL) : null;
+
+        long allocated = AllocationMeter.allocatedBytes();
+        long start = System.nanoTime();
+        kernel.run(ticks);
+        long elapsed = System.nanoTime() - start;
+        allocated = AllocationMeter.allocatedBytes() - allocated;
+        if (recorder != null) recorder.close();
+
+        Grid grid = kernel.getGrid();
+        String scenario = options.load == null ? options.scenario : kernel.isHypermarket() ? "hypermarket" : "stock";
+        System.out.printf("scenario   %s (%dx%d), seed %d, strategy %s%n", scenario,
+                grid.getWidth(), grid.getHeight(), kernel.getContext().getSeed(), kernel.getContext().getPathStrategy());
+        System.out.printf("setup      %.1f ms%s, %d thread(s)%n", setupNanos / 1e6,
+                options.load != null ? " (loaded " + options.load + " at tick " + startTick + ")" : "", options.threads);
+        System.out.printf("ticks      %d in %.1f ms -> %.0f ticks/s (%d skipped while idle)%n",
+                ticks, elapsed / 1e6, ticks / (elapsed / 1e9), kernel.getSkippedTicks());
+        System.out.printf("customers  %d spawned, %d served, %d inside%n",
+                kernel.getSpawnedCount(), kernel.getServedCount(), kernel.getCustomers().size());
+        System.out.println("planning   " + kernel.getContext().getPlanningService());
+        System.out.printf("allocation %.0f bytes per tick, %.1f MB/s; %s%n", allocated / (double) ticks,
+                allocated / 1048576.0 / (elapsed / 1e9), kernel.getPool() != null ? kernel.getPool() : "no pool");
+        System.out.printf("checksum   %016x at tick %d%n", kernel.getChecksum(), kernel.getTickCount());
+
+        if (recorder != null) {
+            System.out.printf("trace      %s: %.1f KB, %d frames (%d keyframes), recording %.1f ms = %.2f%% of the run%n",
+                    options.trace, Files.size(options.trace) / 1024.0, recorder.getFrames(),
+                    recorder.getKeyframes(), recorder.getRecordNanos() / 1e6, 100.0 * recorder.getRecordNanos() / elapsed);
+        }
+
+        if (options.save != null) {
+            long saveStart = System.nanoTime();
+            long bytes = WorldSnapshot.save(kernel, options.save);
+            System.out.printf("snapshot   %s: %.1f KB (%.0f bytes per customer inside) in %.1f ms%n", options.save,
+                    bytes / 1024.0, bytes / (double) Math.max(1, kernel.getCustomers().size()),
+                    (System.nanoTime() - saveStart) / 1e6);
+        }
+
+        if (options.verify && !verify(options, ticks)) System.exit(1);
+    }
+
+    /** Run two fresh (or freshly loaded) worlds with the same options side by side and compare them after every tick. */
+    private static boolean verify(Options options, long ticks) throws IOException {
+        SimulationKernel a = options.load != null ? options.loadKernel() : options.createKernel();
+        SimulationKernel b = options.load != null ? options.loadKernel() : options.createKernel();
+        long end = a.getTickCount() + ticks;
+        while (a.getTickCount() < end) {
+            a.run(1);
+            b.run(1);
+            if (a.getChecksum() != b.getChecksum() || a.getTickCount() != b.getTickCount()) {
+                System.out.printf("verify     DIVERGED at tick %d (%016x vs %016x)%n",
+                        a.getTickCount(), a.getChecksum(), b.getChecksum());
+                return false;
+            }
+        }
+        System.out.printf("verify     identical over %d ticks, checksum %016x%n", a.getTickCount(), a.getChecksum());
+        return true;
+    }
+
+    /** Fresh world for the scenario name of the command line. */
+    static SimulationKernel createKernel(String scenario, long seed) {
+        TilesetLoader loader = TilesetLoader.headless();
+        int size = hypermarketSize(scenario);
+        if (size == 0) {
+            return SimulationKernel.stockStore(new SimulationContext(new Grid(STOCK_COLS, STOCK_ROWS, CELL_SIZE), seed), loader);
+        }
+        return SimulationKernel.hypermarket(new SimulationContext(new Grid(size, size, CELL_SIZE), seed), loader);
+    }
+
+    // -------------------------------------------------------------------------
+    // Command line
+    // -------------------------------------------------------------------------
+
+    /** Floor size of a "hypermarket:SIZE" scenario, 0 for "stock"; anything else is a usage error. */
+    static int hypermarketSize(String scenario) {
+        if (scenario.equals("stock")) return 0;
+        if (!scenario.startsWith("hypermarket:")) {
+            throw new IllegalArgumentException(scenario.equals("hypermarket")
+                    ? "the hypermarket needs a size, e.g. hypermarket:300"
+                    : "unknown scenario " + scenario + "; use stock or hypermarket:SIZE");
+        }
+        int size = count(scenario.substring("hypermarket:".length()), "the hypermarket size");
+        if (size < MIN_HYPERMARKET) {
+            throw new IllegalArgumentException("the hypermarket size must be at least " + MIN_HYPERMARKET
+                    + ", not " + size);
+        }
+        return size;
+    }
+
+    private static String usage() {
+        return USAGE.formatted(Arrays.stream(PathStrategy.values())
+                .map(strategy -> strategy.name().toLowerCase())
+                .collect(Collectors.joining(", ")));
+    }
+
+    /** The argument after option {@code args[i - 1]}. */
+    static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException(option + " needs a value");
+        return args[i];
+    }
+
+    static long number(String text, String what) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(what + " must be a number, not " + text);
+        }
+    }
+
+    static int count(String text, String what) {
+        long value = number(text, what);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(what + " must be 0.." + Integer.MAX_VALUE + ", not " + text);
+        }
+        return (int) value;
+    }
+
+    /** Strategy by name, in any case and with - for _, e.g. "jump-point". */
+    private static PathStrategy strategy(String name) {
+        String constant = name.toUpperCase().replace('-', '_');
+        for (PathStrategy strategy : PathStrategy.values()) {
+            if (strategy.name().equals(constant)) return strategy;
+        }
+        throw new IllegalArgumentException("unknown strategy " + name);
+    }
+}
@@ -1,51 +1,102 @@
 package supermarket.simulator;
 
-import supermarket.simulator.model.world.*;
 import supermarket.simulator.controller.Controller;
-import supermarket.simulator.model.world.Grid;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonBar;
-import javafx.util.Duration;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 
+/**
+ * The window. Parameters: --record FILE (write a trace of the run), --replay FILE (play a
+ * trace back instead of simulating). A flag without a file, or a file that cannot be written
+ * or is not a trace, is reported in a dialog and on stderr, and the application quits.
+ */
 public class MainApp extends Application {
 
+    private Controller controller;
+
     @Override
     public void start(Stage stage) throws IOException {
+        List<String> parameters = getParameters().getRaw();
+        Path replay, record;
+        try {
+            replay = fileAfter(parameters, "--replay");
+            record = fileAfter(parameters, "--record");
+        } catch (IllegalArgumentException e) {
+            fail(e.getMessage());
+            return;
+        }
+
         FXMLLoader fxmlLoader = new FXMLLoader(MainApp.class.getResource("Marketview.fxml"));
         Scene scene = new Scene(fxmlLoader.load(), 1500, 1200); // Groter venster
         stage.setTitle("Supermarket Simulator - Omnomnom PixelEater 2000");
         stage.setScene(scene);
         stage.show();
 
-        Controller controller = fxmlLoader.getController();
+        controller = fxmlLoader.getController();
+        if (replay != null) {
+            try {
+                controller.replay(replay);
+            } catch (IOException e) {
+                fail("cannot replay " + replay + ": " + e.getMessage());
+                return;
+            }
+            controller.start();
+            return;
+        }
 
         // Gebruik grotere cellSize voor betere zichtbaarheid
         int cellSize = 42; // Of 64 voor nog groter
         int cols = 20;
         int rows = 24;
 
-        Grid grid = new Grid(cols, rows, cellSize);
-        controller.setGrid(grid);
+        controller.newStore(cols, rows, cellSize);
+        if (record != null) {
+            try {
+                controller.record(record);
+            } catch (IOException e) {
+                fail("cannot record to " + record + ": " + e.getMessage());
+                return;
+            }
+        }
+
+        // Game loop: 10 ticks per second at 1x, rendering interpolated at the screen's frame rate
+        controller.start();
+    }
+
 
-        Timeline timeline = new Timeline(
-                new KeyFrame(Duration.millis(100), event -> controller.tick())  // ~20 FPS
+    /** The file named after {@code flag}, null without the flag. */
+    private static Path fileAfter(List<String> parameters, String flag) {
+        int index = parameters.indexOf(flag);
+        if (index < 0) return null;
+        if (index + 1 >= parameters.size() || parameters.get(index + 1).startsWith("--")) {
+            throw new IllegalArgumentException(flag + " needs a file");
+        }
+        return Path.of(parameters.get(index + 1));
+    }
 
-        );
-        timeline.setCycleCount(Timeline.INDEFINITE);
-        timeline.play();
+    /** Tell the user what went wrong and quit; there is nothing to show without it. */
+    private static void fail(String message) {
+        System.err.println("MainApp: " + message);
+        new Alert(Alert.AlertType.ERROR, message).showAndWait();
+        Platform.exit();
     }
 
+    @Override
+    public void stop() throws IOException {
+        if (controller != null) controller.stop();
+    }
 
     public static void main(String[] args) {
-        launch();
+        launch(args);
 
     }
 }
@@ -0,0 +1,62 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.model.world.Tile;
+
+import java.util.Arrays;
+
+/**
+ * Row-major bitset of non-walkable tiles, rebuilt when the grid's layout version changes.
+ * Every row is padded with at least one blocked bit past the right edge, and rows or words
+ * outside the grid read as fully blocked, so row scans always terminate.
+ */
+final class BlockedTileSet {
+
+    private final Grid grid;
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] bits;
+    private int version = -1;
+
+    BlockedTileSet(Grid grid) {
+        this.grid        = grid;
+        this.width       = grid.getWidth();
+        this.height      = grid.getHeight();
+        this.wordsPerRow = (width >>> 6) + 1;
+        this.bits        = new long[wordsPerRow * height];
+    }
+
+    /** Re-read walkability from the grid if its layout changed since the last refresh. */
+    void refresh() {
+        if (version == grid.getVersion()) return;
+        version = grid.getVersion();
+
+        Arrays.fill(bits, 0L);
+        for (int y = 0; y < height; y++) {
+            int row = y * wordsPerRow;
+            for (int x = 0; x < width; x++) {
+                Tile tile = grid.getTile(x, y);
+                if (tile == null || !tile.isWalkable()) {
+                    bits[row + (x >>> 6)] |= 1L << x;
+                }
+            }
+            for (int x = width; x < wordsPerRow << 6; x++) {
+                bits[row + (x >>> 6)] |= 1L << x;
+            }
+        }
+    }
+
+    boolean isBlocked(int x, int y) {
+        if (x < 0 || x >= width || y < 0 || y >= height) return true;
+        return (bits[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /** 64 tiles of row y starting at x = 64 * w; all blocked outside the grid. */
+    long word(int y, int w) {
+        if (y < 0 || y >= height || w < 0 || w >= wordsPerRow) return -1L;
+        return bits[y * wordsPerRow + w];
+    }
+
+    Grid getGrid() { return grid; }
+}
@@ -0,0 +1,249 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.world.Grid;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free reservation table for agents that are updated on several threads at once.
+ *
+ * Every tile is one {@code long} cell, changed only by compare-and-set:
+ * <pre>
+ *   bits 63..32  priority of the agent
+ *   bit  31      CLAIMED: tentative, may still be taken over
+ *   bits 30..0   agent id (0 = free)
+ * </pre>
+ * Besides the plain {@link #reserve}, a move can be done in two phases: {@link #claim} the
+ * next tile, then {@link #commitMove}. A claim can be taken over by an agent with a higher
+ * {@link Person#getPriority()} (on equal priority the lower agent id wins), a held tile never.
+ * When all claims of a tick are made before the first commit, the outcome does not depend on
+ * thread timing: the strongest claimant of every tile moves, the others stay put.
+ *
+ * Per-agent bookkeeping (held tiles, pending claim) is written by the thread that updates the
+ * agent only, so one agent must not be updated by two threads at the same time. It is kept per
+ * agent index ({@link Person#getAgentIndex()}), which is reused after a person leaves: the table
+ * is bounded by the persons present at once, not by every id ever handed out. As in
+ * {@link TileReservationSystem}, a person releases its tiles before it leaves the store.
+ */
+public class ConcurrentReservationTable implements ReservationTable {
+
+    private static final VarHandle CELLS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private static final long CLAIMED  = 1L << 31;
+    private static final long ID_MASK  = CLAIMED - 1;
+
+    // Slots per agent index live in chunks that never move, so the table can grow without a lock
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 12;
+
+    private final int width;
+    private final int height;
+
+    private final long[] cells;             // per node, accessed through CELLS only
+    private final int[] nextHeld;           // per node: next node held by the same agent, -1 = end
+    private final AtomicReferenceArray<int[]> agentChunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+
+    public ConcurrentReservationTable(Grid grid) {
+        this.width    = grid.getWidth();
+        this.height   = grid.getHeight();
+        this.cells    = new long[width * height];
+        this.nextHeld = new int[width * height];
+        Arrays.fill(nextHeld, -1);
+    }
+
+    // -------------------------------------------------------------------------
+    // ReservationTable
+    // -------------------------------------------------------------------------
+
+    /** Take the tile at once: succeeds if it is free, already ours, or only claimed by a weaker agent. */
+    @Override
+    public boolean reserve(int x, int y, Person agent) {
+        if (!inBounds(x, y)) return true;
+        int node  = y * width + x;
+        long held = cell(agent, false);
+
+        while (true) {
+            long current = (long) CELLS.getVolatile(cells, node);
+            if (current == held) return true;
+            if (current != 0 && (current & CLAIMED) == 0) return false;          // held by another
+            if (current != 0 && idOf(current) != agent.getAgentId()
+                    && !beats(held, current)) return false;                     // stronger claim
+
+            if (CELLS.compareAndSet(cells, node, current, held)) {
+                if (idOf(current) == agent.getAgentId()) clearClaim(agent, node);
+                link(agent, node);
+                return true;
+            }
+        }
+    }
+
+    /** Release every tile the agent holds and drop its pending claim. */
+    @Override
+    public void release(Person agent) {
+        int[] slots = slots(agent);
+        int base    = slotBase(agent);
+
+        int claim = slots[base + 1];
+        if (claim >= 0) {
+            CELLS.compareAndSet(cells, claim, cell(agent, true), 0L);   // fails if taken over
+            slots[base + 1] = -1;
+        }
+
+        int node = slots[base];
+        while (node >= 0) {
+            int next = nextHeld[node];
+            nextHeld[node] = -1;
+            CELLS.setVolatile(cells, node, 0L);   // publishes the nextHeld reset to the next owner
+            node = next;
+        }
+        slots[base] = -1;
+    }
+
+    /** Free when nobody holds or claims the tile, or when it is ours. */
+    @Override
+    public boolean isFree(int x, int y, Person agent) {
+        if (!inBounds(x, y)) return true;
+        long current = (long) CELLS.getVolatile(cells, y * width + x);
+        return current == 0 || (agent != null && idOf(current) == agent.getAgentId());
+    }
+
+    // -------------------------------------------------------------------------
+    // Two-phase moves
+    // -------------------------------------------------------------------------
+
+    /**
+     * Tentatively claim the tile the agent wants to step onto, replacing its previous claim.
+     * @return false if the tile is held, or claimed by an agent that beats this one
+     */
+    public boolean claim(int x, int y, Person agent) {
+        if (!inBounds(x, y)) return false;
+        int node     = y * width + x;
+        int[] slots  = slots(agent);
+        int base     = slotBase(agent);
+        long claimed = cell(agent, true);
+
+        int previous = slots[base + 1];
+        if (previous >= 0 && previous != node) {
+            CELLS.compareAndSet(cells, previous, claimed, 0L);
+            slots[base + 1] = -1;
+        }
+
+        while (true) {
+            long current = (long) CELLS.getVolatile(cells, node);
+            if (current == claimed) return true;
+            if (current != 0 && (current & CLAIMED) == 0) {
+                if (idOf(current) != agent.getAgentId()) return false;
+                slots[base + 1] = node;   // held already, e.g. through reserve()
+                return true;
+            }
+            if (current != 0 && !beats(claimed, current)) return false;
+
+            if (CELLS.compareAndSet(cells, node, current, claimed)) {
+                slots[base + 1] = node;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Turn the agent's claim into a hold and release every other tile it held: the agent has
+     * moved onto the claimed tile.
+     * @return false if there was no claim or a stronger agent took it over; nothing changes then
+     */
+    public boolean commitMove(Person agent) {
+        int[] slots = slots(agent);
+        int base    = slotBase(agent);
+        int node    = slots[base + 1];
+        if (node < 0) return false;
+        slots[base + 1] = -1;
+
+        long mine = cell(agent, false);
+        if (!CELLS.compareAndSet(cells, node, cell(agent, true), mine)
+                && (long) CELLS.getVolatile(cells, node) != mine) {
+            return false;
+        }
+
+        // Release the old tiles, then start a new list with only the claimed tile
+        int held = slots[base];
+        slots[base] = -1;
+        while (held >= 0) {
+            int next = nextHeld[held];
+            nextHeld[held] = -1;
+            if (held != node) CELLS.setVolatile(cells, held, 0L);
+            held = next;
+        }
+        link(agent, node);
+        return true;
+    }
+
+    /** Id of the agent that holds (not claims) the tile, 0 if none. */
+    public int getHolder(int x, int y) {
+        if (!inBounds(x, y)) return 0;
+        long current = (long) CELLS.getVolatile(cells, y * width + x);
+        return (current & CLAIMED) != 0 ? 0 : idOf(current);
+    }
+
+    // -------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------
+
+    private static long cell(Person agent, boolean claimed) {
+        return ((long) agent.getPriority() << 32) | (claimed ? CLAIMED : 0) | agent.getAgentId();
+    }
+
+    private static int idOf(long cell) {
+        return (int) (cell & ID_MASK);
+    }
+
+    /** Higher priority wins; on a tie the lower id, so the outcome is the same on every run. */
+    private static boolean beats(long mine, long other) {
+        int myPriority    = (int) (mine >> 32);
+        int otherPriority = (int) (other >> 32);
+        if (myPriority != otherPriority) return myPriority > otherPriority;
+        return idOf(mine) < idOf(other);
+    }
+
+    /** Push a freshly held node onto the agent's list; only the owning thread touches it. */
+    private void link(Person agent, int node) {
+        int[] slots = slots(agent);
+        int base    = slotBase(agent);
+        nextHeld[node] = slots[base];
+        slots[base]    = node;
+    }
+
+    private void clearClaim(Person agent, int node) {
+        int[] slots = slots(agent);
+        int base    = slotBase(agent);
+        if (slots[base + 1] == node) slots[base + 1] = -1;
+    }
+
+    /** Chunk with [first held node, claimed node] for the agent, allocated on first use. */
+    private int[] slots(Person agent) {
+        int index = agent.getAgentIndex();
+        if (index < 0 || index >>> CHUNK_BITS >= MAX_CHUNKS) {
+            throw new IllegalStateException("Agent " + agent.getAgentId() + " has no usable index " + index
+                    + " (detached, or more than " + MAX_CHUNKS * CHUNK_SIZE + " persons at once)");
+        }
+        int chunk = index >>> CHUNK_BITS;
+        int[] slots = agentChunks.get(chunk);
+        if (slots == null) {
+            int[] fresh = new int[CHUNK_SIZE * 2];
+            Arrays.fill(fresh, -1);
+            slots = agentChunks.compareAndSet(chunk, null, fresh) ? fresh : agentChunks.get(chunk);
+        }
+        return slots;
+    }
+
+    private static int slotBase(Person agent) {
+        return (agent.getAgentIndex() & (CHUNK_SIZE - 1)) * 2;
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+}
@@ -0,0 +1,218 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+
+import java.util.Arrays;
+
+/**
+ * Windowed Hierarchical Cooperative A* (WHCA*, Silver 2005).
+ *
+ * Searches (tile, step) states for the first {@link #WINDOW_STEPS} steps, where a step is one
+ * tile move or one wait of {@link Person#STEP_TICKS} ticks, and rejects any state whose tile
+ * another agent holds in the {@link SpaceTimeReservationTable} during that step, as well as
+ * head-on swaps. At the window horizon the exact remaining distance is read from a
+ * {@link FlowField} towards the goal, and the route continues along that field.
+ *
+ * Stops in the table (the exit) are only entered by agents headed there.
+ * Waits appear in the result as the same tile twice in a row. The search itself does not
+ * reserve anything: the caller reserves the route it decides to follow, so agents planned
+ * later see it. Not thread-safe; use {@link #local()}.
+ */
+public class CooperativeSearch implements PathPlanner {
+
+    /** Steps planned against other agents' reservations; the agent replans after half of them. */
+    public static final int WINDOW_STEPS = 8;
+
+    // Wait in place, then N, E, S, W
+    private static final int[] DX = {0, 0, 1, 0, -1};
+    private static final int[] DY = {0, -1, 0, 1, 0};
+
+    private static final ThreadLocal<CooperativeSearch> LOCAL = ThreadLocal.withInitial(CooperativeSearch::new);
+
+    // Per-state scratch (state = step * nodeCount + node), valid where stamp == generation
+    private int[] gScore = new int[0];
+    private int[] parent = new int[0];
+    private int[] stamp  = new int[0];
+    private int[] closed = new int[0];
+    private int generation;
+    private final NodeHeap open = new NodeHeap();
+
+    // Distance field for goals that are not shared destinations
+    private FlowField ownField;
+    private int[] queue = new int[0];
+
+    private final GridPath tail = new GridPath();
+    private int lastExpanded;
+
+    /** The search engine shared by all agents on the calling thread. */
+    public static CooperativeSearch local() {
+        return LOCAL.get();
+    }
+
+    @Override
+    public boolean findPath(SimulationContext context, int startX, int startY, int goalX, int goalY,
+                            Person agent, GridPath out) {
+        Grid grid = context.getGrid();
+        int width = grid.getWidth();
+        int nodes = width * grid.getHeight();
+        out.clear(width);
+        lastExpanded = 0;
+
+        if (startX < 0 || startX >= width || startY < 0 || startY >= grid.getHeight()) return false;
+        FlowField field = distanceField(context, goalX, goalY);
+        if (field == null || field.distanceAt(startX, startY) == FlowField.UNREACHABLE) return false;
+
+        int start = startY * width + startX;
+        int goal  = goalY * width + goalX;
+        if (start == goal) return true;
+
+        SpaceTimeReservationTable table        = context.getSpaceTimeReservations();
+        TileReservationSystem     reservations = context.getReservations();
+        int  agentId   = agent != null ? agent.getAgentId() : 0;
+        int  stepTicks = Person.STEP_TICKS;
+        int  horizon   = Math.max(1, Math.min(WINDOW_STEPS, table.getWindow() / stepTicks));
+        long now       = table.getTick();
+
+        ensureCapacity((horizon + 1) * nodes);
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            Arrays.fill(closed, 0);
+            generation = 1;
+        }
+        open.clear();
+
+        stamp[start]  = generation;
+        gScore[start] = 0;
+        parent[start] = -1;
+        open.push(start, field.distanceAt(startX, startY) * GridSearch.STEP_COST, 0);
+
+        while (!open.isEmpty()) {
+            int state = open.pop();
+            if (closed[state] == generation) continue;
+            closed[state] = generation;
+            lastExpanded++;
+
+            int step = state / nodes;
+            int node = state % nodes;
+            if (node == goal || step == horizon) {
+                buildPath(state, nodes, out);
+                if (node != goal) {
+                    // Beyond the window nobody is reserved: follow the distance field
+                    field.trace(node % width, node / width, tail);
+                    out.appendAll(tail);
+                }
+                return true;
+            }
+
+            int x = node % width;
+            int y = node / width;
+            long from = now + (long) step * stepTicks;   // the next step occupies [from, from + stepTicks)
+
+            for (int d = 0; d < 5; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                int dist = field.distanceAt(nx, ny);
+                if (dist == FlowField.UNREACHABLE) continue;
+
+                int next = ny * width + nx;
+                if (!table.isFree(next, from, from + stepTicks, agentId)) continue;
+                // Nobody passes through or waits on a stop that is not theirs, e.g. the exit
+                if (next != goal && table.isStop(next)) continue;
+                // Wachten in een gangpad van één breed houdt beide richtingen op: alleen nu, niet gepland
+                if (next == node && next != goal && step > 0 && isCorridor(field, nx, ny)) continue;
+                if (next != node) {
+                    // Whoever is on the target right now has to move first
+                    if (step == 0 && !reservations.isFree(nx, ny, agent)) continue;
+                    if (isSwap(table, node, next, from, agentId)) continue;
+                    // Never make way into a dead end (e.g. the exit pocket): once someone waits in front, nobody gets out
+                    if (next != goal && isDeadEnd(field, nx, ny)) continue;
+                }
+
+                int nextState = (step + 1) * nodes + next;
+                if (closed[nextState] == generation) continue;
+
+                int cost = gScore[state] + GridSearch.STEP_COST;
+                if (stamp[nextState] != generation || cost < gScore[nextState]) {
+                    stamp[nextState]  = generation;
+                    gScore[nextState] = cost;
+                    parent[nextState] = state;
+                    open.push(nextState, cost + dist * GridSearch.STEP_COST, cost);
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int getLastExpanded() {
+        return lastExpanded;
+    }
+
+    // -------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------
+
+    /** Another agent moves from {@code next} onto {@code node} while we go the other way. */
+    private static boolean isSwap(SpaceTimeReservationTable table, int node, int next, long from, int agentId) {
+        int other = table.ownerAt(next, from - 1);
+        return other != 0 && other != agentId && table.ownerAt(node, from) == other;
+    }
+
+    /** Walkable on two opposite sides only: a one-wide aisle. */
+    private static boolean isCorridor(FlowField field, int x, int y) {
+        boolean north = field.distanceAt(x, y - 1) != FlowField.UNREACHABLE;
+        boolean south = field.distanceAt(x, y + 1) != FlowField.UNREACHABLE;
+        boolean west  = field.distanceAt(x - 1, y) != FlowField.UNREACHABLE;
+        boolean east  = field.distanceAt(x + 1, y) != FlowField.UNREACHABLE;
+        return north && south && !west && !east || west && east && !north && !south;
+    }
+
+    /** At most one walkable neighbour. */
+    private static boolean isDeadEnd(FlowField field, int x, int y) {
+        int exits = 0;
+        for (int d = 1; d < 5; d++) {
+            if (field.distanceAt(x + DX[d], y + DY[d]) != FlowField.UNREACHABLE) exits++;
+        }
+        return exits <= 1;
+    }
+
+    /** Shared field when the goal is a registered destination, otherwise a private one. */
+    private FlowField distanceField(SimulationContext context, int goalX, int goalY) {
+        Grid grid = context.getGrid();
+        if (goalX < 0 || goalX >= grid.getWidth() || goalY < 0 || goalY >= grid.getHeight()) return null;
+
+        FlowField shared = context.getFlowFields().getField(goalX, goalY);
+        if (shared != null) return shared;
+
+        int nodes = grid.getWidth() * grid.getHeight();
+        if (ownField == null || ownField.getGrid() != grid
+                || ownField.getDestinationX() != goalX || ownField.getDestinationY() != goalY) {
+            ownField = new FlowField(grid, context.getReservations(), goalY * grid.getWidth() + goalX);
+        }
+        if (ownField.getVersion() != grid.getVersion()) {
+            if (queue.length < nodes) queue = new int[nodes];
+            ownField.rebuild(queue);
+        }
+        return ownField;
+    }
+
+    /** Walk the parent chain back to step 0; every state after the start becomes one entry. */
+    private void buildPath(int state, int nodes, GridPath out) {
+        int steps = state / nodes;
+        out.resize(steps);
+        for (int s = state, i = steps - 1; i >= 0; s = parent[s], i--) {
+            out.set(i, s % nodes);
+        }
+    }
+
+    private void ensureCapacity(int stateCount) {
+        if (gScore.length >= stateCount) return;
+        gScore     = new int[stateCount];
+        parent     = new int[stateCount];
+        stamp      = new int[stateCount];
+        closed     = new int[stateCount];
+        generation = 0;
+    }
+}
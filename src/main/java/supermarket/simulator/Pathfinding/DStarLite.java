@@ -0,0 +1,346 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+
+import java.util.Arrays;
+
+/**
+ * Incremental planner (D* Lite, Koenig &amp; Likhachev) owned by a single agent.
+ *
+ * The search runs backwards from the goal, so the search tree stays valid while the agent
+ * walks: a step only raises the key modifier {@code km}. Tiles held by other agents near the
+ * agent cost {@link GridSearch#RESERVED_PENALTY} extra. Instead of replanning on a timer the
+ * planner reads the reservation change log and, for every tile whose state it cares about,
+ * re-evaluates only the neighbouring vertices; {@link #replan} then repairs the affected part
+ * of the tree. When more changes were logged than there are tiles to look at (on a crowded
+ * floor every agent would otherwise read every move of everyone), it looks at the tiles in range
+ * and the penalized ones instead, which ends in the same costs. A layout change (new grid
+ * version) restarts the search from scratch.
+ *
+ * Memory is a few ints per tile, per agent; meant for the store floors agents actually walk,
+ * not for the largest generated layouts (use HIERARCHICAL there).
+ */
+public class DStarLite {
+
+    private static final int INF = Integer.MAX_VALUE / 4;
+
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final int[] DY = {-1, 0, 1, 0};
+
+    // Tiles within avoid range of the agent, looked at by senseAround
+    private static final int AROUND = 2 * GridSearch.AVOID_RADIUS * (GridSearch.AVOID_RADIUS + 1) + 1;
+
+    private final Grid grid;
+    private final Person agent;
+    private final TileReservationSystem reservations;
+    private final BlockedTileSet blocked;
+    private final int width;
+    private final int height;
+
+    // Search state per tile
+    private final int[] g;
+    private final int[] rhs;
+    private final boolean[] penalized;   // tile is held by another agent as far as this planner knows
+    private final boolean[] listed;      // in penalizedNodes (possibly no longer penalized)
+    private int[] penalizedNodes = new int[64];
+    private int penalizedCount;
+    private final IndexedHeap open;
+
+    private int start = -1;
+    private int goal  = -1;
+    private int last;                    // start at the time km was last updated
+    private int km;
+    private int version = -1;
+
+    private long seenChanges;            // reservation change log read up to here
+    private boolean dirty;               // costs changed since the last replan
+    private int lastExpanded;
+
+    public DStarLite(SimulationContext context, Person agent) {
+        this.grid         = context.getGrid();
+        this.agent        = agent;
+        this.reservations = context.getReservations();
+        this.blocked      = new BlockedTileSet(grid);
+        this.width        = grid.getWidth();
+        this.height       = grid.getHeight();
+
+        int n = width * height;
+        this.g         = new int[n];
+        this.rhs       = new int[n];
+        this.penalized = new boolean[n];
+        this.listed    = new boolean[n];
+        this.open      = new IndexedHeap(n);
+    }
+
+    // -------------------------------------------------------------------------
+    // Public API
+    // -------------------------------------------------------------------------
+
+    /** Start a new search towards (goalX, goalY) and write the route into {@code out}. */
+    public boolean plan(int startX, int startY, int goalX, int goalY, GridPath out) {
+        out.clear(width);
+        if (!inBounds(startX, startY) || !inBounds(goalX, goalY)) return false;
+
+        start = startY * width + startX;
+        goal  = goalY * width + goalX;
+        initialize();
+        return replan(out);
+    }
+
+    /**
+     * Tell the planner the agent now stands on (x, y) and apply the reservation changes
+     * logged since the last call.
+     *
+     * @return true if edge costs changed and {@link #replan} should be called
+     */
+    public boolean update(int x, int y) {
+        if (goal < 0) return false;
+
+        if (version != grid.getVersion()) {
+            // Walls moved: the old tree says nothing about the new layout
+            start = y * width + x;
+            initialize();
+            return true;
+        }
+
+        int node = y * width + x;
+        if (node != start) {
+            km   += heuristic(last, node);
+            last  = node;
+            start = node;
+            senseAround();
+        }
+        readChangeLog();
+        return dirty;
+    }
+
+    /** Repair the search tree and extract the current best route from the start. */
+    public boolean replan(GridPath out) {
+        dirty = false;
+        computeShortestPath();
+        return extractPath(out);
+    }
+
+    public boolean hasGoal()      { return goal >= 0; }
+    public boolean isPlanningFor(int goalX, int goalY) { return goal == goalY * width + goalX; }
+    public int getLastExpanded()  { return lastExpanded; }
+
+    // -------------------------------------------------------------------------
+    // Change notifications
+    // -------------------------------------------------------------------------
+
+    private void readChangeLog() {
+        long count = reservations.getChangeCount();
+        long unread = count - seenChanges;
+        if (unread > Math.min(penalizedCount + AROUND, TileReservationSystem.CHANGE_LOG_CAPACITY)) {
+            // Meer wijzigingen dan tegels die ertoe doen, of achter de ring buffer geraakt: kijk zelf
+            seenChanges = count;
+            resensePenalized();
+            senseAround();
+            return;
+        }
+        for (; seenChanges < count; seenChanges++) {
+            sense(reservations.getChangedX(seenChanges), reservations.getChangedY(seenChanges));
+        }
+    }
+
+    /** Look at every penalized tile again and drop the released ones from the list. */
+    private void resensePenalized() {
+        int kept = 0;
+        for (int i = 0; i < penalizedCount; i++) {
+            int node = penalizedNodes[i];
+            sense(node % width, node / width);
+            if (penalized[node]) {
+                penalizedNodes[kept++] = node;
+            } else {
+                listed[node] = false;
+            }
+        }
+        penalizedCount = kept;
+    }
+
+    /** Look at every tile in avoid range; run after the agent moved. */
+    private void senseAround() {
+        int sx = start % width;
+        int sy = start / width;
+        int r  = GridSearch.AVOID_RADIUS;
+        for (int dy = -r; dy <= r; dy++) {
+            int span = r - Math.abs(dy);
+            for (int dx = -span; dx <= span; dx++) {
+                sense(sx + dx, sy + dy);
+            }
+        }
+    }
+
+    /**
+     * Re-evaluate one tile. A held tile is only penalized once it comes within avoid range,
+     * but stays penalized until its release shows up in the change log.
+     */
+    private void sense(int x, int y) {
+        if (!inBounds(x, y)) return;
+        int node = y * width + x;
+
+        if (!penalized[node] && !isNear(x, y)) return;   // most of the change log: far away, nothing to undo
+
+        boolean want = !reservations.isFree(x, y, agent);
+        if (want == penalized[node]) return;
+
+        penalized[node] = want;
+        if (want && !listed[node]) {
+            if (penalizedCount == penalizedNodes.length) penalizedNodes = Arrays.copyOf(penalizedNodes, penalizedCount * 2);
+            penalizedNodes[penalizedCount++] = node;
+            listed[node] = true;
+        }
+        for (int d = 0; d < 4; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            if (inBounds(nx, ny)) updateVertex(ny * width + nx);
+        }
+        dirty = true;
+    }
+
+    private boolean isNear(int x, int y) {
+        return Math.abs(x - start % width) + Math.abs(y - start / width) <= GridSearch.AVOID_RADIUS;
+    }
+
+    // -------------------------------------------------------------------------
+    // D* Lite
+    // -------------------------------------------------------------------------
+
+    private void initialize() {
+        blocked.refresh();
+        version = grid.getVersion();
+
+        Arrays.fill(g, INF);
+        Arrays.fill(rhs, INF);
+        Arrays.fill(penalized, false);
+        for (int i = 0; i < penalizedCount; i++) listed[penalizedNodes[i]] = false;
+        penalizedCount = 0;
+        open.clear();
+
+        km          = 0;
+        last        = start;
+        seenChanges = reservations.getChangeCount();
+        dirty       = false;
+
+        rhs[goal] = 0;
+        open.put(goal, key(goal));
+        senseAround();
+    }
+
+    private void computeShortestPath() {
+        lastExpanded = 0;
+        while (open.topKey() < key(start) || rhs[start] != g[start]) {
+            if (open.isEmpty()) return;   // start unreachable
+
+            int  u    = open.top();
+            long kOld = open.topKey();
+            long kNew = key(u);
+            lastExpanded++;
+
+            if (kOld < kNew) {
+                open.put(u, kNew);
+            } else if (g[u] > rhs[u]) {
+                g[u] = rhs[u];
+                open.remove(u);
+                updateNeighbours(u);
+            } else {
+                g[u] = INF;
+                updateVertex(u);
+                updateNeighbours(u);
+            }
+        }
+    }
+
+    private void updateNeighbours(int node) {
+        int x = node % width;
+        int y = node / width;
+        for (int d = 0; d < 4; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            if (inBounds(nx, ny)) updateVertex(ny * width + nx);
+        }
+    }
+
+    /** Recompute rhs from the successors and requeue the node if it became inconsistent. */
+    private void updateVertex(int node) {
+        if (node != goal) {
+            int x = node % width;
+            int y = node / width;
+            int best = INF;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (!inBounds(nx, ny)) continue;
+                int next = ny * width + nx;
+                best = Math.min(best, costTo(next) + g[next]);
+            }
+            rhs[node] = Math.min(best, INF);
+        }
+
+        if (g[node] != rhs[node]) {
+            open.put(node, key(node));
+        } else {
+            open.remove(node);
+        }
+    }
+
+    /** Follow the cheapest successor from the start to the goal. */
+    private boolean extractPath(GridPath out) {
+        out.clear(width);
+        if (start == goal) return true;
+        if (g[start] >= INF) return false;
+
+        int node = start;
+        for (int steps = 0; node != goal; steps++) {
+            if (steps >= g.length) return false;
+
+            int x = node % width;
+            int y = node / width;
+            int best     = INF;
+            int bestNode = -1;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (!inBounds(nx, ny)) continue;
+                int next = ny * width + nx;
+                int cost = costTo(next) + g[next];
+                if (cost < best) {
+                    best     = cost;
+                    bestNode = next;
+                }
+            }
+            if (bestNode < 0) return false;
+            out.append(bestNode);
+            node = bestNode;
+        }
+        return true;
+    }
+
+    // -------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------
+
+    /** Cost of stepping onto the node; INF for walls. */
+    private int costTo(int node) {
+        if (blocked.isBlocked(node % width, node / width)) return INF;
+        return penalized[node] ? GridSearch.STEP_COST + GridSearch.RESERVED_PENALTY : GridSearch.STEP_COST;
+    }
+
+    /** [min(g, rhs) + h(start, node) + km ; min(g, rhs)] packed into one comparable long. */
+    private long key(int node) {
+        int k2 = Math.min(g[node], rhs[node]);
+        int k1 = Math.min(k2 + heuristic(start, node) + km, Integer.MAX_VALUE);
+        return ((long) k1 << 32) | k2;
+    }
+
+    private int heuristic(int a, int b) {
+        return (Math.abs(a % width - b % width) + Math.abs(a / width - b / width)) * GridSearch.STEP_COST;
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+}
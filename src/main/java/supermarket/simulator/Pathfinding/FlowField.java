@@ -0,0 +1,143 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.model.world.Tile;
+
+import java.util.Arrays;
+
+/**
+ * Distance field towards one destination tile: for every node the number of steps to the
+ * destination, computed once with a reverse breadth-first search over walkable tiles.
+ *
+ * Any agent heading for the destination finds its next step with at most four array reads
+ * instead of running its own search. Fields are owned and rebuilt by {@link FlowFieldService}.
+ */
+public class FlowField {
+
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    // Direction arrays for 4-way movement (N, E, S, W), same order as Person
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final int[] DY = {-1, 0, 1, 0};
+
+    private final Grid grid;
+    private final TileReservationSystem reservations;
+    private final int destination;
+    private final int[] distance;
+    private volatile int version = -1;   // written last, so readers on other threads see a complete field
+
+    FlowField(Grid grid, TileReservationSystem reservations, int destination) {
+        this.grid         = grid;
+        this.reservations = reservations;
+        this.destination  = destination;
+        this.distance     = new int[grid.getWidth() * grid.getHeight()];
+    }
+
+    /** Recompute all distances; {@code queue} is caller-owned scratch of at least node-count size. */
+    void rebuild(int[] queue) {
+        int width  = grid.getWidth();
+        int height = grid.getHeight();
+        int builtVersion = grid.getVersion();
+        Arrays.fill(distance, UNREACHABLE);
+
+        if (!isWalkable(destination % width, destination / width)) {
+            version = builtVersion;
+            return;
+        }
+
+        int head = 0, tail = 0;
+        distance[destination] = 0;
+        queue[tail++] = destination;
+
+        while (head < tail) {
+            int node = queue[head++];
+            int x = node % width;
+            int y = node / width;
+            int d = distance[node] + 1;
+
+            for (int dir = 0; dir < 4; dir++) {
+                int nx = x + DX[dir];
+                int ny = y + DY[dir];
+                if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+
+                int next = ny * width + nx;
+                if (distance[next] != UNREACHABLE || !isWalkable(nx, ny)) continue;
+                distance[next] = d;
+                queue[tail++]  = next;
+            }
+        }
+        version = builtVersion;
+    }
+
+    /**
+     * Write the next step from (x, y) towards the destination into {@code out}.
+     * Prefers a downhill neighbour that is not reserved by another agent; when all of them
+     * are taken the first downhill neighbour is written anyway so the agent keeps facing it.
+     *
+     * @return true if the written step is free to take now
+     */
+    public boolean nextStep(int x, int y, Person agent, GridPath out) {
+        int width = grid.getWidth();
+        out.clear(width);
+
+        int here = distanceAt(x, y);
+        if (here == 0 || here == UNREACHABLE) return false;
+
+        int fallback = -1;
+
+        for (int dir = 0; dir < 4; dir++) {
+            int nx = x + DX[dir];
+            int ny = y + DY[dir];
+            if (distanceAt(nx, ny) != here - 1) continue;
+
+            if (reservations.isFree(nx, ny, agent)) {
+                out.append(ny * width + nx);
+                return true;
+            }
+            if (fallback < 0) fallback = ny * width + nx;
+        }
+
+        if (fallback >= 0) out.append(fallback);
+        return false;
+    }
+
+    /** Write the complete downhill route from (x, y) into {@code out} (debug overlay). */
+    public void trace(int x, int y, GridPath out) {
+        int width = grid.getWidth();
+        out.clear(width);
+
+        int d = distanceAt(x, y);
+        if (d == UNREACHABLE) return;
+
+        while (d > 0) {
+            for (int dir = 0; dir < 4; dir++) {
+                int nx = x + DX[dir];
+                int ny = y + DY[dir];
+                if (distanceAt(nx, ny) == d - 1) {
+                    x = nx;
+                    y = ny;
+                    break;
+                }
+            }
+            out.append(y * width + x);
+            d--;
+        }
+    }
+
+    /** Steps from (x, y) to the destination, or {@link #UNREACHABLE}. */
+    public int distanceAt(int x, int y) {
+        if (x < 0 || x >= grid.getWidth() || y < 0 || y >= grid.getHeight()) return UNREACHABLE;
+        return distance[y * grid.getWidth() + x];
+    }
+
+    public int getDestinationX() { return destination % grid.getWidth(); }
+    public int getDestinationY() { return destination / grid.getWidth(); }
+    public int getVersion()      { return version; }
+    Grid getGrid()               { return grid; }
+
+    private boolean isWalkable(int x, int y) {
+        Tile tile = grid.getTile(x, y);
+        return tile != null && tile.isWalkable();
+    }
+}
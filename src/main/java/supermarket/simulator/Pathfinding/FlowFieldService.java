@@ -0,0 +1,62 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.world.Grid;
+
+/**
+ * Keeps one {@link FlowField} per shared destination (exit, checkout access and queue tiles,
+ * shelf access tiles) of one simulation's grid. Destinations are registered once after the
+ * level is built; a field is only rebuilt when it is requested after the grid's layout version
+ * has changed. Lookups may come from several threads at once (parallel agent updates); a
+ * rebuild is done by one of them while the others wait.
+ */
+public class FlowFieldService {
+
+    private final Grid grid;
+    private final TileReservationSystem reservations;
+    private final FlowField[] fields;   // indexed by destination node (y * width + x)
+    private final int[] queue;          // BFS scratch shared by all rebuilds
+    private int fieldCount;
+    private int rebuildCount;
+
+    public FlowFieldService(Grid grid, TileReservationSystem reservations) {
+        int nodes         = grid.getWidth() * grid.getHeight();
+        this.grid         = grid;
+        this.reservations = reservations;
+        this.fields       = new FlowField[nodes];
+        this.queue        = new int[nodes];
+    }
+
+    /** Register (x, y) as a shared destination. */
+    public void register(int x, int y) {
+        if (x < 0 || x >= grid.getWidth() || y < 0 || y >= grid.getHeight()) return;
+
+        int node = y * grid.getWidth() + x;
+        if (fields[node] == null) {
+            fields[node] = new FlowField(grid, reservations, node);
+            fieldCount++;
+        }
+    }
+
+    /**
+     * The up-to-date field towards (x, y), or null when (x, y) is not a registered destination.
+     * O(1) unless the layout changed since the field was last built.
+     */
+    public FlowField getField(int x, int y) {
+        if (x < 0 || x >= grid.getWidth() || y < 0 || y >= grid.getHeight()) return null;
+
+        FlowField field = fields[y * grid.getWidth() + x];
+        if (field != null && field.getVersion() != grid.getVersion()) {
+            rebuild(field);
+        }
+        return field;
+    }
+
+    private synchronized void rebuild(FlowField field) {
+        if (field.getVersion() == grid.getVersion()) return;   // another thread was first
+        field.rebuild(queue);
+        rebuildCount++;
+    }
+
+    public int getFieldCount()   { return fieldCount; }
+    public int getRebuildCount() { return rebuildCount; }
+}
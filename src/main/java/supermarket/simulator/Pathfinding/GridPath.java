@@ -0,0 +1,99 @@
+package supermarket.simulator.Pathfinding;
+
+/**
+ * Compact path result: a sequence of flat node indices ({@code y * width + x}) with a read cursor.
+ * The start tile is not part of the path; the last node is the goal.
+ *
+ * The backing array is reused between searches, so refilling a path allocates nothing
+ * once it has grown to the longest route this agent has walked.
+ */
+public class GridPath {
+
+    private int[] nodes = new int[32];
+    private int length;
+    private int cursor;
+    private int width = 1;
+
+    // -------------------------------------------------------------------------
+    // Filling (used by the planners)
+    // -------------------------------------------------------------------------
+
+    /** Empty the path and set the grid width used to decode node indices. */
+    public void clear(int width) {
+        this.width  = width;
+        this.length = 0;
+        this.cursor = 0;
+    }
+
+    /** Resize to {@code length} nodes; contents are written afterwards with {@link #set}. */
+    void resize(int length) {
+        if (length > nodes.length) {
+            nodes = new int[Math.max(length, nodes.length * 2)];
+        }
+        this.length = length;
+        this.cursor = 0;
+    }
+
+    void set(int index, int node) {
+        nodes[index] = node;
+    }
+
+    void append(int node) {
+        if (length == nodes.length) {
+            int[] grown = new int[nodes.length * 2];
+            System.arraycopy(nodes, 0, grown, 0, length);
+            nodes = grown;
+        }
+        nodes[length++] = node;
+    }
+
+    /** Append the remaining steps of another path (used to stitch refined segments). */
+    void appendAll(GridPath other) {
+        for (int i = 0; i < other.size(); i++) {
+            append(other.getNode(i));
+        }
+    }
+
+    /** Replace the contents with {@code count} nodes from a plain array (path cache, snapshots). */
+    public void load(int[] source, int count, int width) {
+        clear(width);
+        resize(count);
+        System.arraycopy(source, 0, nodes, 0, count);
+    }
+
+    /** The remaining steps as a new array (path cache). */
+    int[] toArray() {
+        int[] copy = new int[size()];
+        System.arraycopy(nodes, cursor, copy, 0, copy.length);
+        return copy;
+    }
+
+    /** Copy the remaining steps of another path into this one. */
+    public void copyFrom(GridPath other) {
+        clear(other.width);
+        resize(other.size());
+        System.arraycopy(other.nodes, other.cursor, nodes, 0, length);
+    }
+
+    // -------------------------------------------------------------------------
+    // Reading (used by Person and the renderer)
+    // -------------------------------------------------------------------------
+
+    public boolean isEmpty() { return cursor >= length; }
+    public int size()        { return length - cursor; }
+
+    /** Node index of the i-th remaining step (0 = next step). */
+    public int getNode(int i) { return nodes[cursor + i]; }
+    public int getX(int i)    { return nodes[cursor + i] % width; }
+    public int getY(int i)    { return nodes[cursor + i] / width; }
+
+    public int nextX() { return getX(0); }
+    public int nextY() { return getY(0); }
+    public int lastX() { return getX(size() - 1); }
+    public int lastY() { return getY(size() - 1); }
+
+    /** Consume the next step after the agent moved onto it. */
+    public void advance() {
+        if (cursor < length) cursor++;
+    }
+}
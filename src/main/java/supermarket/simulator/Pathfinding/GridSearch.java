@@ -0,0 +1,187 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.model.world.Tile;
+
+import java.util.Arrays;
+
+/**
+ * A* on the tile grid using flat node indices ({@code y * width + x}).
+ *
+ * All scratch state (g-scores, parents, closed set and the binary-heap open set) lives in
+ * arrays that are reused between searches. Instead of clearing them, every search bumps a
+ * generation counter and a slot only counts as initialised when its stamp matches the
+ * current generation. Once the arrays have grown to the grid size a search allocates nothing.
+ *
+ * The engine is not thread-safe; use {@link #local()} to get the shared instance of the
+ * current thread instead of creating one per agent.
+ */
+public class GridSearch implements PathPlanner {
+
+    /** Cost of one orthogonal step. Integer costs keep the heap keys exact. */
+    public static final int STEP_COST = 10;
+
+    /** Extra cost for a tile that another agent currently holds, so routes bend around it. */
+    static final int RESERVED_PENALTY = 40;
+
+    /** Reservations are only looked at this close to the start: far-away agents will have moved on. */
+    static final int AVOID_RADIUS = 3;
+
+    // Direction arrays for 4-way movement (N, E, S, W), same order as Person
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final int[] DY = {-1, 0, 1, 0};
+
+    private static final ThreadLocal<GridSearch> LOCAL = ThreadLocal.withInitial(GridSearch::new);
+
+    // Per-node scratch, valid only where stamp[n] == generation
+    private int[] gScore  = new int[0];
+    private int[] parent  = new int[0];
+    private int[] stamp   = new int[0];
+    private int[] closed  = new int[0];
+    private int generation = 0;
+
+    private final NodeHeap open = new NodeHeap();
+
+    private int lastExpanded;
+
+    /** The search engine shared by all agents on the calling thread. */
+    public static GridSearch local() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Find the shortest 4-connected path from start to goal and write it into {@code out}.
+     * Tiles near the start that are reserved by another agent are allowed but penalised.
+     *
+     * @param agent the searching agent (its own reservations are ignored), may be null
+     * @return true if the goal is reachable; {@code out} is then filled (empty when start == goal)
+     */
+    @Override
+    public boolean findPath(SimulationContext context, int startX, int startY, int goalX, int goalY,
+                            Person agent, GridPath out) {
+        Grid grid = context.getGrid();
+        return findPathWithin(grid, context.getReservations(), startX, startY, goalX, goalY, agent, out,
+                0, 0, grid.getWidth() - 1, grid.getHeight() - 1);
+    }
+
+    /**
+     * Same as {@link #findPath}, but only tiles inside the inclusive box
+     * [minX..maxX] x [minY..maxY] are expanded (used to refine hierarchical paths per cluster).
+     */
+    public boolean findPathWithin(Grid grid, TileReservationSystem reservations,
+                                  int startX, int startY, int goalX, int goalY,
+                                  Person agent, GridPath out, int minX, int minY, int maxX, int maxY) {
+        int width = grid.getWidth();
+        out.clear(width);
+        lastExpanded = 0;
+
+        if (!inBounds(grid, startX, startY) || !isWalkable(grid, goalX, goalY)) return false;
+
+        int start = startY * width + startX;
+        int goal  = goalY * width + goalX;
+        if (start == goal) return true;
+
+        ensureCapacity(width * grid.getHeight());
+        nextGeneration();
+        open.clear();
+
+        stamp[start]  = generation;
+        gScore[start] = 0;
+        parent[start] = -1;
+        open.push(start, heuristic(startX, startY, goalX, goalY), 0);
+
+        while (!open.isEmpty()) {
+            int node = open.pop();
+            if (closed[node] == generation) continue;   // stale heap entry
+            closed[node] = generation;
+            lastExpanded++;
+
+            if (node == goal) {
+                buildPath(start, goal, out);
+                return true;
+            }
+
+            int x = node % width;
+            int y = node / width;
+            int g = gScore[node];
+
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < minX || nx > maxX || ny < minY || ny > maxY) continue;
+
+                int next = ny * width + nx;
+                if (closed[next] == generation) continue;
+                if (!isWalkable(grid, nx, ny)) continue;
+
+                int cost = g + STEP_COST;
+                if (Math.abs(nx - startX) + Math.abs(ny - startY) <= AVOID_RADIUS
+                        && !reservations.isFree(nx, ny, agent)) {
+                    cost += RESERVED_PENALTY;
+                }
+
+                if (stamp[next] != generation || cost < gScore[next]) {
+                    stamp[next]  = generation;
+                    gScore[next] = cost;
+                    parent[next] = node;
+                    open.push(next, cost + heuristic(nx, ny, goalX, goalY), cost);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Number of nodes closed by the last search (for benchmarks and debugging). */
+    @Override
+    public int getLastExpanded() {
+        return lastExpanded;
+    }
+
+    // -------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------
+
+    private static int heuristic(int x, int y, int goalX, int goalY) {
+        return (Math.abs(x - goalX) + Math.abs(y - goalY)) * STEP_COST;
+    }
+
+    private static boolean inBounds(Grid grid, int x, int y) {
+        return x >= 0 && x < grid.getWidth() && y >= 0 && y < grid.getHeight();
+    }
+
+    private static boolean isWalkable(Grid grid, int x, int y) {
+        Tile tile = grid.getTile(x, y);
+        return tile != null && tile.isWalkable();
+    }
+
+    /** Walk the parent chain back from the goal and write it front-to-back into {@code out}. */
+    private void buildPath(int start, int goal, GridPath out) {
+        int length = 0;
+        for (int n = goal; n != start; n = parent[n]) length++;
+
+        out.resize(length);
+        int i = length - 1;
+        for (int n = goal; n != start; n = parent[n]) {
+            out.set(i--, n);
+        }
+    }
+
+    private void ensureCapacity(int nodeCount) {
+        if (gScore.length >= nodeCount) return;
+        gScore     = new int[nodeCount];
+        parent     = new int[nodeCount];
+        stamp      = new int[nodeCount];
+        closed     = new int[nodeCount];
+        generation = 0;
+    }
+
+    private void nextGeneration() {
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            Arrays.fill(closed, 0);
+            generation = 1;
+        }
+    }
+}
@@ -0,0 +1,511 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.model.world.Tile;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical path planner (HPA*) for very large store floors.
+ *
+ * The grid is split into square clusters. Along every border between two clusters each open
+ * segment gets one or two transitions (an entrance tile on both sides). Entrances are the nodes
+ * of a small abstract graph: entrances of the same cluster are connected by their in-cluster
+ * walking distance, opposite entrances of a transition by a single step.
+ *
+ * A query searches the abstract graph and only refines the first few abstract hops into tiles;
+ * the agent replans when that prefix runs out. When a tile changes, only its cluster's borders
+ * and the in-cluster distances of that cluster and its neighbours are recomputed.
+ *
+ * One instance is shared per simulation (SimulationContext); the workers of
+ * {@link PathRequestService} may call it concurrently. Every thread searches in its own
+ * {@link Query} scratch, so queries only share the abstract graph: they read it under a read
+ * lock, and repairing it after tile changes takes the write lock. Short hops do not touch the
+ * graph and run without the lock.
+ */
+public class HierarchicalPathfinder implements PathPlanner, Grid.ChangeListener {
+
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+
+    private static final int UNREACHABLE  = Integer.MAX_VALUE;
+    private static final int LONG_SEGMENT = 6;   // open segments this long get a transition at both ends
+    private static final int REFINE_HOPS  = 3;   // abstract hops turned into tiles per query
+
+    // Border sides, in the same N, E, S, W order as the movement arrays
+    private static final int NORTH = 0;
+    private static final int EAST  = 1;
+    private static final int SOUTH = 2;
+    private static final int WEST  = 3;
+
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final int[] DY = {-1, 0, 1, 0};
+
+    private final Grid grid;
+    private final int clusterSize;
+    private final int clustersX;
+    private final int clustersY;
+    private final int perSide;   // entrance slots per cluster side
+    private final int slots;     // entrance slots per cluster (4 * perSide)
+
+    // Abstract graph: node id = cluster * slots + side * perSide + k
+    private final int[] entranceTile;   // tile node of each entrance slot, -1 when unused
+    private final int[] intra;          // in-cluster steps between slots i and j of one cluster
+
+    // Clusters whose tiles changed since the last query
+    private final boolean[] dirty;
+    private final int[] dirtyList;
+    private int dirtyCount;
+    private final int[] intraStamp;
+    private int intraGeneration;
+
+    // Everything above: read by queries, written by the repair (and tileChanged)
+    private final ReentrantReadWriteLock graphLock = new ReentrantReadWriteLock();
+
+    private final int goalNode;   // virtual node of the goal in the abstract search
+    private final ThreadLocal<Query> queries = ThreadLocal.withInitial(Query::new);
+
+    public HierarchicalPathfinder(Grid grid, int clusterSize) {
+        this.grid        = grid;
+        this.clusterSize = clusterSize;
+        this.clustersX   = (grid.getWidth() + clusterSize - 1) / clusterSize;
+        this.clustersY   = (grid.getHeight() + clusterSize - 1) / clusterSize;
+        this.perSide     = clusterSize / 2 + 1;
+        this.slots       = 4 * perSide;
+
+        int clusters = clustersX * clustersY;
+        this.entranceTile = new int[clusters * slots];
+        this.intra        = new int[clusters * slots * slots];
+        this.dirty        = new boolean[clusters];
+        this.dirtyList    = new int[clusters];
+        this.intraStamp   = new int[clusters];
+
+        this.goalNode     = clusters * slots;
+
+        Arrays.fill(entranceTile, -1);
+        buildAll(queries.get());
+        grid.addChangeListener(this);
+    }
+
+    /** Scratch of one thread's queries (abstract A* and in-cluster BFS); valid where stamp[n] == generation. */
+    private final class Query {
+        final int[] gScore    = new int[goalNode + 1];
+        final int[] parent    = new int[goalNode + 1];
+        final int[] stamp     = new int[goalNode + 1];
+        final int[] closed    = new int[goalNode + 1];
+        int generation;
+        final NodeHeap open   = new NodeHeap();
+        final int[] startDist = new int[slots];
+        final int[] goalDist  = new int[slots];
+        int[] abstractPath    = new int[64];
+
+        final GridPath segment = new GridPath();
+        TileReservationSystem reservations;   // of the current query, for refinement
+
+        final int[] bfsDist  = new int[clusterSize * clusterSize];
+        final int[] bfsQueue = new int[clusterSize * clusterSize];
+
+        int lastExpanded;
+    }
+
+    // -------------------------------------------------------------------------
+    // Query
+    // -------------------------------------------------------------------------
+
+    @Override
+    public boolean findPath(SimulationContext context, int startX, int startY, int goalX, int goalY,
+                            Person agent, GridPath out) {
+        Query q = queries.get();
+        GridSearch search = GridSearch.local();
+        if (context.getGrid() != this.grid) {
+            boolean found = search.findPath(context, startX, startY, goalX, goalY, agent, out);
+            q.lastExpanded = search.getLastExpanded();
+            return found;
+        }
+
+        out.clear(grid.getWidth());
+        q.lastExpanded = 0;
+        if (!inBounds(startX, startY) || !isWalkable(goalX, goalY)) return false;
+
+        int startCluster = clusterOf(startX, startY);
+        int goalCluster  = clusterOf(goalX, goalY);
+
+        // Short hops are cheaper with a plain search than with entrance bookkeeping
+        if (startCluster == goalCluster
+                || Math.abs(startX - goalX) + Math.abs(startY - goalY) < clusterSize) {
+            boolean found = search.findPath(context, startX, startY, goalX, goalY, agent, out);
+            q.lastExpanded = search.getLastExpanded();
+            return found;
+        }
+
+        lockRepairedGraph(q);
+        try {
+            distancesToEntrances(q, startCluster, startX, startY, q.startDist);
+            distancesToEntrances(q, goalCluster, goalX, goalY, q.goalDist);
+
+            int length = searchAbstract(q, startCluster, goalCluster, goalX, goalY);
+            if (length < 0) return false;
+
+            q.reservations = context.getReservations();
+            refine(q, startX, startY, goalX, goalY, goalCluster, length, agent, out);
+            return true;
+        } finally {
+            graphLock.readLock().unlock();
+        }
+    }
+
+    /** Nodes expanded by the last query of the calling thread. */
+    @Override
+    public int getLastExpanded() {
+        return queries.get().lastExpanded;
+    }
+
+    /** Take the read lock on a graph without dirty clusters, repairing them first if needed. */
+    private void lockRepairedGraph(Query q) {
+        graphLock.readLock().lock();
+        if (dirtyCount == 0) return;
+
+        graphLock.readLock().unlock();
+        graphLock.writeLock().lock();
+        try {
+            refreshDirtyClusters(q);   // no-op when another thread got here first
+            graphLock.readLock().lock();   // downgrade: no repair can slip in before the query
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    /** A* over entrances; returns the number of entrances on the route, or -1. */
+    private int searchAbstract(Query q, int startCluster, int goalCluster, int goalX, int goalY) {
+        int[] closed = q.closed;
+        if (++q.generation == Integer.MAX_VALUE) {
+            Arrays.fill(q.stamp, 0);
+            Arrays.fill(closed, 0);
+            q.generation = 1;
+        }
+        int generation = q.generation;
+        q.open.clear();
+
+        for (int i = 0; i < slots; i++) {
+            if (q.startDist[i] != UNREACHABLE) {
+                relax(q, startCluster * slots + i, q.startDist[i] * GridSearch.STEP_COST, -1, goalX, goalY);
+            }
+        }
+
+        while (!q.open.isEmpty()) {
+            int node = q.open.pop();
+            if (closed[node] == generation) continue;
+            closed[node] = generation;
+            q.lastExpanded++;
+
+            if (node == goalNode) return buildAbstractPath(q);
+
+            int cluster = node / slots;
+            int slot    = node % slots;
+            int g       = q.gScore[node];
+
+            if (cluster == goalCluster && q.goalDist[slot] != UNREACHABLE) {
+                relax(q, goalNode, g + q.goalDist[slot] * GridSearch.STEP_COST, node, goalX, goalY);
+            }
+
+            // Transition to the opposite entrance in the neighbouring cluster
+            int side     = slot / perSide;
+            int neighbor = neighborCluster(cluster, side);
+            if (neighbor >= 0) {
+                int across = neighbor * slots + ((side + 2) & 3) * perSide + slot % perSide;
+                if (entranceTile[across] >= 0) {
+                    relax(q, across, g + GridSearch.STEP_COST, node, goalX, goalY);
+                }
+            }
+
+            // Other entrances of the same cluster
+            int row = cluster * slots * slots + slot * slots;
+            for (int j = 0; j < slots; j++) {
+                int steps = intra[row + j];
+                if (j == slot || steps == UNREACHABLE) continue;
+                relax(q, cluster * slots + j, g + steps * GridSearch.STEP_COST, node, goalX, goalY);
+            }
+        }
+        return -1;
+    }
+
+    private void relax(Query q, int node, int cost, int from, int goalX, int goalY) {
+        if (q.closed[node] == q.generation) return;
+        if (q.stamp[node] == q.generation && cost >= q.gScore[node]) return;
+
+        q.stamp[node]  = q.generation;
+        q.gScore[node] = cost;
+        q.parent[node] = from;
+
+        int h = 0;
+        if (node != goalNode) {
+            int tile = entranceTile[node];
+            int w    = grid.getWidth();
+            h = (Math.abs(tile % w - goalX) + Math.abs(tile / w - goalY)) * GridSearch.STEP_COST;
+        }
+        q.open.push(node, cost + h, cost);
+    }
+
+    private int buildAbstractPath(Query q) {
+        int[] parent = q.parent;
+        int length = 0;
+        for (int n = parent[goalNode]; n >= 0; n = parent[n]) length++;
+
+        if (q.abstractPath.length < length) q.abstractPath = new int[Math.max(length, q.abstractPath.length * 2)];
+        int i = length - 1;
+        for (int n = parent[goalNode]; n >= 0; n = parent[n]) {
+            q.abstractPath[i--] = n;
+        }
+        return length;
+    }
+
+    /** Turn the first {@link #REFINE_HOPS} abstract hops (or the whole route) into tiles. */
+    private void refine(Query q, int startX, int startY, int goalX, int goalY, int goalCluster,
+                        int length, Person agent, GridPath out) {
+        GridSearch search = GridSearch.local();
+        int width = grid.getWidth();
+        int fromX = startX;
+        int fromY = startY;
+
+        for (int i = 0; i < length; i++) {
+            int node    = q.abstractPath[i];
+            int cluster = node / slots;
+            int tile    = entranceTile[node];
+            int toX     = tile % width;
+            int toY     = tile / width;
+
+            if (i > 0 && q.abstractPath[i - 1] / slots != cluster) {
+                out.append(tile);   // transition: the entrances are neighbours
+            } else {
+                refineWithin(q, search, cluster, fromX, fromY, toX, toY, agent, out);
+            }
+            fromX = toX;
+            fromY = toY;
+
+            if (i + 1 >= REFINE_HOPS && i + 1 < length) return;   // rest is refined on the next replan
+        }
+        refineWithin(q, search, goalCluster, fromX, fromY, goalX, goalY, agent, out);
+    }
+
+    private void refineWithin(Query q, GridSearch search, int cluster, int fromX, int fromY, int toX, int toY,
+                              Person agent, GridPath out) {
+        int minX = (cluster % clustersX) * clusterSize;
+        int minY = (cluster / clustersX) * clusterSize;
+        int maxX = Math.min(minX + clusterSize, grid.getWidth()) - 1;
+        int maxY = Math.min(minY + clusterSize, grid.getHeight()) - 1;
+
+        search.findPathWithin(grid, q.reservations, fromX, fromY, toX, toY, agent, q.segment, minX, minY, maxX, maxY);
+        q.lastExpanded += search.getLastExpanded();
+        out.appendAll(q.segment);
+    }
+
+    // -------------------------------------------------------------------------
+    // Building and incremental repair
+    // -------------------------------------------------------------------------
+
+    @Override
+    public void tileChanged(int x, int y) {
+        int cluster = clusterOf(x, y);
+        graphLock.writeLock().lock();
+        try {
+            if (!dirty[cluster]) {
+                dirty[cluster] = true;
+                dirtyList[dirtyCount++] = cluster;
+            }
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    /** Number of clusters waiting for repair (debugging). */
+    public int getDirtyClusterCount() {
+        graphLock.readLock().lock();
+        try {
+            return dirtyCount;
+        } finally {
+            graphLock.readLock().unlock();
+        }
+    }
+
+    private void buildAll(Query q) {
+        for (int cy = 0; cy < clustersY; cy++) {
+            for (int cx = 0; cx < clustersX; cx++) {
+                buildBorder(cy * clustersX + cx, EAST);
+                buildBorder(cy * clustersX + cx, SOUTH);
+            }
+        }
+        for (int c = 0; c < clustersX * clustersY; c++) {
+            buildIntra(q, c);
+        }
+    }
+
+    /** Rebuild the borders of changed clusters, then the distances of them and their neighbours. Under the write lock. */
+    private void refreshDirtyClusters(Query q) {
+        if (dirtyCount == 0) return;
+
+        for (int i = 0; i < dirtyCount; i++) {
+            int c = dirtyList[i];
+            buildBorder(c, EAST);
+            buildBorder(c, SOUTH);
+            if (neighborCluster(c, WEST) >= 0)  buildBorder(neighborCluster(c, WEST), EAST);
+            if (neighborCluster(c, NORTH) >= 0) buildBorder(neighborCluster(c, NORTH), SOUTH);
+        }
+
+        intraGeneration++;
+        for (int i = 0; i < dirtyCount; i++) {
+            int c = dirtyList[i];
+            rebuildIntraOnce(q, c);
+            for (int side = 0; side < 4; side++) {
+                int n = neighborCluster(c, side);
+                if (n >= 0) rebuildIntraOnce(q, n);
+            }
+            dirty[c] = false;
+        }
+        dirtyCount = 0;
+    }
+
+    private void rebuildIntraOnce(Query q, int cluster) {
+        if (intraStamp[cluster] == intraGeneration) return;
+        intraStamp[cluster] = intraGeneration;
+        buildIntra(q, cluster);
+    }
+
+    /**
+     * Place transitions on the EAST or SOUTH border of a cluster. Each maximal run of tiles that
+     * are open on both sides gets one transition in its middle, or one at each end when long.
+     */
+    private void buildBorder(int cluster, int side) {
+        int neighbor = neighborCluster(cluster, side);
+        int opposite = (side + 2) & 3;
+        clearSide(cluster, side);
+        if (neighbor < 0) return;
+        clearSide(neighbor, opposite);
+
+        int cx = cluster % clustersX;
+        int cy = cluster / clustersX;
+        int width = grid.getWidth();
+
+        // Border runs along y for an EAST border, along x for a SOUTH border
+        int begin = side == EAST ? cy * clusterSize : cx * clusterSize;
+        int end   = Math.min(begin + clusterSize, side == EAST ? grid.getHeight() : width);
+        int fixed = (side == EAST ? cx + 1 : cy + 1) * clusterSize - 1;
+
+        int count = 0;
+        int run   = -1;
+        for (int i = begin; i <= end; i++) {
+            boolean openHere = i < end && (side == EAST
+                    ? isWalkable(fixed, i) && isWalkable(fixed + 1, i)
+                    : isWalkable(i, fixed) && isWalkable(i, fixed + 1));
+
+            if (openHere && run < 0) run = i;
+            if (openHere || run < 0) continue;
+
+            int last = i - 1;
+            if (last - run + 1 >= LONG_SEGMENT) {
+                count = addTransition(cluster, neighbor, side, count, run, fixed, width);
+                count = addTransition(cluster, neighbor, side, count, last, fixed, width);
+            } else {
+                count = addTransition(cluster, neighbor, side, count, (run + last) / 2, fixed, width);
+            }
+            run = -1;
+        }
+    }
+
+    private int addTransition(int cluster, int neighbor, int side, int k, int along, int fixed, int width) {
+        if (k >= perSide) return k;
+        int opposite = (side + 2) & 3;
+        int inside   = side == EAST ? along * width + fixed     : fixed * width + along;
+        int outside  = side == EAST ? along * width + fixed + 1 : (fixed + 1) * width + along;
+
+        entranceTile[cluster * slots + side * perSide + k]      = inside;
+        entranceTile[neighbor * slots + opposite * perSide + k] = outside;
+        return k + 1;
+    }
+
+    private void clearSide(int cluster, int side) {
+        int base = cluster * slots + side * perSide;
+        Arrays.fill(entranceTile, base, base + perSide, -1);
+    }
+
+    /** In-cluster walking distance between every pair of entrances of one cluster. */
+    private void buildIntra(Query q, int cluster) {
+        int base = cluster * slots * slots;
+        Arrays.fill(intra, base, base + slots * slots, UNREACHABLE);
+
+        int width = grid.getWidth();
+        for (int i = 0; i < slots; i++) {
+            int tile = entranceTile[cluster * slots + i];
+            if (tile < 0) continue;
+
+            distancesToEntrances(q, cluster, tile % width, tile / width, q.startDist);
+            System.arraycopy(q.startDist, 0, intra, base + i * slots, slots);
+        }
+    }
+
+    /** BFS inside one cluster from (x, y); writes the step count to each entrance slot into {@code out}. */
+    private void distancesToEntrances(Query q, int cluster, int x, int y, int[] out) {
+        int minX = (cluster % clustersX) * clusterSize;
+        int minY = (cluster / clustersX) * clusterSize;
+        int maxX = Math.min(minX + clusterSize, grid.getWidth()) - 1;
+        int maxY = Math.min(minY + clusterSize, grid.getHeight()) - 1;
+
+        int[] bfsDist  = q.bfsDist;
+        int[] bfsQueue = q.bfsQueue;
+        Arrays.fill(bfsDist, UNREACHABLE);
+        int head = 0, tail = 0;
+        bfsDist[(y - minY) * clusterSize + (x - minX)] = 0;
+        bfsQueue[tail++] = (y - minY) * clusterSize + (x - minX);
+
+        while (head < tail) {
+            int local = bfsQueue[head++];
+            int lx = local % clusterSize;
+            int ly = local / clusterSize;
+            int d  = bfsDist[local] + 1;
+
+            for (int dir = 0; dir < 4; dir++) {
+                int nx = lx + DX[dir];
+                int ny = ly + DY[dir];
+                if (nx < 0 || ny < 0 || minX + nx > maxX || minY + ny > maxY) continue;
+
+                int next = ny * clusterSize + nx;
+                if (bfsDist[next] != UNREACHABLE || !isWalkable(minX + nx, minY + ny)) continue;
+                bfsDist[next]    = d;
+                bfsQueue[tail++] = next;
+            }
+        }
+
+        int width = grid.getWidth();
+        for (int i = 0; i < slots; i++) {
+            int tile = entranceTile[cluster * slots + i];
+            out[i] = tile < 0
+                    ? UNREACHABLE
+                    : bfsDist[(tile / width - minY) * clusterSize + (tile % width - minX)];
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------
+
+    private int clusterOf(int x, int y) {
+        return (y / clusterSize) * clustersX + x / clusterSize;
+    }
+
+    private int neighborCluster(int cluster, int side) {
+        int cx = cluster % clustersX + DX[side];
+        int cy = cluster / clustersX + DY[side];
+        if (cx < 0 || cx >= clustersX || cy < 0 || cy >= clustersY) return -1;
+        return cy * clustersX + cx;
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < grid.getWidth() && y >= 0 && y < grid.getHeight();
+    }
+
+    private boolean isWalkable(int x, int y) {
+        Tile tile = grid.getTile(x, y);
+        return tile != null && tile.isWalkable();
+    }
+}
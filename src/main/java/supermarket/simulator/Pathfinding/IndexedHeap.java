@@ -0,0 +1,102 @@
+package supermarket.simulator.Pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int node ids with a position index, so a queued node can be re-keyed
+ * or removed in O(log n). Needed by incremental planners that change keys of queued nodes;
+ * one-shot searches use the cheaper {@link NodeHeap} with lazy deletion instead.
+ */
+class IndexedHeap {
+
+    static final long EMPTY_KEY = Long.MAX_VALUE;
+
+    private int[]  nodes = new int[64];
+    private long[] keys  = new long[64];
+    private int[]  position;        // heap slot per node, -1 when not queued
+    private int    size;
+
+    IndexedHeap(int nodeCount) {
+        position = new int[nodeCount];
+        Arrays.fill(position, -1);
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) position[nodes[i]] = -1;
+        size = 0;
+    }
+
+    boolean isEmpty()            { return size == 0; }
+    boolean contains(int node)   { return position[node] >= 0; }
+    long topKey()                { return size == 0 ? EMPTY_KEY : keys[0]; }
+    int top()                    { return nodes[0]; }
+
+    /** Insert the node, or move it to its new key if it is already queued. */
+    void put(int node, long key) {
+        int i = position[node];
+        if (i < 0) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                keys  = Arrays.copyOf(keys, size * 2);
+            }
+            i = size++;
+            nodes[i] = node;
+            position[node] = i;
+        }
+        boolean up = i == size - 1 || key < keys[i];
+        keys[i] = key;
+        if (up) siftUp(i);
+        else    siftDown(i);
+    }
+
+    void remove(int node) {
+        int i = position[node];
+        if (i < 0) return;
+        position[node] = -1;
+
+        int last = --size;
+        if (i == last) return;
+        int moved = nodes[last];
+        nodes[i] = moved;
+        keys[i]  = keys[last];
+        position[moved] = i;
+        siftUp(i);
+        siftDown(position[moved]);
+    }
+
+    private void siftUp(int i) {
+        int  node = nodes[i];
+        long key  = keys[i];
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (keys[up] <= key) break;
+            move(up, i);
+            i = up;
+        }
+        nodes[i] = node;
+        keys[i]  = key;
+        position[node] = i;
+    }
+
+    private void siftDown(int i) {
+        int  node = nodes[i];
+        long key  = keys[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+            if (keys[child] >= key) break;
+            move(child, i);
+            i = child;
+        }
+        nodes[i] = node;
+        keys[i]  = key;
+        position[node] = i;
+    }
+
+    private void move(int from, int to) {
+        nodes[to] = nodes[from];
+        keys[to]  = keys[from];
+        position[nodes[to]] = to;
+    }
+}
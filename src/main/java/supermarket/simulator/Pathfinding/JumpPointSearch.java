@@ -0,0 +1,254 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+
+import java.util.Arrays;
+
+/**
+ * Jump Point Search for 4-connected grids with uniform step cost.
+ *
+ * Instead of pushing every neighbour, the search jumps in a straight line until it hits a
+ * wall, the goal, or a tile with a forced neighbour, and only that jump point enters the open
+ * set. Horizontal jumps are scanned 64 tiles at a time on a {@link BlockedTileSet}; vertical
+ * jumps stop where a horizontal jump from the current tile would find a jump point.
+ *
+ * Because pruning relies on uniform costs, reservations of other agents are ignored here:
+ * the agent simply waits when its next tile is taken. Not thread-safe; use {@link #local()}.
+ */
+public class JumpPointSearch implements PathPlanner {
+
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final int[] DY = {-1, 0, 1, 0};
+
+    private static final ThreadLocal<JumpPointSearch> LOCAL = ThreadLocal.withInitial(JumpPointSearch::new);
+
+    private BlockedTileSet blocked;
+
+    // Per-node scratch, valid only where stamp[n] == generation
+    private int[] gScore = new int[0];
+    private int[] parent = new int[0];
+    private int[] stamp  = new int[0];
+    private int[] closed = new int[0];
+    private int generation;
+    private final NodeHeap open = new NodeHeap();
+
+    // Current query
+    private int width;
+    private int goalX;
+    private int goalY;
+    private int lastExpanded;
+
+    /** The search engine shared by all agents on the calling thread. */
+    public static JumpPointSearch local() {
+        return LOCAL.get();
+    }
+
+    @Override
+    public boolean findPath(SimulationContext context, int startX, int startY, int goalX, int goalY,
+                            Person agent, GridPath out) {
+        Grid grid = context.getGrid();
+        if (blocked == null || blocked.getGrid() != grid) blocked = new BlockedTileSet(grid);
+        blocked.refresh();
+
+        this.width   = grid.getWidth();
+        this.goalX   = goalX;
+        this.goalY   = goalY;
+        out.clear(width);
+        lastExpanded = 0;
+
+        if (startX < 0 || startX >= width || startY < 0 || startY >= grid.getHeight()) return false;
+        if (blocked.isBlocked(goalX, goalY)) return false;
+
+        int start = startY * width + startX;
+        int goal  = goalY * width + goalX;
+        if (start == goal) return true;
+
+        ensureCapacity(width * grid.getHeight());
+        if (++generation == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            Arrays.fill(closed, 0);
+            generation = 1;
+        }
+        open.clear();
+
+        stamp[start]  = generation;
+        gScore[start] = 0;
+        parent[start] = -1;
+        open.push(start, heuristic(startX, startY), 0);
+
+        while (!open.isEmpty()) {
+            int node = open.pop();
+            if (closed[node] == generation) continue;
+            closed[node] = generation;
+            lastExpanded++;
+
+            if (node == goal) {
+                buildPath(start, goal, out);
+                return true;
+            }
+            expand(node);
+        }
+        return false;
+    }
+
+    @Override
+    public int getLastExpanded() {
+        return lastExpanded;
+    }
+
+    // -------------------------------------------------------------------------
+    // Successors
+    // -------------------------------------------------------------------------
+
+    /** Prune by the direction we arrived from, then jump in each remaining direction. */
+    private void expand(int node) {
+        int x = node % width;
+        int y = node / width;
+
+        int from = parent[node];
+        int px = from < 0 ? x : from % width;
+        int py = from < 0 ? y : from / width;
+        int dx = Integer.signum(x - px);
+        int dy = Integer.signum(y - py);
+
+        for (int d = 0; d < 4; d++) {
+            // Never go back; after a horizontal move keep going or turn, same for vertical
+            if (from >= 0 && DX[d] == -dx && DY[d] == -dy) continue;
+
+            int jump = DX[d] != 0
+                    ? jumpHorizontal(x + DX[d], y, DX[d])
+                    : jumpVertical(x, y + DY[d], DY[d]);
+            if (jump < 0) continue;
+
+            int jx = jump % width;
+            int jy = jump / width;
+            int cost = gScore[node] + (Math.abs(jx - x) + Math.abs(jy - y)) * GridSearch.STEP_COST;
+
+            if (closed[jump] == generation) continue;
+            if (stamp[jump] != generation || cost < gScore[jump]) {
+                stamp[jump]  = generation;
+                gScore[jump] = cost;
+                parent[jump] = node;
+                open.push(jump, cost + heuristic(jx, jy), cost);
+            }
+        }
+    }
+
+    private int jumpHorizontal(int x, int y, int dx) {
+        int jx = dx > 0 ? scanEast(x, y) : scanWest(x, y);
+        return jx < 0 ? -1 : y * width + jx;
+    }
+
+    /** Step vertically until blocked, at the goal, at a forced neighbour, or where a horizontal jump succeeds. */
+    private int jumpVertical(int x, int y, int dy) {
+        while (true) {
+            if (blocked.isBlocked(x, y)) return -1;
+            if (x == goalX && y == goalY) return y * width + x;
+
+            if ((!blocked.isBlocked(x - 1, y) && blocked.isBlocked(x - 1, y - dy))
+                    || (!blocked.isBlocked(x + 1, y) && blocked.isBlocked(x + 1, y - dy))) {
+                return y * width + x;
+            }
+            if (scanEast(x + 1, y) >= 0 || scanWest(x - 1, y) >= 0) return y * width + x;
+
+            y += dy;
+        }
+    }
+
+    /**
+     * First x >= x0 on row y where an eastward jump stops: the goal or a forced neighbour
+     * (open above/below while the tile behind it was blocked). Returns -1 if a wall comes first.
+     */
+    private int scanEast(int x0, int y) {
+        if (x0 < 0) return -1;
+        int goalLimit = (y == goalY && goalX >= x0) ? goalX : Integer.MAX_VALUE;
+
+        int w = x0 >>> 6;
+        long mask = -1L << x0;
+        while (true) {
+            long row  = blocked.word(y, w);
+            long up   = blocked.word(y - 1, w);
+            long down = blocked.word(y + 1, w);
+            // bit i of *Behind = tile i - 1 of that row
+            long upBehind   = (up << 1) | (blocked.word(y - 1, w - 1) >>> 63);
+            long downBehind = (down << 1) | (blocked.word(y + 1, w - 1) >>> 63);
+
+            long stop = (row | (~up & upBehind) | (~down & downBehind)) & mask;
+            int  base = w << 6;
+            if (stop != 0 || goalLimit >>> 6 == w) {
+                int p = stop != 0 ? base + Long.numberOfTrailingZeros(stop) : Integer.MAX_VALUE;
+                if (goalLimit <= p) return goalLimit;
+                return (row & (1L << p)) != 0 ? -1 : p;
+            }
+            w++;
+            mask = -1L;
+        }
+    }
+
+    /** Mirror of {@link #scanEast}: last x <= x0 where a westward jump stops, or -1. */
+    private int scanWest(int x0, int y) {
+        if (x0 < 0) return -1;
+        int goalLimit = (y == goalY && goalX <= x0) ? goalX : Integer.MIN_VALUE;
+
+        int w = x0 >>> 6;
+        long mask = -1L >>> (63 - (x0 & 63));
+        while (w >= 0) {
+            long row  = blocked.word(y, w);
+            long up   = blocked.word(y - 1, w);
+            long down = blocked.word(y + 1, w);
+            // bit i of *Behind = tile i + 1 of that row
+            long upBehind   = (up >>> 1) | (blocked.word(y - 1, w + 1) << 63);
+            long downBehind = (down >>> 1) | (blocked.word(y + 1, w + 1) << 63);
+
+            long stop = (row | (~up & upBehind) | (~down & downBehind)) & mask;
+            int  base = w << 6;
+            if (stop != 0 || (goalLimit >= 0 && goalLimit >>> 6 == w)) {
+                int p = stop != 0 ? base + 63 - Long.numberOfLeadingZeros(stop) : Integer.MIN_VALUE;
+                if (goalLimit >= p) return goalLimit;
+                return (row & (1L << p)) != 0 ? -1 : p;
+            }
+            w--;
+            mask = -1L;
+        }
+        return -1;   // ran off the left edge
+    }
+
+    // -------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------
+
+    private int heuristic(int x, int y) {
+        return (Math.abs(x - goalX) + Math.abs(y - goalY)) * GridSearch.STEP_COST;
+    }
+
+    /** Expand the straight segments between jump points into single steps. */
+    private void buildPath(int start, int goal, GridPath out) {
+        int length = 0;
+        for (int n = goal; n != start; n = parent[n]) {
+            int p = parent[n];
+            length += Math.abs(n % width - p % width) + Math.abs(n / width - p / width);
+        }
+
+        out.resize(length);
+        int i = length - 1;
+        for (int n = goal; n != start; n = parent[n]) {
+            int p    = parent[n];
+            int step = Math.abs(n % width - p % width) > 0 ? Integer.signum(n % width - p % width)
+                                                           : Integer.signum(n / width - p / width) * width;
+            for (int cur = n; cur != p; cur -= step) {
+                out.set(i--, cur);
+            }
+        }
+    }
+
+    private void ensureCapacity(int nodeCount) {
+        if (gScore.length >= nodeCount) return;
+        gScore     = new int[nodeCount];
+        parent     = new int[nodeCount];
+        stamp      = new int[nodeCount];
+        closed     = new int[nodeCount];
+        generation = 0;
+    }
+}
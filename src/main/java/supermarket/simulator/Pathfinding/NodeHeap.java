@@ -0,0 +1,57 @@
+package supermarket.simulator.Pathfinding;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int node ids ordered by f, deeper g first on ties.
+ * Entries are never updated in place: callers push again on improvement and skip stale
+ * entries on pop (closed-set check). The arrays only grow, so steady-state use allocates nothing.
+ */
+class NodeHeap {
+
+    private int[]  nodes = new int[64];
+    private long[] keys  = new long[64];
+    private int    size;
+
+    void clear()       { size = 0; }
+    boolean isEmpty()  { return size == 0; }
+
+    void push(int node, int f, int g) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            keys  = Arrays.copyOf(keys, size * 2);
+        }
+        long key = ((long) f << 32) | (Integer.MAX_VALUE - g);
+
+        int i = size++;
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (keys[up] <= key) break;
+            nodes[i] = nodes[up];
+            keys[i]  = keys[up];
+            i = up;
+        }
+        nodes[i] = node;
+        keys[i]  = key;
+    }
+
+    int pop() {
+        int  top      = nodes[0];
+        int  lastNode = nodes[--size];
+        long lastKey  = keys[size];
+
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+            if (keys[child] >= lastKey) break;
+            nodes[i] = nodes[child];
+            keys[i]  = keys[child];
+            i = child;
+        }
+        nodes[i] = lastNode;
+        keys[i]  = lastKey;
+        return top;
+    }
+}
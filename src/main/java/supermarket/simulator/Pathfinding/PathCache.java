@@ -0,0 +1,198 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of planned routes keyed by (strategy, start, goal) for one grid layout version,
+ * one per simulation (SimulationContext).
+ *
+ * When the grid's version changes every entry is dropped at once, so a cached route is never
+ * used on a layout it was not planned for. Entries are evicted least-recently-used once the
+ * estimated memory use exceeds the budget. Replans on an unchanged layout become hits.
+ */
+public class PathCache {
+
+    public static final long DEFAULT_BUDGET_BYTES = 4L * 1024 * 1024;
+
+    private static final int ENTRY_OVERHEAD_BYTES = 96;   // map node, key, array header
+
+    private final Map<Long, int[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long budgetBytes;
+    private long usedBytes;
+
+    private Grid grid;
+    private int version;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    public PathCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Copy the cached route into {@code out}, or plan it with the strategy and remember it.
+     * Unreachable goals and cooperative (time-dependent) routes are not cached.
+     * Planning happens outside the lock, so concurrent misses for different routes run in parallel.
+     */
+    public boolean findPath(PathStrategy strategy, SimulationContext context, int startX, int startY,
+                            int goalX, int goalY, Person agent, GridPath out) {
+        PathPlanner planner = strategy.planner(context);
+        if (strategy == PathStrategy.COOPERATIVE) {
+            return planner.findPath(context, startX, startY, goalX, goalY, agent, out);
+        }
+
+        Grid grid = context.getGrid();
+        int width = grid.getWidth();
+        Long key  = key(strategy, grid, startY * width + startX, goalY * width + goalX);
+        int plannedVersion;
+
+        synchronized (this) {
+            validate(grid);
+            int[] cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                out.load(cached, cached.length, width);
+                return true;
+            }
+            misses++;
+            plannedVersion = version;
+        }
+
+        if (!planner.findPath(context, startX, startY, goalX, goalY, agent, out)) {
+            return false;
+        }
+
+        int[] nodes = out.toArray();
+        synchronized (this) {
+            // Only remember it if the layout did not change while planning
+            if (this.grid != grid || version != plannedVersion || grid.getVersion() != plannedVersion
+                    || entries.containsKey(key)) return true;
+            entries.put(key, nodes);
+            usedBytes += sizeOf(nodes);
+            evictToBudget();
+        }
+        return true;
+    }
+
+    /** Drop every entry (also happens automatically on a layout change). */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evictToBudget();
+    }
+
+    public synchronized long getHits()          { return hits; }
+    public synchronized long getMisses()        { return misses; }
+    public synchronized long getEvictions()     { return evictions; }
+    public synchronized long getInvalidations() { return invalidations; }
+    public synchronized int getEntryCount()     { return entries.size(); }
+    public synchronized long getUsedBytes()     { return usedBytes; }
+
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : hits / (double) lookups;
+    }
+
+    /**
+     * Entries from least to most recently used, so a restored cache evicts in the same order.
+     * A cache that is out of date for {@code grid} is written empty.
+     */
+    public synchronized void writeState(SnapshotWriter out, Grid grid) throws IOException {
+        out.writeVarLong(hits);
+        out.writeVarLong(misses);
+        boolean current = this.grid == grid && version == grid.getVersion();
+        out.writeVarInt(current ? entries.size() : 0);
+        if (!current) return;
+
+        for (Map.Entry<Long, int[]> entry : entries.entrySet()) {
+            out.writeVarLong(entry.getKey());
+            int[] nodes = entry.getValue();
+            out.writeVarInt(nodes.length);
+            int previous = 0;
+            for (int node : nodes) {
+                out.writeSignedVarInt(node - previous);
+                previous = node;
+            }
+        }
+    }
+
+    /** Counterpart of {@link #writeState}; {@code grid} must already have the stored layout. */
+    public synchronized void readState(SnapshotReader in, Grid grid) throws IOException {
+        clear();
+        this.grid    = grid;
+        this.version = grid.getVersion();
+        hits   = in.readVarLong();
+        misses = in.readVarLong();
+
+        for (int i = in.readCount(); i > 0; i--) {
+            long key    = in.readVarLong();
+            int[] nodes = new int[in.readCount()];
+            int node = 0;
+            for (int j = 0; j < nodes.length; j++) {
+                node += in.readSignedVarInt();
+                nodes[j] = node;
+            }
+            entries.put(key, nodes);
+            usedBytes += sizeOf(nodes);
+        }
+        evictToBudget();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("PathCache[%d entries, %d KB, hits=%d, misses=%d, hitRate=%.1f%%, evicted=%d]",
+                entries.size(), usedBytes / 1024, hits, misses, getHitRate() * 100, evictions);
+    }
+
+    // -------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------
+
+    /** Forget everything when another grid or another layout version shows up. */
+    private void validate(Grid grid) {
+        if (this.grid == grid && this.version == grid.getVersion()) return;
+        if (!entries.isEmpty()) invalidations++;
+        clear();
+        this.grid    = grid;
+        this.version = grid.getVersion();
+    }
+
+    private void evictToBudget() {
+        Iterator<int[]> eldest = entries.values().iterator();
+        while (usedBytes > budgetBytes && eldest.hasNext()) {
+            usedBytes -= sizeOf(eldest.next());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * (strategy, start, goal) as one number: mixed radix over the node count, so every strategy
+     * has its own key range however many strategies there are. Exact while strategies x nodes^2
+     * fits a long: with five strategies up to 1.3 billion tiles, far past any grid of Tile objects.
+     */
+    private static Long key(PathStrategy strategy, Grid grid, int start, int goal) {
+        long nodes = (long) grid.getWidth() * grid.getHeight();
+        return (strategy.ordinal() * nodes + start) * nodes + goal;
+    }
+
+    private static long sizeOf(int[] nodes) {
+        return ENTRY_OVERHEAD_BYTES + 4L * nodes.length;
+    }
+}
@@ -0,0 +1,25 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+
+/**
+ * A strategy that plans a 4-connected route on the tile grid.
+ * Implementations write into a caller-owned {@link GridPath} so planning allocates nothing.
+ */
+public interface PathPlanner {
+
+    /**
+     * Plan from start to goal and write the steps into {@code out}. Planners may return a
+     * partial route (a prefix that leads towards the goal); callers replan when it runs out.
+     *
+     * @param context the simulation to plan in: its grid and reservations
+     * @param agent   the planning agent (its own reservations are ignored), may be null
+     * @return true if the goal is reachable; {@code out} is then filled (empty when start == goal)
+     */
+    boolean findPath(SimulationContext context, int startX, int startY, int goalX, int goalY,
+                     Person agent, GridPath out);
+
+    /** Number of nodes expanded by the last call on this planner (benchmarks, debugging). */
+    int getLastExpanded();
+}
@@ -0,0 +1,218 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.SimulationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Batches the path requests of one simulation tick and solves them off the JavaFX thread.
+ * One service per simulation; several services may share one pool.
+ *
+ * Agents {@link #submit} during the tick. Requests with the same (strategy, start, goal) share
+ * one solve. {@link #dispatch()} at the end of the tick hands the batch to a work-stealing
+ * pool, and {@link #applyResults()} at the start of the next tick waits for it and calls the
+ * listeners in submission order. Solves only read the layout and the reservations, which do
+ * not change between the two calls, and are planned agent-neutral, so the outcome does not
+ * depend on the number of threads.
+ *
+ * Only {@link PathStrategy#isShareable() shareable} strategies can be batched.
+ * All public methods except the worker side are meant for the simulation thread.
+ */
+public class PathRequestService {
+
+    /** Receives a finished request; {@code path} is only valid during the call. */
+    public interface Listener {
+        void pathPlanned(boolean found, GridPath path);
+    }
+
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private final SimulationContext context;
+    private final ForkJoinPool pool;
+
+    // Requests of the tick being simulated, in submission order
+    private final List<Listener> pendingListeners = new ArrayList<>();
+    private final List<Job> pendingJobs           = new ArrayList<>();   // job per request (shared when duplicate)
+    private final Map<Long, Job> jobsByKey        = new HashMap<>();
+    private final List<Job> uniqueJobs            = new ArrayList<>();
+
+    // Batch being solved by the pool
+    private final List<Listener> flightListeners = new ArrayList<>();
+    private final List<Job> flightJobs           = new ArrayList<>();
+    private final List<Job> flightUnique         = new ArrayList<>();
+    private final List<Job> freeJobs             = new ArrayList<>();
+
+    // Statistics
+    private final long[] latencies = new long[LATENCY_SAMPLES];   // nanos from submit to solved
+    private long latencyCount;
+    private long submitted;
+    private long solved;
+    private long deduplicated;
+    private int lastBatchSize;
+
+    public PathRequestService(SimulationContext context, ForkJoinPool pool) {
+        this.context = context;
+        this.pool    = pool;
+    }
+
+    /**
+     * Queue a request for this tick. The listener is called from {@link #applyResults()}.
+     *
+     * @param cached false to bypass the shared path cache (e.g. to route around a blocking agent);
+     *               a duplicate that asks for a fresh route makes the shared solve fresh
+     */
+    public void submit(PathStrategy strategy, int startX, int startY, int goalX, int goalY,
+                       boolean cached, Listener listener) {
+        if (!strategy.isShareable()) {
+            throw new IllegalArgumentException(strategy + " routes cannot be shared between agents");
+        }
+        int width = context.getGrid().getWidth();
+        long key  = ((long) strategy.ordinal() << 62) | ((long) (startY * width + startX) << 31) | (goalY * width + goalX);
+
+        Job job = jobsByKey.get(key);
+        if (job == null) {
+            job = obtainJob();
+            job.init(strategy, startX, startY, goalX, goalY);
+            jobsByKey.put(key, job);
+            uniqueJobs.add(job);
+        } else {
+            deduplicated++;
+        }
+        job.cached &= cached;
+
+        pendingJobs.add(job);
+        pendingListeners.add(listener);
+        submitted++;
+    }
+
+    /** Start solving the requests of this tick. Call once at the end of the tick. */
+    public void dispatch() {
+        applyResults();   // never more than one batch in flight
+        if (pendingJobs.isEmpty()) return;
+
+        lastBatchSize = uniqueJobs.size();
+        for (Job job : uniqueJobs) {
+            job.task = pool.submit(job);
+        }
+
+        flightListeners.addAll(pendingListeners);
+        flightJobs.addAll(pendingJobs);
+        flightUnique.addAll(uniqueJobs);
+        pendingListeners.clear();
+        pendingJobs.clear();
+        uniqueJobs.clear();
+        jobsByKey.clear();
+    }
+
+    /** Wait for the dispatched batch and deliver its results in submission order. */
+    public void applyResults() {
+        if (flightJobs.isEmpty()) return;
+
+        for (Job job : flightUnique) {
+            job.task.join();
+            recordLatency(job.solvedNanos - job.submitNanos);
+            solved++;
+        }
+        for (int i = 0; i < flightJobs.size(); i++) {
+            Job job = flightJobs.get(i);
+            flightListeners.get(i).pathPlanned(job.found, job.path);
+        }
+
+        for (Job job : flightUnique) {
+            job.task = null;
+            freeJobs.add(job);
+        }
+        flightListeners.clear();
+        flightJobs.clear();
+        flightUnique.clear();
+    }
+
+    // -------------------------------------------------------------------------
+    // Statistics
+    // -------------------------------------------------------------------------
+
+    /** Requests waiting for the next dispatch plus requests being solved. */
+    public int getQueueDepth()     { return pendingJobs.size() + flightJobs.size(); }
+    public int getLastBatchSize()  { return lastBatchSize; }
+    public long getSubmitted()     { return submitted; }
+    public long getSolved()        { return solved; }
+    public long getDeduplicated()  { return deduplicated; }
+    public int getParallelism()    { return pool.getParallelism(); }
+
+    /** Solve latency (submit to solved) in microseconds at percentile p in [0, 100], over the last samples. */
+    public double getLatencyPercentile(double p) {
+        int n = (int) Math.min(latencyCount, LATENCY_SAMPLES);
+        if (n == 0) return 0.0;
+        long[] sorted = Arrays.copyOf(latencies, n);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(p / 100.0 * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, index))] / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PathRequestService[threads=%d, queue=%d, batch=%d, p50=%.0fus, p95=%.0fus, p99=%.0fus, deduplicated=%d]",
+                getParallelism(), getQueueDepth(), lastBatchSize,
+                getLatencyPercentile(50), getLatencyPercentile(95), getLatencyPercentile(99),
+                deduplicated);
+    }
+
+    // -------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------
+
+    private void recordLatency(long nanos) {
+        latencies[(int) (latencyCount++ % LATENCY_SAMPLES)] = nanos;
+    }
+
+    private Job obtainJob() {
+        return freeJobs.isEmpty() ? new Job(context) : freeJobs.remove(freeJobs.size() - 1);
+    }
+
+    /** One unique (strategy, start, goal) solve; reused across ticks. */
+    private static final class Job implements Runnable {
+
+        private final SimulationContext context;
+        private final GridPath path = new GridPath();
+        private PathStrategy strategy;
+        private int startX;
+        private int startY;
+        private int goalX;
+        private int goalY;
+        private boolean cached;
+        private boolean found;
+        private long submitNanos;
+        private long solvedNanos;
+        private ForkJoinTask<?> task;
+
+        Job(SimulationContext context) {
+            this.context = context;
+        }
+
+        void init(PathStrategy strategy, int startX, int startY, int goalX, int goalY) {
+            this.strategy    = strategy;
+            this.startX      = startX;
+            this.startY      = startY;
+            this.goalX       = goalX;
+            this.goalY       = goalY;
+            this.cached      = true;
+            this.found       = false;
+            this.submitNanos = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            // Agent-neutral: the result must not depend on which duplicate asked first
+            found = cached
+                    ? context.getPathCache().findPath(strategy, context, startX, startY, goalX, goalY, null, path)
+                    : strategy.planner(context).findPath(context, startX, startY, goalX, goalY, null, path);
+            solvedNanos = System.nanoTime();
+        }
+    }
+}
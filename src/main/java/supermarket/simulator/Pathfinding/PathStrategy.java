@@ -0,0 +1,65 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.SimulationContext;
+
+/** Selectable path planning strategies for agents that do not follow a flow field. */
+public enum PathStrategy {
+
+    /** Plain A* over every tile; best for the small stock layout. */
+    ASTAR {
+        @Override
+        public PathPlanner planner(SimulationContext context) {
+            return GridSearch.local();
+        }
+    },
+
+    /** Jump Point Search: same routes as A* on open floors with far fewer expansions. Ignores reservations. */
+    JUMP_POINT {
+        @Override
+        public PathPlanner planner(SimulationContext context) {
+            return JumpPointSearch.local();
+        }
+    },
+
+    /** HPA*: search over cluster entrances, refine only the first segments. For huge floors. */
+    HIERARCHICAL {
+        @Override
+        public PathPlanner planner(SimulationContext context) {
+            return context.getHierarchicalPathfinder();
+        }
+    },
+
+    /**
+     * D* Lite per person ({@link DStarLite}), repaired from reservation changes instead of a
+     * replan timer. Persons keep their own planner; this shared one serves one-off queries.
+     */
+    INCREMENTAL {
+        @Override
+        public PathPlanner planner(SimulationContext context) {
+            return GridSearch.local();
+        }
+    },
+
+    /**
+     * Windowed cooperative A* on the {@link SpaceTimeReservationTable}: routes are reserved per
+     * tick, so later planners wait or detour instead of colliding. Routes depend on the clock
+     * and are never cached.
+     */
+    COOPERATIVE {
+        @Override
+        public PathPlanner planner(SimulationContext context) {
+            return CooperativeSearch.local();
+        }
+    };
+
+    /** The planner to use in this simulation from the calling thread. */
+    public abstract PathPlanner planner(SimulationContext context);
+
+    /**
+     * True when a route depends only on the layout and the current reservations, not on
+     * per-agent planner state or the clock, so identical requests can be solved once.
+     */
+    public boolean isShareable() {
+        return this != INCREMENTAL && this != COOPERATIVE;
+    }
+}
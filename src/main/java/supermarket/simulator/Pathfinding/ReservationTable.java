@@ -0,0 +1,29 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.Person;
+
+/**
+ * Which agent holds which tile. Agents reserve their next tile before moving onto it, so two
+ * agents never stand on the same tile.
+ *
+ * {@link TileReservationSystem} is the single-threaded implementation (with a change log for
+ * incremental planners); {@link ConcurrentReservationTable} may be shared by agents that are
+ * updated on different threads.
+ */
+public interface ReservationTable {
+
+    /**
+     * Attempt to reserve a tile for an agent.
+     * @return true if the agent now holds the tile, false if another agent holds it
+     */
+    boolean reserve(int x, int y, Person agent);
+
+    /** Release all tiles reserved by this agent. */
+    void release(Person agent);
+
+    /**
+     * Check if a tile is free (not reserved by another agent).
+     * A null agent gets the view of a bystander: only unheld tiles are free.
+     */
+    boolean isFree(int x, int y, Person agent);
+}
@@ -0,0 +1,165 @@
+package supermarket.simulator.Pathfinding;
+
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Time-indexed reservation table for cooperative planning: which agent holds tile (x, y)
+ * during simulation tick t, for the next {@code window} ticks.
+ *
+ * Storage is a ring of {@code int[]} layers, one per tick and indexed by node, holding the
+ * agent id (0 = free). Advancing the clock recycles the layer of the tick that just passed as
+ * the new farthest tick, so nothing is allocated while the simulation runs.
+ * Reservations outside [now, now + window) are silently ignored.
+ *
+ * Stops, tiles where agents wait their turn such as the exit, are held for good for whoever is
+ * headed there. They come from the layout, so they are not part of the snapshot.
+ */
+public class SpaceTimeReservationTable {
+
+    public static final int DEFAULT_WINDOW_TICKS = 64;
+
+    private final int window;
+    private final int[][] layers;   // layers[t % window][node]
+    private final boolean[] stops;
+    private long now;
+
+    public SpaceTimeReservationTable(Grid grid, int window) {
+        this.window = window;
+        this.layers = new int[window][grid.getWidth() * grid.getHeight()];
+        this.stops  = new boolean[grid.getWidth() * grid.getHeight()];
+    }
+
+    /** Move the clock one tick forward. Called once per simulation tick, before agents update. */
+    public void advance() {
+        now++;
+        Arrays.fill(layers[slot(now + window - 1)], 0);
+    }
+
+    /** Move the clock {@code ticks} forward at once, e.g. when the kernel skips idle time. */
+    public void advance(long ticks) {
+        if (ticks < window) {
+            for (long i = 0; i < ticks; i++) advance();
+            return;
+        }
+        now += ticks;
+        for (int[] layer : layers) Arrays.fill(layer, 0);   // the whole window lies in the future
+    }
+
+    public long getTick()   { return now; }
+    public int getWindow()  { return window; }
+
+    /** Mark a tile where agents stop and wait: only those headed there may plan onto it. */
+    public void addStop(int node)   { stops[node] = true; }
+    public boolean isStop(int node) { return stops[node]; }
+
+    /** Agent id holding the node at that tick, 0 when free or outside the window. */
+    public int ownerAt(int node, long tick) {
+        if (!inWindow(tick)) return 0;
+        return layers[slot(tick)][node];
+    }
+
+    /** True if no other agent holds the node during any tick in [from, to). */
+    public boolean isFree(int node, long from, long to, int agentId) {
+        for (long t = Math.max(from, now); t < to && inWindow(t); t++) {
+            int owner = layers[slot(t)][node];
+            if (owner != 0 && owner != agentId) return false;
+        }
+        return true;
+    }
+
+    // -------------------------------------------------------------------------
+    // Paths
+    // -------------------------------------------------------------------------
+
+    /**
+     * Reserve a planned path that starts at {@code startTick}: node i of the path is held
+     * during [startTick + i * stepTicks, startTick + (i + 1) * stepTicks). If the path ends
+     * inside the window the last tile stays held until the window ends. Cells already held by
+     * another agent are left alone.
+     */
+    public void reservePath(int agentId, GridPath path, long startTick, int stepTicks) {
+        mark(agentId, agentId, path, startTick, stepTicks);
+    }
+
+    /** Undo {@link #reservePath} with the same arguments; only this agent's cells are cleared. */
+    public void releasePath(int agentId, GridPath path, long startTick, int stepTicks) {
+        mark(agentId, 0, path, startTick, stepTicks);
+    }
+
+    private void mark(int agentId, int value, GridPath path, long startTick, int stepTicks) {
+        if (path.isEmpty()) return;
+        long end = now + window;
+
+        long from = startTick;
+        for (int i = 0; i < path.size() && from < end; i++, from += stepTicks) {
+            boolean last = i == path.size() - 1;
+            set(path.getNode(i), from, last ? end : from + stepTicks, agentId, value);
+        }
+    }
+
+    private void set(int node, long from, long to, int agentId, int value) {
+        for (long t = Math.max(from, now); t < to && inWindow(t); t++) {
+            int[] layer = layers[slot(t)];
+            int owner = layer[node];
+            if (owner == 0 || owner == agentId) layer[node] = value;
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Snapshot
+    // -------------------------------------------------------------------------
+
+    /** The clock and, per tick of the window, the held cells as (node, agent id) pairs. */
+    public void writeState(SnapshotWriter out) throws IOException {
+        out.writeVarLong(now);
+        out.writeVarInt(window);
+        for (long t = now; t < now + window; t++) {
+            int[] layer = layers[slot(t)];
+            int held = 0;
+            for (int owner : layer) if (owner != 0) held++;
+
+            out.writeVarInt(held);
+            int previous = 0;
+            for (int node = 0; node < layer.length; node++) {
+                if (layer[node] == 0) continue;
+                out.writeVarInt(node - previous);
+                out.writeVarInt(layer[node]);
+                previous = node;
+            }
+        }
+    }
+
+    public void readState(SnapshotReader in) throws IOException {
+        now = in.readVarLong();
+        int stored = in.readVarInt();
+        if (stored != window) throw new IOException("Snapshot window is " + stored + " ticks, this table has " + window);
+        for (int[] layer : layers) Arrays.fill(layer, 0);
+
+        for (long t = now; t < now + window; t++) {
+            int[] layer = layers[slot(t)];
+            int node = 0;
+            for (int i = in.readCount(); i > 0; i--) {
+                node += in.readVarInt();
+                if (node >= layer.length) throw new IOException("Corrupt snapshot: space-time cell " + node);
+                layer[node] = in.readVarInt();
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------
+
+    private boolean inWindow(long tick) {
+        return tick >= now && tick < now + window;
+    }
+
+    private int slot(long tick) {
+        return (int) (tick % window);
+    }
+}
@@ -1,56 +1,178 @@
 package supermarket.simulator.Pathfinding;
 
 import supermarket.simulator.model.Person;
-import java.util.HashMap;
-import java.util.Map;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.IntFunction;
 
 /**
  * Manages tile reservations to prevent multiple agents on the same tile.
  * Agents reserve their next tile before moving to it.
+ *
+ * One instance per simulation, owned by the SimulationContext. Owners are kept in a flat
+ * array indexed by {@code y * width + x} (agent id, 0 = free). The tiles of one agent form a
+ * linked list threaded through a second node array, so reserve, isFree and release are O(1)
+ * per held tile and allocate nothing. The list heads are per agent index
+ * ({@link Person#getAgentIndex()}), not per id, so they stay as many as persons present at once
+ * however many have come and gone. A person must release its tiles before it leaves the store.
+ * Tiles outside the grid are never held: they read as free and reserving them is a no-op.
+ *
+ * Every change of a tile's owner is appended to a bounded change log, so incremental
+ * planners can pull the changes since they last looked instead of replanning on a timer.
+ * Not thread-safe; see {@link ConcurrentReservationTable} for agents updated in parallel.
  */
-public class TileReservationSystem {
+public class TileReservationSystem implements ReservationTable {
 
-    private static final TileReservationSystem INSTANCE = new TileReservationSystem();
+    private final int width;
+    private final int height;
 
-    // Maps tile key "x,y" -> agent that reserved it
-    private final Map<String, Person> reservations = new HashMap<>();
+    private final int[] owner;              // per node: agent id, 0 = free
+    private final int[] nextHeld;           // per node: next node held by the same agent, -1 = end
+    private int[] firstHeld = new int[0];   // per agent index: first held node, -1 = none
 
-    private TileReservationSystem() {}
+    // Ring buffer of tiles whose owner changed; entry i lives at i % CHANGE_LOG_CAPACITY
+    public static final int CHANGE_LOG_CAPACITY = 4096;
+    private final int[] changedX = new int[CHANGE_LOG_CAPACITY];
+    private final int[] changedY = new int[CHANGE_LOG_CAPACITY];
+    private long changeCount;
 
-    public static TileReservationSystem getInstance() {
-        return INSTANCE;
+    public TileReservationSystem(Grid grid) {
+        this.width    = grid.getWidth();
+        this.height   = grid.getHeight();
+        this.owner    = new int[width * height];
+        this.nextHeld = new int[width * height];
+        Arrays.fill(nextHeld, -1);
     }
 
-    /**
-     * Attempt to reserve a tile for an agent.
-     * @return true if reservation succeeded, false if tile already reserved by another agent
-     */
+    @Override
     public boolean reserve(int x, int y, Person agent) {
-        String key = key(x, y);
-        Person current = reservations.get(key);
-        if (current == null || current == agent) {
-            reservations.put(key, agent);
-            return true;
-        }
-        return false;
+        if (!inBounds(x, y)) return true;
+        int node = y * width + x;
+        int id   = agent.getAgentId();
+
+        int current = owner[node];
+        if (current == id) return true;
+        if (current != 0) return false;
+
+        hold(node, id, agent.getAgentIndex());
+        logChange(x, y);
+        return true;
     }
 
-    /**
-     * Release all tiles reserved by this agent.
-     */
+    @Override
     public void release(Person agent) {
-        reservations.values().removeIf(owner -> owner == agent);
+        int index = agent.getAgentIndex();
+        if (index < 0 || index >= firstHeld.length) return;
+
+        int node = firstHeld[index];
+        while (node >= 0) {
+            int next = nextHeld[node];
+            owner[node]    = 0;
+            nextHeld[node] = -1;
+            logChange(node % width, node / width);
+            node = next;
+        }
+        firstHeld[index] = -1;
+    }
+
+    @Override
+    public boolean isFree(int x, int y, Person agent) {
+        if (!inBounds(x, y)) return true;
+        int current = owner[y * width + x];
+        return current == 0 || (agent != null && current == agent.getAgentId());
+    }
+
+    // -------------------------------------------------------------------------
+    // Change log
+    // -------------------------------------------------------------------------
+
+    /** Total number of changes logged so far; the next change gets this index. */
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    /** False when change {@code index} has already been overwritten (reader fell too far behind). */
+    public boolean isChangeAvailable(long index) {
+        return index >= changeCount - CHANGE_LOG_CAPACITY && index < changeCount;
+    }
+
+    public int getChangedX(long index) { return changedX[(int) (index % CHANGE_LOG_CAPACITY)]; }
+    public int getChangedY(long index) { return changedY[(int) (index % CHANGE_LOG_CAPACITY)]; }
+
+    private void logChange(int x, int y) {
+        int slot = (int) (changeCount % CHANGE_LOG_CAPACITY);
+        changedX[slot] = x;
+        changedY[slot] = y;
+        changeCount++;
+    }
+
+    // -------------------------------------------------------------------------
+    // Snapshot
+    // -------------------------------------------------------------------------
+
+    /** Held tiles as (node, agent id) pairs in node order, plus the change counter. */
+    public void writeState(SnapshotWriter out) throws IOException {
+        int held = 0;
+        for (int id : owner) if (id != 0) held++;
+
+        out.writeVarLong(changeCount);
+        out.writeVarInt(held);
+        int previous = 0;
+        for (int node = 0; node < owner.length; node++) {
+            if (owner[node] == 0) continue;
+            out.writeVarInt(node - previous);
+            out.writeVarInt(owner[node]);
+            previous = node;
+        }
     }
 
     /**
-     * Check if a tile is free (not reserved by another agent).
+     * Replace every reservation with the ones written by {@link #writeState}, for the persons
+     * {@code byAgentId} finds (restored before this). The change log restarts empty at the
+     * stored count: incremental planners made after this see no history.
      */
-    public boolean isFree(int x, int y, Person agent) {
-        Person current = reservations.get(key(x, y));
-        return current == null || current == agent;
+    public void readState(SnapshotReader in, IntFunction<? extends Person> byAgentId) throws IOException {
+        Arrays.fill(owner, 0);
+        Arrays.fill(nextHeld, -1);
+        Arrays.fill(firstHeld, -1);
+
+        changeCount = in.readVarLong();
+        int node = 0;
+        for (int i = in.readCount(); i > 0; i--) {
+            node += in.readVarInt();
+            int id = in.readVarInt();
+            Person agent = id != 0 ? byAgentId.apply(id) : null;
+            if (node >= owner.length || agent == null || agent.getAgentIndex() < 0) {
+                throw new IOException("Corrupt snapshot: reservation " + node + " by agent " + id);
+            }
+            hold(node, id, agent.getAgentIndex());
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Helpers
+    // -------------------------------------------------------------------------
+
+    private void hold(int node, int id, int index) {
+        ensureAgent(index);
+        owner[node]      = id;
+        nextHeld[node]   = firstHeld[index];
+        firstHeld[index] = node;
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
     }
 
-    private String key(int x, int y) {
-        return x + "," + y;
+    /** Agent indices are dense, so the per-agent table only grows at the end. */
+    private void ensureAgent(int index) {
+        if (index < firstHeld.length) return;
+        int old = firstHeld.length;
+        firstHeld = Arrays.copyOf(firstHeld, Math.max(index + 1, old * 2 + 16));
+        Arrays.fill(firstHeld, old, firstHeld.length, -1);
     }
-}
\ No newline at end of file
+}
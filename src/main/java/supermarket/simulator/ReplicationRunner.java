@@ -0,0 +1,246 @@
+package supermarket.simulator;
+
+import supermarket.simulator.model.Checkout;
+import supermarket.simulator.model.WaitHistogram;
+import supermarket.simulator.simulation.RunningStatistics;
+import supermarket.simulator.simulation.SimulationKernel;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Monte Carlo runner: the same headless store N times with different random arrivals, spread
+ * over a thread pool, one replication per task. Every replication gets its own seed, drawn
+ * from the base seed, so a run is reproducible whatever the number of threads.
+ *
+ * KPIs of every replication are printed as it finishes and streamed into
+ * {@link RunningStatistics}; the end report gives mean ± 95% confidence interval per KPI,
+ * the wall-clock time per replication and, with --sequential, the measured speedup over running
+ * them one after the other. Run it with --help for the options; a wrong argument prints that
+ * text with the problem instead of a stack trace.
+ *
+ * Usage: ReplicationRunner [replications] [ticks] [scenario] [options]
+ *   replications  default 100
+ *   ticks         default 36000 (one hour) per replication
+ *   scenario      as in {@link HeadlessApp}
+ *   options       --seed N, --threads N (default: all cores), --customers N,
+ *                 --spawn-interval N, --stops N, --random-arrivals, --sequential (also time
+ *                 a one-thread run and check that every replication ends with the same checksum)
+ */
+public class ReplicationRunner {
+
+    private static final String USAGE = """
+            Usage: ReplicationRunner [replications] [ticks] [scenario] [options]
+              replications  default 100
+              ticks         default 36000 (one hour) per replication
+              scenario      stock (the 20x24 store, default) or hypermarket:SIZE, e.g. hypermarket:300
+            Options:
+              --seed N             base seed the replication seeds are drawn from, default 42
+              --threads N          replications at once, default all cores
+              --customers N        max customers inside at once, default 20
+              --spawn-interval N   ticks between arrivals, default 10
+              --stops N            max shelves per customer, default 3
+              --random-arrivals    Poisson arrivals instead of one every interval
+              --sequential         also run them on one thread, report the speedup and check
+                                   that every replication ends with the same checksum
+            """;
+
+    /** KPIs of one replication. */
+    private record Result(int index, long seed, int served, double meanWait, double p95Wait,
+                          long items, long checksum, long wallNanos) {
+        boolean sameOutcome(Result other) {
+            return seed == other.seed && checksum == other.checksum;   // the checksum covers every tick
+        }
+    }
+
+    private final int replications;
+    private final long ticks;
+    private final String scenario;
+    private final int customers;
+    private final int spawnInterval;
+    private final int stops;
+    private final boolean randomArrivals;
+    private final long[] seeds;
+
+    public static void main(String[] args) throws InterruptedException {
+        int replications       = 100;
+        long ticks             = 36_000;
+        String scenario        = "stock";
+        long seed              = 42L;
+        int threads            = Runtime.getRuntime().availableProcessors();
+        int customers          = 20;
+        int spawnInterval      = 10;
+        int stops              = 3;
+        boolean randomArrivals = false;
+        boolean sequential     = false;
+        try {
+            if (args.length > 0 && (args[0].equals("--help") || args[0].equals("-h"))) {
+                System.out.print(USAGE);
+                return;
+            }
+            if (args.length > 0) replications = atLeastOne(HeadlessApp.count(args[0], "replications"), "replications");
+            if (args.length > 1) ticks        = HeadlessApp.number(args[1], "ticks");
+            if (args.length > 2) scenario     = args[2];
+            HeadlessApp.hypermarketSize(scenario);   // a wrong one fails here, not in every task
+
+            for (int i = 3; i < args.length; i++) {
+                String option = args[i];
+                switch (option) {
+                    case "--seed"            -> seed           = HeadlessApp.number(HeadlessApp.value(args, ++i, option), option);
+                    case "--threads"         -> threads        = atLeastOne(HeadlessApp.count(HeadlessApp.value(args, ++i, option), option), option);
+                    case "--customers"       -> customers      = HeadlessApp.count(HeadlessApp.value(args, ++i, option), option);
+                    case "--spawn-interval"  -> spawnInterval  = HeadlessApp.count(HeadlessApp.value(args, ++i, option), option);
+                    case "--stops"           -> stops          = HeadlessApp.count(HeadlessApp.value(args, ++i, option), option);
+                    case "--random-arrivals" -> randomArrivals = true;
+                    case "--sequential"      -> sequential     = true;
+                    default -> throw new IllegalArgumentException("unknown option " + option);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("ReplicationRunner: " + e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+        }
+
+        ReplicationRunner runner = new ReplicationRunner(replications, ticks, scenario, seed,
+                customers, spawnInterval, stops, randomArrivals);
+        System.out.printf("%d replications of %d ticks, scenario %s, base seed %d, %d thread(s), %d core(s)%n",
+                replications, ticks, scenario, seed, threads, Runtime.getRuntime().availableProcessors());
+
+        Summary summary = new Summary();
+        long start = System.nanoTime();
+        Result[] parallel = runner.runAll(threads, summary);
+        long parallelNanos = System.nanoTime() - start;
+        summary.print(parallelNanos);
+
+        if (sequential) {
+            start = System.nanoTime();
+            Result[] single = runner.runAll(1, null);
+            long sequentialNanos = System.nanoTime() - start;
+
+            boolean same = true;
+            for (int i = 0; i < replications; i++) same &= parallel[i].sameOutcome(single[i]);
+            System.out.printf("sequential %.1f s -> measured speedup %.2fx, KPIs %s%n",
+                    sequentialNanos / 1e9, sequentialNanos / (double) parallelNanos,
+                    same ? "identical" : "DIFFERENT");
+            if (!same) System.exit(1);
+        }
+    }
+
+    private static int atLeastOne(int value, String what) {
+        if (value < 1) throw new IllegalArgumentException(what + " must be at least 1, not " + value);
+        return value;
+    }
+
+    private ReplicationRunner(int replications, long ticks, String scenario, long baseSeed,
+                              int customers, int spawnInterval, int stops, boolean randomArrivals) {
+        this.replications   = replications;
+        this.ticks          = ticks;
+        this.scenario       = scenario;
+        this.customers      = customers;
+        this.spawnInterval  = spawnInterval;
+        this.stops          = stops;
+        this.randomArrivals = randomArrivals;
+
+        SplittableRandom seeder = new SplittableRandom(baseSeed);
+        this.seeds = new long[replications];
+        for (int i = 0; i < replications; i++) seeds[i] = seeder.nextLong();
+    }
+
+    // -------------------------------------------------------------------------
+    // Running
+    // -------------------------------------------------------------------------
+
+    /**
+     * All replications on {@code threads} threads; results indexed by replication. Each result
+     * is printed and added to {@code summary} as soon as it is in, unless summary is null.
+     */
+    private Result[] runAll(int threads, Summary summary) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ExecutorCompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+        for (int i = 0; i < replications; i++) {
+            int index = i;
+            completion.submit(() -> replicate(index));
+        }
+
+        if (summary != null) {
+            System.out.printf("%6s %20s %8s %10s %10s %8s %9s%n",
+                    "run", "seed", "served", "mean wait", "p95 wait", "items", "wall ms");
+        }
+        Result[] results = new Result[replications];
+        try {
+            for (int done = 0; done < replications; done++) {
+                Result r = completion.take().get();
+                results[r.index()] = r;
+                if (summary != null) {
+                    System.out.printf("%6d %20d %8d %10.1f %10.1f %8d %9.1f%n", r.index(), r.seed(),
+                            r.served(), r.meanWait(), r.p95Wait(), r.items(), r.wallNanos() / 1e6);
+                    summary.add(r);
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replication failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private Result replicate(int index) {
+        long start = System.nanoTime();
+        SimulationKernel kernel = HeadlessApp.createKernel(scenario, seeds[index]);
+        kernel.getContext().setLogging(false);
+        kernel.setSpawning(customers, spawnInterval, stops);
+        kernel.setRandomArrivals(randomArrivals);
+        kernel.run(ticks);
+
+        WaitHistogram waits = new WaitHistogram();
+        long items = 0;
+        for (Checkout checkout : kernel.getCheckouts()) {
+            waits.merge(checkout.getWaits());
+            items += checkout.getItemsProcessed();
+        }
+
+        return new Result(index, seeds[index], kernel.getServedCount(), waits.getMean(), waits.getPercentile(95),
+                items, kernel.getChecksum(), System.nanoTime() - start);
+    }
+
+    // -------------------------------------------------------------------------
+    // Report
+    // -------------------------------------------------------------------------
+
+    /** Online aggregates over the replications finished so far. */
+    private static final class Summary {
+        private final RunningStatistics served   = new RunningStatistics();
+        private final RunningStatistics meanWait = new RunningStatistics();
+        private final RunningStatistics p95Wait  = new RunningStatistics();
+        private final RunningStatistics items    = new RunningStatistics();
+        private final RunningStatistics wallMs   = new RunningStatistics();
+        private long wallSum;
+
+        void add(Result r) {
+            served.add(r.served());
+            meanWait.add(r.meanWait());
+            p95Wait.add(r.p95Wait());
+            items.add(r.items());
+            wallMs.add(r.wallNanos() / 1e6);
+            wallSum += r.wallNanos();
+        }
+
+        void print(long elapsedNanos) {
+            System.out.println();
+            System.out.println("KPI (mean +/- 95% CI)");
+            System.out.println("  served          " + served);
+            System.out.println("  mean wait ticks " + meanWait);
+            System.out.println("  p95 wait ticks  " + p95Wait);
+            System.out.println("  items processed " + items);
+            System.out.println("  wall ms per run " + wallMs);
+            // Summed wall time over elapsed time is concurrency, not speedup: runs slow each other down
+            System.out.printf("total %.1f s wall, %.1f s summed over replications, %.2f in flight on average%n",
+                    elapsedNanos / 1e9, wallSum / 1e9, wallSum / (double) elapsedNanos);
+        }
+    }
+}
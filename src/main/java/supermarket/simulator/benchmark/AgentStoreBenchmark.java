@@ -0,0 +1,219 @@
+package supermarket.simulator.benchmark;
+
+import javafx.scene.paint.Color;
+import supermarket.simulator.model.AgentStore;
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.services.TilesetLoader;
+import supermarket.simulator.simulation.SimulationKernel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The per-tick animation pass over many walking persons, laid out as one object per person
+ * (as {@link Person} used to keep its position and walk animation) and as the parallel arrays
+ * of {@link AgentStore}, with scalar and, when available, Vector API loops. The objects are
+ * visited in shuffled order, like a customer list after some churn and pooling.
+ *
+ * Every layout moves the same persons from the same tiles; a digest over all visual positions
+ * and frames must come out the same for each, otherwise the run exits with status 1. Then a
+ * busy hypermarket runs whole ticks with the vector loops off and on.
+ *
+ * Start with {@code --add-modules jdk.incubator.vector} to include the vector loops.
+ *
+ * Usage: AgentStoreBenchmark [agents] [rounds] [customers] [ticks]   e.g. "100000 200 2000 300"
+ */
+public class AgentStoreBenchmark {
+
+    private static final long SEED = 42L;
+    private static final int SIZE = 512;          // tiles per side the persons are spread over
+    private static final int WARMUP_ROUNDS = 30;
+
+    public static void main(String[] args) {
+        int agents    = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds    = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int customers = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int ticks     = args.length > 3 ? Integer.parseInt(args[3]) : 300;
+
+        System.out.printf("agents=%d rounds=%d (%d ticks each) vector API %s%n", agents, rounds,
+                Person.STEP_TICKS, AgentStore.isVectorAvailable() ? "available" : "not available");
+        System.out.printf("%-22s %10s %10s %18s%n", "layout", "ms", "ns/agent", "digest");
+
+        long expected = runObjects(agents, rounds);
+        boolean identical = runStore(agents, rounds, false) == expected;
+        if (AgentStore.isVectorAvailable()) identical &= runStore(agents, rounds, true) == expected;
+
+        System.out.println(identical ? "OK: identical for every layout" : "FAILED: layouts disagree");
+        if (!identical) System.exit(1);
+
+        System.out.printf("%nwhole ticks, %d customers, %d ticks%n", customers, ticks);
+        runTicks(customers, ticks, false);
+        if (AgentStore.isVectorAvailable()) runTicks(customers, ticks, true);
+    }
+
+    // -------------------------------------------------------------------------
+    // Animation pass
+    // -------------------------------------------------------------------------
+
+    /**
+     * A round starts everyone on a step to the next tile and animates until they arrive; only
+     * the animation is timed.
+     */
+    private static long runObjects(int count, int rounds) {
+        List<ObjectAgent> agents = new ArrayList<>(count);
+        List<int[]> paths = new ArrayList<>(count);   // what a person allocates next to itself
+        for (int i = 0; i < count; i++) {
+            agents.add(new ObjectAgent());
+            paths.add(new int[16]);
+        }
+        Collections.shuffle(agents, new Random(SEED));
+
+        long elapsed = 0;
+        for (int round = -WARMUP_ROUNDS; round < rounds; round++) {
+            Random random = new Random(SEED + Math.max(round, 0));
+            for (ObjectAgent a : agents) a.place(random.nextInt(SIZE - 1), random.nextInt(SIZE));
+            long start = System.nanoTime();
+            for (int t = 0; t < Person.STEP_TICKS; t++) {
+                for (int i = 0, n = agents.size(); i < n; i++) agents.get(i).animate();
+            }
+            if (round >= 0) elapsed += System.nanoTime() - start;
+        }
+
+        long digest = 0;
+        for (ObjectAgent a : agents) {
+            digest = digest * 31 + Double.doubleToLongBits(a.visualX) + Double.doubleToLongBits(a.prevVisualY) + a.animFrame;
+        }
+        return report("objects (shuffled)", elapsed, count, rounds, digest);
+    }
+
+    private static long runStore(int count, int rounds, boolean vectorized) {
+        SimulationContext context = new SimulationContext(new Grid(SIZE, SIZE, 1), SEED);
+        AgentStore store = context.getAgents();
+        store.setVectorized(vectorized);
+        List<Mover> movers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) movers.add(new Mover(context));
+        // The same order as the objects, so both get the same tiles
+        Collections.shuffle(movers, new Random(SEED));
+
+        long elapsed = 0;
+        for (int round = -WARMUP_ROUNDS; round < rounds; round++) {
+            Random random = new Random(SEED + Math.max(round, 0));
+            for (Mover m : movers) m.place(random.nextInt(SIZE - 1), random.nextInt(SIZE));
+            long start = System.nanoTime();
+            for (int t = 0; t < Person.STEP_TICKS; t++) store.animate();
+            if (round >= 0) elapsed += System.nanoTime() - start;
+        }
+
+        long digest = 0;
+        for (Mover m : movers) {
+            digest = digest * 31 + Double.doubleToLongBits(m.getVisualX()) + Double.doubleToLongBits(m.getPrevVisualY()) + m.getAnimFrame();
+        }
+        return report(vectorized ? "store, vector" : "store, scalar", elapsed, count, rounds, digest);
+    }
+
+    private static long report(String layout, long elapsed, int count, int rounds, long digest) {
+        long passes = (long) rounds * Person.STEP_TICKS;
+        System.out.printf("%-22s %10.1f %10.2f %18x%n", layout, elapsed / 1e6, elapsed / (double) passes / count, digest);
+        return digest;
+    }
+
+    // -------------------------------------------------------------------------
+    // Whole ticks
+    // -------------------------------------------------------------------------
+
+    private static void runTicks(int customers, int ticks, boolean vectorized) {
+        SimulationContext context = new SimulationContext(new Grid(300, 300, 42), SEED);
+        context.setLogging(false);
+        context.getAgents().setVectorized(vectorized);
+        SimulationKernel kernel = SimulationKernel.hypermarket(context, TilesetLoader.headless());
+        // Fill the floor at once instead of waiting for arrivals
+        Grid grid = kernel.getGrid();
+        Random random = new Random(SEED);
+        for (int placed = 0, tries = 0; placed < customers && tries < customers * 20; tries++) {
+            int x = random.nextInt(grid.getWidth());
+            int y = random.nextInt(grid.getHeight());
+            if (grid.getTile(x, y).isWalkable() && kernel.spawnCustomerAt(x, y)) placed++;
+        }
+        kernel.setSpawning(customers, 1, 3);
+
+        kernel.run(ticks / 5);
+        long start = System.nanoTime();
+        kernel.run(ticks);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-22s %10.2f ms/tick, %d persons, checksum %016x%n", vectorized ? "store, vector" : "store, scalar",
+                elapsed / 1e6 / ticks, context.getAgents().size(), kernel.getChecksum());
+    }
+
+    // -------------------------------------------------------------------------
+    // Fixtures
+    // -------------------------------------------------------------------------
+
+    /** The movement fields Person had before the store, with the same arithmetic. */
+    private static final class ObjectAgent {
+        // What else a person carries, so the objects are about as far apart
+        private final Object path     = new Object();
+        private final Object replan   = new Object();
+        private final Object reserved = new Object();
+        private long padding0, padding1, padding2, padding3;
+
+        int tileX, tileY;
+        double visualX, visualY, prevVisualX, prevVisualY;
+        int animFrame, animTimer;
+        boolean walking;
+
+        /** As {@link Mover#place}: jump to (x, y) and take the first tick of walking to (x + 1, y). */
+        void place(int x, int y) {
+            visualX = prevVisualX = x;
+            visualY = prevVisualY = y;
+            tileX   = x + 1;
+            tileY   = y;
+            walking = true;
+            animate();
+        }
+
+        void animate() {
+            prevVisualX = visualX;
+            prevVisualY = visualY;
+            visualX = moveToward(visualX, tileX);
+            visualY = moveToward(visualY, tileY);
+            if (walking) {
+                if (++animTimer >= AgentStore.ANIM_SPEED) {
+                    animTimer = 0;
+                    animFrame++;
+                }
+            } else {
+                animFrame = 0;
+                animTimer = 0;
+            }
+        }
+
+        private static double moveToward(double current, double target) {
+            if (Math.abs(current - target) <= AgentStore.ANIMATION_SPEED) return target;
+            return current + Math.signum(target - current) * AgentStore.ANIMATION_SPEED;
+        }
+    }
+
+    /** A person that is only ever placed, never planned for. */
+    private static final class Mover extends Person {
+        private static int nextId = 1;
+
+        Mover(SimulationContext context) {
+            super(nextId++, 1, context, null);
+        }
+
+        /** Jump to (x, y) and take the first tick of walking to (x + 1, y). */
+        void place(int x, int y) {
+            follow(x, y, true);
+            follow(x + 1, y, false);
+        }
+
+        @Override
+        protected Color getFallbackColor() {
+            return Color.GRAY;
+        }
+    }
+}
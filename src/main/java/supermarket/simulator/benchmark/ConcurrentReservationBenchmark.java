@@ -0,0 +1,179 @@
+package supermarket.simulator.benchmark;
+
+import javafx.scene.paint.Color;
+import supermarket.simulator.Pathfinding.ConcurrentReservationTable;
+import supermarket.simulator.Pathfinding.TileReservationSystem;
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Scaling of {@link ConcurrentReservationTable} from 1 to N threads on the tick pattern of a
+ * parallel agent update: every agent claims a random neighbour tile, all threads meet at a
+ * barrier, then every agent commits its move. The single-threaded
+ * {@link TileReservationSystem} doing the same moves (check, release, reserve) is the baseline.
+ *
+ * Agents walk on an open floor with 40% occupancy and are split round-robin over the threads.
+ *
+ * Usage: ConcurrentReservationBenchmark [agents] [ticks] [max threads]   e.g. "100000 50 8"
+ */
+public class ConcurrentReservationBenchmark {
+
+    private static final long SEED = 42L;
+    private static final int WARMUP_TICKS = 10;
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final int[] DY = {-1, 0, 1, 0};
+
+    public static void main(String[] args) throws InterruptedException {
+        int agents     = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int ticks      = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("agents=%d ticks=%d cores=%d%n", agents, ticks, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-14s %8s %12s %10s %8s%n", "table", "threads", "moves", "ns/agent", "speedup");
+
+        double baseline = runSingleThreaded(agents, ticks);
+        for (int threads = 1; threads < maxThreads; threads *= 2) {
+            runConcurrent(agents, ticks, threads, baseline);
+        }
+        runConcurrent(agents, ticks, maxThreads, baseline);
+    }
+
+    // -------------------------------------------------------------------------
+    // Runs
+    // -------------------------------------------------------------------------
+
+    private static double runSingleThreaded(int agentCount, int ticks) {
+        SimulationContext context = context(agentCount);
+        TileReservationSystem table = context.getReservations();
+        Walker[] agents = spawn(context, agentCount);
+        int side = context.getGrid().getWidth();
+        Random random = new Random(SEED);
+
+        long moves = 0;
+        long start = 0;
+        for (int tick = -WARMUP_TICKS; tick < ticks; tick++) {
+            if (tick == 0) start = System.nanoTime();
+            for (Walker agent : agents) {
+                int d  = random.nextInt(4);
+                int nx = agent.posX + DX[d];
+                int ny = agent.posY + DY[d];
+                if (nx < 0 || ny < 0 || nx >= side || ny >= side) continue;
+                if (table.isFree(nx, ny, agent)) {
+                    table.release(agent);
+                    table.reserve(nx, ny, agent);
+                    agent.posX = nx;
+                    agent.posY = ny;
+                    if (tick >= 0) moves++;
+                }
+            }
+        }
+        double nsPerAgent = (System.nanoTime() - start) / (double) ticks / agentCount;
+        System.out.printf("%-14s %8d %12d %10.1f %8s%n", "single", 1, moves, nsPerAgent, "1.00");
+        return nsPerAgent;
+    }
+
+    private static void runConcurrent(int agentCount, int ticks, int threads, double baseline)
+            throws InterruptedException {
+        SimulationContext context = context(agentCount);
+        ConcurrentReservationTable table = new ConcurrentReservationTable(context.getGrid());
+        Walker[] agents = spawn(context, agentCount);
+        for (Walker agent : agents) table.reserve(agent.posX, agent.posY, agent);
+
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        long[] moves   = new long[threads];
+        long[] started = new long[1];
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(SEED + first);
+                try {
+                    for (int tick = -WARMUP_TICKS; tick < ticks; tick++) {
+                        if (tick == 0) {
+                            barrier.await();
+                            if (first == 0) started[0] = System.nanoTime();
+                        }
+                        for (int i = first; i < agents.length; i += threads) {
+                            Walker agent = agents[i];
+                            int d = random.nextInt(4);
+                            agent.claimed = table.claim(agent.posX + DX[d], agent.posY + DY[d], agent);
+                            agent.targetX = agent.posX + DX[d];
+                            agent.targetY = agent.posY + DY[d];
+                        }
+                        barrier.await();
+                        for (int i = first; i < agents.length; i += threads) {
+                            Walker agent = agents[i];
+                            if (agent.claimed && table.commitMove(agent)) {
+                                agent.posX = agent.targetX;
+                                agent.posY = agent.targetY;
+                                if (tick >= 0) moves[first]++;
+                            }
+                        }
+                        barrier.await();
+                    }
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "bench-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) worker.join();
+        long elapsed = System.nanoTime() - started[0];
+
+        long total = 0;
+        for (long m : moves) total += m;
+        double nsPerAgent = elapsed / (double) ticks / agentCount;
+        System.out.printf("%-14s %8d %12d %10.1f %8.2f%n", "cas", threads, total, nsPerAgent, baseline / nsPerAgent);
+    }
+
+    // -------------------------------------------------------------------------
+    // Fixtures
+    // -------------------------------------------------------------------------
+
+    private static SimulationContext context(int agentCount) {
+        int side = (int) Math.ceil(Math.sqrt(agentCount / 0.4));
+        return new SimulationContext(new Grid(side, side, 1), SEED);
+    }
+
+    /** Distinct random start tiles, the same for every run. */
+    private static Walker[] spawn(SimulationContext context, int agentCount) {
+        int side = context.getGrid().getWidth();
+        Random random = new Random(SEED);
+        int[] order = new int[side * side];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i]; order[i] = order[j]; order[j] = t;
+        }
+        Walker[] agents = new Walker[agentCount];
+        for (int i = 0; i < agentCount; i++) {
+            agents[i] = new Walker(order[i] % side, order[i] / side, random.nextInt(4), context);
+        }
+        return agents;
+    }
+
+    private static final class Walker extends Person {
+        int posX;
+        int posY;
+        int targetX;
+        int targetY;
+        boolean claimed;
+
+        Walker(int x, int y, int priority, SimulationContext context) {
+            super(x, y, priority, context, null);
+            this.posX = x;
+            this.posY = y;
+        }
+
+        @Override
+        protected Color getFallbackColor() {
+            return Color.GRAY;
+        }
+    }
+}
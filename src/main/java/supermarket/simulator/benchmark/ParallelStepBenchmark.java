@@ -0,0 +1,152 @@
+package supermarket.simulator.benchmark;
+
+import javafx.scene.paint.Color;
+import supermarket.simulator.Pathfinding.PathRequestService;
+import supermarket.simulator.Pathfinding.PathStrategy;
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.model.world.HypermarketBuilder;
+import supermarket.simulator.services.TilesetLoader;
+import supermarket.simulator.simulation.AgentStepper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Scaling and determinism of the two-phase {@link AgentStepper} with many persons walking
+ * between random tiles of a generated hypermarket.
+ *
+ * Every thread count replays the same world from the same seed. A checksum over all positions
+ * after every tick must come out the same for every thread count; the run exits with status 1
+ * when it does not.
+ *
+ * Usage: ParallelStepBenchmark [agents] [ticks] [size] [max threads]   e.g. "10000 500 300 8"
+ */
+public class ParallelStepBenchmark {
+
+    private static final long SEED = 42L;
+    private static final int WARMUP_TICKS = 50;
+
+    public static void main(String[] args) {
+        int agents     = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int ticks      = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int size       = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+        int maxThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.printf("agents=%d ticks=%d floor=%dx%d cores=%d%n",
+                agents, ticks, size, size, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%8s %10s %10s %8s %18s%n", "threads", "ms", "ns/agent", "speedup", "checksum");
+
+        long[] baseline = run(agents, ticks, size, 1, 0);
+        boolean identical = true;
+        for (int threads = 2; threads < maxThreads; threads *= 2) {
+            identical &= run(agents, ticks, size, threads, baseline[0])[1] == baseline[1];
+        }
+        if (maxThreads > 1) {
+            identical &= run(agents, ticks, size, Math.max(2, maxThreads), baseline[0])[1] == baseline[1];
+        }
+
+        System.out.println(identical ? "OK: identical for every thread count" : "FAILED: results depend on the thread count");
+        if (!identical) System.exit(1);
+    }
+
+    /** @return {elapsed nanos, checksum} */
+    private static long[] run(int agentCount, int ticks, int size, int threads, long baselineNanos) {
+        SimulationContext context = new SimulationContext(new Grid(size, size, 1), SEED);
+        context.setLogging(false);
+        new HypermarketBuilder(context, TilesetLoader.headless()).build();
+        context.setPathStrategy(PathStrategy.HIERARCHICAL);
+        PathRequestService planning = new PathRequestService(context, ForkJoinPool.commonPool());
+        context.setPlanningService(planning);
+
+        int[] walkable = walkableNodes(context.getGrid());
+        List<Walker> walkers = spawn(context, walkable, agentCount);
+        AgentStepper stepper = new AgentStepper(context, threads);
+
+        long checksum = 0;
+        long start    = 0;
+        for (int tick = -WARMUP_TICKS; tick < ticks; tick++) {
+            if (tick == 0) start = System.nanoTime();
+            planning.applyResults();
+            stepper.step(walkers);
+            planning.dispatch();
+
+            for (Walker w : walkers) {
+                checksum = checksum * 31 + w.getTileY() * size + w.getTileX();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        stepper.shutdown();
+
+        double speedup = baselineNanos == 0 ? 1.0 : baselineNanos / (double) elapsed;
+        System.out.printf("%8d %10.1f %10.1f %8.2f %18x%n", threads, elapsed / 1e6,
+                elapsed / (double) ticks / agentCount, speedup, checksum);
+        return new long[]{elapsed, checksum};
+    }
+
+    // -------------------------------------------------------------------------
+    // Fixtures
+    // -------------------------------------------------------------------------
+
+    private static int[] walkableNodes(Grid grid) {
+        int[] nodes = new int[grid.getWidth() * grid.getHeight()];
+        int count = 0;
+        for (int y = 0; y < grid.getHeight(); y++) {
+            for (int x = 0; x < grid.getWidth(); x++) {
+                if (grid.getTile(x, y) != null && grid.getTile(x, y).isWalkable()) {
+                    nodes[count++] = y * grid.getWidth() + x;
+                }
+            }
+        }
+        return Arrays.copyOf(nodes, count);
+    }
+
+    /** Distinct random start tiles and a first goal, the same for every run. */
+    private static List<Walker> spawn(SimulationContext context, int[] walkable, int agentCount) {
+        if (agentCount > walkable.length / 2) {
+            throw new IllegalArgumentException("Too many agents for " + walkable.length + " walkable tiles");
+        }
+        int width = context.getGrid().getWidth();
+        Random random = new Random(SEED);
+        List<Walker> walkers = new ArrayList<>(agentCount);
+        while (walkers.size() < agentCount) {
+            int node = walkable[random.nextInt(walkable.length)];
+            if (!context.getReservations().isFree(node % width, node / width, null)) continue;
+            walkers.add(new Walker(node % width, node / width, context, walkable));
+        }
+        for (Walker w : walkers) w.pickGoal();
+        return walkers;
+    }
+
+    /** Walks to a random tile, and on arrival to the next one. */
+    private static final class Walker extends Person {
+        private final int[] walkable;
+        private final Random random;
+
+        Walker(int x, int y, SimulationContext context, int[] walkable) {
+            super(x, y, 1, context, null);
+            this.walkable = walkable;
+            this.random   = new Random(SEED ^ getAgentId());
+        }
+
+        void pickGoal() {
+            int width = getContext().getGrid().getWidth();
+            int node  = walkable[random.nextInt(walkable.length)];
+            moveTo(node % width, node / width);
+        }
+
+        @Override
+        protected void afterStep() {
+            if (hasReachedGoal()) pickGoal();
+        }
+
+        @Override
+        protected Color getFallbackColor() {
+            return Color.GRAY;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package supermarket.simulator.benchmark;
+
+import supermarket.simulator.Pathfinding.GridPath;
+import supermarket.simulator.Pathfinding.GridSearch;
+import supermarket.simulator.Pathfinding.JumpPointSearch;
+import supermarket.simulator.Pathfinding.PathPlanner;
+import supermarket.simulator.Pathfinding.PathRequestService;
+import supermarket.simulator.Pathfinding.PathStrategy;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.model.world.HypermarketBuilder;
+import supermarket.simulator.model.world.LevelBuilder;
+import supermarket.simulator.model.world.ObjectBuilder;
+import supermarket.simulator.services.TilesetLoader;
+import supermarket.simulator.simulation.SimulationKernel;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares plain A* with Jump Point Search on the stock layout and on generated hypermarket
+ * floors: expanded nodes and latency per query, on identical random start/goal pairs.
+ *
+ * Then the crowded case: a hypermarket packed with customers, so the aisles are full of
+ * people standing in each other's way, run once with A* and once with per-person D* Lite
+ * (INCREMENTAL). Reported are the CPU time per tick, which on such a floor is mostly path
+ * planning and repair, and the customers served, so a strategy that saves CPU by leaving
+ * people stuck shows up as well.
+ *
+ * Last, batches of HPA* requests on the largest floor go through a {@link PathRequestService}
+ * with 1 and with N workers (at least 2), N being the number of cores: the time from dispatch
+ * until the batch is solved, and the per-request latency. Fewer cores than workers only show
+ * what the sharing costs, not the speedup.
+ *
+ * Usage: PathfindingBenchmark [queries] [sizes...]   e.g. "2000 100 300 500"
+ */
+public class PathfindingBenchmark {
+
+    private static final long SEED  = 42L;
+    private static final int WARMUP = 3;
+
+    // Crowded case: as many customers as fit the aisles of a small hypermarket, arriving fast
+    private static final int CROWDED_SIZE      = 100;
+    private static final int CROWDED_CUSTOMERS = 300;
+    private static final int CROWDED_INTERVAL  = 2;
+    private static final int CROWDED_TICKS     = 4000;
+
+    private static final int BATCH_SIZE = 256;   // requests per dispatch, a busy tick on a large floor
+
+    private static final com.sun.management.OperatingSystemMXBean PROCESS =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+    public static void main(String[] args) {
+        int queries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int[] sizes = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{100, 300, 500};
+
+        System.out.printf("%-22s %-6s %10s %10s %10s %12s%n",
+                "layout", "algo", "avg us", "p95 us", "expanded", "path length");
+
+        benchmark("stock 20x24", stockLayout(), queries);
+        for (int size : sizes) {
+            benchmark("hypermarket " + size + "x" + size, hypermarket(size), queries);
+        }
+
+        System.out.printf("%n%-22s %-12s %12s %8s %8s%n", "crowded", "strategy", "CPU ms/tick", "served", "inside");
+        for (int round = 0; round <= 1; round++) {   // round 0 warms up
+            crowded(PathStrategy.ASTAR, round > 0);
+            crowded(PathStrategy.INCREMENTAL, round > 0);
+        }
+
+        int largest = Arrays.stream(sizes).max().orElse(100);
+        int workers = Math.max(2, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%n%-22s %-8s %14s %10s %10s   (%d cores)%n",
+                "batched HPA*", "workers", "ms per batch", "p50 us", "p95 us", Runtime.getRuntime().availableProcessors());
+        batched(largest, queries, 1);
+        batched(largest, queries, workers);
+    }
+
+    /** All queries as HIERARCHICAL requests in batches of {@link #BATCH_SIZE}, solved by {@code workers} threads. */
+    private static void batched(int size, int queries, int workers) {
+        SimulationContext context = hypermarket(size);
+        context.getHierarchicalPathfinder();   // build the abstract graph before timing
+        int[] pairs = randomPairs(context.getGrid(), queries);
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        PathRequestService service = new PathRequestService(context, pool);
+        PathRequestService.Listener ignore = (found, path) -> { };
+
+        long nanos   = 0;
+        int batches  = 0;
+        for (int round = 0; round <= WARMUP; round++) {
+            nanos   = 0;
+            batches = 0;
+            for (int from = 0; from < queries; from += BATCH_SIZE) {
+                for (int q = from; q < Math.min(queries, from + BATCH_SIZE); q++) {
+                    int i = q * 4;
+                    service.submit(PathStrategy.HIERARCHICAL, pairs[i], pairs[i + 1], pairs[i + 2], pairs[i + 3],
+                            false, ignore);
+                }
+                long start = System.nanoTime();
+                service.dispatch();
+                service.applyResults();
+                nanos += System.nanoTime() - start;
+                batches++;
+            }
+        }
+        pool.shutdown();
+
+        System.out.printf("%-22s %-8d %14.2f %10.0f %10.0f%n",
+                "hypermarket " + size + "x" + size, workers, nanos / 1e6 / batches,
+                service.getLatencyPercentile(50), service.getLatencyPercentile(95));
+    }
+
+    /** The crowded hypermarket for {@link #CROWDED_TICKS} ticks with every customer planning with {@code strategy}. */
+    private static void crowded(PathStrategy strategy, boolean report) {
+        SimulationContext context = new SimulationContext(new Grid(CROWDED_SIZE, CROWDED_SIZE, 42), SEED);
+        context.setLogging(false);
+        SimulationKernel kernel = SimulationKernel.hypermarket(context, TilesetLoader.headless());
+        context.setPathStrategy(strategy);   // after the kernel, which picks a default for the floor size
+        kernel.setSpawning(CROWDED_CUSTOMERS, CROWDED_INTERVAL, 3);
+
+        // Process CPU: batched A* requests are planned on the common pool, not on this thread
+        long cpu = PROCESS.getProcessCpuTime();
+        kernel.run(CROWDED_TICKS);
+        cpu = PROCESS.getProcessCpuTime() - cpu;
+
+        if (!report) return;
+        System.out.printf("%-22s %-12s %12.3f %8d %8d%n",
+                "hypermarket " + CROWDED_SIZE + "x" + CROWDED_SIZE, strategy, cpu / 1e6 / CROWDED_TICKS,
+                kernel.getServedCount(), kernel.getCustomers().size());
+    }
+
+    private static SimulationContext stockLayout() {
+        SimulationContext context = new SimulationContext(new Grid(20, 24, 42), SEED);
+        TilesetLoader loader = TilesetLoader.headless();
+        new LevelBuilder(context, loader).buildLevel();
+        new ObjectBuilder(context, loader).buildObjects();
+        return context;
+    }
+
+    private static SimulationContext hypermarket(int size) {
+        SimulationContext context = new SimulationContext(new Grid(size, size, 42), SEED);
+        new HypermarketBuilder(context, TilesetLoader.headless()).build();
+        return context;
+    }
+
+    private static void benchmark(String layout, SimulationContext context, int queries) {
+        int[] pairs = randomPairs(context.getGrid(), queries);
+
+        long[] astarLengths = run(layout, "A*", GridSearch.local(), context, pairs);
+        long[] jpsLengths   = run(layout, "JPS", JumpPointSearch.local(), context, pairs);
+
+        if (!Arrays.equals(astarLengths, jpsLengths)) {
+            System.out.println("  WARNING: JPS and A* path lengths differ on " + layout);
+        }
+    }
+
+    /** Runs all queries; prints the stats and returns the path length per query (-1 if unreachable). */
+    private static long[] run(String layout, String name, PathPlanner planner, SimulationContext context, int[] pairs) {
+        int queries = pairs.length / 4;
+        GridPath path  = new GridPath();
+        long[] lengths = new long[queries];
+        long[] nanos   = new long[queries];
+        long expanded  = 0;
+        long steps     = 0;
+
+        for (int round = 0; round <= WARMUP; round++) {
+            expanded = 0;
+            steps    = 0;
+            for (int q = 0; q < queries; q++) {
+                int i = q * 4;
+                long start = System.nanoTime();
+                boolean found = planner.findPath(context, pairs[i], pairs[i + 1], pairs[i + 2], pairs[i + 3], null, path);
+                nanos[q] = System.nanoTime() - start;
+
+                lengths[q] = found ? path.size() : -1;
+                expanded  += planner.getLastExpanded();
+                steps     += Math.max(0, lengths[q]);
+            }
+        }
+
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        double avgMicros = Arrays.stream(nanos).average().orElse(0) / 1_000.0;
+        double p95Micros = sorted[(int) (sorted.length * 0.95)] / 1_000.0;
+
+        System.out.printf("%-22s %-6s %10.1f %10.1f %10d %12.1f%n",
+                layout, name, avgMicros, p95Micros, expanded / queries, steps / (double) queries);
+        return lengths;
+    }
+
+    /** Random walkable start/goal pairs, packed as sx, sy, gx, gy. */
+    private static int[] randomPairs(Grid grid, int queries) {
+        Random random = new Random(SEED);
+        int[] pairs = new int[queries * 4];
+        for (int i = 0; i < pairs.length; i += 2) {
+            int x, y;
+            do {
+                x = random.nextInt(grid.getWidth());
+                y = random.nextInt(grid.getHeight());
+            } while (!grid.getTile(x, y).isWalkable());
+            pairs[i]     = x;
+            pairs[i + 1] = y;
+        }
+        return pairs;
+    }
+}
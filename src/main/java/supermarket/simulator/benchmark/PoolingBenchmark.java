@@ -0,0 +1,81 @@
+package supermarket.simulator.benchmark;
+
+import supermarket.simulator.Pathfinding.PathStrategy;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.services.TilesetLoader;
+import supermarket.simulator.simulation.AllocationMeter;
+import supermarket.simulator.simulation.SimulationKernel;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Customer pooling under a steady stream of arrivals: the same run with the pool off and on,
+ * alternately, reporting heap allocation per tick and per arriving customer and the garbage
+ * collections it caused. Both runs must end with the same checksum, otherwise the run exits
+ * with status 1.
+ *
+ * Usage: PoolingBenchmark [ticks] [size] [customers] [strategy] [rounds]   e.g. "20000 150 300 astar 3"
+ */
+public class PoolingBenchmark {
+
+    private static final long SEED = 42L;
+    private static final int CELL_SIZE = 42;
+
+    public static void main(String[] args) {
+        int ticks       = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int size        = args.length > 1 ? Integer.parseInt(args[1]) : 150;
+        int customers   = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+        String strategy = args.length > 3 ? args[3] : "astar";
+        int rounds      = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+
+        long expected = 0;
+        for (int round = 1; round <= rounds; round++) {
+            for (boolean pooling : new boolean[] {false, true}) {
+                SimulationContext context = new SimulationContext(new Grid(size, size, CELL_SIZE), SEED);
+                context.setLogging(false);
+                context.setPathStrategy(PathStrategy.valueOf(strategy.toUpperCase()));
+                SimulationKernel kernel = SimulationKernel.hypermarket(context, TilesetLoader.headless());
+                // Short shopping lists and a quick succession of arrivals: many customers in, many out
+                kernel.setSpawning(customers, 1, 1);
+                kernel.setPooling(pooling);
+
+                long gcCount = gcCount();
+                long gcTime  = gcTime();
+                long bytes   = AllocationMeter.allocatedBytes();
+                long start   = System.nanoTime();
+                kernel.run(ticks);
+                long elapsed = System.nanoTime() - start;
+                bytes = AllocationMeter.allocatedBytes() - bytes;
+
+                System.out.printf("round %d, pool %-3s: %8.0f bytes/tick, %7.0f bytes/arrival, %6.1f MB/s, "
+                                + "%3d GCs (%4d ms), %.0f ms; %d arrivals, %s%n",
+                        round, pooling ? "on" : "off", bytes / (double) ticks,
+                        bytes / (double) Math.max(1, kernel.getSpawnedCount()), bytes / 1048576.0 / (elapsed / 1e9),
+                        gcCount() - gcCount, gcTime() - gcTime, elapsed / 1e6, kernel.getSpawnedCount(),
+                        pooling ? kernel.getPool() : "");
+
+                if (round == 1 && !pooling) {
+                    expected = kernel.getChecksum();
+                } else if (kernel.getChecksum() != expected) {
+                    System.out.printf("checksum %016x DIFFERENT from %016x%n", kernel.getChecksum(), expected);
+                    System.exit(1);
+                }
+            }
+        }
+        System.out.printf("checksum %016x in every run%n", expected);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) count += Math.max(0, gc.getCollectionCount());
+        return count;
+    }
+
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) time += Math.max(0, gc.getCollectionTime());
+        return time;
+    }
+}
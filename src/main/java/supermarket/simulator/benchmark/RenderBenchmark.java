@@ -0,0 +1,220 @@
+package supermarket.simulator.benchmark;
+
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Camera;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.model.world.GridRenderer;
+import supermarket.simulator.model.world.Tile;
+import supermarket.simulator.services.CharacterSpriteLoader;
+import supermarket.simulator.services.TilesetLoader;
+import supermarket.simulator.simulation.SimulationKernel;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Frame time of {@link GridRenderer} on a large hypermarket, drawing every tile in view each
+ * frame and blitting the cached background, both at full size through a {@link Camera}, and
+ * the minimap of the whole floor. A frame is one tick, one render into a window-sized canvas
+ * and a snapshot of that canvas, which makes JavaFX actually rasterize what was drawn; the
+ * time spent issuing the drawing commands is reported separately. For comparison the whole
+ * floor is also drawn tile by tile without {@link GridRenderer#setCulling culling}, for a tenth
+ * of the frames since that is slow. Run it for two floor sizes to see that the frame time
+ * follows the viewport, not the floor.
+ *
+ * Finally single frames are drawn both with and without the cache and the pixels that differ
+ * are counted: of the random crowd, and of a crowd on every tile in view with persons standing
+ * behind tall fixtures that overlap each other, so the cache must draw those again in front of
+ * them in the right order. The run exits with status 1 when any pixel differs or the second
+ * scene needed no fixture drawn again.
+ *
+ * Needs a display (or Monocle) for the JavaFX toolkit; the debug overlays are switched off.
+ *
+ * Usage: RenderBenchmark [size] [customers] [frames]   e.g. "300 2000 300"
+ */
+public class RenderBenchmark {
+
+    private static final long SEED = 42L;
+    private static final int CELL_SIZE = 42;
+    private static final int CANVAS_WIDTH  = 1500;   // as in Marketview.fxml
+    private static final int CANVAS_HEIGHT = 1100;
+    private static final int WARMUP_FRAMES = 30;
+    private static final int STACKS        = 6;      // pairs of tall fixtures in the equality check
+
+    public static void main(String[] args) throws InterruptedException {
+        int size      = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int customers = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int frames    = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+
+        CountDownLatch done = new CountDownLatch(1);
+        boolean[] identical = {false};
+        Platform.startup(() -> {
+            try {
+                GridRenderer.DEBUG = false;
+                System.out.printf("floor %dx%d cells of %d px, canvas %dx%d, %d customers, %d frames%n",
+                        size, size, CELL_SIZE, CANVAS_WIDTH, CANVAS_HEIGHT, customers, frames);
+                run(size, customers, Math.max(1, frames / 10), false, false, false);
+                run(size, customers, frames, false, true, false);
+                run(size, customers, frames, true, true, false);
+                run(size, customers, frames, true, true, true);
+                identical[0] = compare("random crowd", hypermarket(size, customers), WARMUP_FRAMES, false)
+                        & compare("behind fixtures", crowdBehindFixtures(size), 0, true);
+            } finally {
+                done.countDown();
+            }
+        });
+        done.await();
+        Platform.exit();
+        if (!identical[0]) {
+            System.out.println("FAILED: the cached background does not draw the same picture");
+            System.exit(1);
+        }
+    }
+
+    private static void run(int size, int customers, int frames, boolean caching, boolean culling, boolean minimap) {
+        SimulationKernel kernel = hypermarket(size, customers);
+
+        Canvas canvas = new Canvas(CANVAS_WIDTH, CANVAS_HEIGHT);
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        WritableImage frame = new WritableImage(CANVAS_WIDTH, CANVAS_HEIGHT);
+        GridRenderer renderer = new GridRenderer(kernel.getGrid());
+        renderer.setBackgroundCaching(caching);
+        renderer.setCulling(culling);
+        Camera camera = new Camera();
+        if (minimap) camera.fit(kernel.getGrid(), CANVAS_WIDTH, CANVAS_HEIGHT);
+        renderer.setCamera(camera);
+
+        long drawNanos = 0, frameNanos = 0, worst = 0;
+        for (int i = -WARMUP_FRAMES; i < frames; i++) {
+            kernel.tick();
+            long start = System.nanoTime();
+            renderer.render(gc, kernel.getCustomers(), 1.0);
+            canvas.snapshot(null, frame);
+            long nanos = System.nanoTime() - start;
+            if (i < 0) continue;
+            drawNanos  += renderer.getLastRenderNanos();
+            frameNanos += nanos;
+            worst       = Math.max(worst, nanos);
+        }
+        String mode = minimap ? "minimap" : caching ? "cached background" : culling ? "tiles in view" : "whole floor";
+        System.out.printf("%-18s %4d frames, frame %7.2f ms (worst %7.2f), drawing commands %7.2f ms, %d persons drawn; %s%n",
+                mode, frames, frameNanos / 1e6 / frames, worst / 1e6, drawNanos / 1e6 / frames,
+                renderer.getVisibleCount(), caching && !minimap ? renderer.getBackgroundStats() : "");
+    }
+
+    /**
+     * One frame of {@code kernel} after {@code ticks} with and without the cached background,
+     * pixel by pixel; true when they are the same (and, if {@code occluded}, fixtures were drawn
+     * again in front of somebody).
+     */
+    private static boolean compare(String scene, SimulationKernel kernel, int ticks, boolean occluded) {
+        for (int i = 0; i < ticks; i++) kernel.tick();
+
+        WritableImage[] frames = new WritableImage[2];
+        int occluders = 0;
+        for (int i = 0; i < frames.length; i++) {
+            Canvas canvas = new Canvas(CANVAS_WIDTH, CANVAS_HEIGHT);
+            GridRenderer renderer = new GridRenderer(kernel.getGrid());
+            renderer.setBackgroundCaching(i == 1);
+            renderer.setCamera(new Camera());
+            renderer.render(canvas.getGraphicsContext2D(), kernel.getCustomers(), 1.0);
+            frames[i] = canvas.snapshot(null, null);
+            occluders = renderer.getOccludersDrawn();
+        }
+
+        PixelReader uncached = frames[0].getPixelReader();
+        PixelReader cached   = frames[1].getPixelReader();
+        int differ = 0;
+        for (int y = 0; y < CANVAS_HEIGHT; y++) {
+            for (int x = 0; x < CANVAS_WIDTH; x++) {
+                if (uncached.getArgb(x, y) != cached.getArgb(x, y)) differ++;
+            }
+        }
+        System.out.printf("cached vs tiles in view, %s: %d of %d pixels differ, %d fixtures drawn again in front%n",
+                scene, differ, CANVAS_WIDTH * CANVAS_HEIGHT, occluders);
+        return differ == 0 && (!occluded || occluders > 0);
+    }
+
+    /**
+     * The hypermarket of {@code size} with a customer on every free tile the camera shows at
+     * first. The hypermarket's own sprites stay within their tiles, so a few tall one-tile
+     * fixtures are stacked in neighbouring rows first, with a customer behind the first of each
+     * pair, out of reach of the second.
+     */
+    private static SimulationKernel crowdBehindFixtures(int size) {
+        SimulationKernel kernel = hypermarket(size, 0);
+        Grid grid = kernel.getGrid();
+        int maxX = Math.min(grid.getWidth(), CANVAS_WIDTH / CELL_SIZE + 1);
+        int maxY = Math.min(grid.getHeight(), CANVAS_HEIGHT / CELL_SIZE + 1);
+
+        Image tall = tallestImage(grid);
+        int reach  = (int) Math.ceil(tall.getHeight() / tall.getWidth());   // rows covered as a one-tile sprite
+        int stacks = 0;
+        for (int x = 0; x < maxX && stacks < STACKS && reach > 1; x += 2) {
+            for (int y = reach - 1; y + 1 < maxY; y++) {
+                if (!isWalkable(grid, x, y - reach + 1, y + 1)) continue;
+                for (int row = y; row <= y + 1; row++) {
+                    Tile floor   = grid.getTile(x, row);
+                    Tile fixture = new Tile(false, tall, 1, 1);
+                    fixture.setFloorTexture(floor.getFloorTexture() != null ? floor.getFloorTexture() : floor.getImage());
+                    grid.setTile(x, row, fixture);
+                }
+                kernel.spawnCustomerAt(x, y - reach + 1);
+                stacks++;
+                break;
+            }
+        }
+
+        for (int y = 0; y < maxY; y++) {
+            for (int x = 0; x < maxX; x++) {
+                if (grid.getTile(x, y).isWalkable()) kernel.spawnCustomerAt(x, y);
+            }
+        }
+        return kernel;
+    }
+
+    /** The sprite of the floor that is tallest for its width. */
+    private static Image tallestImage(Grid grid) {
+        Image tallest = null;
+        for (int y = 0; y < grid.getHeight(); y++) {
+            for (int x = 0; x < grid.getWidth(); x++) {
+                Image image = grid.getTile(x, y).getImage();
+                if (image == null) continue;
+                if (tallest == null || image.getHeight() / image.getWidth() > tallest.getHeight() / tallest.getWidth()) {
+                    tallest = image;
+                }
+            }
+        }
+        return tallest;
+    }
+
+    private static boolean isWalkable(Grid grid, int x, int fromY, int toY) {
+        for (int y = fromY; y <= toY; y++) {
+            if (!grid.getTile(x, y).isWalkable()) return false;
+        }
+        return true;
+    }
+
+    /** The hypermarket of {@code size} with {@code customers} standing about at random. */
+    private static SimulationKernel hypermarket(int size, int customers) {
+        TilesetLoader loader = new TilesetLoader();
+        SimulationContext context = new SimulationContext(new Grid(size, size, CELL_SIZE), SEED);
+        context.setLogging(false);
+        SimulationKernel kernel = SimulationKernel.hypermarket(context, loader);
+        kernel.setSpriteLoaders(CharacterSpriteLoader::randomCustomer);
+        Grid grid = kernel.getGrid();
+        Random random = new Random(SEED);
+        for (int placed = 0, tries = 0; placed < customers && tries < customers * 20; tries++) {
+            int x = random.nextInt(grid.getWidth());
+            int y = random.nextInt(grid.getHeight());
+            if (grid.getTile(x, y).isWalkable() && kernel.spawnCustomerAt(x, y)) placed++;
+        }
+        return kernel;
+    }
+}
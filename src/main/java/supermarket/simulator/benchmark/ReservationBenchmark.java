@@ -0,0 +1,155 @@
+package supermarket.simulator.benchmark;
+
+import javafx.scene.paint.Color;
+import supermarket.simulator.Pathfinding.TileReservationSystem;
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the array-backed {@link TileReservationSystem} with the previous
+ * {@code HashMap<String, Person>} implementation on the move pattern of {@code Person.step}:
+ * check the next tile, release everything held, reserve the next tile.
+ *
+ * Agents walk randomly on an open floor with 40% occupancy. Each implementation runs until
+ * it has done {@code moves} move attempts or its time budget is spent.
+ *
+ * Usage: ReservationBenchmark [moves] [agents...]   e.g. "1000000 10 1000 100000"
+ */
+public class ReservationBenchmark {
+
+    private static final long SEED         = 42L;
+    private static final long BUDGET_NANOS = 3_000_000_000L;
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final int[] DY = {-1, 0, 1, 0};
+
+    public static void main(String[] args) {
+        int moves = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int[] agentCounts = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{10, 1_000, 100_000};
+
+        System.out.printf("%-8s %-12s %12s %12s%n", "agents", "impl", "moves", "ns/move");
+        for (int agents : agentCounts) {
+            benchmark(agents, moves);
+        }
+    }
+
+    private static void benchmark(int agentCount, int moves) {
+        int side  = (int) Math.ceil(Math.sqrt(agentCount / 0.4));
+        SimulationContext context = new SimulationContext(new Grid(side, side, 1), SEED);
+
+        // Distinct random start tiles; the constructor reserves them in the new system
+        Random random = new Random(SEED);
+        int[] order = new int[side * side];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = order[i]; order[i] = order[j]; order[j] = t;
+        }
+        Walker[] agents = new Walker[agentCount];
+        for (int i = 0; i < agentCount; i++) {
+            agents[i] = new Walker(order[i] % side, order[i] / side, context);
+        }
+
+        // Both implementations start from the same reservations and get the same moves
+        TileReservationSystem current = context.getReservations();
+        StringKeyReservations legacy  = new StringKeyReservations();
+        for (Walker agent : agents) legacy.reserve(agent.getTileX(), agent.getTileY(), agent);
+
+        run(agentCount, "array", agents, side, moves, new Reservations() {
+            public boolean isFree(int x, int y, Person agent)  { return current.isFree(x, y, agent); }
+            public boolean reserve(int x, int y, Person agent) { return current.reserve(x, y, agent); }
+            public void release(Person agent)                  { current.release(agent); }
+        });
+        run(agentCount, "string-map", agents, side, moves, new Reservations() {
+            public boolean isFree(int x, int y, Person agent)  { return legacy.isFree(x, y, agent); }
+            public boolean reserve(int x, int y, Person agent) { return legacy.reserve(x, y, agent); }
+            public void release(Person agent)                  { legacy.release(agent); }
+        });
+    }
+
+    private static void run(int agentCount, String name, Walker[] agents, int side, int moves,
+                            Reservations reservations) {
+        int[] x = new int[agents.length];
+        int[] y = new int[agents.length];
+        for (int i = 0; i < agents.length; i++) {
+            x[i] = agents[i].getTileX();
+            y[i] = agents[i].getTileY();
+        }
+
+        Random random = new Random(SEED);
+        long start = System.nanoTime();
+        long done  = 0;
+        while (done < moves) {
+            for (int batch = 0; batch < 1024 && done < moves; batch++, done++) {
+                int i  = random.nextInt(agents.length);
+                int d  = random.nextInt(4);
+                int nx = x[i] + DX[d];
+                int ny = y[i] + DY[d];
+                if (nx < 0 || ny < 0 || nx >= side || ny >= side) continue;
+
+                if (reservations.isFree(nx, ny, agents[i])) {
+                    reservations.release(agents[i]);
+                    reservations.reserve(nx, ny, agents[i]);
+                    x[i] = nx;
+                    y[i] = ny;
+                }
+            }
+            if (System.nanoTime() - start > BUDGET_NANOS) break;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-8d %-12s %12d %12.1f%n", agentCount, name, done, elapsed / (double) done);
+    }
+
+    // -------------------------------------------------------------------------
+    // Fixtures
+    // -------------------------------------------------------------------------
+
+    private interface Reservations {
+        boolean isFree(int x, int y, Person agent);
+        boolean reserve(int x, int y, Person agent);
+        void release(Person agent);
+    }
+
+    /** The implementation this benchmark replaced: String keys, release scans every entry. */
+    private static final class StringKeyReservations {
+        private final Map<String, Person> reservations = new HashMap<>();
+
+        boolean reserve(int x, int y, Person agent) {
+            String key = x + "," + y;
+            Person current = reservations.get(key);
+            if (current == null || current == agent) {
+                reservations.put(key, agent);
+                return true;
+            }
+            return false;
+        }
+
+        void release(Person agent) {
+            reservations.values().removeIf(owner -> owner == agent);
+        }
+
+        boolean isFree(int x, int y, Person agent) {
+            Person current = reservations.get(x + "," + y);
+            return current == null || current == agent;
+        }
+    }
+
+    private static final class Walker extends Person {
+        Walker(int x, int y, SimulationContext context) {
+            super(x, y, 0, context, null);
+        }
+
+        @Override
+        protected Color getFallbackColor() {
+            return Color.GRAY;
+        }
+    }
+}
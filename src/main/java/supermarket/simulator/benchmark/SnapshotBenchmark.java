@@ -0,0 +1,90 @@
+package supermarket.simulator.benchmark;
+
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.services.TilesetLoader;
+import supermarket.simulator.simulation.SimulationKernel;
+import supermarket.simulator.snapshot.WorldSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * World snapshots against re-simulation: fill a generated hypermarket with customers, run it
+ * for a while, save it, and load it again. Reports the snapshot size and the time to load it
+ * next to the time it took to simulate up to that point.
+ *
+ * The original and the loaded world then both run a few more ticks; their checksums must
+ * match, otherwise the run exits with status 1.
+ *
+ * Usage: SnapshotBenchmark [agents] [size] [ticks] [file]   e.g. "100000 600 20"
+ */
+public class SnapshotBenchmark {
+
+    private static final long SEED = 42L;
+    private static final int CELL_SIZE = 42;
+    private static final int CHECK_TICKS = 20;
+
+    public static void main(String[] args) throws IOException {
+        int agents = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int size   = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+        int ticks  = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        Path file  = args.length > 3 ? Path.of(args[3]) : Files.createTempFile("world", ".snap");
+
+        // Simulate up to the checkpoint; this is what a load saves us
+        long start = System.nanoTime();
+        SimulationContext context = new SimulationContext(new Grid(size, size, CELL_SIZE), SEED);
+        context.setLogging(false);
+        SimulationKernel original = SimulationKernel.hypermarket(context, TilesetLoader.headless());
+        long built = System.nanoTime();
+        int placed = populate(original, agents);
+        original.run(ticks);
+        long simulated = System.nanoTime() - start;
+        System.out.printf("floor %dx%d, %d customers, %d ticks: built in %.0f ms, simulated to tick %d in %.0f ms%n",
+                size, size, placed, ticks, (built - start) / 1e6, original.getTickCount(), simulated / 1e6);
+
+        start = System.nanoTime();
+        long bytes = WorldSnapshot.save(original, file);
+        long saved = System.nanoTime() - start;
+        System.out.printf("save  %.0f ms, %.1f MB (%.0f bytes per customer)%n",
+                saved / 1e6, bytes / 1048576.0, bytes / (double) placed);
+
+        original.run(CHECK_TICKS);
+        long expected = original.getChecksum();
+        original = null;   // two worlds of this size do not have to fit at once
+        System.gc();
+
+        start = System.nanoTime();
+        SimulationKernel loaded = WorldSnapshot.load(file, TilesetLoader.headless());
+        long load = System.nanoTime() - start;
+        loaded.getContext().setLogging(false);
+        System.out.printf("load  %.0f ms -> %.1fx quicker than simulating to tick %d%n",
+                load / 1e6, simulated / (double) load, loaded.getTickCount());
+
+        loaded.run(CHECK_TICKS);
+        boolean same = loaded.getChecksum() == expected;
+        System.out.printf("continued %d ticks: checksum %016x %s%n", CHECK_TICKS, loaded.getChecksum(),
+                same ? "identical to the original" : "DIFFERENT from the original " + String.format("%016x", expected));
+
+        if (args.length <= 3) Files.deleteIfExists(file);
+        if (!same) System.exit(1);
+    }
+
+    /** Customers on distinct random walkable tiles, each with a shopping list; all start walking at once. */
+    private static int populate(SimulationKernel kernel, int agents) {
+        Grid grid = kernel.getGrid();
+        SplittableRandom random = new SplittableRandom(SEED);
+        int placed = 0;
+        for (int attempt = 0; placed < agents && attempt < agents * 20; attempt++) {
+            int x = random.nextInt(grid.getWidth());
+            int y = random.nextInt(grid.getHeight());
+            if (grid.getTile(x, y).isWalkable() && kernel.spawnCustomerAt(x, y)) placed++;
+        }
+        if (placed < agents) {
+            System.out.printf("only room for %d of %d customers on this floor%n", placed, agents);
+        }
+        return placed;
+    }
+}
@@ -0,0 +1,113 @@
+package supermarket.simulator.benchmark;
+
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.services.TilesetLoader;
+import supermarket.simulator.simulation.SimulationKernel;
+import supermarket.simulator.trace.TracePlayer;
+import supermarket.simulator.trace.TraceRecorder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * What recording a trace costs and how quickly it plays back. The same busy hypermarket runs
+ * alternately without and with a {@link TraceRecorder}; reported is the time spent recording
+ * as a share of the tick time. The last trace is then opened and seeked to random ticks.
+ *
+ * Every seek is compared with the positions the live run had at that tick; any difference
+ * makes the run exit with status 1.
+ *
+ * Usage: TraceBenchmark [customers] [size] [ticks] [rounds]   e.g. "300 150 6000 3"
+ */
+public class TraceBenchmark {
+
+    private static final long SEED = 42L;
+    private static final int CELL_SIZE = 42;
+    private static final int SEEKS = 20;
+
+    public static void main(String[] args) throws IOException {
+        int customers = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int size      = args.length > 1 ? Integer.parseInt(args[1]) : 150;
+        int ticks     = args.length > 2 ? Integer.parseInt(args[2]) : 6000;
+        int rounds    = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        Path file     = Files.createTempFile("run", ".trace");
+
+        // Live positions at the ticks that will be seeked, to check the replay against
+        SplittableRandom random = new SplittableRandom(SEED);
+        long[] seekTicks = new long[SEEKS];
+        for (int i = 0; i < SEEKS; i++) seekTicks[i] = 1 + random.nextInt(ticks);
+        Arrays.sort(seekTicks);
+        int[][] expected = new int[SEEKS][];
+
+        for (int round = 1; round <= rounds; round++) {
+            SimulationKernel plain = createKernel(size, customers);
+            long start = System.nanoTime();
+            plain.run(ticks);
+            long plainNanos = System.nanoTime() - start;
+
+            SimulationKernel traced = createKernel(size, customers);
+            TraceRecorder recorder = TraceRecorder.attach(traced, file, TraceRecorder.DEFAULT_KEYFRAME_INTERVAL);
+            start = System.nanoTime();
+            int next = 0;
+            for (long tick = 1; tick <= ticks; tick++) {
+                traced.run(1);
+                while (next < SEEKS && seekTicks[next] == tick) expected[next++] = positions(traced.getCustomers());
+            }
+            long tracedNanos = System.nanoTime() - start;
+            recorder.close();
+
+            System.out.printf("round %d: %d ticks plain %.0f ms, recorded %.0f ms; recording %.1f ms = %.2f%% of tick time, "
+                            + "%.1f KB (%d frames, %d keyframes)%n",
+                    round, ticks, plainNanos / 1e6, tracedNanos / 1e6, recorder.getRecordNanos() / 1e6,
+                    100.0 * recorder.getRecordNanos() / (tracedNanos - recorder.getRecordNanos()),
+                    Files.size(file) / 1024.0, recorder.getFrames(), recorder.getKeyframes());
+        }
+
+        long start = System.nanoTime();
+        TracePlayer player = TracePlayer.open(file, TilesetLoader.headless());
+        System.out.printf("open  %.1f ms, ticks %d..%d%n", (System.nanoTime() - start) / 1e6,
+                player.getFirstTick(), player.getLastTick());
+
+        // Random order, so some seeks go backwards
+        int mismatches = 0;
+        long seekNanos = 0;
+        long worst     = 0;
+        for (int i = 0; i < SEEKS; i++) {
+            int k = (i * 7) % SEEKS;
+            start = System.nanoTime();
+            player.seek(seekTicks[k]);
+            long nanos = System.nanoTime() - start;
+            seekNanos += nanos;
+            worst      = Math.max(worst, nanos);
+            if (player.getTick() != seekTicks[k] || !Arrays.equals(positions(player.getAgents()), expected[k])) mismatches++;
+        }
+        System.out.printf("seek  %d random ticks: mean %.2f ms, worst %.2f ms, %s%n", SEEKS,
+                seekNanos / 1e6 / SEEKS, worst / 1e6, mismatches == 0 ? "all identical to the live run" : mismatches + " DIFFERENT");
+
+        Files.deleteIfExists(file);
+        if (mismatches > 0) System.exit(1);
+    }
+
+    private static SimulationKernel createKernel(int size, int customers) {
+        SimulationContext context = new SimulationContext(new Grid(size, size, CELL_SIZE), SEED);
+        context.setLogging(false);
+        SimulationKernel kernel = SimulationKernel.hypermarket(context, TilesetLoader.headless());
+        kernel.setSpawning(customers, 2, 3);
+        return kernel;
+    }
+
+    /** Agent id and tile of everyone, sorted by id. */
+    private static int[] positions(List<? extends Person> persons) {
+        return persons.stream()
+                .sorted((a, b) -> Integer.compare(a.getAgentId(), b.getAgentId()))
+                .flatMapToInt(p -> IntStream.of(p.getAgentId(), p.getTileX(), p.getTileY()))
+                .toArray();
+    }
+}
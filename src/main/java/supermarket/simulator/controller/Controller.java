@@ -1,35 +1,45 @@
 package supermarket.simulator.controller;
 
 import supermarket.simulator.model.*;
-import supermarket.simulator.services.CharacterSpriteLoader;
 import supermarket.simulator.model.world.*;
-import supermarket.simulator.model.world.LevelBuilder;
+import supermarket.simulator.services.CharacterSpriteLoader;
 import supermarket.simulator.services.TilesetLoader;
+import supermarket.simulator.simulation.EventScheduler;
+import supermarket.simulator.simulation.SimulationKernel;
+import supermarket.simulator.trace.TracePlayer;
+import supermarket.simulator.trace.TraceRecorder;
 import javafx.fxml.FXML;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.Slider;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Path;
 
 public class Controller {
 
-    private static final int MAX_CUSTOMERS  = 5;
-    private static final int SPAWN_INTERVAL = 5;
+    private static final long SEED = 42L;
+    private static final int[] SPEEDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
 
-    private int tickCount = 0;
-    private final Map<Integer, Runnable> scheduledActions = new HashMap<>();
     private Grid grid;
-    private ObjectBuilder objectBuilder;
+    private SimulationKernel kernel;
     private GridRenderer renderer;
+    private final Camera camera = new Camera();   // survives a new renderer (replay)
+    private double dragX, dragY;
+    private SimulationLoop loop;
+    private int speedIndex = 0;
     private final TilesetLoader loader = new TilesetLoader();
-    private LevelBuilder levelBuilder;
-    private final List<Customer> customers = new ArrayList<>();
-    private int customerIdCounter = 0;
+
+    // Replay instead of simulation (player set), or recording of the simulation
+    private TracePlayer player;
+    private TraceRecorder recorder;
+    private boolean movingTimeline;   // timeline follows playback; that is no seek
+
+    @FXML
+    private Label speedLabel;
 
     @FXML
     private Button debugButton;
@@ -42,64 +52,131 @@ public class Controller {
     @FXML
     private Canvas canvas;
 
+    @FXML
+    private Slider timeline;
+
+    @FXML
+    private void slower() {
+        setSpeedIndex(speedIndex - 1);
+    }
+
+    @FXML
+    private void faster() {
+        setSpeedIndex(speedIndex + 1);
+    }
+
     public Controller() {}
 
-    public void setGrid(Grid grid) {
-        this.grid     = grid;
-        this.renderer = new GridRenderer(grid);
-        setupLevel();
-        setupObject();
+    /** Drag to pan, scroll to zoom around the cursor, double-click to see the whole floor. */
+    @FXML
+    private void initialize() {
+        if (canvas == null) return;
+        canvas.setOnMousePressed(e -> {
+            dragX = e.getX();
+            dragY = e.getY();
+            if (e.getClickCount() == 2 && grid != null) camera.fit(grid, canvas.getWidth(), canvas.getHeight());
+        });
+        canvas.setOnMouseDragged(e -> {
+            camera.pan(e.getX() - dragX, e.getY() - dragY);
+            dragX = e.getX();
+            dragY = e.getY();
+        });
+        canvas.setOnScroll(e -> camera.zoomAt(Math.pow(1.1, e.getDeltaY() / 40), e.getX(), e.getY()));
     }
 
-    private void setupLevel() {
-        levelBuilder = new LevelBuilder(grid, loader);
-        levelBuilder.buildLevel();
+    /**
+     * Simulate an empty store of {@code cols} x {@code rows} cells. The grid stays inside the
+     * module: this package is exported, {@code model.world} is not.
+     */
+    public void newStore(int cols, int rows, int cellSize) {
+        this.grid     = new Grid(cols, rows, cellSize);
+        this.renderer = new GridRenderer(grid);
+        renderer.setCamera(camera);
+        this.kernel   = SimulationKernel.stockStore(new SimulationContext(grid, SEED), loader);
+        kernel.setSpriteLoaders(CharacterSpriteLoader::randomCustomer);
+        kernel.getContext().setLogging(false);
+        kernel.setSpawning(20, 10, 3);
     }
-    private void setupObject() {
-        objectBuilder = new ObjectBuilder(grid, loader);
-        objectBuilder.buildObjects();
+
+    /** Record the simulation to {@code file} from the next tick on; see {@link #stop()}. */
+    public void record(Path file) throws IOException {
+        recorder = TraceRecorder.attach(kernel, file, TraceRecorder.DEFAULT_KEYFRAME_INTERVAL);
     }
 
+    /**
+     * Play {@code file} back instead of simulating. The speed buttons work as usual and the
+     * timeline seeks to any tick.
+     */
+    public void replay(Path file) throws IOException {
+        this.player   = TracePlayer.open(file, loader);
+        this.grid     = player.getGrid();
+        this.renderer = new GridRenderer(grid);
+        renderer.setCamera(camera);
+        player.setSpriteLoaders(CharacterSpriteLoader::randomCustomer);
+        player.step();
+
+        if (timeline != null) {
+            timeline.setMin(player.getFirstTick());
+            timeline.setMax(player.getLastTick());
+            timeline.setDisable(false);
+            timeline.valueProperty().addListener((property, old, value) -> {
+                if (!movingTimeline) player.seek(value.longValue());
+            });
+        }
+    }
 
+    /** Start the game loop: ticks at the chosen speed, one render per screen frame. */
+    public void start() {
+        loop = new SimulationLoop(player != null ? player::step : kernel::tick, this::draw);
+        setSpeedIndex(speedIndex);
+        loop.start();
+    }
 
+    /** One tick and a redraw, for callers that drive the simulation themselves. */
     public void tick() {
-        tickCount++;
+        kernel.tick();
+        draw(1.0);
+    }
 
-        if (scheduledActions.containsKey(tickCount)) {
-            scheduledActions.get(tickCount).run();
-        }
+    private void draw(double alpha) {
+        if (canvas == null || grid == null) return;
 
-        if (tickCount % SPAWN_INTERVAL == 0 && customers.size() < MAX_CUSTOMERS) {
-            //Start simulation
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        long tick;
+        if (player != null) {
+            renderer.render(gc, player.getAgents(), alpha);
+            tick = player.getTick();
+            if (timeline != null && !timeline.isValueChanging()) {
+                movingTimeline = true;
+                timeline.setValue(tick);
+                movingTimeline = false;
+            }
+        } else {
+            renderer.render(gc, kernel.getCustomers(), alpha);
+            tick = kernel.getTickCount();
         }
-        levelBuilder.updateAll();
-        objectBuilder.updateAll();
 
-        for (Customer c : customers) {
-            c.update(grid);
+        if (speedLabel != null && loop != null) {
+            speedLabel.setText(String.format(" %dx  (%.0f ticks/s, tick %d, render %.1f ms, zoom %.0f%%)%s",
+                    loop.getSpeed(), loop.getTicksPerSecond(), tick, renderer.getLastRenderNanos() / 1e6,
+                    camera.getZoom() * 100, player != null ? "  replay" : ""));
         }
-
-        // Log en verwijder inactieve customers
-        customers.removeIf(c -> {
-            if (!c.isActive()) {
-                System.out.println("[Tick " + tickCount + "] Customer #" + c.getId()
-                        + " removed from simulation.");
-                return true;
-            }
-            return false;
-        });
-
-        draw();
     }
 
-    private void draw() {
-        if (canvas == null || grid == null) return;
+    /** Stop the loop and finish the recording, if any. */
+    public void stop() throws IOException {
+        if (loop != null) loop.stop();
+        if (recorder != null) recorder.close();
+    }
 
-        GraphicsContext gc = canvas.getGraphicsContext2D();
-        renderer.render(gc, customers);
+    private void setSpeedIndex(int index) {
+        speedIndex = Math.max(0, Math.min(SPEEDS.length - 1, index));
+        if (loop != null) loop.setSpeed(SPEEDS[speedIndex]);
     }
 
-    public void scheduleAction(int tick, Runnable action) {
-        scheduledActions.put(tick, action);
+    /** Run {@code action} at the start of {@code tick}; running the returned handle cancels it. */
+    public Runnable scheduleAction(long tick, Runnable action) {
+        EventScheduler.ScheduledEvent event = kernel.scheduleAction(tick, action);
+        return event::cancel;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package supermarket.simulator.controller;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Fixed-step game loop on the JavaFX pulse: simulation ticks at a steady simulated rate,
+ * rendering once per frame at whatever rate the screen runs.
+ *
+ * Real time is collected in an accumulator; every full {@link #TICK_NANOS} (divided by the
+ * speed multiplier) is one tick. What is left over is passed to the renderer as a fraction
+ * (0..1) of the next tick, so persons are drawn between their last two positions and move
+ * smoothly at 60 FPS even at 1x.
+ *
+ * Catching up is capped: at most {@link #MAX_STEPS_PER_FRAME} ticks and
+ * {@link #FRAME_BUDGET_NANOS} of simulation per frame, and long pauses (a dragged window,
+ * a GC) count as one short frame. Ticks that do not fit are dropped rather than owed, so a
+ * speed the machine can not reach slows the simulation down instead of freezing the window.
+ */
+public class SimulationLoop extends AnimationTimer {
+
+    /** One tick at 1x, the 100 ms of the old Timeline. */
+    public static final long TICK_NANOS = 100_000_000L;
+    public static final int MIN_SPEED   = 1;
+    public static final int MAX_SPEED   = 1000;
+
+    private static final long MAX_FRAME_NANOS     = 250_000_000L;
+    private static final long FRAME_BUDGET_NANOS  = 12_000_000L;   // leave room for rendering at 60 FPS
+    private static final int  MAX_STEPS_PER_FRAME = 2_000;
+
+    private final Runnable step;
+    private final DoubleConsumer render;
+
+    private int speed = 1;
+    private long lastFrame = -1;
+    private long accumulator;     // simulated nanos not yet turned into ticks
+    private long droppedTicks;
+
+    // Measured rate, refreshed once a second
+    private long rateWindowStart = -1;
+    private long rateTicks;
+    private double ticksPerSecond;
+
+    /**
+     * @param step   advances the simulation by one tick
+     * @param render draws the world; receives how far (0..1) real time is into the next tick
+     */
+    public SimulationLoop(Runnable step, DoubleConsumer render) {
+        this.step   = step;
+        this.render = render;
+    }
+
+    @Override
+    public void handle(long now) {
+        if (lastFrame < 0) {
+            lastFrame       = now;
+            rateWindowStart = now;
+        }
+        long frame = Math.min(now - lastFrame, MAX_FRAME_NANOS);
+        lastFrame  = now;
+
+        accumulator += frame * speed;
+        long deadline = System.nanoTime() + FRAME_BUDGET_NANOS;
+        int steps = 0;
+        while (accumulator >= TICK_NANOS) {
+            if (steps == MAX_STEPS_PER_FRAME || System.nanoTime() > deadline) {
+                // Can not keep up: forget the backlog instead of spiralling
+                droppedTicks += accumulator / TICK_NANOS;
+                accumulator  %= TICK_NANOS;
+                break;
+            }
+            step.run();
+            accumulator -= TICK_NANOS;
+            steps++;
+        }
+        rateTicks += steps;
+
+        if (now - rateWindowStart >= 1_000_000_000L) {
+            ticksPerSecond  = rateTicks * 1e9 / (now - rateWindowStart);
+            rateTicks       = 0;
+            rateWindowStart = now;
+        }
+
+        render.accept(accumulator / (double) TICK_NANOS);
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        lastFrame = -1;   // no catch-up for the time spent stopped
+    }
+
+    /** Simulated ticks per real-time tick, clamped to [MIN_SPEED, MAX_SPEED]. */
+    public void setSpeed(int speed) {
+        this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+    }
+
+    public int getSpeed()              { return speed; }
+    /** Ticks actually run per second over the last second; speed × 10 when keeping up. */
+    public double getTicksPerSecond()  { return ticksPerSecond; }
+    public long getDroppedTicks()      { return droppedTicks; }
+}
@@ -0,0 +1,273 @@
+package supermarket.simulator.model;
+
+import java.util.Arrays;
+
+/**
+ * Positions and animation state of all persons of one simulation, in parallel primitive
+ * arrays instead of one heap object per person. A {@link Person} is a handle: it holds its
+ * slot in here and keeps only what is not touched every tick (paths, planners, goals in
+ * flight) as fields of its own.
+ *
+ * Slots are dense: a person leaving the store ({@link Person#detach()}) is replaced by the
+ * last one, so the per-tick passes below run over {@code 0..size} without gaps or
+ * indirection. That is where the layout pays off: {@link #animate()} streams through a few
+ * arrays instead of chasing 100k object pointers, and runs as Vector API loops when
+ * {@code jdk.incubator.vector} is in the boot layer (start with
+ * {@code --add-modules jdk.incubator.vector}); scalar loops otherwise, with the same result.
+ *
+ * The store also keeps a row index: per tile row a linked list of the slots standing on it,
+ * updated as persons move ({@link #setTile}). The renderer walks the rows in view instead of
+ * scanning everyone for every row.
+ *
+ * Slots move, so tables outside the store that keep something per person (reservations, the
+ * trace recorder) use the person's index instead ({@link Person#getAgentIndex()}): fixed while
+ * the person is attached and handed out again after it detaches. Agent ids only ever grow;
+ * indices stay below the largest number of persons that were in the store at once.
+ *
+ * Not thread-safe. Persons may read and write their own slot in parallel (deciding), but
+ * attaching, detaching, moving and the bulk passes happen between the phases of a tick.
+ */
+public final class AgentStore {
+
+    /** Tiles per tick the visual position moves toward the tile. */
+    public static final double ANIMATION_SPEED = 0.15;
+    /** Ticks per sprite frame while walking. */
+    public static final int ANIM_SPEED = 2;
+
+    private static final boolean VECTOR_AVAILABLE =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                    && !"false".equals(System.getProperty("supermarket.vector"));
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size;
+    private boolean vectorized = VECTOR_AVAILABLE;
+
+    // One entry per slot; package-private so Person and the vector loops use them directly
+    Person[] owners   = new Person[INITIAL_CAPACITY];
+    int[] tileX       = new int[INITIAL_CAPACITY];
+    int[] tileY       = new int[INITIAL_CAPACITY];
+    double[] visualX  = new double[INITIAL_CAPACITY];   // smooth position, moves toward the tile
+    double[] visualY  = new double[INITIAL_CAPACITY];
+    double[] prevX    = new double[INITIAL_CAPACITY];   // visual position at the start of the tick
+    double[] prevY    = new double[INITIAL_CAPACITY];
+    int[] goalX       = new int[INITIAL_CAPACITY];
+    int[] goalY       = new int[INITIAL_CAPACITY];
+    int[] animFrame   = new int[INITIAL_CAPACITY];
+    int[] animTimer   = new int[INITIAL_CAPACITY];
+    int[] walking     = new int[INITIAL_CAPACITY];      // 1 while the person has a path to follow
+
+    // Row index: per tile row the first slot on it, per slot the next and previous on its row; -1 = none
+    private int[] rowHead = new int[0];
+    private int[] rowNext = new int[INITIAL_CAPACITY];
+    private int[] rowPrev = new int[INITIAL_CAPACITY];
+
+    // Indices of persons that detached, handed out again before new ones (last in, first out)
+    private int[] freeIndices = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int indexCount;
+
+    // -------------------------------------------------------------------------
+    // Slots
+    // -------------------------------------------------------------------------
+
+    /** New slot for {@code person} on (x, y), standing still. */
+    int attach(Person person, int x, int y) {
+        if (size == owners.length) grow();
+        int slot = size++;
+        owners[slot]    = person;
+        tileX[slot]     = x;
+        tileY[slot]     = y;
+        visualX[slot]   = x;
+        visualY[slot]   = y;
+        prevX[slot]     = x;
+        prevY[slot]     = y;
+        goalX[slot]     = 0;
+        goalY[slot]     = 0;
+        animFrame[slot] = 0;
+        animTimer[slot] = 0;
+        walking[slot]   = 0;
+        link(slot);
+        person.agentIndex = freeCount > 0 ? freeIndices[--freeCount] : indexCount++;
+        return slot;
+    }
+
+    /** Free {@code slot}; the last person moves into it. */
+    void detach(int slot) {
+        unlink(slot);
+        releaseIndex(owners[slot]);
+        int last = --size;
+        if (slot != last) {
+            owners[slot]    = owners[last];
+            tileX[slot]     = tileX[last];
+            tileY[slot]     = tileY[last];
+            visualX[slot]   = visualX[last];
+            visualY[slot]   = visualY[last];
+            prevX[slot]     = prevX[last];
+            prevY[slot]     = prevY[last];
+            goalX[slot]     = goalX[last];
+            goalY[slot]     = goalY[last];
+            animFrame[slot] = animFrame[last];
+            animTimer[slot] = animTimer[last];
+            walking[slot]   = walking[last];
+            owners[slot].slot = slot;
+            relink(last, slot);
+        }
+        owners[last] = null;
+    }
+
+    private void releaseIndex(Person person) {
+        if (freeCount == freeIndices.length) freeIndices = Arrays.copyOf(freeIndices, freeCount * 2);
+        freeIndices[freeCount++] = person.agentIndex;
+        person.agentIndex = -1;
+    }
+
+    /** Put a person on tile (x, y), moving it to another row of the index if needed. */
+    void setTile(int slot, int x, int y) {
+        tileX[slot] = x;
+        if (tileY[slot] == y) return;
+        unlink(slot);
+        tileY[slot] = y;
+        link(slot);
+    }
+
+    private void grow() {
+        int capacity = owners.length * 2;
+        owners    = Arrays.copyOf(owners, capacity);
+        tileX     = Arrays.copyOf(tileX, capacity);
+        tileY     = Arrays.copyOf(tileY, capacity);
+        visualX   = Arrays.copyOf(visualX, capacity);
+        visualY   = Arrays.copyOf(visualY, capacity);
+        prevX     = Arrays.copyOf(prevX, capacity);
+        prevY     = Arrays.copyOf(prevY, capacity);
+        goalX     = Arrays.copyOf(goalX, capacity);
+        goalY     = Arrays.copyOf(goalY, capacity);
+        animFrame = Arrays.copyOf(animFrame, capacity);
+        animTimer = Arrays.copyOf(animTimer, capacity);
+        walking   = Arrays.copyOf(walking, capacity);
+        rowNext   = Arrays.copyOf(rowNext, capacity);
+        rowPrev   = Arrays.copyOf(rowPrev, capacity);
+    }
+
+    // -------------------------------------------------------------------------
+    // Row index
+    // -------------------------------------------------------------------------
+
+    private void link(int slot) {
+        int row = tileY[slot];
+        if (row >= rowHead.length) {
+            int old = rowHead.length;
+            rowHead = Arrays.copyOf(rowHead, Math.max(row + 1, old * 2));
+            Arrays.fill(rowHead, old, rowHead.length, -1);
+        }
+        int head = rowHead[row];
+        rowPrev[slot] = -1;
+        rowNext[slot] = head;
+        if (head >= 0) rowPrev[head] = slot;
+        rowHead[row] = slot;
+    }
+
+    private void unlink(int slot) {
+        int prev = rowPrev[slot];
+        int next = rowNext[slot];
+        if (prev >= 0) rowNext[prev] = next;
+        else rowHead[tileY[slot]] = next;
+        if (next >= 0) rowPrev[next] = prev;
+    }
+
+    /** The person in slot {@code from} moved to slot {@code to}; point its neighbours there. */
+    private void relink(int from, int to) {
+        int prev = rowPrev[from];
+        int next = rowNext[from];
+        rowPrev[to] = prev;
+        rowNext[to] = next;
+        if (prev >= 0) rowNext[prev] = to;
+        else rowHead[tileY[to]] = to;
+        if (next >= 0) rowPrev[next] = to;
+    }
+
+    /** First slot on tile row {@code row}, or -1; continue with {@link #nextInRow}. */
+    public int firstInRow(int row) { return row >= 0 && row < rowHead.length ? rowHead[row] : -1; }
+    /** Next slot on the same row, or -1. The order within a row is not defined. */
+    public int nextInRow(int slot) { return rowNext[slot]; }
+    /** The person in a slot. */
+    public Person getPerson(int slot) { return owners[slot]; }
+    public int getTileX(int slot)     { return tileX[slot]; }
+
+    // -------------------------------------------------------------------------
+    // Bulk passes
+    // -------------------------------------------------------------------------
+
+    /**
+     * Start of a tick for everyone in the store: remember the visual position, move it one
+     * {@link #ANIMATION_SPEED} step toward the tile, and advance the walk animation of those
+     * with a path (back to the first frame for the others).
+     */
+    public void animate() {
+        if (vectorized) {
+            VectorAnimator.animate(this, size);
+        } else {
+            animatePositions(0, size);
+            animateFrames(0, size);
+        }
+    }
+
+    /** {@link #animate()} for one person, e.g. one updating on its own. */
+    void animate(int slot) {
+        animatePositions(slot, slot + 1);
+        animateFrames(slot, slot + 1);
+    }
+
+    // Scalar loops for slots from..to; also the tails of the vector loops
+
+    void animatePositions(int from, int to) {
+        for (int i = from; i < to; i++) {
+            prevX[i]   = visualX[i];
+            prevY[i]   = visualY[i];
+            visualX[i] = moveToward(visualX[i], tileX[i]);
+            visualY[i] = moveToward(visualY[i], tileY[i]);
+        }
+    }
+
+    void animateFrames(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (walking[i] != 0) {
+                if (++animTimer[i] >= ANIM_SPEED) {
+                    animTimer[i] = 0;
+                    animFrame[i]++;
+                }
+            } else {
+                // Stilstaand: reset naar eerste frame
+                animFrame[i] = 0;
+                animTimer[i] = 0;
+            }
+        }
+    }
+
+    static double moveToward(double current, double target) {
+        if (Math.abs(current - target) <= ANIMATION_SPEED) return target;
+        return current + Math.signum(target - current) * ANIMATION_SPEED;
+    }
+
+    // -------------------------------------------------------------------------
+    // Settings
+    // -------------------------------------------------------------------------
+
+    /** True when the Vector API module is there (and not switched off with -Dsupermarket.vector=false). */
+    public static boolean isVectorAvailable() { return VECTOR_AVAILABLE; }
+
+    /**
+     * Use the Vector API loops (default when available) or the scalar ones, e.g. to compare.
+     * @return whether the vector loops are used now
+     */
+    public boolean setVectorized(boolean vectorized) {
+        this.vectorized = vectorized && VECTOR_AVAILABLE;
+        return this.vectorized;
+    }
+
+    public boolean isVectorized() { return vectorized; }
+    /** Persons in the store. */
+    public int size()             { return size; }
+    /** One more than the highest agent index handed out: what a per-index table needs to hold. */
+    public int getIndexCount()    { return indexCount; }
+}
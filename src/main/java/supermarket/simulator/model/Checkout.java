@@ -1,14 +1,26 @@
 package supermarket.simulator.model;
 
 import javafx.scene.image.Image;
+import supermarket.simulator.model.enums.EventType;
 import supermarket.simulator.model.world.Grid;
 import supermarket.simulator.model.world.Tile;
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.function.IntFunction;
 
 /**
- * Represents a checkout counter where customers pay for their items
+ * Represents a checkout counter where customers pay for their items.
+ *
+ * Customers join the queue when they get close (see {@link Customer}); the cashier serves
+ * the first queued customer who stands at the counter (the access tile). The wait from joining
+ * to being served, counted in calls to {@link #update()} (ticks), goes into a histogram: the
+ * statistics take the same memory after an hour as after a week.
  */
 public class Checkout extends SupermarketObject {
     private Queue<Customer> queue;
@@ -18,6 +30,11 @@ public class Checkout extends SupermarketObject {
     private int itemsProcessed;
     private int processingTime;
 
+    // Statistics: own clock so the wait is known without a reference to the simulation
+    private long[] joinedAt = new long[8];   // parallel to queue: clock when each one joined
+    private final WaitHistogram waits = new WaitHistogram();
+    private long clock;
+
     public Checkout(int x, int y, Image sprite, int checkoutId) {
         super(x, y, 1, 2, true, sprite, "Checkout");
         this.queue           = new LinkedList<>();
@@ -55,6 +72,7 @@ public class Checkout extends SupermarketObject {
 
     @Override
     public void update() {
+        clock++;
         if (currentCustomer != null) {
             processCurrentCustomer();
         } else if (!queue.isEmpty()) {
@@ -82,17 +100,36 @@ public class Checkout extends SupermarketObject {
     public int getAccessY() { return y + height; }
 
     public void addToQueue(Customer customer) {
+        if (queue.size() == joinedAt.length) joinedAt = Arrays.copyOf(joinedAt, joinedAt.length * 2);
+        joinedAt[queue.size()] = clock;
         queue.add(customer);
-        System.out.println("Customer added to checkout " + checkoutId + " queue. Size: " + queue.size());
+        customer.getContext().emit(EventType.QUEUE_JOINED, customer.getAgentId(), checkoutId);
+        log(customer, "Customer added to checkout " + checkoutId + " queue. Size: " + queue.size());
+    }
+
+    /** True while the customer is in the queue or being served. */
+    public boolean isWaiting(Customer customer) {
+        return currentCustomer == customer || queue.contains(customer);
     }
 
+    /** Serve the first queued customer at the counter; the others may still be on their way. */
     private void startProcessingNextCustomer() {
-        currentCustomer = queue.poll();
-        if (currentCustomer != null) {
+        Iterator<Customer> customers = queue.iterator();
+        for (int i = 0; customers.hasNext(); i++) {
+            Customer customer = customers.next();
+            if (customer.getTileX() != getAccessX() || customer.getTileY() != getAccessY()) continue;
+
+            long since = joinedAt[i];
+            customers.remove();
+            System.arraycopy(joinedAt, i + 1, joinedAt, i, queue.size() - i);
+            waits.add((int) (clock - since));
+            customer.getContext().emit(EventType.SERVICE_STARTED, customer.getAgentId(), (int) (clock - since));
+            currentCustomer = customer;
             processingTime = currentCustomer.getInventory() != null
                     ? currentCustomer.getInventory().getItemCount() * 2
                     : 5;
-            System.out.println("Checkout " + checkoutId + " started processing customer");
+            log(customer, "Checkout " + checkoutId + " started processing customer");
+            return;
         }
     }
 
@@ -103,15 +140,64 @@ public class Checkout extends SupermarketObject {
 
     private void finishProcessingCustomer() {
         if (currentCustomer != null) {
+            int items = 0;
             if (currentCustomer.getInventory() != null) {
-                itemsProcessed += currentCustomer.getInventory().getItemCount();
+                items = currentCustomer.getInventory().getItemCount();
+                itemsProcessed += items;
                 currentCustomer.getInventory().clear();
             }
-            System.out.println("Checkout " + checkoutId + " finished. Total items: " + itemsProcessed);
+            currentCustomer.getContext().emit(EventType.SERVICE_FINISHED, currentCustomer.getAgentId(), items);
+            log(currentCustomer, "Checkout " + checkoutId + " finished. Total items: " + itemsProcessed);
             currentCustomer = null;
         }
     }
 
+    // -------------------------------------------------------------------------
+    // Snapshot
+    // -------------------------------------------------------------------------
+
+    /** Queue and counter as agent ids, plus the statistics so far. */
+    public void writeState(SnapshotWriter out) throws IOException {
+        out.writeBoolean(isOpen);
+        out.writeVarInt(itemsProcessed);
+        out.writeSignedVarInt(processingTime);
+        out.writeVarLong(clock);
+        out.writeVarInt(currentCustomer != null ? currentCustomer.getAgentId() : 0);
+
+        out.writeVarInt(queue.size());
+        int i = 0;
+        for (Customer customer : queue) {
+            out.writeVarInt(customer.getAgentId());
+            out.writeVarLong(clock - joinedAt[i++]);
+        }
+        waits.writeState(out);
+    }
+
+    /** @param customers the restored customer with a given agent id, null if there is none */
+    public void readState(SnapshotReader in, IntFunction<Customer> customers) throws IOException {
+        isOpen          = in.readBoolean();
+        itemsProcessed  = in.readVarInt();
+        processingTime  = in.readSignedVarInt();
+        clock           = in.readVarLong();
+        int serving     = in.readVarInt();
+        currentCustomer = serving != 0 ? customer(customers, serving) : null;
+
+        queue.clear();
+        int queued = in.readCount();
+        if (joinedAt.length < queued) joinedAt = new long[queued];
+        for (int i = 0; i < queued; i++) {
+            queue.add(customer(customers, in.readVarInt()));
+            joinedAt[i] = clock - in.readVarLong();
+        }
+        waits.readState(in);
+    }
+
+    private static Customer customer(IntFunction<Customer> customers, int agentId) throws IOException {
+        Customer customer = customers.apply(agentId);
+        if (customer == null) throw new IOException("Corrupt snapshot: checkout refers to unknown agent " + agentId);
+        return customer;
+    }
+
     public void open()  { isOpen = true;  System.out.println("Checkout " + checkoutId + " open"); }
     public void close() { isOpen = false; System.out.println("Checkout " + checkoutId + " closed"); }
 
@@ -121,4 +207,10 @@ public class Checkout extends SupermarketObject {
     public int getCheckoutId()            { return checkoutId; }
     public int getItemsProcessed()        { return itemsProcessed; }
     public Customer getCurrentCustomer()  { return currentCustomer; }
+    /** Ticks the served customers waited between joining the queue and being served; live, do not change. */
+    public WaitHistogram getWaits()       { return waits; }
+
+    private static void log(Customer customer, String message) {
+        if (customer.getContext().isLogging()) System.out.println(message);
+    }
 }
\ No newline at end of file
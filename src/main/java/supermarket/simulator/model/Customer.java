@@ -1,54 +1,127 @@
 package supermarket.simulator.model;
 
 import javafx.scene.paint.Color;
-import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.model.enums.EventType;
 import supermarket.simulator.services.CharacterSpriteLoader;
-import supermarket.simulator.Pathfinding.TileReservationSystem;
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Queue;
 
 public class Customer extends Person {
 
     private static final int CUSTOMER_PRIORITY = 10;
-    private static int nextId = 1;
+    private static final int JOIN_QUEUE_DISTANCE = 3;   // tiles from the counter: join the checkout queue
 
-    private final int id;
+    /** A tile to walk to, optionally with the object to use there. */
+    private record Stop(int x, int y, SupermarketObject target) {}
+
+    private int id;
     private final Inventory inventory = new Inventory();
-    private final Queue<int[]> destinations = new LinkedList<>();
+    private final Queue<Stop> destinations = new ArrayDeque<>();
+    private Stop current;
+    private Checkout queuedAt;   // non-null from joining the queue until served
     private boolean active = true;
 
-    public Customer(int startX, int startY, Grid grid, CharacterSpriteLoader spriteLoader) {
-        super(startX, startY, CUSTOMER_PRIORITY, grid, spriteLoader);
-        this.id = nextId++;
-        System.out.println("Customer #" + id + " spawned at [" + startX + "," + startY + "]");
+    public Customer(int startX, int startY, SimulationContext context, CharacterSpriteLoader spriteLoader) {
+        super(startX, startY, CUSTOMER_PRIORITY, context, spriteLoader);
+        this.id = context.nextCustomerId();
+        log("spawned at [" + startX + "," + startY + "]");
+        context.emit(EventType.SPAWNED, agentId, 0);
+    }
+
+    private Customer(SimulationContext context, CharacterSpriteLoader spriteLoader, int agentId, int id) {
+        super(agentId, CUSTOMER_PRIORITY, context, spriteLoader);
+        this.id = id;
+    }
+
+    /**
+     * A customer who left comes back as a new one on (startX, startY), with new ids and an
+     * empty basket and shopping list; see {@link supermarket.simulator.simulation.CustomerPool}.
+     */
+    public void respawn(int startX, int startY, CharacterSpriteLoader spriteLoader) {
+        if (active) throw new IllegalStateException("Customer #" + id + " is still shopping");
+        reset(startX, startY, spriteLoader);
+        this.id = getContext().nextCustomerId();
+        inventory.clear();
+        destinations.clear();
+        current  = null;
+        queuedAt = null;
+        active   = true;
+        log("spawned at [" + startX + "," + startY + "]");
+        getContext().emit(EventType.SPAWNED, agentId, 0);
+    }
+
+    /** Customer coming back from a snapshot with the ids it had; the rest follows from {@link #readState}. */
+    public static Customer restore(int agentId, int id, SimulationContext context, CharacterSpriteLoader spriteLoader) {
+        return new Customer(context, spriteLoader, agentId, id);
     }
 
+    /** Runs after every update, also when the update was split into decide and apply. */
     @Override
-    public void update(Grid grid) {
-        super.update(grid);
+    protected void afterStep() {
+        if (current != null && current.target() instanceof Checkout checkout) {
+            // Done once served, also when the checkout was closed before we got there
+            if (atCheckout(checkout)) moveToNextOrLeave();
+            return;
+        }
+        if (!hasReachedGoal()) return;
 
-        if (hasReachedGoal() && !destinations.isEmpty()) {
-            moveToNextDestination();
+        if (current != null && current.target() != null) {
+            current.target().onInteract(this);
         }
+        moveToNextOrLeave();
+    }
 
-        if (hasReachedGoal() && destinations.isEmpty()) {
+    private void moveToNextOrLeave() {
+        if (destinations.isEmpty()) {
             leave();
+        } else {
+            moveToNextDestination();
         }
     }
 
     /**
      * Called when the customer has reached all destinations (including the exit).
-     * Releases their tile reservation and marks them as inactive.
+     * Releases their tile reservations (also those ahead in time) and marks them as inactive.
      */
     private void leave() {
-        System.out.println("Customer #" + id + " has left the supermarket.");
+        log("has left the supermarket.");
         active = false;
-        TileReservationSystem.getInstance().release(this);
+        releaseReservations();
+        getContext().emit(EventType.LEFT, agentId, 0);
     }
 
     public void addDestination(int x, int y) {
-        destinations.add(new int[]{x, y});
+        destinations.add(new Stop(x, y, null));
+    }
+
+    /** Walk to the tile and use {@code target} there, e.g. take an item from a shelf. */
+    public void addDestination(int x, int y, SupermarketObject target) {
+        destinations.add(new Stop(x, y, target));
+    }
+
+    /** Walk to the checkout, queue up and wait until the cashier is done with us. */
+    public void addCheckout(Checkout checkout) {
+        destinations.add(new Stop(checkout.getAccessX(), checkout.getAccessY(), checkout));
+    }
+
+    /**
+     * Checkout stop: join the queue once close to the counter, then wait to be served.
+     * @return true when done at this checkout (served, or it was closed)
+     */
+    private boolean atCheckout(Checkout checkout) {
+        if (queuedAt == null) {
+            int distance = Math.abs(getTileX() - checkout.getAccessX()) + Math.abs(getTileY() - checkout.getAccessY());
+            if (distance > JOIN_QUEUE_DISTANCE) return false;
+            checkout.onInteract(this);
+            queuedAt = checkout;
+        }
+        if (checkout.isWaiting(this)) return false;
+        queuedAt = null;
+        return true;
     }
 
     public void startShopping() {
@@ -56,13 +129,59 @@ public class Customer extends Person {
     }
 
     private void moveToNextDestination() {
-        int[] next = destinations.poll();
+        Stop next = destinations.poll();
+        current = next;
         if (next != null) {
-            System.out.println("Customer #" + id + " moving to [" + next[0] + "," + next[1] + "]");
-            moveTo(next[0], next[1]);
+            log("moving to [" + next.x() + "," + next.y() + "]");
+            moveTo(next.x(), next.y());
         }
     }
 
+    // -------------------------------------------------------------------------
+    // Snapshot
+    // -------------------------------------------------------------------------
+
+    /** Movement state, basket and the stops still to make; targets must be registered with the writer. */
+    @Override
+    public void writeState(SnapshotWriter out) throws IOException {
+        super.writeState(out);
+        out.writeBoolean(active);
+        inventory.writeState(out);
+        writeStop(out, current);
+        out.writeVarInt(destinations.size());
+        for (Stop stop : destinations) writeStop(out, stop);
+        out.writeObject(queuedAt);
+    }
+
+    @Override
+    public void readState(SnapshotReader in) throws IOException {
+        super.readState(in);
+        active = in.readBoolean();
+        inventory.readState(in);
+        current = readStop(in);
+        destinations.clear();
+        for (int i = in.readCount(); i > 0; i--) destinations.add(readStop(in));
+        queuedAt = (Checkout) in.readObject();
+    }
+
+    private void writeStop(SnapshotWriter out, Stop stop) throws IOException {
+        out.writeBoolean(stop != null);
+        if (stop == null) return;
+        out.writeVarInt(stop.y() * getContext().getGrid().getWidth() + stop.x());
+        out.writeObject(stop.target());
+    }
+
+    private Stop readStop(SnapshotReader in) throws IOException {
+        if (!in.readBoolean()) return null;
+        int width = getContext().getGrid().getWidth();
+        int tile  = in.readVarInt();
+        return new Stop(tile % width, tile / width, in.readObject());
+    }
+
+    private void log(String message) {
+        if (getContext().isLogging()) System.out.println("Customer #" + id + " " + message);
+    }
+
     @Override
     protected Color getFallbackColor() {
         return Color.BLUE;
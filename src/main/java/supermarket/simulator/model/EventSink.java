@@ -0,0 +1,12 @@
+package supermarket.simulator.model;
+
+import supermarket.simulator.model.enums.EventType;
+
+/**
+ * Receives the domain events of one simulation (see {@link SimulationContext#setEventSink}).
+ * Called on the simulation thread, in the order things happen within the tick.
+ */
+@FunctionalInterface
+public interface EventSink {
+    void event(EventType type, int agentId, int value);
+}
@@ -1,16 +1,22 @@
 package supermarket.simulator.model;
 
-import java.util.HashMap;
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 
 public class Inventory {
+    // In the order the items were taken: Item has identity hashing, so a HashMap would list them
+    // differently after a snapshot is loaded and saving again would not give the same bytes
     private final Map<Item, Integer> items;
 
     //  lege constructor
     public Inventory() {
-        this.items = new HashMap<>();
+        this.items = new LinkedHashMap<>();
     }
 
     public void addItem(Item item) {
@@ -34,4 +40,20 @@ public class Inventory {
     public void clear() {
         items.clear();
     }
-}
\ No newline at end of file
+
+    /** Items and their counts; an item taken from a shelf is the same object as the one still on it. */
+    public void writeState(SnapshotWriter out) throws IOException {
+        out.writeVarInt(items.size());
+        for (Map.Entry<Item, Integer> entry : items.entrySet()) {
+            Item.write(out, entry.getKey());
+            out.writeVarInt(entry.getValue());
+        }
+    }
+
+    public void readState(SnapshotReader in) throws IOException {
+        items.clear();
+        for (int i = in.readCount(); i > 0; i--) {
+            items.put(Item.read(in), in.readVarInt());
+        }
+    }
+}
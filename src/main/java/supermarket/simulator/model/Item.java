@@ -1,5 +1,11 @@
 package supermarket.simulator.model;
 
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.util.List;
+
 public class Item {
     private final String name;
     private final double price;
@@ -12,6 +18,32 @@ public class Item {
     public String getName() { return name; }
     public double getPrice() { return price; }
 
+    /** Written once per snapshot; every later use refers back, so shared items stay shared. */
+    static void write(SnapshotWriter out, Item item) throws IOException {
+        if (out.writeReference(item)) return;
+        out.writeSymbol(item.name);
+        out.writeDouble(item.price);
+    }
+
+    static Item read(SnapshotReader in) throws IOException {
+        Item known = in.readReference(Item.class);
+        if (known != null) return known;
+        Item item = new Item(in.readSymbol(), in.readDouble());
+        in.addReference(item);
+        return item;
+    }
+
+    /** Items of a shelf or fridge, in stock order. */
+    static void writeAll(SnapshotWriter out, List<Item> items) throws IOException {
+        out.writeVarInt(items.size());
+        for (Item item : items) write(out, item);
+    }
+
+    static void readAll(SnapshotReader in, List<Item> items) throws IOException {
+        items.clear();
+        for (int i = in.readCount(); i > 0; i--) items.add(read(in));
+    }
+
     @Override
     public String toString() {
         return name + " (€" + price + ")";
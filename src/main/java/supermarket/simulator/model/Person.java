@@ -1,123 +1,408 @@
 package supermarket.simulator.model;
 
 import supermarket.simulator.model.enums.Direction;
-import supermarket.simulator.Pathfinding.GridSearch;
+import supermarket.simulator.Pathfinding.CooperativeSearch;
+import supermarket.simulator.Pathfinding.DStarLite;
+import supermarket.simulator.Pathfinding.FlowField;
+import supermarket.simulator.Pathfinding.GridPath;
+import supermarket.simulator.Pathfinding.PathRequestService;
+import supermarket.simulator.Pathfinding.PathStrategy;
+import supermarket.simulator.Pathfinding.SpaceTimeReservationTable;
 import supermarket.simulator.Pathfinding.TileReservationSystem;
 import supermarket.simulator.model.world.Grid;
 import supermarket.simulator.services.CharacterSpriteLoader;
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
-import java.util.List;
+import java.io.IOException;
 
 /**
  * Abstract base class for all persons (Customer, Employee).
  * Features:
- *  - A* pathfinding
- *  - Smooth sub-tile animation (ANIMATION_SPEED tiles per tick)
+ *  - A* pathfinding (shared per-thread GridSearch, allocation-free GridPath),
+ *    or hierarchical planning on very large floors (PathStrategy)
+ *  - Shared path cache: replans on an unchanged layout are cache hits
+ *  - Optional batched planning off the FX thread (PathRequestService), applied next tick
+ *  - INCREMENTAL strategy: per-person D* Lite, repaired only when nearby reservations change
+ *  - COOPERATIVE strategy: WHCA*, routes reserved in space and time so persons planned
+ *    later walk around (and wait for) persons planned earlier
+ *  - Flow-field following for shared destinations (O(1) next step, no search)
+ *  - Smooth sub-tile animation (ANIMATION_SPEED tiles per tick), for everyone at once in the
+ *    context's AgentStore, which also holds tile and goal: a person is a handle to its slot
  *  - Reservation system: strictly 1 agent per tile
  *  - Anti-deadlock (3 stages): wait → reroute → sidestep
  *  - Priority: higher value = more important (Customer > Employee)
  *  - Directional sprite animation via CharacterSpriteLoader
+ *  - Snapshots: the complete movement state can be written and read back between ticks
+ *  - Replays: a recorded person is moved from tile to tile and drawn like a live one
  */
 public abstract class Person {
 
-    // Movement constants
-    private static final double ANIMATION_SPEED      = 0.15; // tiles per tick
-    private static final int    ANIM_SPEED           = 2;   // ticks per frame wissel
+    /** Ticks between two moves: the visual position needs this many ticks to cover one tile. */
+    public static final int STEP_TICKS = (int) Math.ceil(1.0 / AgentStore.ANIMATION_SPEED);
 
     // Direction arrays for 4-way movement (N, E, S, W)
     private static final int[] DX = {0, 1, 0, -1};
     private static final int[] DY = {-1, 0, 1, 0};
 
-    // Tile position
-    protected int tileX;
-    protected int tileY;
+    // Identity in reservation tables (0 means nobody); a new one when reused from a pool
+    protected int agentId;
 
-    // Smooth visual position (sub-tile interpolation)
-    private double visualX;
-    private double visualY;
+    // Tile, goal, smooth visual position and walk animation live in the context's agent store
+    private final AgentStore agents;
+    int slot = -1;   // index in the store; -1 once detached (AgentStore moves it when compacting)
+    int agentIndex = -1;   // fixed while attached, reused after detaching; set by the store
 
     // Pathfinding
-    private final GridSearch pathfinder;
+    private final SimulationContext context;
+    private final Grid grid;
     private final TileReservationSystem reservations;
-    private List<int[]> path;
-    private int goalX;
-    private int goalY;
+    private GridPath path   = new GridPath();
+    private GridPath replan = new GridPath();   // scratch buffer, swapped with path on success
+    private FlowField field;                    // non-null while heading for a shared destination
+    private DStarLite incremental;              // non-null while planning with PathStrategy.INCREMENTAL
+    private DStarLite spareIncremental;         // planner of an earlier life, kept for reuse (see reset)
+
+    // Cooperative planning: the route as reserved in the space-time table
+    private final GridPath reserved = new GridPath();
+    private long reservedTick;
+    private final int[] standing = new int[1];   // the route while standing still: just our own tile
+    private int stepsSincePlan;
+    private int waitTicks;
+
+    // Batched planning: the goal of the request still in flight
+    private final PathRequestService.Listener onPathPlanned = this::applyPlannedPath;
+    private boolean requestPending;
+    private int requestGoalX;
+    private int requestGoalY;
     private boolean hasGoal;
 
     // Rendering
-    protected final CharacterSpriteLoader spriteLoader;
+    protected CharacterSpriteLoader spriteLoader;
     protected final int priority;
 
-    // Sprite animation
+    // Sprite animation (frame and timer are in the store)
     private Direction direction = Direction.DOWN;
-    private int animFrame       = 0;
-    private int animTimer       = 0;
 
     // update
 
     private static final int RECALC_INTERVAL = 5; // elke 5 ticks herberekenen
     private int recalcTimer = 0;
 
+    // Flow field: this many blocked attempts in a row (head-on jam) and we plan around it ourselves
+    private static final int FIELD_BLOCKED_LIMIT = 3;
+    private int fieldBlocked = 0;
+
+    // Still blocked after replanning for this many ticks (gridlock in an aisle): step aside
+    private static final int YIELD_AFTER_TICKS = 10;
+    private static final int WAIT_YIELD_TICKS  = CooperativeSearch.WINDOW_STEPS * STEP_TICKS;   // planned waits in a row
+    private int blockedTicks = 0;
+    private int yields = 0;
+
+    // Two-phase update: the move chosen by decideStep, carried out by applyStep if granted
+    private static final int INTENT_NONE     = 0;
+    private static final int INTENT_PATH     = 1;
+    private static final int INTENT_FIELD    = 2;
+    private static final int INTENT_SIDESTEP = 3;
+    private static final int INTENT_SWAP     = 4;
+    private int intent = INTENT_NONE;
+    private Person swapWith;   // INTENT_SWAP: whoever stands on the intended tile
+    private int intentX;
+    private int intentY;
+    private boolean deciding;          // inside decideStep: no shared state may be written
+    private boolean requestDue;        // batched request to submit in applyStep
+    private boolean requestDueCached;
+
     // -------------------------------------------------------------------------
     // Constructor
     // -------------------------------------------------------------------------
 
-    protected Person(int startX, int startY, int priority, Grid grid, CharacterSpriteLoader spriteLoader) {
-        this.tileX        = startX;
-        this.tileY        = startY;
-        this.visualX      = startX;
-        this.visualY      = startY;
+    protected Person(int startX, int startY, int priority, SimulationContext context, CharacterSpriteLoader spriteLoader) {
         this.priority     = priority;
         this.spriteLoader = spriteLoader;
-        this.pathfinder   = new GridSearch(grid);
-        this.reservations = TileReservationSystem.getInstance();
+        this.context      = context;
+        this.grid         = context.getGrid();
+        this.reservations = context.getReservations();
+        this.agents       = context.getAgents();
+        this.slot         = agents.attach(this, startX, startY);
         this.hasGoal      = false;
+        this.agentId      = context.nextAgentId();
+
+        reservations.reserve(startX, startY, this);
+    }
+
+    /**
+     * Person coming back from a snapshot: the position and everything else follow from
+     * {@link #readState}. Reserves nothing; the reservation table is restored as a whole.
+     */
+    protected Person(int agentId, int priority, SimulationContext context, CharacterSpriteLoader spriteLoader) {
+        this.agentId      = agentId;
+        this.priority     = priority;
+        this.spriteLoader = spriteLoader;
+        this.context      = context;
+        this.grid         = context.getGrid();
+        this.reservations = context.getReservations();
+        this.agents       = context.getAgents();
+        this.slot         = agents.attach(this, 0, 0);
+    }
+
+    /**
+     * Start over as a new person on (startX, startY), e.g. when taken from a pool: new agent
+     * id and store slot, no goal, empty paths, and the tile reserved as in the constructor.
+     * The path buffers and an incremental planner are kept, so a reused person allocates nothing.
+     * Only valid after {@link #detach()}, with its reservations released and no request in flight.
+     */
+    protected void reset(int startX, int startY, CharacterSpriteLoader spriteLoader) {
+        if (requestPending || requestDue) {
+            throw new IllegalStateException("Person " + agentId + " still waits for a planned path");
+        }
+        if (slot >= 0) throw new IllegalStateException("Person " + agentId + " is still in the agent store");
+        this.agentId      = context.nextAgentId();
+        this.slot         = agents.attach(this, startX, startY);
+        this.spriteLoader = spriteLoader;
+
+        int width = grid.getWidth();
+        path.clear(width);
+        replan.clear(width);
+        reserved.clear(width);
+        field = null;
+        if (incremental != null) spareIncremental = incremental;
+        incremental = null;
+
+        reservedTick     = 0;
+        stepsSincePlan   = 0;
+        waitTicks        = 0;
+        requestGoalX     = 0;
+        requestGoalY     = 0;
+        hasGoal          = false;
+        direction        = Direction.DOWN;
+        recalcTimer      = 0;
+        fieldBlocked     = 0;
+        blockedTicks     = 0;
+        yields           = 0;
+        intent           = INTENT_NONE;
+        intentX          = 0;
+        intentY          = 0;
+        swapWith         = null;
+        requestDueCached = false;
+
+        reservations.reserve(startX, startY, this);
+    }
+
+    /**
+     * Give back every tile this person holds: the one it stands on and, when planning
+     * cooperatively, the route reserved ahead in the space-time table. Call it when leaving
+     * the floor, before {@link #detach()}.
+     */
+    public void releaseReservations() {
+        reservations.release(this);
+        if (reserved.isEmpty()) return;
+        context.getSpaceTimeReservations().releasePath(agentId, reserved, reservedTick, STEP_TICKS);
+        reserved.clear(grid.getWidth());
+    }
 
-        reservations.reserve(tileX, tileY, this);
+    /**
+     * Leave the agent store, e.g. when leaving the simulation. The person can not be updated
+     * or drawn any more until {@link #reset} takes it back in.
+     */
+    public void detach() {
+        if (slot < 0) return;
+        agents.detach(slot);
+        slot = -1;
     }
 
     // -------------------------------------------------------------------------
     // Public API
     // -------------------------------------------------------------------------
 
-    /** Set a new movement goal and immediately calculate the A* path. */
+    /**
+     * Set a new movement goal. Shared destinations are followed through their flow field;
+     * any other goal gets an A* path immediately.
+     */
     public void moveTo(int goalX, int goalY) {
-        this.goalX        = goalX;
-        this.goalY        = goalY;
+        agents.goalX[slot] = goalX;
+        agents.goalY[slot] = goalY;
         this.hasGoal      = true;
-        this.path         = pathfinder.findPath(tileX, tileY, goalX, goalY, this);
+        this.field        = context.getFlowFields().getField(goalX, goalY);
+        this.fieldBlocked = 0;
+
+        PathStrategy pathStrategy = context.getPathStrategy();
+        if (pathStrategy == PathStrategy.COOPERATIVE) {
+            // Shared destinations only serve as the heuristic here: everyone has to be in the table
+            field = null;
+            path.clear(grid.getWidth());
+            replanPath(false);
+        } else if (field != null) {
+            field.nextStep(tileX(), tileY(), this, path);
+        } else if (pathStrategy == PathStrategy.INCREMENTAL) {
+            if (incremental == null) incremental = spareIncremental != null ? spareIncremental : new DStarLite(context, this);
+            spareIncremental = null;
+            incremental.plan(tileX(), tileY(), goalX, goalY, path);
+        } else if (context.getPlanningService() != null && pathStrategy.isShareable()) {
+            incremental = null;
+            path.clear(grid.getWidth());
+            submitRequest(true);
+        } else {
+            incremental = null;
+            context.getPathCache().findPath(pathStrategy, context, tileX(), tileY(), goalX, goalY, this, path);
+        }
+        syncWalking();
     }
 
+    /**
+     * Sequential update: decide on a move and take it straight away if the tile is still free.
+     * The simulation kernel uses {@link #decideStep()} and {@link #applyStep(boolean)} instead.
+     */
     public void update(Grid grid) {
-        animateVisualPosition();
+        agents.animate(slot);
+        decideStep();
+        applyStep(hasIntent() && reservations.isFree(intentX, intentY, this));
+    }
+
+    /**
+     * Phase one of a tick: choose the tile to move onto next (if any). The visual position and
+     * walk animation were already advanced for everyone by {@link AgentStore#animate()}.
+     *
+     * Reads the grid, flow fields and reservations but only writes this person's own state, so
+     * all persons can decide in parallel against the reservations as they were at the start of
+     * the tick. Batched path requests are held back until {@link #applyStep(boolean)}.
+     * Not parallel-safe with {@link PathStrategy#COOPERATIVE} (it reserves while planning) or
+     * without a planning service (planning then goes through the shared path cache).
+     */
+    public void decideStep() {
+        intent = INTENT_NONE;
         updateDirection();
-        updateAnimFrame();
-
-        if (!hasGoal || path == null || path.isEmpty()) return;
-        if (!isAnimationFinished()) return;
-
-        // Periodiek herberekenen zodat kortere routes opgepikt worden
-        recalcTimer++;
-        if (recalcTimer >= RECALC_INTERVAL) {
-            recalcTimer = 0;
-            List<int[]> newPath = pathfinder.findPath(tileX, tileY, goalX, goalY, this);
-            if (newPath != null && !newPath.isEmpty()) {
-                path = newPath;
+
+        if (!hasGoal || !isAnimationFinished()) return;
+        if (waitTicks > 0) {
+            waitTicks--;   // a planned wait lasts as long as a step
+            return;
+        }
+
+        deciding = true;
+        try {
+            decide();
+        } finally {
+            deciding = false;
+        }
+    }
+
+    /**
+     * Phase two of a tick, called one person at a time: submit a held-back path request, then
+     * take the chosen step if it was granted. A move that was not granted counts as blocked.
+     */
+    public void applyStep(boolean granted) {
+        if (requestDue) {
+            requestDue = false;
+            context.getPlanningService().submit(context.getPathStrategy(), tileX(), tileY(),
+                    requestGoalX, requestGoalY, requestDueCached, onPathPlanned);
+        }
+
+        switch (intent) {
+            case INTENT_PATH -> {
+                if (granted) {
+                    step(intentX, intentY);
+                    stepsSincePlan++;
+                    blockedTicks = 0;
+                } else {
+                    blockedTicks++;
+                }
             }
+            case INTENT_FIELD -> {
+                if (granted) {
+                    fieldBlocked = 0;
+                    step(intentX, intentY);
+                    field.nextStep(tileX(), tileY(), this, path);   // look ahead for direction and animation
+                } else {
+                    fieldBlocked++;
+                }
+            }
+            case INTENT_SIDESTEP -> {
+                if (granted) {
+                    moveOnto(intentX, intentY);
+                    path.clear(grid.getWidth());
+                }
+            }
+            case INTENT_SWAP -> applySwap();
+            default -> { }
         }
+        intent = INTENT_NONE;
+        afterStep();
+        syncWalking();
+    }
+
+    /** True while a batched path request is on its way; the result will be delivered to this person. */
+    public boolean isAwaitingPath() { return requestPending || requestDue; }
 
-        tryStep(grid);
+    /** True while a move decided in this tick is waiting for {@link #applyStep(boolean)}. */
+    public boolean hasIntent() { return intent != INTENT_NONE; }
+    public int getIntentX()    { return intentX; }
+    public int getIntentY()    { return intentY; }
+
+    /** Hook at the end of every update, after the move (if any) was made. */
+    protected void afterStep() {}
+
+    private void decide() {
+        if (field != null) {
+            decideFieldStep();
+            return;
+        }
+        if (path.isEmpty()) {
+            if (tileX() == goalX() && tileY() == goalY()) {
+                holdStill();
+                return;
+            }
+            // Planners may return only the first part of a long route: plan the rest
+            if (!replanPath(true)) {
+                // Geen route (cooperative: alles rondom is al gereserveerd): blijf staan, maar niet eeuwig
+                if (context.getPathStrategy() == PathStrategy.COOPERATIVE) {
+                    holdStill();
+                    if (++blockedTicks >= YIELD_AFTER_TICKS) {
+                        blockedTicks = 0;
+                        decideSidestep(tileX(), tileY());
+                    }
+                }
+                return;
+            }
+        }
+
+        if (incremental != null) {
+            // Geen timer: alleen herstellen als de bezetting in de buurt veranderd is
+            if (incremental.update(tileX(), tileY())) replanPath(false);
+        } else if (context.getPathStrategy() == PathStrategy.COOPERATIVE) {
+            // Halverwege het venster opnieuw plannen, zodat er altijd gereserveerde stappen voor ons liggen
+            if (stepsSincePlan >= CooperativeSearch.WINDOW_STEPS / 2) replanPath(false);
+        } else {
+            // Periodiek herberekenen zodat kortere routes opgepikt worden
+            recalcTimer++;
+            if (recalcTimer >= RECALC_INTERVAL) {
+                recalcTimer = 0;
+                replanPath(true);
+            }
+        }
+
+        decidePathStep();
     }
 
     /** Draw the person using their current visual (interpolated) position. */
     public void draw(GraphicsContext gc, int tileSize) {
-        double drawX = visualX * tileSize;
-        double drawY = visualY * tileSize;
+        draw(gc, tileSize, 1.0);
+    }
+
+    /**
+     * Draw the person {@code alpha} (0..1) of the way from their position before the last tick
+     * to the current one, so rendering between ticks stays smooth at any simulation speed.
+     */
+    public void draw(GraphicsContext gc, int tileSize, double alpha) {
+        double prevX = agents.prevX[slot];
+        double prevY = agents.prevY[slot];
+        double drawX = (prevX + (agents.visualX[slot] - prevX) * alpha) * tileSize;
+        double drawY = (prevY + (agents.visualY[slot] - prevY) * alpha) * tileSize;
 
         if (spriteLoader != null) {
-            gc.drawImage(spriteLoader.getFrame(direction, animFrame), drawX, drawY, tileSize, tileSize);
+            spriteLoader.draw(gc, direction, agents.animFrame[slot], drawX, drawY, tileSize, tileSize);
         } else {
             gc.setFill(getFallbackColor());
             gc.fillOval(drawX, drawY, tileSize, tileSize);
@@ -126,11 +411,23 @@ public abstract class Person {
 
     /** True when this person has arrived at their goal tile and animation is done. */
     public boolean hasReachedGoal() {
-        return hasGoal && tileX == goalX && tileY == goalY && isAnimationFinished();
+        return hasGoal && tileX() == goalX() && tileY() == goalY() && isAnimationFinished();
     }
 
-    public int getTileX()    { return tileX; }
-    public int getTileY()    { return tileY; }
+    public int getAgentId()  { return agentId; }
+    /**
+     * Dense index for per-person tables, see {@link AgentStore}: unlike the agent id it is
+     * reused once this person leaves the store; -1 while detached.
+     */
+    public int getAgentIndex() { return agentIndex; }
+    public SimulationContext getContext() { return context; }
+    public int getTileX()    { return agents.tileX[slot]; }
+    public int getTileY()    { return agents.tileY[slot]; }
+    public double getVisualX()     { return agents.visualX[slot]; }
+    public double getVisualY()     { return agents.visualY[slot]; }
+    public double getPrevVisualX() { return agents.prevX[slot]; }
+    public double getPrevVisualY() { return agents.prevY[slot]; }
+    public int getAnimFrame()      { return agents.animFrame[slot]; }
     public int getPriority() { return priority; }
 
     // -------------------------------------------------------------------------
@@ -145,87 +442,460 @@ public abstract class Person {
 
 
     private void step(int nx, int ny) {
+        moveOnto(nx, ny);
+        path.advance();
+    }
+
+    private void moveOnto(int nx, int ny) {
         reservations.release(this);
         reservations.reserve(nx, ny, this);
-        tileX = nx;
-        tileY = ny;
-        path.removeFirst();
+        agents.setTile(slot, nx, ny);
     }
 
-    private void tryStep(Grid grid) {
-        int[] next = path.getFirst();
-        int nx = next[0], ny = next[1];
+    private void intend(int kind, int x, int y) {
+        intent  = kind;
+        intentX = x;
+        intentY = y;
+    }
 
-        if (!reservations.isFree(nx, ny, this)) {
-            // Volgende stap is bezet: herbereken direct
-            path = pathfinder.findPath(tileX, tileY, goalX, goalY, this);
-            if (path == null || path.isEmpty()) return;
-            next = path.getFirst();
-            nx   = next[0];
-            ny   = next[1];
+    private void decidePathStep() {
+        int nx = path.nextX();
+        int ny = path.nextY();
+
+        // Wachten we op een reservering die inmiddels vrijgegeven is? Dan kan het misschien al verder
+        if (nx == tileX() && ny == tileY() && stepsSincePlan > 0 && replanPath(false)) {
+            nx = path.nextX();
+            ny = path.nextY();
+        }
+        if (nx == tileX() && ny == tileY()) {
+            if (blockedTicks >= WAIT_YIELD_TICKS) {
+                // Een heel venster lang alleen gewacht: wij staan vermoedelijk zelf in de weg
+                blockedTicks = 0;
+                decideSidestep(nx, ny);
+                return;
+            }
+            // Geplande wachtstap (cooperative): blijf staan zodat een ander eerst kan passeren
+            blockedTicks += STEP_TICKS;
+            path.advance();
+            stepsSincePlan++;
+            waitTicks = STEP_TICKS - 1;
+            return;
+        }
+
+        if (!reservations.isFree(nx, ny, this) && incremental == null) {
+            // Volgende stap is bezet: herbereken direct (niet uit de cache, die kent de bezetting niet).
+            // D* Lite niet: die kent de blokkade al en zou dezelfde route teruggeven
+            if (replanPath(false)) {
+                nx = path.nextX();
+                ny = path.nextY();
+            }
         }
 
         if (reservations.isFree(nx, ny, this)) {
-            step(nx, ny);
+            intend(INTENT_PATH, nx, ny);
+        } else if (++blockedTicks >= YIELD_AFTER_TICKS) {
+            // Muurvast (bijv. twee groepjes tegenover elkaar in een gangpad): maak ruimte en plan opnieuw
+            blockedTicks = 0;
+            if (!decideSwap(nx, ny)) decideSidestep(nx, ny);
         }
         // Nog steeds bezet na herberekening: wacht tot volgende tick
     }
+
+    /**
+     * Aim for a free neighbour other than the blocked one; the path is dropped once there, so
+     * the next update plans from that tile. The first direction tried rotates per agent and
+     * per attempt, which spreads agents apart without a random generator.
+     */
+    private void decideSidestep(int blockedX, int blockedY) {
+        yields++;
+        for (int i = 0; i < 4; i++) {
+            int dir = (agentId + yields + i) & 3;
+            int sx  = tileX() + DX[dir];
+            int sy  = tileY() + DY[dir];
+            if (sx == blockedX && sy == blockedY) continue;
+            if (sx < 0 || sy < 0 || sx >= grid.getWidth() || sy >= grid.getHeight()) continue;
+            if (grid.getTile(sx, sy) == null || !grid.getTile(sx, sy).isWalkable()) continue;
+            if (!reservations.isFree(sx, sy, this)) continue;
+            if (sx != goalX() || sy != goalY()) {
+                if (isDeadEnd(sx, sy)) continue;   // e.g. the exit pocket: whoever comes next shuts us in
+                if (isStop(sx, sy)) continue;      // e.g. the exit: kept for whoever leaves
+            }
+
+            intend(INTENT_SIDESTEP, sx, sy);
+            return;
+        }
+    }
+
+    /**
+     * Head-on with someone who wants our tile next, e.g. in a one-wide aisle where neither can
+     * step aside: trade places. Cooperative only, where persons decide one after the other, so
+     * reading the other's route here is safe.
+     */
+    private boolean decideSwap(int x, int y) {
+        if (context.getPathStrategy() != PathStrategy.COOPERATIVE) return false;
+        Person other = personAt(x, y);
+        if (other == null || other.path.isEmpty() || !other.isAnimationFinished()) return false;
+        if (other.path.nextX() != tileX() || other.path.nextY() != tileY()) return false;
+
+        swapWith = other;
+        intend(INTENT_SWAP, x, y);
+        return true;
+    }
+
+    /**
+     * Both take their next step at once; the other's own intent for this tick is dropped. Skipped
+     * if the other has moved on meanwhile (it came earlier in the list, or swapped first).
+     */
+    private void applySwap() {
+        Person other = swapWith;
+        swapWith = null;
+        if (other.tileX() != intentX || other.tileY() != intentY) return;
+
+        int x = tileX();
+        int y = tileY();
+        reservations.release(this);
+        other.intent   = INTENT_NONE;
+        other.swapWith = null;
+        other.step(x, y);
+        other.stepsSincePlan++;
+        other.blockedTicks = 0;
+        other.syncWalking();
+
+        step(intentX, intentY);
+        stepsSincePlan++;
+        blockedTicks = 0;
+    }
+
+    /** Whoever stands on (x, y), found through the row index of the store; null if nobody. */
+    private Person personAt(int x, int y) {
+        for (int s = agents.firstInRow(y); s >= 0; s = agents.nextInRow(s)) {
+            if (agents.getTileX(s) == x) return agents.getPerson(s);
+        }
+        return null;
+    }
+
+    /**
+     * One O(1) flow-field step: aim for the best free downhill tile. After the move
+     * {@link #applyStep} looks one step ahead so direction and walk animation keep working.
+     */
+    private void decideFieldStep() {
+        // Re-fetch so the field is rebuilt if the layout changed since the last step
+        field = context.getFlowFields().getField(goalX(), goalY());
+        if (field == null) return;
+
+        if (field.nextStep(tileX(), tileY(), this, path)) {
+            intend(INTENT_FIELD, path.nextX(), path.nextY());
+        } else if ((tileX() != goalX() || tileY() != goalY()) && ++fieldBlocked >= FIELD_BLOCKED_LIMIT) {
+            // Alle stappen bergafwaarts bezet: verlaat het veld en zoek een eigen route om de blokkade heen
+            fieldBlocked = 0;
+            field = null;
+            replanPath(false);
+        }
+    }
+
+    /**
+     * Search a fresh path into the scratch buffer and swap it in when it is usable.
+     * The old path is kept when the goal is (temporarily) unreachable.
+     *
+     * @param cached false to bypass the shared cache, e.g. to route around a blocking agent
+     */
+    private boolean replanPath(boolean cached) {
+        PathStrategy pathStrategy = context.getPathStrategy();
+        boolean found;
+        if (incremental != null && !incremental.isPlanningFor(goalX(), goalY())) {
+            // Van een flow field af: de planner kent nog het vorige doel, dat is hier een lege route
+            found = incremental.plan(tileX(), tileY(), goalX(), goalY(), replan);
+        } else if (incremental != null) {
+            incremental.update(tileX(), tileY());
+            found = incremental.replan(replan);
+        } else if (pathStrategy == PathStrategy.COOPERATIVE) {
+            return replanCooperative();
+        } else if (context.getPlanningService() != null && pathStrategy.isShareable()) {
+            submitRequest(cached);
+            return false;   // the new path arrives at the next tick boundary
+        } else if (cached) {
+            found = context.getPathCache().findPath(pathStrategy, context, tileX(), tileY(), goalX(), goalY(), this, replan);
+        } else {
+            found = pathStrategy.planner(context).findPath(context, tileX(), tileY(), goalX(), goalY(), this, replan);
+        }
+        if (!found || replan.isEmpty()) {
+            return false;
+        }
+        GridPath old = path;
+        path   = replan;
+        replan = old;
+        return true;
+    }
+
+    private void submitRequest(boolean cached) {
+        if (requestPending && requestGoalX == goalX() && requestGoalY == goalY()) return;
+        requestPending = true;
+        requestGoalX   = goalX();
+        requestGoalY   = goalY();
+        if (deciding) {
+            // The service is not thread-safe: submit from applyStep, in update order
+            requestDue       = true;
+            requestDueCached = cached;
+            return;
+        }
+        context.getPlanningService().submit(context.getPathStrategy(), tileX(), tileY(), goalX(), goalY(), cached, onPathPlanned);
+    }
+
+    /**
+     * Result of a batched request. It was planned from the tile we stood on when asking, so
+     * skip that tile if we are still on it; drop the result if the goal changed meanwhile or it
+     * no longer starts next to us (the next replan will catch up).
+     */
+    private void applyPlannedPath(boolean found, GridPath planned) {
+        boolean current = requestGoalX == goalX() && requestGoalY == goalY();
+        requestPending = false;
+        if (!found || !current || field != null) return;
+
+        replan.copyFrom(planned);
+        if (!replan.isEmpty() && replan.nextX() == tileX() && replan.nextY() == tileY()) {
+            replan.advance();
+        }
+        if (replan.isEmpty() || Math.abs(replan.nextX() - tileX()) + Math.abs(replan.nextY() - tileY()) != 1) {
+            return;
+        }
+        GridPath old = path;
+        path   = replan;
+        replan = old;
+        syncWalking();
+    }
+
+    /**
+     * Give back the cells of the previous route in the space-time table, plan against
+     * everyone else's reservations and reserve the new route from this tick on.
+     */
+    private boolean replanCooperative() {
+        SpaceTimeReservationTable table = context.getSpaceTimeReservations();
+        table.releasePath(agentId, reserved, reservedTick, STEP_TICKS);
+        reserved.clear(grid.getWidth());
+        stepsSincePlan = 0;
+
+        boolean found = PathStrategy.COOPERATIVE.planner(context).findPath(context, tileX(), tileY(), goalX(), goalY(), this, replan);
+        if (!found || replan.isEmpty()) {
+            return false;
+        }
+        GridPath old = path;
+        path   = replan;
+        replan = old;
+
+        reserved.copyFrom(path);
+        reservedTick = table.getTick();
+        table.reservePath(agentId, reserved, reservedTick, STEP_TICKS);
+        return true;
+    }
+
+    /**
+     * Standing still without a route, on the goal (e.g. at the counter until served) or because
+     * none was found: when planning cooperatively, keep the tile held in the space-time table as
+     * the window moves on, so others plan to wait or go around instead of walking into us once
+     * the reservation of the old route has run out.
+     */
+    private void holdStill() {
+        if (context.getPathStrategy() != PathStrategy.COOPERATIVE) return;
+        SpaceTimeReservationTable table = context.getSpaceTimeReservations();
+        int node = tileY() * grid.getWidth() + tileX();
+        if (reserved.isEmpty() || reserved.getNode(reserved.size() - 1) != node) {
+            table.releasePath(agentId, reserved, reservedTick, STEP_TICKS);
+            standing[0] = node;
+            reserved.load(standing, 1, grid.getWidth());
+            reservedTick = table.getTick();
+        }
+        table.reservePath(agentId, reserved, reservedTick, STEP_TICKS);   // the last tile up to the end of the window
+    }
+
     // -------------------------------------------------------------------------
-    // Sprite animation
+    // Snapshot
     // -------------------------------------------------------------------------
 
-    private void updateDirection() {
-        if (path == null || path.isEmpty()) return;
-        int[] next = path.getFirst();
-        int dx = next[0] - tileX;
-        int dy = next[1] - tileY;
+    private static final int STATE_HAS_GOAL    = 1;
+    private static final int STATE_FIELD       = 2;
+    private static final int STATE_INCREMENTAL = 4;
+    private static final int STATE_MOVING      = 8;   // visual position not (yet) on the tile
+
+    /**
+     * Write the movement state. Only valid between ticks with no batched request in flight,
+     * i.e. after the planning service delivered its results.
+     */
+    public void writeState(SnapshotWriter out) throws IOException {
+        if (requestPending || requestDue) {
+            throw new IllegalStateException("Person " + agentId + " still waits for a planned path");
+        }
+        int tileX = tileX();
+        int tileY = tileY();
+        boolean moving = agents.visualX[slot] != tileX || agents.visualY[slot] != tileY
+                || agents.prevX[slot] != tileX || agents.prevY[slot] != tileY;
+        out.writeByte((hasGoal ? STATE_HAS_GOAL : 0) | (field != null ? STATE_FIELD : 0)
+                | (incremental != null ? STATE_INCREMENTAL : 0) | (moving ? STATE_MOVING : 0));
+        out.writeVarInt(tileY * grid.getWidth() + tileX);
+        if (moving) {
+            out.writeDouble(agents.visualX[slot]);
+            out.writeDouble(agents.visualY[slot]);
+            out.writeDouble(agents.prevX[slot]);
+            out.writeDouble(agents.prevY[slot]);
+        }
+        out.writeVarInt(goalY() * grid.getWidth() + goalX());
+        out.writePath(path);
+        out.writePath(reserved);
+        out.writeVarLong(reservedTick);
+
+        out.writeByte(direction.ordinal());
+        out.writeVarInt(agents.animFrame[slot]);
+        out.writeVarInt(agents.animTimer[slot]);
+        out.writeVarInt(stepsSincePlan);
+        out.writeVarInt(waitTicks);
+        out.writeVarInt(recalcTimer);
+        out.writeVarInt(fieldBlocked);
+        out.writeVarInt(blockedTicks);
+        out.writeVarInt(yields);
+    }
 
+    /**
+     * Counterpart of {@link #writeState}. A flow field is looked up again by goal; a D* Lite
+     * planner can not be stored and plans afresh from the restored tile.
+     */
+    public void readState(SnapshotReader in) throws IOException {
+        int width = grid.getWidth();
+        int flags = in.readByte();
+        int tile  = in.readVarInt();
+        agents.setTile(slot, tile % width, tile / width);
+        if ((flags & STATE_MOVING) != 0) {
+            agents.visualX[slot] = in.readDouble();
+            agents.visualY[slot] = in.readDouble();
+            agents.prevX[slot]   = in.readDouble();
+            agents.prevY[slot]   = in.readDouble();
+        } else {
+            agents.visualX[slot] = agents.prevX[slot] = tile % width;
+            agents.visualY[slot] = agents.prevY[slot] = tile / width;
+        }
+        int goal = in.readVarInt();
+        agents.goalX[slot] = goal % width;
+        agents.goalY[slot] = goal / width;
+        hasGoal  = (flags & STATE_HAS_GOAL) != 0;
+        in.readPath(path, width);
+        in.readPath(reserved, width);
+        reservedTick = in.readVarLong();
+
+        int dir = in.readByte();
+        if (dir >= Direction.values().length) throw new IOException("Corrupt snapshot: direction " + dir);
+        direction      = Direction.values()[dir];
+        agents.animFrame[slot] = in.readVarInt();
+        agents.animTimer[slot] = in.readVarInt();
+        stepsSincePlan = in.readVarInt();
+        waitTicks      = in.readVarInt();
+        recalcTimer    = in.readVarInt();
+        fieldBlocked   = in.readVarInt();
+        blockedTicks   = in.readVarInt();
+        yields         = in.readVarInt();
+
+        field = (flags & STATE_FIELD) != 0 ? context.getFlowFields().getField(goalX(), goalY()) : null;
+        if ((flags & STATE_INCREMENTAL) != 0) {
+            // On a flow field the live planner still has an older goal: plan once we leave the field
+            incremental = new DStarLite(context, this);
+            if (field == null) incremental.plan(tileX(), tileY(), goalX(), goalY(), path);
+        }
+        syncWalking();
+    }
+
+    // -------------------------------------------------------------------------
+    // Replay
+    // -------------------------------------------------------------------------
+
+    /**
+     * Replays: stand on (x, y) as recorded for this tick. The visual position walks there as in
+     * a live update, or jumps when {@code jump} is set (first frame, seek).
+     */
+    protected void follow(int x, int y, boolean jump) {
+        int dx = x - tileX();
+        int dy = y - tileY();
         if      (dx > 0) direction = Direction.RIGHT;
         else if (dx < 0) direction = Direction.LEFT;
         else if (dy > 0) direction = Direction.DOWN;
         else if (dy < 0) direction = Direction.UP;
-    }
 
-    private void updateAnimFrame() {
-        if (path != null && !path.isEmpty()) {
-            animTimer++;
-            if (animTimer >= ANIM_SPEED) {
-                animTimer = 0;
-                animFrame++;
-            }
-        } else {
-            // Stilstaand: reset naar eerste frame
-            animFrame = 0;
-            animTimer = 0;
+        agents.setTile(slot, x, y);
+        if (jump) {
+            agents.visualX[slot] = agents.prevX[slot] = x;
+            agents.visualY[slot] = agents.prevY[slot] = y;
+            return;
         }
+        agents.animatePositions(slot, slot + 1);
+
+        // No path to look at: walking is whatever is still on its way to the tile
+        agents.walking[slot] = isAnimationFinished() ? 0 : 1;
+        agents.animateFrames(slot, slot + 1);
     }
 
     // -------------------------------------------------------------------------
-    // Smooth animation
+    // Sprite animation
     // -------------------------------------------------------------------------
 
-    private void animateVisualPosition() {
-        visualX = moveToward(visualX, tileX);
-        visualY = moveToward(visualY, tileY);
+    private void updateDirection() {
+        if (path.isEmpty()) return;
+        int dx = path.nextX() - tileX();
+        int dy = path.nextY() - tileY();
+
+        if      (dx > 0) direction = Direction.RIGHT;
+        else if (dx < 0) direction = Direction.LEFT;
+        else if (dy > 0) direction = Direction.DOWN;
+        else if (dy < 0) direction = Direction.UP;
     }
 
-    private double moveToward(double current, double target) {
-        if (Math.abs(current - target) <= ANIMATION_SPEED) return target;
-        return current + Math.signum(target - current) * ANIMATION_SPEED;
+    /**
+     * Tell the store whether the walk animation should run at the next tick: whenever the path
+     * may have changed (planned, stepped, delivered, restored), as it did in the old per-person
+     * update, which looked at the path at the start of the tick.
+     */
+    private void syncWalking() {
+        agents.walking[slot] = path.isEmpty() ? 0 : 1;
     }
 
+    // -------------------------------------------------------------------------
+    // Smooth animation
+    // -------------------------------------------------------------------------
+
     private boolean isAnimationFinished() {
-        return visualX == tileX && visualY == tileY;
+        return agents.visualX[slot] == agents.tileX[slot] && agents.visualY[slot] == agents.tileY[slot];
     }
 
+    // Tile and goal as of now; reads of the store, for the many uses below
+    private int tileX() { return agents.tileX[slot]; }
+    private int tileY() { return agents.tileY[slot]; }
+    private int goalX() { return agents.goalX[slot]; }
+    private int goalY() { return agents.goalY[slot]; }
+
     // -------------------------------------------------------------------------
     // Helper
     // -------------------------------------------------------------------------
 
     /** Geeft het huidige pad terug (voor debug visualisatie). */
-    public List<int[]> getPath() {
+    public GridPath getPath() {
+        if (field != null) {
+            // Only the next step is kept while following a field; trace the rest for display
+            field.trace(tileX(), tileY(), replan);
+            return replan;
+        }
         return path;
     }
+
+    /** Tile such as the exit that cooperative planning keeps for whoever is headed there. */
+    private boolean isStop(int x, int y) {
+        return context.getPathStrategy() == PathStrategy.COOPERATIVE
+                && context.getSpaceTimeReservations().isStop(y * grid.getWidth() + x);
+    }
+
+    /** At most one walkable neighbour. */
+    private boolean isDeadEnd(int x, int y) {
+        int exits = 0;
+        for (int d = 0; d < 4; d++) {
+            if (isWalkable(grid, x + DX[d], y + DY[d])) exits++;
+        }
+        return exits <= 1;
+    }
+
     private boolean isWalkable(Grid grid, int x, int y) {
         if (x < 0 || x >= grid.getWidth() || y < 0 || y >= grid.getHeight()) return false;
         var tile = grid.getTile(x, y);
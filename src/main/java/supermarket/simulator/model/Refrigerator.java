@@ -1,9 +1,13 @@
 package supermarket.simulator.model;
 
 import javafx.scene.image.Image;
+import supermarket.simulator.model.enums.EventType;
 import supermarket.simulator.model.world.Grid;
 import supermarket.simulator.model.world.Tile;
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -69,6 +73,7 @@ public class Refrigerator extends SupermarketObject {
         if (!items.isEmpty() && customer.getInventory() != null) {
             Item item = items.get(0);
             customer.getInventory().addItem(item);
+            customer.getContext().emit(EventType.ITEM_PICKED, customer.getAgentId(), customer.getInventory().getItemCount());
             System.out.println("Customer picked up: " + item.getName() + " from " + type + " refrigerator");
         }
     }
@@ -136,6 +141,21 @@ public class Refrigerator extends SupermarketObject {
         System.out.println("Refrigerator at " + x + "," + y + " powered off");
     }
 
+    /**
+     * Stock, temperature and power for a snapshot
+     */
+    public void writeState(SnapshotWriter out) throws IOException {
+        Item.writeAll(out, items);
+        out.writeDouble(temperature);
+        out.writeBoolean(isPoweredOn);
+    }
+
+    public void readState(SnapshotReader in) throws IOException {
+        Item.readAll(in, items);
+        temperature = in.readDouble();
+        isPoweredOn = in.readBoolean();
+    }
+
     // Getters
     public boolean isEmpty() {
         return items.isEmpty();
@@ -1,9 +1,13 @@
 package supermarket.simulator.model;
 
 import javafx.scene.image.Image;
+import supermarket.simulator.model.enums.EventType;
 import supermarket.simulator.model.world.Grid;
 import supermarket.simulator.model.world.Tile;
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -43,7 +47,10 @@ public class Shelf extends SupermarketObject {
         if (!items.isEmpty() && customer.getInventory() != null) {
             Item item = items.get(0);
             customer.getInventory().addItem(item);
-            System.out.println("Customer picked up: " + item.getName() + " from " + category + " shelf");
+            customer.getContext().emit(EventType.ITEM_PICKED, customer.getAgentId(), customer.getInventory().getItemCount());
+            if (customer.getContext().isLogging()) {
+                System.out.println("Customer picked up: " + item.getName() + " from " + category + " shelf");
+            }
         }
     }
 
@@ -56,6 +63,15 @@ public class Shelf extends SupermarketObject {
         return items.isEmpty() ? null : items.remove(0);
     }
 
+    /** Stock, in the order it is taken. */
+    public void writeState(SnapshotWriter out) throws IOException {
+        Item.writeAll(out, items);
+    }
+
+    public void readState(SnapshotReader in) throws IOException {
+        Item.readAll(in, items);
+    }
+
     public boolean isEmpty()     { return items.isEmpty(); }
     public boolean isFull()      { return items.size() >= maxCapacity; }
     public String getCategory()  { return category; }
@@ -0,0 +1,147 @@
+package supermarket.simulator.model;
+
+import supermarket.simulator.Pathfinding.FlowFieldService;
+import supermarket.simulator.Pathfinding.HierarchicalPathfinder;
+import supermarket.simulator.Pathfinding.PathCache;
+import supermarket.simulator.Pathfinding.PathRequestService;
+import supermarket.simulator.Pathfinding.PathStrategy;
+import supermarket.simulator.Pathfinding.SpaceTimeReservationTable;
+import supermarket.simulator.Pathfinding.TileReservationSystem;
+import supermarket.simulator.model.enums.EventType;
+import supermarket.simulator.model.enums.RandomStream;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Everything one running simulation owns: the grid, the reservation tables, the shared
+ * planning state (flow fields, path cache, hierarchical planner), the planning settings,
+ * the positions of its persons ({@link AgentStore}), the ID generators and the random streams.
+ *
+ * All randomness comes from one seeded {@link SimulationRandom}, split into an independent
+ * stream per {@link RandomStream}, so the same seed gives the same run. The streams, ids and
+ * planning settings go into world snapshots ({@link #writeState}).
+ *
+ * Nothing in here is static, so several stores can be simulated side by side in one JVM,
+ * each confined to its own thread. Persons, customers and the level builders receive the
+ * context instead of reaching for singletons.
+ */
+public class SimulationContext {
+
+    private final Grid grid;
+    private final long seed;
+    private final Map<RandomStream, SimulationRandom> streams = new EnumMap<>(RandomStream.class);
+
+    private final TileReservationSystem reservations;
+    private final SpaceTimeReservationTable spaceTimeReservations;
+    private final FlowFieldService flowFields;
+    private final PathCache pathCache;
+    private final AgentStore agents = new AgentStore();
+    private HierarchicalPathfinder hierarchical;   // built on first HIERARCHICAL query
+
+    // Planner used for goals without a flow field
+    private PathStrategy pathStrategy = PathStrategy.ASTAR;
+    // Null = plan inline; otherwise shareable strategies are batched and solved between ticks
+    private PathRequestService planningService;
+
+    private int nextAgentId    = 1;   // 0 means "nobody" in the reservation tables
+    private int nextCustomerId = 1;
+
+    // Console output per customer event; off for headless runs of many thousands of ticks
+    private boolean logging = true;
+    // Domain events for a recorder; null = nobody listens
+    private EventSink eventSink;
+
+    public SimulationContext(Grid grid, long seed) {
+        this.grid                  = grid;
+        this.seed                  = seed;
+        SimulationRandom root      = new SimulationRandom(seed);
+        for (RandomStream stream : RandomStream.values()) {
+            streams.put(stream, root.split());
+        }
+        this.reservations          = new TileReservationSystem(grid);
+        this.spaceTimeReservations = new SpaceTimeReservationTable(grid, SpaceTimeReservationTable.DEFAULT_WINDOW_TICKS);
+        this.flowFields            = new FlowFieldService(grid, reservations);
+        this.pathCache             = new PathCache(PathCache.DEFAULT_BUDGET_BYTES);
+    }
+
+    // -------------------------------------------------------------------------
+    // ID generators
+    // -------------------------------------------------------------------------
+
+    public int nextAgentId()    { return nextAgentId++; }
+    public int nextCustomerId() { return nextCustomerId++; }
+
+    // -------------------------------------------------------------------------
+    // Getters / setters
+    // -------------------------------------------------------------------------
+
+    public Grid getGrid()                                       { return grid; }
+    public long getSeed()                                       { return seed; }
+    /** The generator of one subsystem; confined to the simulation thread like the rest. */
+    public SimulationRandom getRandom(RandomStream stream)      { return streams.get(stream); }
+    public TileReservationSystem getReservations()              { return reservations; }
+    public SpaceTimeReservationTable getSpaceTimeReservations() { return spaceTimeReservations; }
+    public FlowFieldService getFlowFields()                     { return flowFields; }
+    public PathCache getPathCache()                             { return pathCache; }
+    public AgentStore getAgents()                               { return agents; }
+
+    public synchronized HierarchicalPathfinder getHierarchicalPathfinder() {
+        if (hierarchical == null) {
+            hierarchical = new HierarchicalPathfinder(grid, HierarchicalPathfinder.DEFAULT_CLUSTER_SIZE);
+        }
+        return hierarchical;
+    }
+
+    /** Select the planner for all persons (e.g. HIERARCHICAL on generated hypermarket floors). */
+    public void setPathStrategy(PathStrategy pathStrategy) { this.pathStrategy = pathStrategy; }
+    public PathStrategy getPathStrategy()                  { return pathStrategy; }
+
+    public void setLogging(boolean logging) { this.logging = logging; }
+    public boolean isLogging()              { return logging; }
+
+    /** Receiver of domain events (spawned, queued, served, ...), e.g. a trace recorder; null to stop. */
+    public void setEventSink(EventSink eventSink) { this.eventSink = eventSink; }
+
+    /** Report a domain event; only call from the sequential parts of a tick. */
+    public void emit(EventType type, int agentId, int value) {
+        if (eventSink != null) eventSink.event(type, agentId, value);
+    }
+
+    /** Batch replans through this service (null = plan inline, e.g. headless benchmarks). */
+    public void setPlanningService(PathRequestService planningService) { this.planningService = planningService; }
+    public PathRequestService getPlanningService()                     { return planningService; }
+
+    // -------------------------------------------------------------------------
+    // Snapshot
+    // -------------------------------------------------------------------------
+
+    /** Planner, id generators and the position of every random stream. */
+    public void writeState(SnapshotWriter out) throws IOException {
+        out.writeByte(pathStrategy.ordinal());
+        out.writeVarInt(nextAgentId);
+        out.writeVarInt(nextCustomerId);
+        for (RandomStream stream : RandomStream.values()) {
+            out.writeLong(streams.get(stream).getSeed());
+            out.writeLong(streams.get(stream).getGamma());
+        }
+    }
+
+    public void readState(SnapshotReader in) throws IOException {
+        int strategy = in.readByte();
+        if (strategy >= PathStrategy.values().length) throw new IOException("Corrupt snapshot: strategy " + strategy);
+        pathStrategy   = PathStrategy.values()[strategy];
+        nextAgentId    = in.readVarInt();
+        nextCustomerId = in.readVarInt();
+        for (RandomStream stream : RandomStream.values()) {
+            long streamSeed = in.readLong();
+            long gamma      = in.readLong();
+            if ((gamma & 1) == 0) throw new IOException("Corrupt snapshot: random stream " + stream);
+            streams.get(stream).restore(streamSeed, gamma);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package supermarket.simulator.model;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * SplitMix64 generator, the algorithm behind {@link java.util.SplittableRandom}, with its
+ * state in the open: {@link #getSeed()} and {@link #getGamma()} are all there is to it, so a
+ * world snapshot can store a stream and continue it exactly where it was.
+ *
+ * Not thread-safe; one generator per subsystem of one simulation.
+ */
+public final class SimulationRandom implements RandomGenerator {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long seed;
+    private long gamma;   // always odd
+
+    public SimulationRandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private SimulationRandom(long seed, long gamma) {
+        this.seed  = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Continue exactly where the generator with this seed and gamma was. In place, so anyone
+     * holding this generator follows along.
+     */
+    void restore(long seed, long gamma) {
+        if ((gamma & 1) == 0) throw new IllegalArgumentException("Gamma must be odd: " + gamma);
+        this.seed  = seed;
+        this.gamma = gamma;
+    }
+
+    /** A new, statistically independent generator; advances this one. */
+    public SimulationRandom split() {
+        return new SimulationRandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+    @Override
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    @Override
+    public int nextInt() {
+        return mix32(nextSeed());
+    }
+
+    public long getSeed()  { return seed; }
+    public long getGamma() { return gamma; }
+
+    // -------------------------------------------------------------------------
+    // SplitMix64
+    // -------------------------------------------------------------------------
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
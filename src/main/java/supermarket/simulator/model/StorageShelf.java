@@ -3,7 +3,10 @@ package supermarket.simulator.model;
 import javafx.scene.image.Image;
 import supermarket.simulator.model.world.Grid;
 import supermarket.simulator.model.world.Tile;
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -140,6 +143,24 @@ public class StorageShelf extends SupermarketObject {
         return getTotalItems() >= maxCapacity;
     }
 
+    /**
+     * Quantities per category for a snapshot
+     */
+    public void writeState(SnapshotWriter out) throws IOException {
+        out.writeVarInt(inventory.size());
+        for (Map.Entry<String, Integer> entry : inventory.entrySet()) {
+            out.writeSymbol(entry.getKey());
+            out.writeVarInt(entry.getValue());
+        }
+    }
+
+    public void readState(SnapshotReader in) throws IOException {
+        inventory.clear();
+        for (int i = in.readCount(); i > 0; i--) {
+            inventory.put(in.readSymbol(), in.readVarInt());
+        }
+    }
+
     public Map<String, Integer> getInventory() {
         return new HashMap<>(inventory); // Return copy
     }
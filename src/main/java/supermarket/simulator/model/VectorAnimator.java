@@ -0,0 +1,68 @@
+package supermarket.simulator.model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import static supermarket.simulator.model.AgentStore.ANIMATION_SPEED;
+import static supermarket.simulator.model.AgentStore.ANIM_SPEED;
+
+/**
+ * {@link AgentStore#animate()} with the (incubating) Vector API. Only loaded when the module is
+ * present. Lane for lane the same arithmetic as the scalar loop, so both give bit-identical
+ * visual positions: moving toward the tile adds or subtracts exactly {@code ANIMATION_SPEED}.
+ */
+final class VectorAnimator {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // As many int lanes as double lanes, for the tile coordinates the visual position moves toward
+    private static final VectorSpecies<Integer> TILES =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    private static final DoubleVector FORWARD  = DoubleVector.broadcast(DOUBLES, ANIMATION_SPEED);
+    private static final DoubleVector BACKWARD = DoubleVector.broadcast(DOUBLES, -ANIMATION_SPEED);
+
+    private VectorAnimator() {}
+
+    static void animate(AgentStore store, int size) {
+        // Visual positions
+        int bound = DOUBLES.loopBound(size);
+        for (int i = 0; i < bound; i += DOUBLES.length()) {
+            DoubleVector x = DoubleVector.fromArray(DOUBLES, store.visualX, i);
+            DoubleVector y = DoubleVector.fromArray(DOUBLES, store.visualY, i);
+            x.intoArray(store.prevX, i);
+            y.intoArray(store.prevY, i);
+            moveToward(x, tile(store.tileX, i)).intoArray(store.visualX, i);
+            moveToward(y, tile(store.tileY, i)).intoArray(store.visualY, i);
+        }
+        store.animatePositions(bound, size);
+
+        // Walk animation: frames advance every ANIM_SPEED ticks while walking, reset when standing
+        bound = INTS.loopBound(size);
+        for (int i = 0; i < bound; i += INTS.length()) {
+            VectorMask<Integer> standing = IntVector.fromArray(INTS, store.walking, i).compare(VectorOperators.EQ, 0);
+            IntVector timer = IntVector.fromArray(INTS, store.animTimer, i).add(1);
+            VectorMask<Integer> next = timer.compare(VectorOperators.GE, ANIM_SPEED);
+            IntVector frame = IntVector.fromArray(INTS, store.animFrame, i).add(1, next);
+            timer.blend(0, next.or(standing)).intoArray(store.animTimer, i);
+            frame.blend(0, standing).intoArray(store.animFrame, i);
+        }
+        store.animateFrames(bound, size);
+    }
+
+    private static DoubleVector tile(int[] tiles, int i) {
+        return (DoubleVector) IntVector.fromArray(TILES, tiles, i).convertShape(VectorOperators.I2D, DOUBLES, 0);
+    }
+
+    /** Same as {@link AgentStore#moveToward}: arrive when within one step, else one step closer. */
+    private static DoubleVector moveToward(DoubleVector current, DoubleVector target) {
+        DoubleVector distance = target.sub(current);
+        VectorMask<Double> arrived = distance.abs().compare(VectorOperators.LE, ANIMATION_SPEED);
+        DoubleVector step = FORWARD.blend(BACKWARD, distance.compare(VectorOperators.LT, 0.0));
+        return current.add(step).blend(target, arrived);
+    }
+}
@@ -0,0 +1,121 @@
+package supermarket.simulator.model;
+
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Waits in ticks, counted in a fixed set of buckets instead of kept one by one, so the memory
+ * and the snapshot size do not grow with the length of the run. Waits below {@link #EXACT}
+ * ticks have a bucket each, longer ones share one of {@link #SUB_BUCKETS} buckets per power of
+ * two (at most 1/32 = 3% wide). Percentiles are exact below {@link #EXACT}; above it they are
+ * the upper edge of the bucket, never more than the longest wait seen.
+ *
+ * Histograms {@link #merge} losslessly, e.g. all checkouts of a store into one.
+ */
+public class WaitHistogram {
+
+    public static final int EXACT = 1024;
+
+    private static final int EXACT_BITS  = Integer.numberOfTrailingZeros(EXACT);
+    private static final int SUB_BITS    = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS     = EXACT + (Integer.SIZE - 1 - EXACT_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private int max;
+
+    /** Count one wait; negative waits count as 0. */
+    public void add(int ticks) {
+        int wait = Math.max(0, ticks);
+        counts[bucket(wait)]++;
+        count++;
+        sum += wait;
+        max = Math.max(max, wait);
+    }
+
+    /** Add everything counted in {@code other}, as if its waits were added here. */
+    public void merge(WaitHistogram other) {
+        for (int b = 0; b < BUCKETS; b++) counts[b] += other.counts[b];
+        count += other.count;
+        sum   += other.sum;
+        max    = Math.max(max, other.max);
+    }
+
+    public long getCount() { return count; }
+    public int getMax()    { return max; }
+
+    public double getMean() {
+        return count > 0 ? sum / (double) count : 0.0;
+    }
+
+    /** Nearest-rank percentile, p in [0, 100]; 0 when nothing was counted. */
+    public int getPercentile(double p) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank) return Math.min(max, upperEdge(b));
+        }
+        return max;
+    }
+
+    // -------------------------------------------------------------------------
+    // Snapshot
+    // -------------------------------------------------------------------------
+
+    /** Only the buckets in use, as (distance to the previous one, count). */
+    public void writeState(SnapshotWriter out) throws IOException {
+        int used = 0;
+        for (long c : counts) if (c != 0) used++;
+        out.writeVarInt(used);
+        int previous = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            if (counts[b] == 0) continue;
+            out.writeVarInt(b - previous);
+            out.writeVarLong(counts[b]);
+            previous = b;
+        }
+        out.writeVarLong(sum);
+        out.writeVarInt(max);
+    }
+
+    public void readState(SnapshotReader in) throws IOException {
+        Arrays.fill(counts, 0);
+        count = 0;
+        int b = 0;
+        for (int i = in.readCount(); i > 0; i--) {
+            b += in.readVarInt();
+            if (b >= BUCKETS) throw new IOException("Corrupt snapshot: wait bucket " + b);
+            counts[b] = in.readVarLong();
+            count += counts[b];
+        }
+        sum = in.readVarLong();
+        max = in.readVarInt();
+    }
+
+    // -------------------------------------------------------------------------
+    // Buckets
+    // -------------------------------------------------------------------------
+
+    private static int bucket(int wait) {
+        if (wait < EXACT) return wait;
+        int octave = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(wait);   // >= EXACT_BITS
+        int sub    = (wait >>> (octave - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT + (octave - EXACT_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /** Largest wait that falls into bucket {@code b}. */
+    private static int upperEdge(int b) {
+        if (b < EXACT) return b;
+        int octave = EXACT_BITS + (b - EXACT) / SUB_BUCKETS;
+        int sub    = (b - EXACT) % SUB_BUCKETS;
+        long lower = (1L << octave) + ((long) sub << (octave - SUB_BITS));
+        return (int) Math.min(Integer.MAX_VALUE, lower + (1L << (octave - SUB_BITS)) - 1);
+    }
+}
@@ -0,0 +1,16 @@
+package supermarket.simulator.model.enums;
+
+/**
+ * What can happen to a customer, as reported to the event sink of the context.
+ * The meaning of the value that comes with an event depends on the type.
+ *
+ * New types go at the end: traces store the ordinal.
+ */
+public enum EventType {
+    SPAWNED,            // value: 0
+    ITEM_PICKED,        // value: items in the basket afterwards
+    QUEUE_JOINED,       // value: checkout id
+    SERVICE_STARTED,    // value: ticks waited in the queue
+    SERVICE_FINISHED,   // value: items paid for
+    LEFT                // value: 0
+}
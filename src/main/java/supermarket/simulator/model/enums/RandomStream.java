@@ -0,0 +1,15 @@
+package supermarket.simulator.model.enums;
+
+/**
+ * Independent random streams of one simulation (see SimulationContext#getRandom).
+ * Every subsystem draws from its own stream, so extra draws in one (e.g. a new sprite)
+ * do not shift the numbers another one sees.
+ *
+ * New streams go at the end: the streams are split off in declaration order.
+ */
+public enum RandomStream {
+    LAYOUT,      // generated floor plans, shelf stock
+    ARRIVALS,    // when customers walk in
+    SHOPPING,    // shopping lists: shelves, checkout
+    SPRITES      // which character sheet a customer gets
+}
@@ -0,0 +1,394 @@
+package supermarket.simulator.model.world;
+
+import javafx.geometry.Point2D;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Affine;
+import javafx.scene.transform.NonInvertibleTransformException;
+import supermarket.simulator.model.Person;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The static part of the floor: floor tiles and fixtures (shelves, fridges, checkouts,
+ * walls), composited once into images of {@link #CHUNK_PIXELS} square and then only blitted.
+ * Chunks are built when they first come into view and kept in an LRU of
+ * {@link #MAX_CHUNKS}, so a huge floor costs memory only for what is looked at.
+ *
+ * Persons are drawn over the background. Where a fixture stands in front of a person (origin
+ * row below the person's row, sprite overlapping the person), its cells are drawn again from
+ * the floor up, in Y order: floors, then fixtures and persons row by row. Every fixture reaching
+ * into those cells is drawn again too, and its cells join in, until no marked sprite reaches
+ * outside them. Drawing only the one fixture again would composite its translucent pixels twice
+ * and cover later fixtures that overlap it; this way the picture is the same as drawing
+ * everything row by row ({@link GridRenderer}), as long as every cell has an opaque floor.
+ *
+ * {@link Grid.ChangeListener}: a changed tile drops the chunks its fixture may reach into;
+ * the fixture index is rebuilt when the grid version moved. Used on the FX thread only, like
+ * the renderer; the simulation changes the layout on that thread too.
+ */
+final class BackgroundCache implements Grid.ChangeListener {
+
+    static final int CHUNK_PIXELS = 512;
+    static final int MAX_CHUNKS   = 96;            // ~96 MB of ARGB at 512x512
+    private static final int MAX_DIRTY_CELLS = 1024;  // more changes at once: drop everything
+
+    private final Grid grid;
+    private final int cellSize;
+    private final int chunkCells;
+    private final int chunksX;
+
+    // Fixtures in drawing order (row by row, as GridRenderer draws them), built per grid version
+    private int fixtureVersion = -1;
+    private int fixtureCount;
+    private Image[] fixtureImage  = new Image[0];
+    private double[] fixtureRect  = new double[0];   // x, y, width, height in pixels
+    private int[] fixtureRow      = new int[0];
+    private int[] rowStart        = new int[0];      // fixtures of row y: rowStart[y]..rowStart[y + 1]
+    private int[] cellStart       = new int[0];      // fixtures whose sprite covers a cell (CSR)
+    private int[] cellFixtures    = new int[0];
+    private int maxReachCells;                       // how far a sprite reaches from its cell
+
+    // Per frame: cells to draw again from the floor up, and the fixtures reaching into them
+    private int[] occluderStamp = new int[0];
+    private int[] occluderQueue = new int[0];   // marked fixtures, in marking order
+    private int[] cellStamp     = new int[0];
+    private int[] occludedCells = new int[0];
+    private int occludedCount;
+    private int stamp;
+    private final int[] cells = new int[4];     // cells a sprite covers {minX, minY, maxX, maxY}
+
+    private final Map<Integer, WritableImage> chunks = new LinkedHashMap<>(MAX_CHUNKS, 0.75f, true);
+    private final int[] dirtyCells = new int[MAX_DIRTY_CELLS];
+    private int dirtyCount;
+    private boolean dropAll;
+
+    private Canvas scratch;   // where a chunk is composited before the snapshot
+    private final SnapshotParameters snapshotParameters = new SnapshotParameters();
+
+    // Statistics
+    private long chunksBuilt;
+    private int occludersDrawn;
+
+    BackgroundCache(Grid grid) {
+        this.grid       = grid;
+        this.cellSize   = grid.getCellSize();
+        this.chunkCells = Math.max(1, CHUNK_PIXELS / cellSize);
+        this.chunksX    = (grid.getWidth() + chunkCells - 1) / chunkCells;
+        snapshotParameters.setFill(Color.TRANSPARENT);
+        grid.addChangeListener(this);
+    }
+
+    @Override
+    public void tileChanged(int x, int y) {
+        if (dirtyCount == MAX_DIRTY_CELLS) {
+            dropAll = true;
+            return;
+        }
+        dirtyCells[dirtyCount++] = y * grid.getWidth() + x;
+    }
+
+    // -------------------------------------------------------------------------
+    // Background
+    // -------------------------------------------------------------------------
+
+    /** Blit the chunks in view of {@code gc} (its canvas and transform), building missing ones. */
+    void draw(GraphicsContext gc) {
+        refresh();
+        int span = chunkCells * cellSize;
+        int[] view = visibleCells(gc);
+        for (int cy = view[1] / chunkCells; cy <= view[3] / chunkCells; cy++) {
+            for (int cx = view[0] / chunkCells; cx <= view[2] / chunkCells; cx++) {
+                gc.drawImage(chunk(cx, cy), cx * span, cy * span);
+            }
+        }
+    }
+
+    /** Cells {minX, minY, maxX, maxY} that the canvas of {@code gc} shows through its transform. */
+    int[] visibleCells(GraphicsContext gc) {
+        Canvas canvas = gc.getCanvas();
+        double minX = 0, minY = 0, maxX = canvas.getWidth(), maxY = canvas.getHeight();
+        try {
+            Affine inverse = gc.getTransform().createInverse();
+            Point2D a = inverse.transform(minX, minY);
+            Point2D b = inverse.transform(maxX, maxY);
+            minX = Math.min(a.getX(), b.getX());
+            minY = Math.min(a.getY(), b.getY());
+            maxX = Math.max(a.getX(), b.getX());
+            maxY = Math.max(a.getY(), b.getY());
+        } catch (NonInvertibleTransformException e) {
+            // Degenerate transform: nothing sensible is visible, draw as untransformed
+        }
+        return new int[]{
+                clamp((int) Math.floor(minX / cellSize), grid.getWidth()),
+                clamp((int) Math.floor(minY / cellSize), grid.getHeight()),
+                clamp((int) Math.floor(maxX / cellSize), grid.getWidth()),
+                clamp((int) Math.floor(maxY / cellSize), grid.getHeight())
+        };
+    }
+
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+
+    private WritableImage chunk(int cx, int cy) {
+        int key = cy * chunksX + cx;
+        WritableImage image = chunks.get(key);
+        if (image == null) {
+            image = buildChunk(cx, cy);
+            chunks.put(key, image);
+            if (chunks.size() > MAX_CHUNKS) {
+                var eldest = chunks.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+        return image;
+    }
+
+    /** Floors and fixtures of one chunk, drawn as {@link GridRenderer} would and snapshotted. */
+    private WritableImage buildChunk(int cx, int cy) {
+        int x0 = cx * chunkCells, y0 = cy * chunkCells;
+        int x1 = Math.min(grid.getWidth(), x0 + chunkCells);
+        int y1 = Math.min(grid.getHeight(), y0 + chunkCells);
+        int pixelWidth  = (x1 - x0) * cellSize;
+        int pixelHeight = (y1 - y0) * cellSize;
+        if (scratch == null) scratch = new Canvas(chunkCells * cellSize, chunkCells * cellSize);
+
+        GraphicsContext gc = scratch.getGraphicsContext2D();
+        gc.clearRect(0, 0, scratch.getWidth(), scratch.getHeight());
+        gc.setImageSmoothing(false);
+        gc.save();
+        gc.translate(-x0 * cellSize, -y0 * cellSize);
+
+        for (int x = x0; x < x1; x++) {
+            for (int y = y0; y < y1; y++) drawFloor(gc, x, y);
+        }
+        // Fixtures reaching into the chunk, also those standing below or beside it
+        double left = x0 * cellSize, top = y0 * cellSize;
+        for (int f = 0; f < fixtureCount; f++) {
+            int r = f * 4;
+            if (fixtureRect[r] >= left + pixelWidth || fixtureRect[r] + fixtureRect[r + 2] <= left) continue;
+            if (fixtureRect[r + 1] >= top + pixelHeight || fixtureRect[r + 1] + fixtureRect[r + 3] <= top) continue;
+            gc.drawImage(fixtureImage[f], fixtureRect[r], fixtureRect[r + 1], fixtureRect[r + 2], fixtureRect[r + 3]);
+        }
+        gc.restore();
+
+        WritableImage image = new WritableImage(pixelWidth, pixelHeight);
+        snapshotParameters.setViewport(new Rectangle2D(0, 0, pixelWidth, pixelHeight));
+        scratch.snapshot(snapshotParameters, image);
+        chunksBuilt++;
+        return image;
+    }
+
+    private void drawFloor(GraphicsContext gc, int x, int y) {
+        Tile tile = grid.getTile(x, y);
+        Image floor = tile.getFloorTexture() != null ? tile.getFloorTexture()
+                : tile.getWidthInCells() == 1 && tile.getHeightInCells() == 1 ? tile.getImage() : null;
+        if (floor != null) gc.drawImage(floor, x * cellSize, y * cellSize, cellSize, cellSize);
+    }
+
+    // -------------------------------------------------------------------------
+    // Occluders
+    // -------------------------------------------------------------------------
+
+    /**
+     * Find what to draw again this frame: the fixtures whose sprite overlaps a person (at
+     * {@code alpha} between their last two positions) and that stand on a later row than the
+     * person, the cells they cover, and every fixture reaching into those cells, repeated until
+     * nothing new is marked.
+     *
+     * @return false when nobody stands behind a fixture and the background can stay as it is
+     */
+    boolean markOccluders(List<? extends Person> persons, double alpha) {
+        refresh();
+        if (++stamp == 0) {
+            Arrays.fill(occluderStamp, 0);
+            Arrays.fill(cellStamp, 0);
+            stamp = 1;
+        }
+        occludersDrawn = 0;
+        occludedCount  = 0;
+        int marked = 0;
+        for (Person p : persons) {
+            double x = p.getPrevVisualX() + (p.getVisualX() - p.getPrevVisualX()) * alpha;
+            double y = p.getPrevVisualY() + (p.getVisualY() - p.getPrevVisualY()) * alpha;
+            int row = p.getTileY();
+            int minX = Math.max(0, (int) Math.floor(x)), maxX = Math.min(grid.getWidth() - 1, (int) Math.ceil(x));
+            int minY = Math.max(0, (int) Math.floor(y)), maxY = Math.min(grid.getHeight() - 1, (int) Math.ceil(y));
+            for (int cy = minY; cy <= maxY; cy++) {
+                for (int cx = minX; cx <= maxX; cx++) {
+                    int cell = cy * grid.getWidth() + cx;
+                    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                        int f = cellFixtures[i];
+                        if (fixtureRow[f] > row) marked = mark(f, marked);
+                    }
+                }
+            }
+        }
+
+        // Their cells, and whatever else reaches into those: e.g. a later fixture overlapping one
+        for (int head = 0; head < marked; head++) {
+            coveredCells(occluderQueue[head]);
+            for (int cy = cells[1]; cy <= cells[3]; cy++) {
+                for (int cx = cells[0]; cx <= cells[2]; cx++) {
+                    int cell = cy * grid.getWidth() + cx;
+                    if (cellStamp[cell] == stamp) continue;
+                    cellStamp[cell] = stamp;
+                    occludedCells[occludedCount++] = cell;
+                    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) marked = mark(cellFixtures[i], marked);
+                }
+            }
+        }
+        return occludedCount > 0;
+    }
+
+    private int mark(int f, int marked) {
+        if (occluderStamp[f] == stamp) return marked;
+        occluderStamp[f] = stamp;
+        occluderQueue[marked] = f;
+        return marked + 1;
+    }
+
+    /** Floors of the cells to draw again, over what the background has there. */
+    void drawOccludedFloors(GraphicsContext gc) {
+        int width = grid.getWidth();
+        for (int c = 0; c < occludedCount; c++) drawFloor(gc, occludedCells[c] % width, occludedCells[c] / width);
+    }
+
+    /** Draw the marked fixtures of {@code row} again, before the persons of that row. */
+    void drawOccluders(GraphicsContext gc, int row) {
+        for (int f = rowStart[row]; f < rowStart[row + 1]; f++) {
+            if (occluderStamp[f] != stamp) continue;
+            int r = f * 4;
+            gc.drawImage(fixtureImage[f], fixtureRect[r], fixtureRect[r + 1], fixtureRect[r + 2], fixtureRect[r + 3]);
+            occludersDrawn++;
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Layout changes
+    // -------------------------------------------------------------------------
+
+    /** Rebuild the fixture index after a layout change and drop the chunks it touched. */
+    private void refresh() {
+        if (fixtureVersion == grid.getVersion() && dirtyCount == 0 && !dropAll) return;
+        int oldReach = maxReachCells;
+        if (fixtureVersion != grid.getVersion()) buildFixtures();
+
+        if (dropAll) {
+            chunks.clear();
+        } else {
+            int reach = Math.max(oldReach, maxReachCells);
+            for (int i = 0; i < dirtyCount; i++) {
+                int x = dirtyCells[i] % grid.getWidth();
+                int y = dirtyCells[i] / grid.getWidth();
+                int minX = Math.max(0, x - reach) / chunkCells, maxX = Math.min(grid.getWidth() - 1, x + reach) / chunkCells;
+                int minY = Math.max(0, y - reach) / chunkCells, maxY = Math.min(grid.getHeight() - 1, y + reach) / chunkCells;
+                for (int cy = minY; cy <= maxY; cy++) {
+                    for (int cx = minX; cx <= maxX; cx++) chunks.remove(cy * chunksX + cx);
+                }
+            }
+        }
+        dirtyCount = 0;
+        dropAll    = false;
+    }
+
+    /** The sprites that are not floor, with the placement rules of {@link GridRenderer}. */
+    private void buildFixtures() {
+        int width = grid.getWidth(), height = grid.getHeight();
+        fixtureCount  = 0;
+        maxReachCells = 0;
+        rowStart = new int[height + 1];
+        for (int y = 0; y < height; y++) {
+            rowStart[y] = fixtureCount;
+            // Large tile origins of this row, then 1x1 tiles whose image is taller than a cell
+            for (int x = 0; x < width; x++) {
+                Tile tile = grid.getTile(x, y);
+                if (tile.getImage() == null || tile.getWidthInCells() <= 1 && tile.getHeightInCells() <= 1) continue;
+                double drawWidth  = tile.getWidthInCells() * cellSize;
+                double drawHeight = tile.getImage().getHeight() * drawWidth / tile.getImage().getWidth();
+                addFixture(tile.getImage(), x * cellSize, (y + tile.getHeightInCells()) * cellSize - drawHeight,
+                        drawWidth, drawHeight, y);
+            }
+            for (int x = 0; x < width; x++) {
+                Tile tile = grid.getTile(x, y);
+                if (tile.getImage() == null || tile.getWidthInCells() != 1 || tile.getHeightInCells() != 1) continue;
+                double drawHeight = tile.getImage().getHeight() * cellSize / tile.getImage().getWidth();
+                if (drawHeight <= cellSize + 2) continue;
+                addFixture(tile.getImage(), x * cellSize, (y + 1) * cellSize - drawHeight, cellSize, drawHeight, y);
+            }
+        }
+        rowStart[height] = fixtureCount;
+
+        // Which fixtures cover which cell, in two passes
+        cellStart = new int[width * height + 1];
+        for (int pass = 0; pass < 2; pass++) {
+            int[] next = pass == 1 ? Arrays.copyOf(cellStart, cellStart.length) : null;
+            for (int f = 0; f < fixtureCount; f++) {
+                coveredCells(f);
+                maxReachCells = Math.max(maxReachCells, Math.max(cells[2] - cells[0], cells[3] - cells[1]) + 1);
+                for (int y = cells[1]; y <= cells[3]; y++) {
+                    for (int x = cells[0]; x <= cells[2]; x++) {
+                        if (pass == 0) cellStart[y * width + x + 1]++;
+                        else cellFixtures[next[y * width + x]++] = f;
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int c = 0; c < width * height; c++) cellStart[c + 1] += cellStart[c];
+                cellFixtures = new int[cellStart[width * height]];
+            }
+        }
+        occluderStamp  = new int[fixtureCount];
+        occluderQueue  = new int[fixtureCount];
+        cellStamp      = new int[width * height];
+        occludedCells  = new int[width * height];
+        stamp          = 0;
+        fixtureVersion = grid.getVersion();
+    }
+
+    /** Fill {@link #cells} with the cells the sprite of fixture {@code f} covers. */
+    private void coveredCells(int f) {
+        int r = f * 4;
+        cells[0] = Math.max(0, (int) Math.floor(fixtureRect[r] / cellSize));
+        cells[1] = Math.max(0, (int) Math.floor(fixtureRect[r + 1] / cellSize));
+        cells[2] = Math.min(grid.getWidth() - 1, (int) Math.ceil((fixtureRect[r] + fixtureRect[r + 2]) / cellSize) - 1);
+        cells[3] = Math.min(grid.getHeight() - 1, (int) Math.ceil((fixtureRect[r + 1] + fixtureRect[r + 3]) / cellSize) - 1);
+    }
+
+    private void addFixture(Image image, double x, double y, double width, double height, int row) {
+        if (fixtureCount == fixtureImage.length) {
+            int capacity = Math.max(64, fixtureCount * 2);
+            fixtureImage = Arrays.copyOf(fixtureImage, capacity);
+            fixtureRect  = Arrays.copyOf(fixtureRect, capacity * 4);
+            fixtureRow   = Arrays.copyOf(fixtureRow, capacity);
+        }
+        int r = fixtureCount * 4;
+        fixtureImage[fixtureCount] = image;
+        fixtureRect[r]     = x;
+        fixtureRect[r + 1] = y;
+        fixtureRect[r + 2] = width;
+        fixtureRect[r + 3] = height;
+        fixtureRow[fixtureCount++] = row;
+    }
+
+    // -------------------------------------------------------------------------
+    // Statistics
+    // -------------------------------------------------------------------------
+
+    long getChunksBuilt()   { return chunksBuilt; }
+    int getChunksCached()   { return chunks.size(); }
+    int getOccludersDrawn() { return occludersDrawn; }
+    int getFixtureCount()   { refresh(); return fixtureCount; }
+    /** Cells a fixture sprite may reach from its origin, e.g. up into rows above it. */
+    int getMaxReachCells()  { refresh(); return maxReachCells; }
+}
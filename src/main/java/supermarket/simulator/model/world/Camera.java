@@ -0,0 +1,61 @@
+package supermarket.simulator.model.world;
+
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * Which part of the floor the canvas shows: the world pixel at the canvas' top-left corner and
+ * a zoom factor (canvas pixels per world pixel). {@link GridRenderer} draws through it and
+ * culls everything outside; below {@link #MINIMAP_ZOOM} it draws a minimap instead of sprites.
+ */
+public class Camera {
+
+    public static final double MIN_ZOOM     = 0.02;
+    public static final double MAX_ZOOM     = 4.0;
+    /** Below this zoom the floor is drawn as one solid color per tile. */
+    public static final double MINIMAP_ZOOM = 1.0 / 3;
+
+    private double x;      // world pixels at the left edge of the canvas
+    private double y;
+    private double zoom = 1.0;
+
+    /** Draw in world coordinates from now on. */
+    public void applyTo(GraphicsContext gc) {
+        gc.setTransform(zoom, 0, 0, zoom, -x * zoom, -y * zoom);
+    }
+
+    /** Move the view along with a drag of (dx, dy) canvas pixels. */
+    public void pan(double dx, double dy) {
+        x -= dx / zoom;
+        y -= dy / zoom;
+    }
+
+    /** Zoom by {@code factor}, keeping the world point under canvas pixel (screenX, screenY) in place. */
+    public void zoomAt(double factor, double screenX, double screenY) {
+        double worldX = x + screenX / zoom;
+        double worldY = y + screenY / zoom;
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+        x    = worldX - screenX / zoom;
+        y    = worldY - screenY / zoom;
+    }
+
+    /** Zoom and center so the whole grid fits a canvas of the given size. */
+    public void fit(Grid grid, double canvasWidth, double canvasHeight) {
+        double worldWidth  = grid.getWidth() * (double) grid.getCellSize();
+        double worldHeight = grid.getHeight() * (double) grid.getCellSize();
+        zoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, Math.min(canvasWidth / worldWidth, canvasHeight / worldHeight)));
+        x    = (worldWidth - canvasWidth / zoom) / 2;
+        y    = (worldHeight - canvasHeight / zoom) / 2;
+    }
+
+    /** Back to the top-left corner at full size. */
+    public void reset() {
+        x    = 0;
+        y    = 0;
+        zoom = 1.0;
+    }
+
+    public boolean isMinimap() { return zoom < MINIMAP_ZOOM; }
+    public double getZoom()    { return zoom; }
+    public double getX()       { return x; }
+    public double getY()       { return y; }
+}
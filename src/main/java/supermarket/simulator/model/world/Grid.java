@@ -1,12 +1,26 @@
 package supermarket.simulator.model.world;
 
 import javafx.scene.image.Image;
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Grid {
+
+    /** Notified after a tile was replaced or changed walkability, so derived data can be patched locally. */
+    public interface ChangeListener {
+        void tileChanged(int x, int y);
+    }
+
     private final int width;
     private final int height;
     private final int cellSize;
     private final Tile[][] tiles;
+    private int version;   // bumped on every structural change (tile replaced, walkability changed)
+    private final List<ChangeListener> listeners = new ArrayList<>();
 
     public Grid(int width, int height, int cellSize) {
         this.width    = width;
@@ -17,6 +31,7 @@ public class Grid {
         for (int x = 0; x < width; x++) {
             for (int y = 0; y < height; y++) {
                 tiles[x][y] = new Tile(true, null, 1, 1);
+                tiles[x][y].placeOn(this, x, y);
             }
         }
     }
@@ -24,6 +39,16 @@ public class Grid {
     public void setTile(int x, int y, Tile tile) {
         if (x >= 0 && x < width && y >= 0 && y < height) {
             tiles[x][y] = tile;
+            tile.placeOn(this, x, y);
+            tileChanged(x, y);
+        }
+    }
+
+    /** Called by setTile and by a placed Tile whose walkability changed. */
+    void tileChanged(int x, int y) {
+        version++;
+        for (ChangeListener listener : listeners) {
+            listener.tileChanged(x, y);
         }
     }
 
@@ -55,7 +80,72 @@ public class Grid {
         }
     }
 
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
     public int getWidth()    { return width; }
     public int getHeight()   { return height; }
     public int getCellSize() { return cellSize; }
+
+    /** Monotonically increasing layout version; caches compare it to detect changes. */
+    public int getVersion()  { return version; }
+
+    // -------------------------------------------------------------------------
+    // Snapshot
+    // -------------------------------------------------------------------------
+
+    /** Walkability (one bit per tile, row by row) and the debug label of every tile. */
+    public void writeState(SnapshotWriter out) throws IOException {
+        out.writeVarInt(width);
+        out.writeVarInt(height);
+        int bits = 0;
+        int count = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (tiles[x][y].isWalkable()) bits |= 1 << count;
+                if (++count == 8) {
+                    out.writeByte(bits);
+                    bits  = 0;
+                    count = 0;
+                }
+            }
+        }
+        if (count > 0) out.writeByte(bits);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                out.writeSymbol(tiles[x][y].getLabel());
+            }
+        }
+    }
+
+    /**
+     * Lay the stored walkability and labels over the tiles that are there. Only tiles whose
+     * walkability differs are changed (and bump the version); sprites stay as built.
+     */
+    public void readState(SnapshotReader in) throws IOException {
+        int storedWidth  = in.readVarInt();
+        int storedHeight = in.readVarInt();
+        if (storedWidth != width || storedHeight != height) {
+            throw new IOException("Snapshot grid is " + storedWidth + "x" + storedHeight + ", not " + width + "x" + height);
+        }
+        int bits  = 0;
+        int count = 8;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (count == 8) {
+                    bits  = in.readByte();
+                    count = 0;
+                }
+                tiles[x][y].setWalkable((bits >> count++ & 1) != 0);
+            }
+        }
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                tiles[x][y].setLabel(in.readSymbol());
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -1,15 +1,31 @@
 package supermarket.simulator.model.world;
 
+import supermarket.simulator.Pathfinding.GridPath;
+import supermarket.simulator.model.AgentStore;
 import supermarket.simulator.model.Person;
+import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Responsible for rendering the Grid and all Persons onto a Canvas.
  * Separated from Grid to follow the Single Responsibility Principle.
+ *
+ * Floors and fixtures hardly ever change, so by default they come from a {@link BackgroundCache}
+ * and a frame only blits that, then draws the persons and the fixtures standing in front of
+ * them, Y-sorted. {@link #setBackgroundCaching(boolean) Without the cache} everything is drawn
+ * tile by tile every frame, as before; both give the same picture.
+ *
+ * With a {@link Camera} the canvas shows a zoomed and panned part of the floor. Only the tiles,
+ * persons and fixtures in view are drawn, so the frame time follows the viewport instead of
+ * the size of the floor; zoomed far out, the floor is one minimap image of a pixel per tile.
  */
 public class GridRenderer {
 
@@ -29,28 +45,160 @@ public class GridRenderer {
             Color.color(0.0, 0.7, 0.5, 0.75),  // teal
     };
 
+    // Kleur per debug label, ook gebruikt door de minimap
+    private static final Map<String, Color> LABEL_COLORS = Map.of(
+            "Checkout",  Color.color(0.2, 0.6, 1.0),
+            "Queue",     Color.color(1.0, 0.6, 0.0),
+            "Employee",  Color.color(0.2, 0.9, 0.2),
+            "Access",    Color.color(0.8, 0.0, 0.8),
+            "Shelf",     Color.color(0.6, 0.4, 0.1),
+            "Entrance",  Color.color(0.0, 0.9, 0.7),
+            "Exit",      Color.color(1.0, 0.3, 0.3));
+
+    private static final Font COORDINATE_FONT = new Font("Arial", 7);
+    private static final Font LABEL_FONT      = new Font("Arial", 6);
+
+    // Minimap: kleur per soort tile
+    private static final Color VOID_COLOR     = Color.rgb(24, 24, 28);
+    private static final Color FLOOR_COLOR    = Color.rgb(196, 184, 160);
+    private static final Color FIXTURE_COLOR  = Color.rgb(92, 72, 56);
+    private static final Color PERSON_COLOR   = Color.rgb(0, 200, 255);
+    private static final double PERSON_PIXELS = 3;   // minimum size of a person on the minimap
+
     private final Grid grid;
+    private final BackgroundCache background;
+    private boolean backgroundCaching = true;
+    private boolean culling           = true;
+    private long lastRenderNanos;
+
+    private Camera camera;   // null: world pixels are canvas pixels
+
+    // Per frame: cells in view {minX, minY, maxX, maxY}, and the persons standing there
+    private int[] view;
+    private final List<Person> visible = new ArrayList<>();
+
+    private WritableImage minimap;   // a pixel per tile, rebuilt when the layout changes
+    private int minimapVersion = -1;
 
     public GridRenderer(Grid grid) {
-        this.grid = grid;
+        this.grid       = grid;
+        this.background = new BackgroundCache(grid);
     }
 
     /** Teken de grid + alle persons in de juiste volgorde. */
     public void render(GraphicsContext gc, List<? extends Person> persons) {
+        render(gc, persons, 1.0);
+    }
+
+    /**
+     * Idem, met persons {@code alpha} (0..1) op weg tussen de laatste twee ticks. The persons are
+     * those of one simulation; they are looked up by row in their {@link AgentStore}, so
+     * everyone in that store is drawn.
+     */
+    public void render(GraphicsContext gc, List<? extends Person> persons, double alpha) {
+        long start = System.nanoTime();
         gc.setImageSmoothing(false);
+        if (camera != null) {
+            Canvas canvas = gc.getCanvas();
+            gc.setTransform(1, 0, 0, 1, 0, 0);
+            gc.setFill(VOID_COLOR);
+            gc.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            camera.applyTo(gc);
+        }
+        view = culling ? background.visibleCells(gc) : new int[]{0, 0, grid.getWidth() - 1, grid.getHeight() - 1};
+        collectVisible(persons.isEmpty() ? null : persons.get(0).getContext().getAgents());
+
+        if (camera != null && camera.isMinimap()) {
+            drawMinimap(gc);
+            gc.setTransform(1, 0, 0, 1, 0, 0);
+            lastRenderNanos = System.nanoTime() - start;
+            return;
+        }
 
-        drawFloors(gc);
+        if (backgroundCaching) {
+            // Floors and fixtures in one go; debug paths now lie over the fixtures too
+            background.draw(gc);
+            drawDynamic(gc, alpha);
+        } else {
+            drawFloors(gc);
 
-        if (DEBUG && DEBUG_PATHS) {
-            drawDebugPaths(gc, persons);
-        }
+            if (DEBUG && DEBUG_PATHS) {
+                drawDebugPaths(gc);
+            }
 
-        // Y-sorted rendering: per rij tiles dan persons
-        drawLayered(gc, persons);
+            // Y-sorted rendering: per rij tiles dan persons
+            drawLayered(gc, alpha);
+        }
 
         if (DEBUG && DEBUG_GRID) {
             drawDebugOverlay(gc);
         }
+        if (camera != null) gc.setTransform(1, 0, 0, 1, 0, 0);
+        lastRenderNanos = System.nanoTime() - start;
+    }
+
+    /** Draw through {@code camera} from now on; null to draw world pixels 1:1 from the top-left. */
+    public void setCamera(Camera camera) { this.camera = camera; }
+    public Camera getCamera()            { return camera; }
+
+    /** Persons drawn last frame, i.e. in view. */
+    public int getVisibleCount()         { return visible.size(); }
+
+    // -------------------------------------------------------------------------
+    // Culling
+    // -------------------------------------------------------------------------
+
+    /**
+     * Persons on a tile in view or next to it (they may still be walking in from there), sorted
+     * by row: the store's row index is walked for the rows in view only, so this costs rows in
+     * view plus persons on them, however many there are elsewhere.
+     */
+    private void collectVisible(AgentStore agents) {
+        visible.clear();
+        if (agents == null) return;
+        int maxY = Math.min(grid.getHeight() - 1, view[3] + 1);
+        for (int y = Math.max(0, view[1] - 1); y <= maxY; y++) {
+            for (int slot = agents.firstInRow(y); slot >= 0; slot = agents.nextInRow(slot)) {
+                int x = agents.getTileX(slot);
+                if (x >= view[0] - 1 && x <= view[2] + 1) visible.add(agents.getPerson(slot));
+            }
+        }
+    }
+
+    /** Draw the persons of row {@code y}: the next ones in {@link #visible}, from index {@code next}. */
+    private int drawRow(GraphicsContext gc, int y, int next, double alpha) {
+        while (next < visible.size() && visible.get(next).getTileY() == y) {
+            visible.get(next++).draw(gc, grid.getCellSize(), alpha);
+        }
+        return next;
+    }
+
+    /** Rows with something to draw: fixtures above or below the view can still reach into it. */
+    private int firstRow() { return Math.max(0, view[1] - 1 - background.getMaxReachCells()); }
+    private int lastRow()  { return Math.min(grid.getHeight() - 1, view[3] + 1 + background.getMaxReachCells()); }
+
+    /** Use the cached background (default), or draw all tiles every frame, e.g. to compare. */
+    public void setBackgroundCaching(boolean backgroundCaching) { this.backgroundCaching = backgroundCaching; }
+    public boolean isBackgroundCaching()                        { return backgroundCaching; }
+
+    /**
+     * Draw only the tiles, persons and fixtures in view (default), or all of them every frame as
+     * before the camera, e.g. to compare. The cached background is blitted for the view either way.
+     */
+    public void setCulling(boolean culling) { this.culling = culling; }
+    public boolean isCulling()              { return culling; }
+
+    /** Fixtures the cached background drew again in front of persons last frame. */
+    public int getOccludersDrawn() { return background.getOccludersDrawn(); }
+
+    /** Time the last {@link #render} took on the calling thread, drawing commands only. */
+    public long getLastRenderNanos() { return lastRenderNanos; }
+
+    /** Cache state for a status line: chunks built and held, fixtures drawn again last frame. */
+    public String getBackgroundStats() {
+        return String.format("%d chunks built, %d cached, %d/%d fixtures in front",
+                background.getChunksBuilt(), background.getChunksCached(),
+                background.getOccludersDrawn(), background.getFixtureCount());
     }
 
     // -------------------------------------------------------------------------
@@ -60,8 +208,8 @@ public class GridRenderer {
     private void drawFloors(GraphicsContext gc) {
         int cellSize = grid.getCellSize();
 
-        for (int x = 0; x < grid.getWidth(); x++) {
-            for (int y = 0; y < grid.getHeight(); y++) {
+        for (int x = view[0]; x <= view[2]; x++) {
+            for (int y = view[1]; y <= view[3]; y++) {
                 Tile tile     = grid.getTile(x, y);
                 double pixelX = x * cellSize;
                 double pixelY = y * cellSize;
@@ -81,13 +229,17 @@ public class GridRenderer {
     // Fase 2+3: Y-gesorteerd: per rij eerst objecten dan persons
     // -------------------------------------------------------------------------
 
-    private void drawLayered(GraphicsContext gc, List<? extends Person> persons) {
+    private void drawLayered(GraphicsContext gc, double alpha) {
         int cellSize = grid.getCellSize();
+        int reach    = background.getMaxReachCells();
+        int minX     = Math.max(0, view[0] - reach);
+        int maxX     = Math.min(grid.getWidth() - 1, view[2]);
+        int next     = 0;
 
-        for (int y = 0; y < grid.getHeight(); y++) {
+        for (int y = firstRow(); y <= lastRow(); y++) {
 
             // -- Stap A: teken ALLEEN large tile origins op rij y --
-            for (int x = 0; x < grid.getWidth(); x++) {
+            for (int x = minX; x <= maxX; x++) {
                 Tile tile = grid.getTile(x, y);
 
                 if (tile.getImage() == null) continue;
@@ -106,7 +258,7 @@ public class GridRenderer {
             }
 
             // -- Stap A2: teken 1x1 tiles waarvan de image hoger is dan 1 cel --
-            for (int x = 0; x < grid.getWidth(); x++) {
+            for (int x = view[0]; x <= view[2]; x++) {
                 Tile tile = grid.getTile(x, y);
 
                 if (tile.getImage() == null) continue;
@@ -127,29 +279,78 @@ public class GridRenderer {
                 gc.drawImage(tile.getImage(), x * cellSize, drawY, drawWidth, drawHeight);
             }
 
-            // -- Stap B: teken persons op rij y --
-            for (Person p : persons) {
-                if (p.getTileY() == y) {
-                    p.draw(gc, cellSize);
-                }
+            // -- Stap B: teken persons op rij y (visible is op rij gesorteerd) --
+            next = drawRow(gc, y, next, alpha);
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Met achtergrond-cache: per rij alleen de objecten die iemand bedekken, dan persons
+    // -------------------------------------------------------------------------
+
+    private void drawDynamic(GraphicsContext gc, double alpha) {
+        // Cellen achter een object opnieuw vanaf de vloer, dan Y-gesorteerd zoals zonder cache
+        if (background.markOccluders(visible, alpha)) {
+            background.drawOccludedFloors(gc);
+        }
+        if (DEBUG && DEBUG_PATHS) {
+            drawDebugPaths(gc);
+        }
+
+        int next = 0;
+        for (int y = firstRow(); y <= lastRow(); y++) {
+            background.drawOccluders(gc, y);
+            next = drawRow(gc, y, next, alpha);
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Minimap: ver uitgezoomd één kleur per tile en een stip per persoon
+    // -------------------------------------------------------------------------
+
+    private void drawMinimap(GraphicsContext gc) {
+        int cellSize = grid.getCellSize();
+        if (minimap == null || minimapVersion != grid.getVersion()) buildMinimap();
+        gc.drawImage(minimap, 0, 0, grid.getWidth() * cellSize, grid.getHeight() * cellSize);
+
+        // Never smaller than a few canvas pixels, or nobody would be seen
+        double size = Math.max(cellSize, PERSON_PIXELS / camera.getZoom());
+        double inset = (cellSize - size) / 2;
+        gc.setFill(PERSON_COLOR);
+        for (Person p : visible) {
+            gc.fillRect(p.getTileX() * cellSize + inset, p.getTileY() * cellSize + inset, size, size);
+        }
+    }
+
+    private void buildMinimap() {
+        int width = grid.getWidth(), height = grid.getHeight();
+        if (minimap == null) minimap = new WritableImage(width, height);
+        PixelWriter writer = minimap.getPixelWriter();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                Tile tile = grid.getTile(x, y);
+                Color color = tile.getLabel() != null ? LABEL_COLORS.getOrDefault(tile.getLabel(), FIXTURE_COLOR)
+                        : tile.isWalkable() ? FLOOR_COLOR : FIXTURE_COLOR;
+                writer.setColor(x, y, color);
             }
         }
+        minimapVersion = grid.getVersion();
     }
 
     // -------------------------------------------------------------------------
     // [DEBUG] Route-visualisatie per persoon
     // -------------------------------------------------------------------------
 
-    private void drawDebugPaths(GraphicsContext gc, List<? extends Person> persons) {
+    private void drawDebugPaths(GraphicsContext gc) {
         int    cellSize = grid.getCellSize();
         double half     = cellSize / 2.0;
 
-        for (int i = 0; i < persons.size(); i++) {
-            Person      p    = persons.get(i);
-            List<int[]> path = p.getPath();
+        // Alleen persons in beeld; kleur op agent id, zodat die niet verspringt bij het scrollen
+        for (Person p : visible) {
+            GridPath path = p.getPath();
             if (path == null || path.isEmpty()) continue;
 
-            Color color = PATH_COLORS[i % PATH_COLORS.length];
+            Color color = PATH_COLORS[p.getAgentId() % PATH_COLORS.length];
 
             gc.setStroke(color);
             gc.setLineWidth(2.5);
@@ -157,24 +358,23 @@ public class GridRenderer {
             double fromX = p.getTileX() * cellSize + half;
             double fromY = p.getTileY() * cellSize + half;
 
-            for (int[] step : path) {
-                double toX = step[0] * cellSize + half;
-                double toY = step[1] * cellSize + half;
+            for (int s = 0; s < path.size(); s++) {
+                double toX = path.getX(s) * cellSize + half;
+                double toY = path.getY(s) * cellSize + half;
                 gc.strokeLine(fromX, fromY, toX, toY);
                 fromX = toX;
                 fromY = toY;
             }
 
             gc.setFill(color);
-            for (int[] step : path) {
-                double cx = step[0] * cellSize + half;
-                double cy = step[1] * cellSize + half;
+            for (int s = 0; s < path.size(); s++) {
+                double cx = path.getX(s) * cellSize + half;
+                double cy = path.getY(s) * cellSize + half;
                 gc.fillOval(cx - 3, cy - 3, 6, 6);
             }
 
-            int[]  goal = path.get(path.size() - 1);
-            double gx   = goal[0] * cellSize + half;
-            double gy   = goal[1] * cellSize + half;
+            double gx   = path.lastX() * cellSize + half;
+            double gy   = path.lastY() * cellSize + half;
             double arm  = cellSize * 0.35;
 
             gc.setStroke(color);
@@ -192,17 +392,9 @@ public class GridRenderer {
     private void drawDebugOverlay(GraphicsContext gc) {
         int cellSize = grid.getCellSize();
 
-        java.util.Map<String, Color> labelColors = new java.util.HashMap<>();
-        labelColors.put("Checkout",  Color.color(0.2, 0.6, 1.0));
-        labelColors.put("Queue",     Color.color(1.0, 0.6, 0.0));
-        labelColors.put("Employee",  Color.color(0.2, 0.9, 0.2));
-        labelColors.put("Access",    Color.color(0.8, 0.0, 0.8));
-        labelColors.put("Shelf",     Color.color(0.6, 0.4, 0.1));
-        labelColors.put("Entrance",  Color.color(0.0, 0.9, 0.7));
-        labelColors.put("Exit",      Color.color(1.0, 0.3, 0.3));
-
-        for (int x = 0; x < grid.getWidth(); x++) {
-            for (int y = 0; y < grid.getHeight(); y++) {
+        // Alleen de cellen in beeld
+        for (int x = view[0]; x <= view[2]; x++) {
+            for (int y = view[1]; y <= view[3]; y++) {
                 Tile tile     = grid.getTile(x, y);
                 double pixelX = x * cellSize;
                 double pixelY = y * cellSize;
@@ -212,7 +404,7 @@ public class GridRenderer {
                 gc.strokeRect(pixelX, pixelY, cellSize, cellSize);
 
                 gc.setFill(Color.BLACK);
-                gc.setFont(new Font("Arial", 7));
+                gc.setFont(COORDINATE_FONT);
                 gc.fillText("[" + x + "," + y + "]", pixelX + 1, pixelY + 9);
 
                 if (!tile.isWalkable()) {
@@ -236,14 +428,14 @@ public class GridRenderer {
 
                 String label = tile.getLabel();
                 if (label != null) {
-                    Color c = labelColors.getOrDefault(label, Color.WHITE);
+                    Color c = LABEL_COLORS.getOrDefault(label, Color.WHITE);
                     gc.setFill(Color.color(c.getRed(), c.getGreen(), c.getBlue(), 0.25));
                     gc.fillRect(pixelX + 1, pixelY + 1, cellSize - 2, cellSize - 2);
                     gc.setStroke(c);
                     gc.setLineWidth(1.5);
                     gc.strokeRect(pixelX + 1, pixelY + 1, cellSize - 2, cellSize - 2);
                     gc.setFill(c);
-                    gc.setFont(new Font("Arial", 6));
+                    gc.setFont(LABEL_FONT);
                     gc.fillText(label, pixelX + 2, pixelY + cellSize - 2);
                 }
             }
@@ -0,0 +1,141 @@
+package supermarket.simulator.model.world;
+
+import javafx.scene.image.Image;
+import supermarket.simulator.model.Checkout;
+import supermarket.simulator.model.Entrance;
+import supermarket.simulator.model.Exit;
+import supermarket.simulator.model.Refrigerator;
+import supermarket.simulator.model.Shelf;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.enums.RandomStream;
+import supermarket.simulator.services.TilesetLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Generates a hypermarket floor of any size for capacity planning and benchmarks:
+ * outer walls, a freezer wall at the top, blocks of vertical shelves separated by aisles and
+ * cross aisles, and a row of checkouts above the exit and entrance.
+ * Randomness comes from the context, so the same seed always produces the same layout.
+ */
+public class HypermarketBuilder {
+
+    private static final int AISLE_PITCH    = 3;   // shelf column + 2 walkable columns
+    private static final int BLOCK_PITCH    = 6;   // 4 shelf rows + 2 cross-aisle rows
+    private static final int CHECKOUT_PITCH = 3;
+    private static final double GAP_CHANCE  = 0.15; // missing shelves create extra passages
+
+    private static final String[] CATEGORIES = {"produce", "bakery", "general", "dairy", "drinks"};
+
+    private final Grid grid;
+    private final TilesetLoader loader;
+    private final RandomGenerator random;
+
+    private final List<Shelf> shelves             = new ArrayList<>();
+    private final List<Checkout> checkouts        = new ArrayList<>();
+    private final List<Refrigerator> refrigerators = new ArrayList<>();
+    private Entrance entrance;
+    private Exit exit;
+
+    public HypermarketBuilder(SimulationContext context, TilesetLoader loader) {
+        this.grid   = context.getGrid();
+        this.loader = loader;
+        this.random = context.getRandom(RandomStream.LAYOUT);
+    }
+
+    /**
+     * Builds the complete floor
+     */
+    public void build() {
+        fillFloorAndWalls();
+        placeRefrigerators();
+        placeShelves();
+        placeCheckouts();
+        placeEntranceAndExit();
+    }
+
+    private void fillFloorAndWalls() {
+        Image floor = loader.getNamedTile("floor");
+        Image wall  = loader.getNamedTile("wall_top");
+        int width  = grid.getWidth();
+        int height = grid.getHeight();
+
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                boolean border = x == 0 || y == 0 || x == width - 1 || y == height - 1;
+                grid.setTile(x, y, new Tile(!border, border ? wall : floor, 1, 1));
+            }
+        }
+    }
+
+    /** Freezers along the top wall, access from below */
+    private void placeRefrigerators() {
+        Image fridgeSprite = loader.getNamedTile("fridge");
+        for (int x = 2; x + 3 < grid.getWidth() - 1; x += 4) {
+            Refrigerator fridge = new Refrigerator(x, 1, fridgeSprite, Refrigerator.RefrigeratorType.FROZEN);
+            fridge.placeOnGrid(grid);
+            refrigerators.add(fridge);
+        }
+    }
+
+    private void placeShelves() {
+        Image shelfSprite = loader.getNamedTile("vertshelf");
+        int lastShelfRow = grid.getHeight() - 12;
+
+        for (int y = 5; y + 4 <= lastShelfRow; y += BLOCK_PITCH) {
+            for (int x = 3; x < grid.getWidth() - 3; x += AISLE_PITCH) {
+                if (random.nextDouble() < GAP_CHANCE) continue;
+
+                String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+                Shelf shelf = new Shelf(x, y, shelfSprite, category);
+                shelf.placeOnGrid(grid);
+                shelves.add(shelf);
+            }
+        }
+    }
+
+    private void placeCheckouts() {
+        Image checkoutSprite = loader.getNamedTile("checkout");
+        int checkoutRow = grid.getHeight() - 6;
+        int id = 1;
+
+        for (int x = 4; x < grid.getWidth() - 4; x += CHECKOUT_PITCH) {
+            Checkout checkout = new Checkout(x, checkoutRow, checkoutSprite, id++);
+            checkout.placeOnGrid(grid);
+            checkouts.add(checkout);
+        }
+    }
+
+    private void placeEntranceAndExit() {
+        int bottomRow = grid.getHeight() - 1;
+
+        exit = new Exit(3, bottomRow, loader.getNamedTile("exit"));
+        exit.placeOnGrid(grid);
+
+        entrance = new Entrance(grid.getWidth() - 4, bottomRow, loader.getNamedTile("entrance"));
+        entrance.placeOnGrid(grid);
+    }
+
+    /**
+     * Updates entrance, exit, checkouts and refrigerators (called each tick)
+     */
+    public void updateAll() {
+        entrance.update();
+        exit.update();
+        for (Checkout checkout : checkouts) {
+            checkout.update();
+        }
+        for (Refrigerator fridge : refrigerators) {
+            fridge.update();
+        }
+    }
+
+    // Getters for accessing the objects
+    public List<Shelf> getShelves()              { return new ArrayList<>(shelves); }
+    public List<Checkout> getCheckouts()         { return new ArrayList<>(checkouts); }
+    public List<Refrigerator> getRefrigerators() { return new ArrayList<>(refrigerators); }
+    public Entrance getEntrance()                { return entrance; }
+    public Exit getExit()                        { return exit; }
+}
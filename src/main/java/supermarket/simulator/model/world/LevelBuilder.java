@@ -40,8 +40,8 @@ public class LevelBuilder {
 
 
 
-    public LevelBuilder(Grid grid, TilesetLoader loader) {
-        this.grid = grid;
+    public LevelBuilder(SimulationContext context, TilesetLoader loader) {
+        this.grid = context.getGrid();
         this.loader = loader;
 
 
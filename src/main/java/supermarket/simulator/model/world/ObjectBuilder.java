@@ -4,6 +4,7 @@ import javafx.scene.image.Image;
 import supermarket.simulator.model.Checkout;
 import supermarket.simulator.model.Refrigerator;
 import supermarket.simulator.model.Shelf;
+import supermarket.simulator.model.SimulationContext;
 import supermarket.simulator.model.StorageShelf;
 import supermarket.simulator.services.TilesetLoader;
 
@@ -21,8 +22,8 @@ public class ObjectBuilder {
     private List<Refrigerator> refrigerators;
     private List<StorageShelf> storageshelves;
 
-    public ObjectBuilder(Grid grid, TilesetLoader loader){
-        this.grid = grid;
+    public ObjectBuilder(SimulationContext context, TilesetLoader loader){
+        this.grid = context.getGrid();
         this.loader = loader;
         this.shelves = new ArrayList<>();
         this.checkouts = new ArrayList<>();
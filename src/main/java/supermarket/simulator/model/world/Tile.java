@@ -10,6 +10,9 @@ public class Tile {
     private int widthInCells;
     private int heightInCells;
     private String label;  // Debug label (bijv. "Checkout", "Queue", "Employee")
+    private Grid owner;    // grid this tile is placed on, told about walkability changes
+    private int gridX;
+    private int gridY;
 
 
     public Tile(boolean walkable, Image image, int widthInCells, int heightInCells) {
@@ -25,7 +28,13 @@ public class Tile {
     public void   setLabel(String label){ this.label = label; }
 
     public boolean isWalkable() { return walkable; }
-    public void setWalkable(boolean walkable) { this.walkable = walkable; }
+    public void setWalkable(boolean walkable) {
+        if (this.walkable == walkable) return;
+        this.walkable = walkable;
+        if (owner != null && owner.getTile(gridX, gridY) == this) {
+            owner.tileChanged(gridX, gridY);
+        }
+    }
     public boolean isOccupied() { return occupied; }
     public void setOccupied(boolean occupied) { this.occupied = occupied; }
     public Image getImage() { return image; }
@@ -35,4 +44,10 @@ public class Tile {
 
     public int getHeightInCells() { return heightInCells; }
     public int getWidthInCells() { return widthInCells; }
+
+    void placeOn(Grid owner, int x, int y) {
+        this.owner = owner;
+        this.gridX = x;
+        this.gridY = y;
+    }
 }
\ No newline at end of file
@@ -1,17 +1,14 @@
 package supermarket.simulator.services;
 
 import supermarket.simulator.model.enums.Direction;
-import javafx.scene.image.Image;
-import javafx.scene.image.WritableImage;
+import javafx.scene.canvas.GraphicsContext;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.random.RandomGenerator;
 
 public class CharacterSpriteLoader {
 
-    private static final String BASE_PATH = "/supermarket/simulator/sprites/people/";
-
     // Beschikbare customer sprites
     private static final String[] CUSTOMER_SPRITES = {
             "MarketSet_Customer1.png",
@@ -22,40 +19,23 @@ public class CharacterSpriteLoader {
 
     private static final String EMPLOYEE_SPRITE = "MarketSet_StoreEmployee.png";
 
-    private static final int FRAME_WIDTH  = 7;
-    private static final int FRAME_HEIGHT = 16;
-
-    // Rij 1 (y=0):  4x DOWN, 4x UP, 2x LEFT
-    // Rij 2 (y=16): 4x LEFT, 6x RIGHT
-    private static final Map<Direction, int[]> DIRECTION_DATA = new HashMap<>();
+    // Eén loader per customer sheet, gedeeld door alle customers
+    private static final Map<String, CharacterSpriteLoader> CUSTOMER_LOADERS = new ConcurrentHashMap<>();
 
-    static {
-        DIRECTION_DATA.put(Direction.DOWN,  new int[]{0,  0,  4});
-        DIRECTION_DATA.put(Direction.UP,    new int[]{28, 0,  4});
-        DIRECTION_DATA.put(Direction.LEFT,  new int[]{0,  16, 4});
-        DIRECTION_DATA.put(Direction.RIGHT, new int[]{28, 16, 6});
-    }
+    private final SpriteAtlas atlas;
 
-    private final Image sheet;
-
-    /** Laad een specifiek bestand (bijv. voor employee) */
+    /** Laad een specifiek bestand (bijv. voor employee); the sheet itself is shared through its {@link SpriteAtlas}. */
     public CharacterSpriteLoader(String filename) {
-        String fullPath = BASE_PATH + filename;
-        var stream = getClass().getResourceAsStream(fullPath);
-
-        if (stream == null) {
-            throw new IllegalStateException("Sprite niet gevonden: " + fullPath);
-        }
-
-        sheet = new Image(stream);
-        System.out.println("Sprite geladen: " + filename +
-                " (" + sheet.getWidth() + "x" + sheet.getHeight() + ")");
+        atlas = SpriteAtlas.of(filename);
     }
 
-    /** Maak een loader met een willekeurige customer sprite */
-    public static CharacterSpriteLoader randomCustomer() {
-        String filename = CUSTOMER_SPRITES[new Random().nextInt(CUSTOMER_SPRITES.length)];
-        return new CharacterSpriteLoader(filename);
+    /**
+     * Maak een loader met een willekeurige customer sprite, gekozen met de generator van de simulatie.
+     * Every sheet is decoded once and then shared; a loader holds nothing but the atlas.
+     */
+    public static CharacterSpriteLoader randomCustomer(RandomGenerator random) {
+        String filename = CUSTOMER_SPRITES[random.nextInt(CUSTOMER_SPRITES.length)];
+        return CUSTOMER_LOADERS.computeIfAbsent(filename, CharacterSpriteLoader::new);
     }
 
     /** Maak een loader voor de employee sprite */
@@ -63,16 +43,10 @@ public class CharacterSpriteLoader {
         return new CharacterSpriteLoader(EMPLOYEE_SPRITE);
     }
 
-    /** Geef het juiste animatieframe terug op basis van richting en framenummer */
-    public Image getFrame(Direction dir, int frame) {
-        int[] data     = DIRECTION_DATA.get(dir);
-        int startX     = data[0];
-        int startY     = data[1];
-        int maxFrames  = data[2];
-
-        int safeFrame = frame % maxFrames;
-        int x = startX + safeFrame * FRAME_WIDTH;
-
-        return new WritableImage(sheet.getPixelReader(), x, startY, FRAME_WIDTH, FRAME_HEIGHT);
+    /** Teken het juiste animatieframe op basis van richting en framenummer, zonder iets te alloceren */
+    public void draw(GraphicsContext gc, Direction dir, int frame, double x, double y, double width, double height) {
+        atlas.draw(gc, dir, frame, x, y, width, height);
     }
-}
\ No newline at end of file
+
+    public SpriteAtlas getAtlas() { return atlas; }
+}
@@ -0,0 +1,85 @@
+package supermarket.simulator.services;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import supermarket.simulator.model.enums.Direction;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One character sheet, decoded once and shared by everyone who wears it, with the source
+ * rectangle of every direction/frame combination worked out up front. Drawing a frame is a
+ * table lookup and one source-rectangle {@code drawImage} from the sheet: nothing is copied
+ * or allocated per draw.
+ *
+ * All character sheets share the layout below (7x16 pixel frames):
+ *   row 1 (y=0):  4x DOWN, 4x UP, 2x LEFT
+ *   row 2 (y=16): 4x LEFT, 6x RIGHT
+ * Only the first four LEFT frames of row 2 are used.
+ */
+public final class SpriteAtlas {
+
+    private static final String BASE_PATH = "/supermarket/simulator/sprites/people/";
+
+    private static final int FRAME_WIDTH  = 7;
+    private static final int FRAME_HEIGHT = 16;
+
+    // Per direction: {startX, startY, frames}
+    private static final int[][] DIRECTION_DATA = new int[Direction.values().length][];
+
+    static {
+        DIRECTION_DATA[Direction.DOWN.ordinal()]  = new int[]{0,  0,  4};
+        DIRECTION_DATA[Direction.UP.ordinal()]    = new int[]{28, 0,  4};
+        DIRECTION_DATA[Direction.LEFT.ordinal()]  = new int[]{0,  16, 4};
+        DIRECTION_DATA[Direction.RIGHT.ordinal()] = new int[]{28, 16, 6};
+    }
+
+    // Eén atlas per bestand, gedeeld door alle loaders
+    private static final Map<String, SpriteAtlas> ATLASES = new ConcurrentHashMap<>();
+
+    private final Image sheet;
+    private final double[][] frameX;   // per direction, per frame: left edge in the sheet
+    private final double[] frameY;     // per direction: top edge in the sheet
+
+    private SpriteAtlas(Image sheet) {
+        this.sheet  = sheet;
+        this.frameX = new double[DIRECTION_DATA.length][];
+        this.frameY = new double[DIRECTION_DATA.length];
+        for (int d = 0; d < DIRECTION_DATA.length; d++) {
+            int[] data = DIRECTION_DATA[d];
+            frameX[d] = new double[data[2]];
+            for (int f = 0; f < data[2]; f++) frameX[d][f] = data[0] + f * FRAME_WIDTH;
+            frameY[d] = data[1];
+        }
+    }
+
+    /** The shared atlas of a sheet in the people sprites; the PNG is decoded on first use only. */
+    public static SpriteAtlas of(String filename) {
+        return ATLASES.computeIfAbsent(filename, SpriteAtlas::load);
+    }
+
+    private static SpriteAtlas load(String filename) {
+        String fullPath = BASE_PATH + filename;
+        var stream = SpriteAtlas.class.getResourceAsStream(fullPath);
+
+        if (stream == null) {
+            throw new IllegalStateException("Sprite niet gevonden: " + fullPath);
+        }
+
+        Image sheet = new Image(stream);
+        System.out.println("Sprite geladen: " + filename +
+                " (" + sheet.getWidth() + "x" + sheet.getHeight() + ")");
+        return new SpriteAtlas(sheet);
+    }
+
+    /** Teken het animatieframe van {@code dir} (framenummer loopt rond) in het vak x, y, w, h. */
+    public void draw(GraphicsContext gc, Direction dir, int frame, double x, double y, double w, double h) {
+        double[] frames = frameX[dir.ordinal()];
+        gc.drawImage(sheet, frames[frame % frames.length], frameY[dir.ordinal()], FRAME_WIDTH, FRAME_HEIGHT, x, y, w, h);
+    }
+
+    /** Number of animation frames for a direction. */
+    public int getFrameCount(Direction dir) { return frameX[dir.ordinal()].length; }
+    public Image getSheet()                 { return sheet; }
+}
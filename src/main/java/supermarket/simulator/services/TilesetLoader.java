@@ -18,6 +18,19 @@ public class TilesetLoader {
         namedTiles = new HashMap<>();
         loadNamedTiles();
     }
+
+    private TilesetLoader(Image tileset) {
+        this.tileset    = tileset;
+        this.namedTiles = new HashMap<>();
+    }
+
+    /**
+     * Loader without any images: every named tile is null. Lets the level and object builders
+     * run in benchmarks and headless runs where no JavaFX toolkit is available.
+     */
+    public static TilesetLoader headless() {
+        return new TilesetLoader(null);
+    }
     /**
      * Laad een tile uit de tileset
      * @param x X positie in pixels (bijv. 0, 16, 32, 48...)
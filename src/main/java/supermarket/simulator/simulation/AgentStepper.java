@@ -0,0 +1,170 @@
+package supermarket.simulator.simulation;
+
+import supermarket.simulator.Pathfinding.PathStrategy;
+import supermarket.simulator.model.AgentStore;
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Updates all persons of a tick in two phases, so the outcome does not depend on the order of
+ * the list or on the number of threads:
+ *  0. animate: visual positions and walk frames of the whole {@link AgentStore} in one bulk
+ *     pass; the list is expected to hold the persons of that store
+ *  1. decide: every person picks the tile it wants next ({@link Person#decideStep()}), in
+ *     parallel, against the reservations as they were at the start of the tick
+ *  2. resolve: per tile the strongest claimant wins (higher priority, then lower agent id,
+ *     the rule of the concurrent reservation table). The floor is split in bands of rows that
+ *     are resolved in parallel; a tile belongs to exactly one band, so bands share nothing
+ *  3. apply: the winners move and the others count as blocked ({@link Person#applyStep}), in
+ *     list order on the calling thread, because the reservation table and the planning
+ *     service are single-threaded
+ *
+ * With one thread everything runs on the caller and gives exactly the same result.
+ * Strategies that write shared state while planning (cooperative) or that plan through the
+ * shared path cache (no planning service) decide sequentially.
+ */
+public class AgentStepper {
+
+    private static final int REGION_ROWS  = 16;     // rows per resolve band
+    private static final int PARALLEL_MIN = 256;    // fewer persons: forking costs more than it saves
+
+    private final SimulationContext context;
+    private final Grid grid;
+    private final int threads;
+    private final ForkJoinPool pool;
+
+    // Scratch, grown on demand
+    private int[] bestByNode;          // per node: index + 1 of the strongest claimant so far, 0 = none
+    private int[] intentNode    = new int[0];
+    private int[] regionStart   = new int[0];
+    private int[] regionFill    = new int[0];   // per band: persons sorted into it so far
+    private int[] byRegion      = new int[0];
+    private boolean[] granted   = new boolean[0];
+
+    public AgentStepper(SimulationContext context, int threads) {
+        this.context    = context;
+        this.grid       = context.getGrid();
+        this.threads    = Math.max(1, threads);
+        this.pool       = this.threads > 1 ? new ForkJoinPool(this.threads) : null;
+        this.bestByNode = new int[grid.getWidth() * grid.getHeight()];
+    }
+
+    /** One tick for all persons in the list. */
+    public void step(List<? extends Person> persons) {
+        int n = persons.size();
+        ensureCapacity(n);
+        boolean parallel = pool != null && n >= PARALLEL_MIN;
+
+        // Phase 0: animate everyone in the store, arrays instead of person by person
+        context.getAgents().animate();
+
+        // Phase 1: decide
+        if (parallel && canDecideInParallel()) {
+            pool.submit(() -> IntStream.range(0, n).parallel().forEach(i -> persons.get(i).decideStep())).join();
+        } else {
+            for (int i = 0; i < n; i++) persons.get(i).decideStep();
+        }
+
+        // Phase 2: resolve conflicts per band of rows
+        int regions = bucketByRegion(persons, n);
+        if (parallel) {
+            pool.submit(() -> IntStream.range(0, regions).parallel().forEach(r -> resolve(persons, r))).join();
+        } else {
+            for (int r = 0; r < regions; r++) resolve(persons, r);
+        }
+
+        // Phase 3: apply in list order
+        for (int i = 0; i < n; i++) {
+            persons.get(i).applyStep(granted[i]);
+        }
+    }
+
+    public int getThreads() { return threads; }
+
+    /** Stop the worker threads; the stepper can not be used afterwards. */
+    public void shutdown() {
+        if (pool != null) pool.shutdown();
+    }
+
+    // -------------------------------------------------------------------------
+    // Resolve
+    // -------------------------------------------------------------------------
+
+    private boolean canDecideInParallel() {
+        return context.getPathStrategy() != PathStrategy.COOPERATIVE
+                && context.getPlanningService() != null;
+    }
+
+    /** Counting sort of the persons with an intent by the band of their target row. */
+    private int bucketByRegion(List<? extends Person> persons, int n) {
+        int width   = grid.getWidth();
+        int regions = (grid.getHeight() + REGION_ROWS - 1) / REGION_ROWS;
+        if (regionStart.length < regions + 1) {
+            regionStart = new int[regions + 1];
+            regionFill  = new int[regions];
+        }
+        Arrays.fill(regionStart, 0, regions + 1, 0);
+        Arrays.fill(regionFill, 0, regions, 0);
+
+        for (int i = 0; i < n; i++) {
+            Person p = persons.get(i);
+            granted[i] = false;
+            if (!p.hasIntent()) {
+                intentNode[i] = -1;
+                continue;
+            }
+            intentNode[i] = p.getIntentY() * width + p.getIntentX();
+            regionStart[p.getIntentY() / REGION_ROWS + 1]++;
+        }
+        for (int r = 0; r < regions; r++) regionStart[r + 1] += regionStart[r];
+
+        for (int i = 0; i < n; i++) {
+            if (intentNode[i] < 0) continue;
+            int r = intentNode[i] / width / REGION_ROWS;
+            byRegion[regionStart[r] + regionFill[r]++] = i;
+        }
+        return regions;
+    }
+
+    /** Grant every tile in band {@code r} to its strongest claimant. Touches only that band's nodes. */
+    private void resolve(List<? extends Person> persons, int r) {
+        int from = regionStart[r];
+        int to   = regionStart[r + 1];
+
+        for (int k = from; k < to; k++) {
+            int i    = byRegion[k];
+            int node = intentNode[i];
+            int best = bestByNode[node];
+            if (best == 0 || beats(persons.get(i), persons.get(best - 1))) {
+                bestByNode[node] = i + 1;
+            }
+        }
+        for (int k = from; k < to; k++) {
+            int i = byRegion[k];
+            granted[i] = bestByNode[intentNode[i]] == i + 1;
+        }
+        for (int k = from; k < to; k++) {
+            bestByNode[intentNode[byRegion[k]]] = 0;
+        }
+    }
+
+    /** Higher priority wins; on a tie the lower id. */
+    private static boolean beats(Person a, Person b) {
+        if (a.getPriority() != b.getPriority()) return a.getPriority() > b.getPriority();
+        return a.getAgentId() < b.getAgentId();
+    }
+
+    private void ensureCapacity(int n) {
+        if (granted.length >= n) return;
+        int size   = Math.max(n, granted.length * 2);
+        intentNode = new int[size];
+        byRegion   = new int[size];
+        granted    = new boolean[size];
+    }
+}
@@ -0,0 +1,26 @@
+package supermarket.simulator.simulation;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Bytes allocated on the heap by all live threads of this JVM (simulation thread, planning
+ * workers, stepper pool), as counted by HotSpot's thread allocation counters. Take the
+ * difference of two readings around a run; threads that ended in between are not counted.
+ */
+public final class AllocationMeter {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private AllocationMeter() {}
+
+    /** Total bytes allocated so far, or -1 when the JVM does not count allocations. */
+    public static long allocatedBytes() {
+        if (!THREADS.isThreadAllocatedMemorySupported() || !THREADS.isThreadAllocatedMemoryEnabled()) return -1;
+        long total = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,64 @@
+package supermarket.simulator.simulation;
+
+import supermarket.simulator.model.Customer;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.services.CharacterSpriteLoader;
+
+import java.util.ArrayDeque;
+
+/**
+ * Customers who left, kept to be spawned again instead of allocating new ones. With a steady
+ * stream of arrivals the number of customer objects stays at the peak number inside at once;
+ * their path buffers, basket, shopping list and (incremental) planner are reused with them.
+ *
+ * A reused customer gets fresh ids from the context, in the same order new ones would, so a
+ * run with the pool is the same run as one without, checksum included.
+ */
+public class CustomerPool {
+
+    private final SimulationContext context;
+    private final ArrayDeque<Customer> free = new ArrayDeque<>();
+    private final int capacity;
+    private long created;
+    private long reused;
+    private long dropped;
+
+    /** @param capacity customers kept at most; more are left to the garbage collector */
+    public CustomerPool(SimulationContext context, int capacity) {
+        this.context  = context;
+        this.capacity = capacity;
+    }
+
+    /** A customer on (x, y): one who left before if there is one, a new one otherwise. */
+    public Customer acquire(int x, int y, CharacterSpriteLoader spriteLoader) {
+        Customer customer = free.pollLast();
+        if (customer == null) {
+            created++;
+            return new Customer(x, y, context, spriteLoader);
+        }
+        reused++;
+        customer.respawn(x, y, spriteLoader);
+        return customer;
+    }
+
+    /**
+     * Take back a customer who left. Dropped when the pool is full or a planned path is still
+     * on its way to the customer (it would arrive in the next life).
+     */
+    public void release(Customer customer) {
+        if (free.size() >= capacity || customer.isAwaitingPath()) {
+            dropped++;
+            return;
+        }
+        free.addLast(customer);
+    }
+
+    public int getFree()       { return free.size(); }
+    public long getCreated()   { return created; }
+    public long getReused()    { return reused; }
+
+    @Override
+    public String toString() {
+        return String.format("CustomerPool[free=%d, created=%d, reused=%d, dropped=%d]", free.size(), created, reused, dropped);
+    }
+}
@@ -0,0 +1,97 @@
+package supermarket.simulator.simulation;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Event calendar of the simulation: actions that run at a given tick, once or every
+ * {@code period} ticks.
+ *
+ * Any number of events can share a tick; they run in the order they were scheduled.
+ * Cancelling only marks the event, it is dropped when it reaches the front of the queue, so
+ * both scheduling and cancelling are O(log n) at most. {@link #nextEventTick()} tells the
+ * kernel how far it may jump ahead when nothing else is going on.
+ */
+public class EventScheduler {
+
+    /** Handle to a scheduled event, e.g. to cancel it. */
+    public static final class ScheduledEvent {
+        private final Runnable action;
+        private final long period;     // 0 = once
+        private long tick;
+        private long sequence;
+        private boolean cancelled;
+
+        private ScheduledEvent(long tick, long period, Runnable action) {
+            this.tick   = tick;
+            this.period = period;
+            this.action = action;
+        }
+
+        /** Stop the event; a recurring event does not run again. Calling it twice is harmless. */
+        public void cancel()            { cancelled = true; }
+        public boolean isCancelled()    { return cancelled; }
+        public boolean isRecurring()    { return period > 0; }
+        /** Tick of the next (or only) run. */
+        public long getTick()           { return tick; }
+    }
+
+    private static final Comparator<ScheduledEvent> ORDER =
+            Comparator.<ScheduledEvent>comparingLong(e -> e.tick).thenComparingLong(e -> e.sequence);
+
+    private final PriorityQueue<ScheduledEvent> calendar = new PriorityQueue<>(ORDER);
+    private long nextSequence;
+    private long executed;
+
+    /** Run {@code action} once at {@code tick}; a tick that already passed runs at the next {@link #runDue}. */
+    public ScheduledEvent schedule(long tick, Runnable action) {
+        return add(new ScheduledEvent(tick, 0, action));
+    }
+
+    /** Run {@code action} at {@code firstTick} and then every {@code period} ticks until cancelled. */
+    public ScheduledEvent scheduleRepeating(long firstTick, long period, Runnable action) {
+        if (period <= 0) throw new IllegalArgumentException("Period must be positive: " + period);
+        return add(new ScheduledEvent(firstTick, period, action));
+    }
+
+    /**
+     * Run every event due at or before {@code now}, in tick and then scheduling order. Events
+     * that a running action schedules for {@code now} run in the same call.
+     * @return number of actions run
+     */
+    public int runDue(long now) {
+        int ran = 0;
+        while (!calendar.isEmpty() && calendar.peek().tick <= now) {
+            ScheduledEvent event = calendar.poll();
+            if (event.cancelled) continue;
+
+            event.action.run();
+            ran++;
+            if (event.period > 0 && !event.cancelled) {
+                // Next run after now, also when the calendar was behind (e.g. scheduled in the past)
+                event.tick += event.period * ((now - event.tick) / event.period + 1);
+                add(event);
+            }
+        }
+        executed += ran;
+        return ran;
+    }
+
+    /** Tick of the first event still to run, {@link Long#MAX_VALUE} when the calendar is empty. */
+    public long nextEventTick() {
+        while (!calendar.isEmpty() && calendar.peek().cancelled) {
+            calendar.poll();
+        }
+        return calendar.isEmpty() ? Long.MAX_VALUE : calendar.peek().tick;
+    }
+
+    /** Events in the calendar, including cancelled ones that were not dropped yet. */
+    public int size()            { return calendar.size(); }
+    public long getExecuted()    { return executed; }
+
+    private ScheduledEvent add(ScheduledEvent event) {
+        event.sequence = nextSequence++;
+        calendar.add(event);
+        return event;
+    }
+}
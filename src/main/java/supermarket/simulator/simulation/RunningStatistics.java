@@ -0,0 +1,81 @@
+package supermarket.simulator.simulation;
+
+/**
+ * Mean, variance, minimum and maximum of a stream of values in O(1) memory (Welford's
+ * algorithm), plus the 95% confidence interval of the mean.
+ *
+ * Not thread-safe; aggregate per thread and {@link #merge} the results, or add from one thread.
+ */
+public class RunningStatistics {
+
+    // Two-sided 95% Student t quantiles for 1..30 degrees of freedom; the normal 1.96 beyond
+    private static final double[] T_95 = {
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+    };
+    private static final double Z_95 = 1.960;
+
+    private long count;
+    private double mean;
+    private double m2;   // sum of squared deviations from the mean
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2   += delta * (value - mean);
+        min   = Math.min(min, value);
+        max   = Math.max(max, value);
+    }
+
+    /** Combine with statistics gathered elsewhere (Chan et al.), as if all values were added here. */
+    public void merge(RunningStatistics other) {
+        if (other.count == 0) return;
+        if (count == 0) {
+            count = other.count;
+            mean  = other.mean;
+            m2    = other.m2;
+            min   = other.min;
+            max   = other.max;
+            return;
+        }
+        long total   = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2   += other.m2 + delta * delta * ((double) count * other.count / total);
+        count = total;
+        min   = Math.min(min, other.min);
+        max   = Math.max(max, other.max);
+    }
+
+    public long getCount()   { return count; }
+    public double getMean()  { return count > 0 ? mean : Double.NaN; }
+    public double getMin()   { return count > 0 ? min : Double.NaN; }
+    public double getMax()   { return count > 0 ? max : Double.NaN; }
+
+    /** Sample variance (n - 1 in the denominator). */
+    public double getVariance() {
+        return count > 1 ? m2 / (count - 1) : Double.NaN;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /** Half the width of the 95% confidence interval of the mean: mean ± this value. */
+    public double getConfidenceHalfWidth() {
+        if (count < 2) return Double.NaN;
+        long df = count - 1;
+        double t = df <= T_95.length ? T_95[(int) df - 1] : Z_95;
+        return t * getStandardDeviation() / Math.sqrt(count);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.2f +/- %.2f (sd %.2f, min %.2f, max %.2f, n=%d)",
+                getMean(), getConfidenceHalfWidth(), getStandardDeviation(), getMin(), getMax(), count);
+    }
+}
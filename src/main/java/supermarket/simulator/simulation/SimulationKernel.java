@@ -0,0 +1,568 @@
+package supermarket.simulator.simulation;
+
+import supermarket.simulator.Pathfinding.FlowFieldService;
+import supermarket.simulator.Pathfinding.PathRequestService;
+import supermarket.simulator.Pathfinding.PathStrategy;
+import supermarket.simulator.model.Checkout;
+import supermarket.simulator.model.Customer;
+import supermarket.simulator.model.Entrance;
+import supermarket.simulator.model.Exit;
+import supermarket.simulator.model.Item;
+import supermarket.simulator.model.Refrigerator;
+import supermarket.simulator.model.Shelf;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.SimulationRandom;
+import supermarket.simulator.model.StorageShelf;
+import supermarket.simulator.model.SupermarketObject;
+import supermarket.simulator.model.enums.RandomStream;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.model.world.HypermarketBuilder;
+import supermarket.simulator.model.world.LevelBuilder;
+import supermarket.simulator.model.world.ObjectBuilder;
+import supermarket.simulator.services.CharacterSpriteLoader;
+import supermarket.simulator.services.TilesetLoader;
+import supermarket.simulator.snapshot.SnapshotReader;
+import supermarket.simulator.snapshot.SnapshotWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.random.RandomGenerator;
+
+/**
+ * Fixed-step simulation loop without any rendering: fixtures, customer spawning and customer
+ * updates, one call to {@link #tick()} per step. The JavaFX controller calls it from its
+ * timeline and draws afterwards; headless runs call {@link #run(long)} as fast as the CPU goes.
+ *
+ * Builds the floor itself (stock store or generated hypermarket) so both callers start from
+ * the same world for the same context.
+ *
+ * Scheduled actions and spawning are events in an {@link EventScheduler}. With idle skipping
+ * on, {@link #run(long)} jumps straight to the next event while the store is empty.
+ *
+ * Randomness comes only from the streams of the context, so a seed fixes the whole run. A
+ * running checksum over the world state after every tick ({@link #getChecksum()}) shows
+ * whether two runs really were the same.
+ *
+ * Between ticks the whole world can be written out and read back into a freshly built kernel
+ * of the same floor ({@link #writeState}, see {@code WorldSnapshot}); the restored world goes
+ * on exactly as the original would have.
+ */
+public class SimulationKernel {
+
+    private static final int HIERARCHICAL_MIN_TILES = 100 * 100;   // from here on flat A* explores too much
+    private static final int QUEUE_LENGTH = 3;
+    private static final int POOL_CAPACITY = 4096;
+
+    private final SimulationContext context;
+    private final Grid grid;
+
+    // Floor plan; one of the two builder setups is used
+    private LevelBuilder levelBuilder;
+    private ObjectBuilder objectBuilder;
+    private HypermarketBuilder hypermarketBuilder;
+    private Entrance entrance;
+    private Exit exit;
+    private List<Checkout> checkouts;
+    private List<Shelf> shelves;
+    private List<Refrigerator> refrigerators;
+    private List<StorageShelf> storageShelves = List.of();
+
+    private final List<Customer> customers = new ArrayList<>();
+    private AgentStepper stepper;
+    private final EventScheduler events = new EventScheduler();
+    private long tickCount;
+    private long checksum;
+    private boolean skipIdle;
+    private long skippedTicks;
+
+    // Spawning (off by default: maxCustomers = 0)
+    private int maxCustomers;
+    private int spawnInterval = 1;
+    private int maxShelfStops = 3;
+    private boolean randomArrivals;
+    private EventScheduler.ScheduledEvent spawnEvent;
+    private Function<RandomGenerator, CharacterSpriteLoader> spriteLoaders = random -> null;
+    private int spawnedCount;
+    private int servedCount;
+
+    // Customers who left, spawned again (null = always allocate new ones)
+    private CustomerPool pool;
+
+    // Called after every tick, e.g. by a trace recorder
+    private Runnable tickListener = () -> {};
+
+    private SimulationKernel(SimulationContext context) {
+        this.context = context;
+        this.grid    = context.getGrid();
+        this.pool    = new CustomerPool(context, POOL_CAPACITY);
+        context.setPathStrategy(grid.getWidth() * grid.getHeight() >= HIERARCHICAL_MIN_TILES
+                ? PathStrategy.HIERARCHICAL
+                : PathStrategy.ASTAR);
+        context.setPlanningService(new PathRequestService(context, ForkJoinPool.commonPool()));
+        this.stepper = new AgentStepper(context, 1);
+    }
+
+    /** The hand-made 20x24 store of the JavaFX application. */
+    public static SimulationKernel stockStore(SimulationContext context, TilesetLoader loader) {
+        SimulationKernel kernel = new SimulationKernel(context);
+        kernel.levelBuilder = new LevelBuilder(context, loader);
+        kernel.levelBuilder.buildLevel();
+        kernel.objectBuilder = new ObjectBuilder(context, loader);
+        kernel.objectBuilder.buildObjects();
+
+        kernel.entrance  = kernel.levelBuilder.getEntrance();
+        kernel.exit      = kernel.levelBuilder.getExit();
+        kernel.checkouts = kernel.objectBuilder.getCheckouts();
+        kernel.shelves   = kernel.objectBuilder.getShelves();
+        kernel.refrigerators = kernel.objectBuilder.getRefrigerators();
+        kernel.storageShelves = kernel.objectBuilder.getStorageRooms();
+        kernel.stockShelves();
+        kernel.registerSharedDestinations(true);
+        return kernel;
+    }
+
+    /** A generated floor filling the whole grid of the context. */
+    public static SimulationKernel hypermarket(SimulationContext context, TilesetLoader loader) {
+        SimulationKernel kernel = new SimulationKernel(context);
+        kernel.hypermarketBuilder = new HypermarketBuilder(context, loader);
+        kernel.hypermarketBuilder.build();
+
+        kernel.entrance  = kernel.hypermarketBuilder.getEntrance();
+        kernel.exit      = kernel.hypermarketBuilder.getExit();
+        kernel.checkouts = kernel.hypermarketBuilder.getCheckouts();
+        kernel.shelves   = kernel.hypermarketBuilder.getShelves();
+        kernel.refrigerators = kernel.hypermarketBuilder.getRefrigerators();
+        kernel.stockShelves();
+        kernel.registerSharedDestinations(false);   // one field per shelf tile would not fit in memory
+        return kernel;
+    }
+
+    /** One item per shelf; shelves never run out, so a stop always adds one item to the basket. */
+    private void stockShelves() {
+        RandomGenerator random = context.getRandom(RandomStream.LAYOUT);
+        for (Shelf shelf : shelves) {
+            if (shelf.isEmpty()) shelf.addItem(new Item(shelf.getCategory(), 0.5 + random.nextInt(950) / 100.0));
+        }
+    }
+
+    /** Tiles that most customers walk to get a shared flow field instead of per-agent A*. */
+    private void registerSharedDestinations(boolean includeShelves) {
+        FlowFieldService flowFields = context.getFlowFields();
+
+        flowFields.register(exit.getAccessX(), exit.getAccessY());
+        // Everyone leaves over this one tile: cooperative routes of others keep off it
+        context.getSpaceTimeReservations().addStop(exit.getAccessY() * grid.getWidth() + exit.getAccessX());
+
+        for (Checkout checkout : checkouts) {
+            flowFields.register(checkout.getAccessX(), checkout.getAccessY());
+            for (int i = 0; i < QUEUE_LENGTH; i++) {
+                flowFields.register(checkout.getQueueX(i), checkout.getQueueY(i));
+            }
+        }
+
+        if (!includeShelves) return;
+        for (Shelf shelf : shelves) {
+            for (int[] access : shelf.getAccessCoordinatesVertObj()) {
+                flowFields.register(access[0], access[1]);
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Loop
+    // -------------------------------------------------------------------------
+
+    /** Advance the world by one step. */
+    public void tick() {
+        tickCount++;
+        context.getSpaceTimeReservations().advance();
+        // Paths requested last tick were solved in the background; hand them out in order
+        context.getPlanningService().applyResults();
+
+        // Scheduled actions and spawning, in the order they were scheduled
+        events.runDue(tickCount);
+
+        if (hypermarketBuilder != null) {
+            hypermarketBuilder.updateAll();
+        } else {
+            levelBuilder.updateAll();
+            objectBuilder.updateAll();
+        }
+
+        // Decide, resolve and move; the same outcome for every thread count
+        stepper.step(customers);
+
+        // Log en verwijder inactieve customers
+        customers.removeIf(c -> {
+            if (!c.isActive()) {
+                servedCount++;
+                if (context.isLogging()) {
+                    System.out.println("[Tick " + tickCount + "] Customer #" + c.getId()
+                            + " removed from simulation.");
+                }
+                c.detach();
+                if (pool != null) pool.release(c);
+                return true;
+            }
+            return false;
+        });
+
+        // Solve this tick's path requests while the caller draws or the next tick starts
+        context.getPlanningService().dispatch();
+
+        checksum = mix(checksum ^ stateHash());
+        tickListener.run();
+    }
+
+    /**
+     * Run {@code ticks} steps back to back. With idle skipping on, stretches in which the store
+     * is empty are jumped over up to the tick before the next event.
+     */
+    public void run(long ticks) {
+        long end = tickCount + ticks;
+        while (tickCount < end) {
+            if (skipIdle && isIdle()) {
+                long target = Math.min(events.nextEventTick(), end + 1) - 1;
+                if (target > tickCount) skipTo(target);
+                if (tickCount >= end) break;
+            }
+            tick();
+        }
+    }
+
+    /** Run {@code action} once at {@code tick}. Several actions may share a tick. */
+    public EventScheduler.ScheduledEvent scheduleAction(long tick, Runnable action) {
+        return events.schedule(tick, action);
+    }
+
+    /** Run {@code action} at {@code firstTick} and every {@code period} ticks after, until cancelled. */
+    public EventScheduler.ScheduledEvent scheduleRepeating(long firstTick, long period, Runnable action) {
+        return events.scheduleRepeating(firstTick, period, action);
+    }
+
+    /** Run {@code listener} at the end of every tick (not for ticks skipped while idle); null for none. */
+    public void setTickListener(Runnable listener) {
+        this.tickListener = listener != null ? listener : () -> {};
+    }
+
+    /**
+     * Reuse customers who left for new arrivals instead of allocating new ones. On by default;
+     * the run is the same either way, only the allocation rate differs.
+     */
+    public void setPooling(boolean pooling) {
+        this.pool = pooling ? new CustomerPool(context, POOL_CAPACITY) : null;
+    }
+
+    /** The customer pool, null when pooling is off. */
+    public CustomerPool getPool() { return pool; }
+
+    /** Let {@link #run(long)} jump over ticks in which nothing can happen. Off by default. */
+    public void setSkipIdle(boolean skipIdle) {
+        this.skipIdle = skipIdle;
+    }
+
+    /**
+     * Nothing changes by itself: nobody inside, no path requests in flight and no fridge
+     * warming up. Entrance, exit and checkouts only act on customers.
+     */
+    private boolean isIdle() {
+        if (!customers.isEmpty() || context.getPlanningService().getQueueDepth() > 0) return false;
+        for (Refrigerator fridge : refrigerators) {
+            if (!fridge.isPoweredOn()) return false;
+        }
+        return true;
+    }
+
+    // -------------------------------------------------------------------------
+    // Checksum
+    // -------------------------------------------------------------------------
+
+    /**
+     * Hash of what can be observed right now: clock, counters, every customer's position and
+     * the checkout queues. Two runs with the same seed give the same value at every tick.
+     */
+    public long stateHash() {
+        long h = mix(tickCount);
+        h = mix(h ^ spawnedCount);
+        h = mix(h ^ servedCount);
+        for (Customer c : customers) {
+            h = mix(h ^ c.getId());
+            h = mix(h ^ ((long) c.getTileX() << 32 | c.getTileY()));
+        }
+        for (Checkout checkout : checkouts) {
+            h = mix(h ^ ((long) checkout.getQueueSize() << 1 | (checkout.isBusy() ? 1 : 0)));
+        }
+        return h;
+    }
+
+    /** SplitMix64 finaliser: every input bit affects every output bit. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private void skipTo(long tick) {
+        context.getSpaceTimeReservations().advance(tick - tickCount);
+        skippedTicks += tick - tickCount;
+        tickCount = tick;
+    }
+
+    /** Threads for the customer update; 1 (the default) keeps everything on the calling thread. */
+    public void setThreads(int threads) {
+        if (threads == stepper.getThreads()) return;
+        stepper.shutdown();
+        stepper = new AgentStepper(context, threads);
+    }
+
+    // -------------------------------------------------------------------------
+    // Spawning
+    // -------------------------------------------------------------------------
+
+    /**
+     * Let a customer walk in every {@code interval} ticks while fewer than {@code maxCustomers}
+     * are inside. Each visits up to {@code maxShelfStops} random shelves, a checkout and the exit.
+     */
+    public void setSpawning(int maxCustomers, int interval, int maxShelfStops) {
+        this.maxCustomers  = maxCustomers;
+        this.spawnInterval = Math.max(1, interval);
+        this.maxShelfStops = Math.max(1, maxShelfStops);
+
+        restartArrivals();
+    }
+
+    /**
+     * Random arrivals: gaps between customers drawn from an exponential distribution with the
+     * spawn interval as mean (a Poisson process) instead of exactly one interval apart.
+     */
+    public void setRandomArrivals(boolean randomArrivals) {
+        this.randomArrivals = randomArrivals;
+        restartArrivals();
+    }
+
+    /** Sprites for new customers, picked with the given generator; the default gives none (fallback colour, headless runs). */
+    public void setSpriteLoaders(Function<RandomGenerator, CharacterSpriteLoader> spriteLoaders) {
+        this.spriteLoaders = spriteLoaders;
+    }
+
+    private void restartArrivals() {
+        if (spawnEvent != null) spawnEvent.cancel();
+        spawnEvent = null;
+        if (maxCustomers <= 0) return;
+
+        if (randomArrivals) {
+            scheduleNextArrival();
+        } else {
+            // On every multiple of the interval, as before spawning became an event
+            long first = (tickCount / spawnInterval + 1) * spawnInterval;
+            spawnEvent = events.scheduleRepeating(first, spawnInterval, this::spawnIfRoom);
+        }
+    }
+
+    private void scheduleNextArrival() {
+        double u = context.getRandom(RandomStream.ARRIVALS).nextDouble();
+        long gap = Math.max(1, Math.round(-Math.log(1 - u) * spawnInterval));
+        scheduleArrivalAt(tickCount + gap);
+    }
+
+    private void scheduleArrivalAt(long tick) {
+        spawnEvent = events.schedule(tick, () -> {
+            spawnIfRoom();
+            scheduleNextArrival();
+        });
+    }
+
+    private void spawnIfRoom() {
+        if (customers.size() < maxCustomers) spawnCustomer();
+    }
+
+    private void spawnCustomer() {
+        spawnCustomerAt(entrance.getAccessX(), entrance.getAccessY());
+    }
+
+    /**
+     * Put a customer with a random shopping list on (x, y) right away, e.g. to fill a floor
+     * for a benchmark. False when the tile is taken.
+     */
+    public boolean spawnCustomerAt(int x, int y) {
+        if (!context.getReservations().isFree(x, y, null)) return false;   // e.g. entrance still blocked
+
+        RandomGenerator random = context.getRandom(RandomStream.SHOPPING);
+        CharacterSpriteLoader sprite = spriteLoaders.apply(context.getRandom(RandomStream.SPRITES));
+        Customer customer = pool != null ? pool.acquire(x, y, sprite) : new Customer(x, y, context, sprite);
+
+        int stops = 1 + random.nextInt(maxShelfStops);
+        for (int i = 0; i < stops && !shelves.isEmpty(); i++) {
+            Shelf shelf = shelves.get(random.nextInt(shelves.size()));
+            List<int[]> access = shelf.getAccessCoordinatesVertObj();
+            int[] tile = access.get(random.nextInt(access.size()));
+            if (isWalkable(tile[0], tile[1])) customer.addDestination(tile[0], tile[1], shelf);
+        }
+        if (!checkouts.isEmpty()) {
+            customer.addCheckout(checkouts.get(random.nextInt(checkouts.size())));
+        }
+        customer.addDestination(exit.getAccessX(), exit.getAccessY());
+
+        customers.add(customer);
+        spawnedCount++;
+        customer.startShopping();
+        return true;
+    }
+
+    private boolean isWalkable(int x, int y) {
+        return x >= 0 && y >= 0 && x < grid.getWidth() && y < grid.getHeight()
+                && grid.getTile(x, y) != null && grid.getTile(x, y).isWalkable();
+    }
+
+    // -------------------------------------------------------------------------
+    // Snapshot
+    // -------------------------------------------------------------------------
+
+    /**
+     * Write the world as it is between two ticks: clock, counters, spawning, random streams,
+     * grid, stock, customers, checkout queues, reservations and the path cache. Paths still
+     * being planned are handed out first; that is what the next tick would do before anything
+     * else, so the run itself is not changed by taking a snapshot.
+     *
+     * Actions scheduled from outside ({@link #scheduleAction}) are code and are not written;
+     * whoever scheduled them schedules them again after {@link #readState}.
+     */
+    public void writeState(SnapshotWriter out) throws IOException {
+        context.getPlanningService().applyResults();
+
+        out.writeVarLong(tickCount);
+        out.writeLong(checksum);
+        out.writeVarLong(skippedTicks);
+        out.writeVarInt(spawnedCount);
+        out.writeVarInt(servedCount);
+        out.writeVarInt(maxCustomers);
+        out.writeVarInt(spawnInterval);
+        out.writeVarInt(maxShelfStops);
+        out.writeBoolean(randomArrivals);
+        boolean arriving = spawnEvent != null && !spawnEvent.isCancelled();
+        out.writeVarLong(arriving ? spawnEvent.getTick() + 1 : 0);   // 0 = no arrivals planned
+
+        context.writeState(out);
+        grid.writeState(out);
+
+        registerFixtures(out::register);
+        out.writeVarInt(shelves.size());
+        for (Shelf shelf : shelves) shelf.writeState(out);
+        out.writeVarInt(refrigerators.size());
+        for (Refrigerator fridge : refrigerators) fridge.writeState(out);
+        out.writeVarInt(storageShelves.size());
+        for (StorageShelf storage : storageShelves) storage.writeState(out);
+
+        out.writeVarInt(customers.size());
+        for (Customer customer : customers) {
+            out.writeVarInt(customer.getAgentId());
+            out.writeVarInt(customer.getId());
+            customer.writeState(out);
+        }
+        out.writeVarInt(checkouts.size());
+        for (Checkout checkout : checkouts) checkout.writeState(out);
+
+        context.getReservations().writeState(out);
+        context.getSpaceTimeReservations().writeState(out);
+        context.getPathCache().writeState(out, grid);
+    }
+
+    /**
+     * Counterpart of {@link #writeState}, into a kernel that was just built for the same floor
+     * and seed and has not ticked yet. Restored customers get their sprite from a generator
+     * seeded with their agent id; appearance is not part of the world.
+     */
+    public void readState(SnapshotReader in) throws IOException {
+        if (tickCount != 0 || !customers.isEmpty()) {
+            throw new IllegalStateException("Snapshots are read into a fresh kernel");
+        }
+        tickCount      = in.readVarLong();
+        checksum       = in.readLong();
+        skippedTicks   = in.readVarLong();
+        spawnedCount   = in.readVarInt();
+        servedCount    = in.readVarInt();
+        maxCustomers   = in.readVarInt();
+        spawnInterval  = Math.max(1, in.readVarInt());
+        maxShelfStops  = Math.max(1, in.readVarInt());
+        randomArrivals = in.readBoolean();
+        long nextArrival = in.readVarLong();
+
+        context.readState(in);
+        grid.readState(in);
+
+        registerFixtures(in::register);
+        expectCount(in, shelves.size(), "shelves");
+        for (Shelf shelf : shelves) shelf.readState(in);
+        expectCount(in, refrigerators.size(), "refrigerators");
+        for (Refrigerator fridge : refrigerators) fridge.readState(in);
+        expectCount(in, storageShelves.size(), "storage shelves");
+        for (StorageShelf storage : storageShelves) storage.readState(in);
+
+        Map<Integer, Customer> byAgentId = new HashMap<>();
+        for (int i = in.readCount(); i > 0; i--) {
+            int agentId = in.readVarInt();
+            int id      = in.readVarInt();
+            Customer customer = Customer.restore(agentId, id, context, spriteLoaders.apply(new SimulationRandom(agentId)));
+            customer.readState(in);
+            customers.add(customer);
+            byAgentId.put(agentId, customer);
+        }
+        expectCount(in, checkouts.size(), "checkouts");
+        for (Checkout checkout : checkouts) checkout.readState(in, byAgentId::get);
+
+        context.getReservations().readState(in, byAgentId::get);
+        context.getSpaceTimeReservations().readState(in);
+        context.getPathCache().readState(in, grid);
+
+        if (spawnEvent != null) spawnEvent.cancel();
+        spawnEvent = null;
+        if (nextArrival > 0) {
+            if (randomArrivals) scheduleArrivalAt(nextArrival - 1);
+            else spawnEvent = events.scheduleRepeating(nextArrival - 1, spawnInterval, this::spawnIfRoom);
+        }
+    }
+
+    /** Fixtures that customers and checkouts refer to, in a fixed order for both directions. */
+    private void registerFixtures(Consumer<List<? extends SupermarketObject>> register) {
+        register.accept(shelves);
+        register.accept(checkouts);
+        register.accept(refrigerators);
+        register.accept(storageShelves);
+    }
+
+    private static void expectCount(SnapshotReader in, int expected, String what) throws IOException {
+        int stored = in.readVarInt();
+        if (stored != expected) {
+            throw new IOException("Snapshot has " + stored + " " + what + ", this floor " + expected);
+        }
+    }
+
+    /** True for a generated floor, false for the stock store; snapshots rebuild the same kind. */
+    public boolean isHypermarket()         { return hypermarketBuilder != null; }
+
+    // -------------------------------------------------------------------------
+    // Getters
+    // -------------------------------------------------------------------------
+
+    public SimulationContext getContext()  { return context; }
+    public Grid getGrid()                  { return grid; }
+    public long getTickCount()             { return tickCount; }
+    public long getSkippedTicks()          { return skippedTicks; }
+    /** Running checksum of {@link #stateHash()} over all ticks so far. */
+    public long getChecksum()              { return checksum; }
+    public EventScheduler getEvents()      { return events; }
+    public List<Customer> getCustomers()   { return Collections.unmodifiableList(customers); }
+    public int getSpawnedCount()           { return spawnedCount; }
+    public int getServedCount()            { return servedCount; }
+    public Entrance getEntrance()          { return entrance; }
+    public Exit getExit()                  { return exit; }
+    public List<Checkout> getCheckouts()   { return checkouts; }
+    public List<Shelf> getShelves()        { return shelves; }
+}
@@ -0,0 +1,177 @@
+package supermarket.simulator.snapshot;
+
+import supermarket.simulator.Pathfinding.GridPath;
+import supermarket.simulator.model.SupermarketObject;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Decoder for what {@link SnapshotWriter} wrote. The file is memory-mapped and its checksum
+ * checked before anything is decoded, so a truncated or damaged snapshot fails up front
+ * instead of half-way through restoring a world.
+ */
+public class SnapshotReader {
+
+    private final ByteBuffer buffer;
+    private final List<String> symbols = new ArrayList<>();
+    private final List<SupermarketObject> objects = new ArrayList<>();
+    private final List<Object> references = new ArrayList<>();
+    private int[] scratch = new int[64];
+
+    public SnapshotReader(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < Integer.BYTES || size > Integer.MAX_VALUE) {
+            throw new IOException("Not a snapshot: " + size + " bytes");
+        }
+        ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+
+        int payload = (int) size - Integer.BYTES;
+        CRC32C crc = new CRC32C();
+        crc.update(mapped.duplicate().limit(payload));
+        if ((int) crc.getValue() != mapped.getInt(payload)) {
+            throw new IOException("Snapshot is damaged (checksum mismatch)");
+        }
+        this.buffer = mapped.limit(payload);
+        symbols.add(null);
+        objects.add(null);
+    }
+
+    // -------------------------------------------------------------------------
+    // Primitives
+    // -------------------------------------------------------------------------
+
+    public int readByte() throws IOException {
+        try {
+            return buffer.get() & 0xff;
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    public long readLong() throws IOException {
+        try {
+            return buffer.getLong();
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+    }
+
+    public double readDouble() throws IOException {
+        try {
+            return buffer.getDouble();
+        } catch (BufferUnderflowException e) {
+            throw truncated();
+        }
+    }
+
+    public int readVarInt() throws IOException {
+        long value = readVarLong();
+        if (value >>> 32 != 0) throw new IOException("Corrupt snapshot: int out of range at " + buffer.position());
+        return (int) value;
+    }
+
+    public long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Corrupt snapshot: varint too long at " + buffer.position());
+    }
+
+    public int readSignedVarInt() throws IOException {
+        int raw = readVarInt();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public long readSignedVarLong() throws IOException {
+        long raw = readVarLong();
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public String readSymbol() throws IOException {
+        int index = readVarInt();
+        if (index < symbols.size()) return symbols.get(index);
+        if (index != symbols.size()) throw new IOException("Corrupt snapshot: unknown string " + index);
+
+        byte[] bytes = new byte[readVarInt()];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) readByte();
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        symbols.add(value);
+        return value;
+    }
+
+    /**
+     * Read a count and check it against what is left of the file, so a corrupt count fails
+     * here instead of allocating gigabytes.
+     */
+    public int readCount() throws IOException {
+        int count = readVarInt();
+        if (count > buffer.remaining()) throw new IOException("Corrupt snapshot: count " + count + " at " + buffer.position());
+        return count;
+    }
+
+    // -------------------------------------------------------------------------
+    // Compound values
+    // -------------------------------------------------------------------------
+
+    /** Replace the contents of {@code path} with a path written by {@link SnapshotWriter#writePath}. */
+    public void readPath(GridPath path, int width) throws IOException {
+        int size = readCount();
+        if (size > scratch.length) scratch = new int[Math.max(size, scratch.length * 2)];
+        int node = 0;
+        for (int i = 0; i < size; i++) {
+            node += readSignedVarInt();
+            scratch[i] = node;
+        }
+        path.load(scratch, size, width);
+    }
+
+    /** Same fixtures, same order as {@link SnapshotWriter#register} on the writing side. */
+    public void register(List<? extends SupermarketObject> fixtures) {
+        objects.addAll(fixtures);
+    }
+
+    public SupermarketObject readObject() throws IOException {
+        int index = readVarInt();
+        if (index >= objects.size()) throw new IOException("Corrupt snapshot: unknown fixture " + index);
+        return objects.get(index);
+    }
+
+    /**
+     * Counterpart of {@link SnapshotWriter#writeReference}: the object read before, or null
+     * when a new one follows; read it and hand it to {@link #addReference}.
+     */
+    public <T> T readReference(Class<T> type) throws IOException {
+        int index = readVarInt();
+        if (index == 0) return null;
+        if (index > references.size() || !type.isInstance(references.get(index - 1))) {
+            throw new IOException("Corrupt snapshot: unknown reference " + index);
+        }
+        return type.cast(references.get(index - 1));
+    }
+
+    public void addReference(Object value) {
+        references.add(value);
+    }
+
+    /** True when everything has been read. */
+    public boolean isAtEnd() { return !buffer.hasRemaining(); }
+
+    private IOException truncated() {
+        return new IOException("Corrupt snapshot: unexpected end at " + buffer.position());
+    }
+}
@@ -0,0 +1,186 @@
+package supermarket.simulator.snapshot;
+
+import supermarket.simulator.Pathfinding.GridPath;
+import supermarket.simulator.model.SupermarketObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary encoder of world snapshots, written through a channel in large direct-buffer chunks.
+ *
+ * Integers are variable-length (LEB128, zigzag for signed values), so small counters and ids
+ * take one or two bytes. Strings are interned: the first use writes the text, later uses only
+ * its index. Fixtures are written as their index in a list that {@link #register} was given
+ * in the same order as on the reading side. Objects that several owners share (an item in a
+ * basket and on the shelf) keep their identity through {@link #writeReference}. Everything
+ * written is covered by a CRC32C.
+ */
+public class SnapshotWriter {
+
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32C crc = new CRC32C();
+    private final Map<String, Integer> symbols = new HashMap<>();
+    private final Map<SupermarketObject, Integer> objects = new IdentityHashMap<>();
+    private int registered;
+    private final Map<Object, Integer> references = new IdentityHashMap<>();
+    private long written;
+
+    public SnapshotWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    // -------------------------------------------------------------------------
+    // Primitives
+    // -------------------------------------------------------------------------
+
+    public void writeByte(int value) throws IOException {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+
+    public void writeBoolean(boolean value) throws IOException {
+        writeByte(value ? 1 : 0);
+    }
+
+    public void writeLong(long value) throws IOException {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    public void writeDouble(double value) throws IOException {
+        ensure(8);
+        buffer.putDouble(value);
+    }
+
+    /** Non-negative int in 1..5 bytes. */
+    public void writeVarInt(int value) throws IOException {
+        writeVarLong(value & 0xffffffffL);
+    }
+
+    /** Non-negative long in 1..10 bytes. */
+    public void writeVarLong(long value) throws IOException {
+        ensure(10);
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /** Signed int, small magnitudes in few bytes. */
+    public void writeSignedVarInt(int value) throws IOException {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    public void writeSignedVarLong(long value) throws IOException {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /** Interned string; null is allowed. */
+    public void writeSymbol(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        Integer index = symbols.get(value);
+        if (index != null) {
+            writeVarInt(index);
+            return;
+        }
+        symbols.put(value, symbols.size() + 1);
+        writeVarInt(symbols.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        for (byte b : bytes) writeByte(b);
+    }
+
+    // -------------------------------------------------------------------------
+    // Compound values
+    // -------------------------------------------------------------------------
+
+    /** Remaining steps of a path; consecutive nodes are neighbours, so deltas take a byte or two. */
+    public void writePath(GridPath path) throws IOException {
+        int size = path.size();
+        writeVarInt(size);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            int node = path.getNode(i);
+            writeSignedVarInt(node - previous);
+            previous = node;
+        }
+    }
+
+    /** Make the fixtures of a list referable by {@link #writeObject}; register in the same order as the reader. */
+    public void register(List<? extends SupermarketObject> fixtures) {
+        for (SupermarketObject fixture : fixtures) {
+            objects.put(fixture, ++registered);
+        }
+    }
+
+    /** A registered fixture or null. */
+    public void writeObject(SupermarketObject fixture) throws IOException {
+        if (fixture == null) {
+            writeVarInt(0);
+            return;
+        }
+        Integer index = objects.get(fixture);
+        if (index == null) throw new IllegalArgumentException("Fixture not registered: " + fixture);
+        writeVarInt(index);
+    }
+
+    /**
+     * Shared object: writes a back-reference and returns true when it was written before;
+     * otherwise marks it as new and returns false, and the caller writes its contents.
+     */
+    public boolean writeReference(Object value) throws IOException {
+        Integer index = references.get(value);
+        if (index != null) {
+            writeVarInt(index);
+            return true;
+        }
+        references.put(value, references.size() + 1);
+        writeVarInt(0);
+        return false;
+    }
+
+    // -------------------------------------------------------------------------
+    // Channel
+    // -------------------------------------------------------------------------
+
+    /** Write the checksum of everything so far and flush; the writer can not be used afterwards. */
+    public void finish() throws IOException {
+        flush();
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        written += buffer.remaining();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /** Bytes handed to the channel so far. */
+    public long getBytesWritten() { return written; }
+
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        written += buffer.remaining();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
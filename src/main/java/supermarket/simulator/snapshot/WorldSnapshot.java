@@ -0,0 +1,91 @@
+package supermarket.simulator.snapshot;
+
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.services.TilesetLoader;
+import supermarket.simulator.simulation.SimulationKernel;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Checkpoint file of a whole simulation: save a kernel between two ticks, load it later (or
+ * elsewhere) and it goes on exactly as the original would have, checksum included.
+ *
+ * The floor itself is not stored tile by tile: the header names the builder, grid size and
+ * seed, loading builds that floor again and then lays the stored state over it (walkability,
+ * labels, stock, customers, queues, reservations, ...). That keeps sprites out of the file and
+ * makes loading a matter of decoding one sequential, memory-mapped buffer, far quicker than
+ * simulating up to the same tick again.
+ *
+ * Saving goes to a temporary file that replaces the target only when complete.
+ */
+public final class WorldSnapshot {
+
+    private static final long MAGIC   = 0x50414e5354524d53L;   // "SMRTSNAP" little-endian
+    private static final int  VERSION = 1;
+
+    private static final int FLOOR_STOCK       = 0;
+    private static final int FLOOR_HYPERMARKET = 1;
+
+    private WorldSnapshot() {}
+
+    /**
+     * Write the kernel's world to {@code file}.
+     * @return size of the snapshot in bytes
+     */
+    public static long save(SimulationKernel kernel, Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long size;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            SnapshotWriter out = new SnapshotWriter(channel);
+            Grid grid = kernel.getGrid();
+            SimulationContext context = kernel.getContext();
+
+            out.writeLong(MAGIC);
+            out.writeVarInt(VERSION);
+            out.writeByte(kernel.isHypermarket() ? FLOOR_HYPERMARKET : FLOOR_STOCK);
+            out.writeLong(context.getSeed());
+            out.writeVarInt(grid.getWidth());
+            out.writeVarInt(grid.getHeight());
+            out.writeVarInt(grid.getCellSize());
+
+            kernel.writeState(out);
+            out.finish();
+            size = out.getBytesWritten();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    /** Build the stored floor with {@code loader} and restore the world onto it. */
+    public static SimulationKernel load(Path file, TilesetLoader loader) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            SnapshotReader in = new SnapshotReader(channel);
+            if (in.readLong() != MAGIC) throw new IOException(file + " is not a world snapshot");
+            int version = in.readVarInt();
+            if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+
+            int floor    = in.readByte();
+            long seed    = in.readLong();
+            int width    = in.readVarInt();
+            int height   = in.readVarInt();
+            int cellSize = in.readVarInt();
+
+            SimulationContext context = new SimulationContext(new Grid(width, height, cellSize), seed);
+            SimulationKernel kernel = switch (floor) {
+                case FLOOR_STOCK       -> SimulationKernel.stockStore(context, loader);
+                case FLOOR_HYPERMARKET -> SimulationKernel.hypermarket(context, loader);
+                default -> throw new IOException("Unknown floor type " + floor);
+            };
+            kernel.readState(in);
+            if (!in.isAtEnd()) throw new IOException("Corrupt snapshot: data after the world");
+            return kernel;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package supermarket.simulator.trace;
+
+import javafx.scene.paint.Color;
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.services.CharacterSpriteLoader;
+
+/**
+ * A customer as seen in a trace: only a position, moved from frame to frame by the
+ * {@link TracePlayer} and drawn by the renderer like any live person.
+ */
+public final class ReplayAgent extends Person {
+
+    private static final int CUSTOMER_PRIORITY = 10;
+
+    int node;    // tile as of the current frame, y * width + x
+    int frame;   // player's frame number in which it was last listed, negative when new in it
+
+    ReplayAgent(int agentId, SimulationContext context, CharacterSpriteLoader spriteLoader) {
+        super(agentId, CUSTOMER_PRIORITY, context, spriteLoader);
+    }
+
+    /** Move to the frame's tile; see {@link Person#follow}. */
+    void show(int width, boolean jump) {
+        follow(node % width, node / width, jump);
+    }
+
+    @Override
+    protected Color getFallbackColor() {
+        return Color.BLUE;
+    }
+}
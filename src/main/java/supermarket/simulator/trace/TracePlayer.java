@@ -0,0 +1,331 @@
+package supermarket.simulator.trace;
+
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.SimulationRandom;
+import supermarket.simulator.model.enums.EventType;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.services.CharacterSpriteLoader;
+import supermarket.simulator.services.TilesetLoader;
+import supermarket.simulator.simulation.SimulationKernel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.random.RandomGenerator;
+
+import static supermarket.simulator.trace.TraceRecorder.*;
+
+/**
+ * Plays back a trace written by {@link TraceRecorder}. Nothing is simulated: the floor is
+ * built again from the header so the renderer has something to draw on, and the customers
+ * are {@link ReplayAgent}s that go wherever the frames say.
+ *
+ * {@link #step()} decodes the next frame, {@link #seek(long)} jumps to any tick by decoding
+ * from the keyframe before it. The trace is memory-mapped; only the current frame is held.
+ */
+public class TracePlayer {
+
+    public record Event(EventType type, int agentId, int value) {}
+
+    private static final EventType[] EVENT_TYPES = EventType.values();
+
+    private final ByteBuffer data;   // limited to the frames
+    private final SimulationKernel floor;
+    private final int width;
+    private final int keyframeInterval;
+    private long[] keyTicks   = new long[64];
+    private int[]  keyOffsets = new int[64];
+    private int keyCount;
+    private long lastTick;
+
+    private ReplayAgent[] byId = new ReplayAgent[256];
+    private final List<ReplayAgent> agents = new ArrayList<>();
+    private final List<ReplayAgent> next   = new ArrayList<>();
+    private final List<Event> events = new ArrayList<>();
+    private Function<RandomGenerator, CharacterSpriteLoader> spriteLoaders = random -> null;
+    private long tick = -1;
+    private int frameNumber;
+
+    private TracePlayer(ByteBuffer data, SimulationKernel floor, int keyframeInterval) {
+        this.data             = data;
+        this.floor            = floor;
+        this.width            = floor.getGrid().getWidth();
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /** Map {@code file} and build its floor with {@code loader}; positioned before the first frame. */
+    public static TracePlayer open(Path file, TilesetLoader loader) throws IOException {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a trace: " + size + " bytes");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (mapped.getLong(0) != MAGIC) throw new IOException(file + " is not a trace");
+        int version = mapped.getInt(POS_VERSION);
+        if (version != VERSION) throw new IOException("Unsupported trace version " + version);
+
+        SimulationContext context = new SimulationContext(new Grid(mapped.getInt(POS_WIDTH),
+                mapped.getInt(POS_HEIGHT), mapped.getInt(POS_CELL_SIZE)), mapped.getLong(POS_SEED));
+        context.setLogging(false);
+        SimulationKernel floor = switch (mapped.get(POS_FLOOR)) {
+            case FLOOR_STOCK       -> SimulationKernel.stockStore(context, loader);
+            case FLOOR_HYPERMARKET -> SimulationKernel.hypermarket(context, loader);
+            default -> throw new IOException("Unknown floor type " + mapped.get(POS_FLOOR));
+        };
+
+        TracePlayer player = new TracePlayer(mapped, floor, mapped.getInt(POS_KEY_INTERVAL));
+        long indexOffset = mapped.getLong(POS_INDEX_OFFSET);
+        if (indexOffset != 0) {
+            player.readIndex((int) indexOffset);
+            player.lastTick = mapped.getLong(POS_LAST_TICK);
+        } else {
+            player.scan();   // the recorder did not get to close it
+        }
+        if (player.keyCount == 0) throw new IOException(file + " holds no frames");
+        player.data.position(player.keyOffsets[0]);
+        return player;
+    }
+
+    /** Sprites for the replayed customers; the same function a kernel gets, seeded by agent id. */
+    public void setSpriteLoaders(Function<RandomGenerator, CharacterSpriteLoader> spriteLoaders) {
+        this.spriteLoaders = spriteLoaders;
+    }
+
+    // -------------------------------------------------------------------------
+    // Playback
+    // -------------------------------------------------------------------------
+
+    /**
+     * Show the next frame; customers walk to their new tiles as they did live.
+     * @return false at the end of the trace
+     */
+    public boolean step() {
+        return readFrame(true, false);
+    }
+
+    /** Show the last frame at or before {@code target} (the first frame for earlier ticks). */
+    public void seek(long target) {
+        int k = Arrays.binarySearch(keyTicks, 0, keyCount, target);
+        if (k < 0) k = Math.max(0, -k - 2);
+        data.position(keyOffsets[k]);
+        readFrame(true, true);
+        while (peekTick() <= target && readFrame(true, true)) {
+            // decode up to the target
+        }
+    }
+
+    /** Tick of the frame shown, -1 before the first. */
+    public long getTick()                { return tick; }
+    public long getFirstTick()           { return keyTicks[0]; }
+    public long getLastTick()            { return lastTick; }
+    public int getKeyframeCount()        { return keyCount; }
+    public int getKeyframeInterval()     { return keyframeInterval; }
+    /** Customers in the frame shown. */
+    public List<ReplayAgent> getAgents() { return Collections.unmodifiableList(agents); }
+    /** Events of the tick shown. */
+    public List<Event> getEvents()       { return Collections.unmodifiableList(events); }
+    public Grid getGrid()                { return floor.getGrid(); }
+
+    // -------------------------------------------------------------------------
+    // Frames
+    // -------------------------------------------------------------------------
+
+    /**
+     * Decode the frame at the current position; with {@code apply} unset only skip over it.
+     * {@code jump} places everyone without walking (seeking).
+     */
+    private boolean readFrame(boolean apply, boolean jump) {
+        if (!data.hasRemaining()) return false;
+        int start = data.position();
+        int kind  = data.get() & 0xff;
+        if (kind != FRAME_DELTA && kind != FRAME_KEY) {
+            data.position(start);
+            return false;
+        }
+        long frameTick = readVarLong();
+        if (!apply) {
+            if (kind == FRAME_KEY) addKeyframe(frameTick, start);
+            skipPositions(kind);
+            skipEvents();
+            lastTick = frameTick;
+            return true;
+        }
+
+        tick = frameTick;
+        frameNumber++;
+        if (kind == FRAME_KEY) readKeyframe();
+        else                   readDelta();
+
+        events.clear();
+        int count = readVarInt();
+        for (int i = 0; i < count; i++) {
+            EventType type = EVENT_TYPES[data.get() & 0xff];
+            int agentId    = readVarInt();
+            int raw        = readVarInt();
+            events.add(new Event(type, agentId, (raw >>> 1) ^ -(raw & 1)));
+        }
+
+        for (ReplayAgent agent : agents) {
+            agent.show(width, jump || agent.frame == -frameNumber);
+        }
+        return true;
+    }
+
+    private void readKeyframe() {
+        int count = readVarInt();
+        int id = 0;
+        next.clear();
+        for (int i = 0; i < count; i++) {
+            id += readVarInt();
+            ReplayAgent agent = agent(id);
+            agent.node  = readVarInt();
+            if (agent.frame != -frameNumber) agent.frame = frameNumber;
+            next.add(agent);
+        }
+        for (ReplayAgent agent : agents) {
+            if (Math.abs(agent.frame) != frameNumber) drop(agent.getAgentId());
+        }
+        agents.clear();
+        agents.addAll(next);
+    }
+
+    private void readDelta() {
+        int changed = readVarInt();
+        int id = 0;
+        for (int i = 0; i < changed; i++) {
+            id += readVarInt();
+            long value = readVarLong();
+            if ((value & 1) != 0) {
+                ReplayAgent agent = agent(id);
+                agent.node = (int) (value >>> 1);
+                agents.add(agent);
+            } else {
+                int zigzag = (int) (value >>> 1);
+                byId[id].node += (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+
+        int gone = readVarInt();
+        id = 0;
+        for (int i = 0; i < gone; i++) {
+            id += readVarInt();
+            drop(id);
+        }
+        if (gone > 0) agents.removeIf(agent -> byId[agent.getAgentId()] != agent);
+    }
+
+    /** The agent with this id, created when it is new; new agents carry -frameNumber. */
+    private ReplayAgent agent(int id) {
+        if (id >= byId.length) byId = Arrays.copyOf(byId, Math.max(id + 1, byId.length * 2));
+        ReplayAgent agent = byId[id];
+        if (agent == null) {
+            agent = new ReplayAgent(id, floor.getContext(), spriteLoaders.apply(new SimulationRandom(id)));
+            agent.frame = -frameNumber;
+            byId[id] = agent;
+        }
+        return agent;
+    }
+
+    /** Forget an agent that left; it also leaves the floor's agent store. */
+    private void drop(int id) {
+        byId[id].detach();
+        byId[id] = null;
+    }
+
+    private long peekTick() {
+        int start = data.position();
+        if (!data.hasRemaining()) return Long.MAX_VALUE;
+        int kind = data.get() & 0xff;
+        long frameTick = kind == FRAME_DELTA || kind == FRAME_KEY ? readVarLong() : Long.MAX_VALUE;
+        data.position(start);
+        return frameTick;
+    }
+
+    // -------------------------------------------------------------------------
+    // Index
+    // -------------------------------------------------------------------------
+
+    private void readIndex(int offset) {
+        data.position(offset);
+        int count = readVarInt();
+        long frameTick = 0;
+        long frameOffset = 0;
+        for (int i = 0; i < count; i++) {
+            frameTick   += readVarLong();
+            frameOffset += readVarLong();
+            addKeyframe(frameTick, (int) frameOffset);
+        }
+        data.limit(offset);
+    }
+
+    /** Rebuild the index of a trace that was never closed; stops at the last complete frame. */
+    private void scan() {
+        data.position(HEADER_BYTES);
+        int end = HEADER_BYTES;
+        try {
+            while (readFrame(false, false)) end = data.position();
+        } catch (RuntimeException e) {
+            // Frame cut off by a crash; everything before it is fine
+        }
+        data.limit(end);
+    }
+
+    private void skipPositions(int kind) {
+        int count = readVarInt();
+        for (int i = 0; i < count; i++) {
+            readVarInt();
+            readVarLong();
+        }
+        if (kind == FRAME_KEY) return;
+        int gone = readVarInt();
+        for (int i = 0; i < gone; i++) readVarInt();
+    }
+
+    private void skipEvents() {
+        int count = readVarInt();
+        for (int i = 0; i < count; i++) {
+            if ((data.get() & 0xff) >= EVENT_TYPES.length) throw new IllegalStateException("Unknown event type");
+            readVarInt();
+            readVarInt();
+        }
+    }
+
+    private void addKeyframe(long frameTick, int offset) {
+        if (keyCount == keyTicks.length) {
+            keyTicks   = Arrays.copyOf(keyTicks, keyCount * 2);
+            keyOffsets = Arrays.copyOf(keyOffsets, keyCount * 2);
+        }
+        keyTicks[keyCount]   = frameTick;
+        keyOffsets[keyCount] = offset;
+        keyCount++;
+    }
+
+    // -------------------------------------------------------------------------
+    // Varints
+    // -------------------------------------------------------------------------
+
+    private int readVarInt() {
+        return (int) readVarLong();
+    }
+
+    private long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = data.get();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IllegalStateException("Corrupt trace: varint too long at " + data.position());
+    }
+}
@@ -0,0 +1,396 @@
+package supermarket.simulator.trace;
+
+import supermarket.simulator.model.Customer;
+import supermarket.simulator.model.EventSink;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.enums.EventType;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.simulation.SimulationKernel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records what a simulation does, tick by tick, into a compact binary trace that
+ * {@link TracePlayer} can scrub through afterwards without simulating anything.
+ *
+ * The file is append-only and written through memory-mapped regions, so recording a tick is a
+ * few stores into the page cache. Every tick is one frame: the customers that appeared, moved
+ * or left since the previous frame, plus the domain events of the tick (spawned, item picked,
+ * queued, served, left). Every {@code keyframeInterval} ticks a keyframe holds all positions
+ * instead, so a player can seek anywhere by decoding at most one interval. The keyframe index
+ * is appended when the recorder is closed; a trace that was never closed is still readable,
+ * the player then rebuilds the index by scanning.
+ *
+ * File layout (little-endian): a {@link #HEADER_BYTES}-byte header (magic, version, floor,
+ * seed, grid size, keyframe interval, index offset, last tick), then the frames, then the
+ * index. Numbers inside frames are varints; nodes are {@code y * width + x}.
+ *
+ * Mapping a region grows the file to the end of that region. Closing writes the index and the
+ * header through the channel and then cuts the zero-filled rest off. Java can not unmap a
+ * buffer before it is garbage collected, and Windows refuses to shrink a file with a mapped
+ * view, so there the rest stays: the file is larger than needed but complete, as players read
+ * the index from the offset in the header and nothing after it.
+ */
+public class TraceRecorder implements Closeable, EventSink {
+
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 600;   // one simulated minute
+
+    static final long MAGIC   = 0x45434152_5452_4d53L;   // "SMRTRACE" little-endian
+    static final int  VERSION = 1;
+
+    // Header fields (absolute positions)
+    static final int HEADER_BYTES      = 64;
+    static final int POS_VERSION       = 8;
+    static final int POS_FLOOR         = 12;
+    static final int POS_SEED          = 16;
+    static final int POS_WIDTH         = 24;
+    static final int POS_HEIGHT        = 28;
+    static final int POS_CELL_SIZE     = 32;
+    static final int POS_KEY_INTERVAL  = 36;
+    static final int POS_INDEX_OFFSET  = 40;   // 0 while recording
+    static final int POS_LAST_TICK     = 48;
+
+    static final int FLOOR_STOCK       = 0;
+    static final int FLOOR_HYPERMARKET = 1;
+
+    // Frame kinds; 0 marks the end of the frames (unused, zero-filled space)
+    static final int FRAME_DELTA = 1;
+    static final int FRAME_KEY   = 2;
+
+    private static final long REGION_BYTES = 16L << 20;
+
+    private final SimulationKernel kernel;
+    private final Path file;
+    private final FileChannel channel;
+    private final int keyframeInterval;
+    private final int width;
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    // Per agent index (Person#getAgentIndex, reused after a customer left): who had it in the
+    // last frame, on which tile (node + 1, 0 = nobody), and in which frame it was last seen by whom
+    private int[] lastId   = new int[256];
+    private int[] lastNode = new int[256];
+    private int[] seenId   = new int[256];
+    private int[] seen     = new int[256];
+    private int[] present   = new int[64];   // agent indices in the last frame
+    private int[] presentId = new int[64];   // and the agent ids that had them
+    private int presentCount;
+    private int frameNumber;
+
+    // Events of the tick being simulated: type, agent id, value
+    private int[] events = new int[3 * 64];
+    private int eventCount;
+
+    private long[] keyTicks   = new long[64];
+    private long[] keyOffsets = new long[64];
+    private int keyCount;
+    private long lastKeyTick;
+    private long lastTick;
+    private long frames;
+    private long recordNanos;
+    private boolean closed;
+
+    private TraceRecorder(SimulationKernel kernel, Path file, int keyframeInterval) throws IOException {
+        this.kernel           = kernel;
+        this.file             = file;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+        this.width            = kernel.getGrid().getWidth();
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(0);
+
+        Grid grid = kernel.getGrid();
+        SimulationContext context = kernel.getContext();
+        region.putLong(0, MAGIC);
+        region.putInt(POS_VERSION, VERSION);
+        region.put(POS_FLOOR, (byte) (kernel.isHypermarket() ? FLOOR_HYPERMARKET : FLOOR_STOCK));
+        region.putLong(POS_SEED, context.getSeed());
+        region.putInt(POS_WIDTH, grid.getWidth());
+        region.putInt(POS_HEIGHT, grid.getHeight());
+        region.putInt(POS_CELL_SIZE, grid.getCellSize());
+        region.putInt(POS_KEY_INTERVAL, this.keyframeInterval);
+        region.position(HEADER_BYTES);
+    }
+
+    /**
+     * Start recording the kernel from its next tick on. The recorder takes the kernel's tick
+     * listener and the context's event sink until it is closed.
+     */
+    public static TraceRecorder attach(SimulationKernel kernel, Path file, int keyframeInterval) throws IOException {
+        TraceRecorder recorder = new TraceRecorder(kernel, file, keyframeInterval);
+        kernel.getContext().setEventSink(recorder);
+        kernel.setTickListener(recorder::recordTick);
+        return recorder;
+    }
+
+    @Override
+    public void event(EventType type, int agentId, int value) {
+        if (eventCount * 3 + 3 > events.length) events = Arrays.copyOf(events, events.length * 2);
+        events[eventCount * 3]     = type.ordinal();
+        events[eventCount * 3 + 1] = agentId;
+        events[eventCount * 3 + 2] = value;
+        eventCount++;
+    }
+
+    // -------------------------------------------------------------------------
+    // Frames
+    // -------------------------------------------------------------------------
+
+    private void recordTick() {
+        long start = System.nanoTime();
+        try {
+            writeFrame();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not record tick " + kernel.getTickCount() + " to " + file, e);
+        }
+        recordNanos += System.nanoTime() - start;
+    }
+
+    private void writeFrame() throws IOException {
+        long tick = kernel.getTickCount();
+        List<Customer> customers = kernel.getCustomers();
+        frameNumber++;
+        ensureAgents(kernel.getContext().getAgents().getIndexCount());
+
+        boolean key = keyCount == 0 || tick - lastKeyTick >= keyframeInterval;
+        if (key) addKeyframe(tick, position());
+        putByte(key ? FRAME_KEY : FRAME_DELTA);
+        putVarLong(tick);
+
+        if (key) {
+            putVarInt(customers.size());
+            int previous = 0;
+            for (Customer c : customers) {
+                putVarInt(c.getAgentId() - previous);
+                putVarInt(node(c));
+                previous = c.getAgentId();
+            }
+        } else {
+            writeChanges(customers);
+        }
+
+        // Everyone not seen in this frame has left
+        for (int i = 0; i < presentCount; i++) {
+            if (seen[present[i]] != frameNumber) lastNode[present[i]] = 0;
+        }
+        if (present.length < customers.size()) {
+            present   = new int[Math.max(customers.size(), present.length * 2)];
+            presentId = new int[present.length];
+        }
+        presentCount = 0;
+        for (Customer c : customers) {
+            int index = c.getAgentIndex();
+            lastId[index]   = c.getAgentId();
+            lastNode[index] = node(c) + 1;
+            present[presentCount]     = index;
+            presentId[presentCount++] = c.getAgentId();
+        }
+
+        putVarInt(eventCount);
+        for (int i = 0; i < eventCount; i++) {
+            putByte(events[i * 3]);
+            putVarInt(events[i * 3 + 1]);
+            putSignedVarInt(events[i * 3 + 2]);
+        }
+        eventCount = 0;
+        lastTick   = tick;
+        frames++;
+    }
+
+    /**
+     * Customers in list order (ascending agent id): a new one as its tile, a moved one as the
+     * difference to its last tile, in one varint with the low bit telling which. Then the ids
+     * of those who left.
+     */
+    private void writeChanges(List<Customer> customers) throws IOException {
+        int changed = 0;
+        for (Customer c : customers) {
+            markSeen(c);
+            if (lastNode(c) != node(c)) changed++;
+        }
+        putVarInt(changed);
+        int previous = 0;
+        for (Customer c : customers) {
+            int id   = c.getAgentId();
+            int node = node(c);
+            int last = lastNode(c);
+            if (last == node) continue;
+
+            putVarInt(id - previous);
+            previous = id;
+            if (last < 0) {
+                putVarLong((long) node << 1 | 1);
+            } else {
+                int delta = node - last;
+                putVarLong(((long) ((delta << 1) ^ (delta >> 31)) & 0xffffffffL) << 1);
+            }
+        }
+
+        // Gone: not seen, or its index went to a newcomer. Ids are ascending like the list.
+        int gone = 0;
+        for (int i = 0; i < presentCount; i++) {
+            if (!stillPresent(i)) gone++;
+        }
+        putVarInt(gone);
+        previous = 0;
+        for (int i = 0; i < presentCount; i++) {
+            if (stillPresent(i)) continue;
+            putVarInt(presentId[i] - previous);
+            previous = presentId[i];
+        }
+    }
+
+    private void markSeen(Customer c) {
+        seen[c.getAgentIndex()]   = frameNumber;
+        seenId[c.getAgentIndex()] = c.getAgentId();
+    }
+
+    private boolean stillPresent(int i) {
+        return seen[present[i]] == frameNumber && seenId[present[i]] == presentId[i];
+    }
+
+    /** Tile of the customer in the last frame, -1 if it was not in it. */
+    private int lastNode(Customer c) {
+        int index = c.getAgentIndex();
+        return lastId[index] == c.getAgentId() ? lastNode[index] - 1 : -1;
+    }
+
+    private int node(Customer c) {
+        return c.getTileY() * width + c.getTileX();
+    }
+
+    private void addKeyframe(long tick, long offset) {
+        if (keyCount == keyTicks.length) {
+            keyTicks   = Arrays.copyOf(keyTicks, keyCount * 2);
+            keyOffsets = Arrays.copyOf(keyOffsets, keyCount * 2);
+        }
+        keyTicks[keyCount]   = tick;
+        keyOffsets[keyCount] = offset;
+        keyCount++;
+        lastKeyTick = tick;
+        // A keyframe lists everyone, so nobody needs to be marked as seen separately
+        for (Customer c : kernel.getCustomers()) markSeen(c);
+    }
+
+    /** Room for every agent index in use; grows with the crowd, not with the customers ever seen. */
+    private void ensureAgents(int indices) {
+        if (indices <= lastNode.length) return;
+        int size = Math.max(indices, lastNode.length * 2);
+        lastId   = Arrays.copyOf(lastId, size);
+        lastNode = Arrays.copyOf(lastNode, size);
+        seenId   = Arrays.copyOf(seenId, size);
+        seen     = Arrays.copyOf(seen, size);
+    }
+
+    // -------------------------------------------------------------------------
+    // Closing
+    // -------------------------------------------------------------------------
+
+    /** Append the keyframe index, complete the header and stop listening to the kernel. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        kernel.setTickListener(null);
+        kernel.getContext().setEventSink(null);
+
+        putByte(0);   // end of frames
+        long indexOffset = position();
+        region.force();
+        region = null;   // no more writes through a mapping; it is unmapped once collected
+
+        ByteBuffer index = ByteBuffer.allocate(5 + keyCount * 20);
+        writeVarLong(index, keyCount);
+        long previousTick   = 0;
+        long previousOffset = 0;
+        for (int i = 0; i < keyCount; i++) {
+            writeVarLong(index, keyTicks[i] - previousTick);
+            writeVarLong(index, keyOffsets[i] - previousOffset);
+            previousTick   = keyTicks[i];
+            previousOffset = keyOffsets[i];
+        }
+        long end = indexOffset + index.flip().remaining();
+        writeFully(index, indexOffset);
+
+        ByteBuffer patch = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        patch.putLong(indexOffset).putLong(lastTick).flip();
+        writeFully(patch, POS_INDEX_OFFSET);
+        channel.force(false);
+        try {
+            channel.truncate(end);
+        } catch (IOException e) {
+            // Windows, region still mapped: the trace is complete, only the zero tail stays
+        }
+        channel.close();
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+    }
+
+    // -------------------------------------------------------------------------
+    // Statistics
+    // -------------------------------------------------------------------------
+
+    public long getFrames()          { return frames; }
+    public int getKeyframes()        { return keyCount; }
+    /** Bytes of frames written so far. */
+    public long getBytesWritten()    { return closed ? 0 : position(); }
+    /** Time spent recording, to compare with the time spent simulating. */
+    public long getRecordNanos()     { return recordNanos; }
+
+    // -------------------------------------------------------------------------
+    // Mapped output
+    // -------------------------------------------------------------------------
+
+    private long position() {
+        return regionStart + region.position();
+    }
+
+    private void ensure(int bytes) throws IOException {
+        if (region.remaining() < bytes) map(position());
+    }
+
+    private void map(long start) throws IOException {
+        regionStart = start;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, REGION_BYTES);
+        region.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void putByte(int value) throws IOException {
+        ensure(1);
+        region.put((byte) value);
+    }
+
+    private void putVarInt(int value) throws IOException {
+        putVarLong(value & 0xffffffffL);
+    }
+
+    private void putSignedVarInt(int value) throws IOException {
+        putVarInt((value << 1) ^ (value >> 31));
+    }
+
+    private void putVarLong(long value) throws IOException {
+        ensure(10);
+        writeVarLong(region, value);
+    }
+
+    private static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
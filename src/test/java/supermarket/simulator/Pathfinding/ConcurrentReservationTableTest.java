@@ -0,0 +1,266 @@
+package supermarket.simulator.Pathfinding;
+
+import javafx.scene.paint.Color;
+import org.junit.jupiter.api.Test;
+import supermarket.simulator.model.Person;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Hammers a {@link ConcurrentReservationTable} from several threads on a small, crowded floor
+ * and checks that no two agents ever hold the same tile.
+ *
+ * Every agent also records where it stands in an independent witness array: it clears its old
+ * tile before a move and marks the new tile after a successful one. Marking a tile that
+ * someone else still marks means two agents held it at once.
+ *
+ * Two modes, one test each:
+ *  - racing: agents claim, reserve and commit without any coordination
+ *  - phased: all claims of a round happen before the first commit; every contested tile
+ *    must then go to its strongest claimant (highest priority, then lowest id)
+ *
+ * A test fails with the first violations it saw. Each one is a single random schedule, so a
+ * rare race may need several runs (or more rounds) to show up.
+ */
+class ConcurrentReservationTableTest {
+
+    private static final int SIDE       = 16;
+    private static final int AGENTS     = 128;   // half of the floor is occupied
+    private static final int PRIORITIES = 4;
+    private static final long SEED      = 42L;
+    private static final int THREADS    = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int ROUNDS     = 5_000;
+
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final int[] DY = {-1, 0, 1, 0};
+
+    private boolean phased;
+
+    private final SimulationContext context = new SimulationContext(new Grid(SIDE, SIDE, 1), SEED);
+    private final ConcurrentReservationTable table = new ConcurrentReservationTable(context.getGrid());
+    private final Walker[] agents = new Walker[AGENTS];
+    private final AtomicIntegerArray witness = new AtomicIntegerArray(SIDE * SIDE);
+    private final AtomicLongArray strongest  = new AtomicLongArray(SIDE * SIDE);   // phased only
+    private final AtomicLong moves      = new AtomicLong();
+    private final AtomicLong violations = new AtomicLong();
+    private final StringBuffer firstViolations = new StringBuffer();
+
+    /** JUnit makes a new instance, and so a new floor, for every test. */
+    ConcurrentReservationTableTest() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < AGENTS; i++) {
+            int node;
+            do {
+                node = random.nextInt(SIDE * SIDE);
+            } while (witness.get(node) != 0);
+            agents[i] = new Walker(node % SIDE, node / SIDE, random.nextInt(PRIORITIES), context);
+            table.reserve(agents[i].posX, agents[i].posY, agents[i]);
+            witness.set(node, agents[i].getAgentId());
+        }
+    }
+
+    @Test
+    void racingAgentsNeverShareATile() throws InterruptedException {
+        run(false);
+    }
+
+    @Test
+    void phasedClaimsGoToTheStrongestClaimant() throws InterruptedException {
+        run(true);
+    }
+
+    private void run(boolean phased) throws InterruptedException {
+        this.phased = phased;
+        CyclicBarrier claimed   = new CyclicBarrier(THREADS);
+        CyclicBarrier committed = new CyclicBarrier(THREADS, () -> {
+            for (int i = 0; i < strongest.length(); i++) strongest.set(i, 0);
+        });
+
+        Thread[] workers = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int first = t;
+            workers[t] = new Thread(() -> work(first, claimed, committed), "stress-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) worker.join();
+
+        checkFinalState();
+        assertEquals(0, violations.get(), () -> String.format("%s, threads=%d rounds=%d moves=%d:%n%s",
+                phased ? "phased" : "racing", THREADS, ROUNDS, moves.get(), firstViolations));
+    }
+
+    /** Thread {@code first} updates agents first, first + THREADS, ... */
+    private void work(int first, CyclicBarrier claimed, CyclicBarrier committed) {
+        Random random = new Random(SEED + first);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int i = first; i < AGENTS; i += THREADS) {
+                    Walker agent = agents[i];
+                    int d = random.nextInt(4);
+                    agent.targetX = agent.posX + DX[d];
+                    agent.targetY = agent.posY + DY[d];
+                    if (phased) {
+                        claimPhased(agent);
+                    } else {
+                        moveRacing(agent, random.nextBoolean());
+                    }
+                }
+                if (!phased) continue;
+
+                claimed.await();     // every claim of this round is in
+                for (int i = first; i < AGENTS; i += THREADS) {
+                    commitPhased(agents[i]);
+                }
+                committed.await();   // every commit is done; strongest[] is reset
+            }
+        } catch (InterruptedException | BrokenBarrierException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Racing
+    // -------------------------------------------------------------------------
+
+    private void moveRacing(Walker agent, boolean viaReserve) {
+        int tx = agent.targetX;
+        int ty = agent.targetY;
+        if (!inBounds(tx, ty)) return;
+
+        if (viaReserve) {
+            // Grab the tile outright, then drop the old one through the two-phase path
+            if (!table.reserve(tx, ty, agent)) return;
+            mark(agent, tx, ty);
+            if (!table.claim(tx, ty, agent)) violation("claim on own tile failed", agent);
+            unmark(agent, agent.posX, agent.posY);
+            if (!table.commitMove(agent)) violation("commit on own tile failed", agent);
+            agent.standOn(tx, ty);
+            moves.incrementAndGet();
+            return;
+        }
+
+        if (!table.claim(tx, ty, agent)) return;
+        unmark(agent, agent.posX, agent.posY);   // still held, so nobody else can mark it meanwhile
+        if (table.commitMove(agent)) {
+            mark(agent, tx, ty);
+            agent.standOn(tx, ty);
+            moves.incrementAndGet();
+        } else {
+            mark(agent, agent.posX, agent.posY);
+        }
+    }
+
+    // -------------------------------------------------------------------------
+    // Phased
+    // -------------------------------------------------------------------------
+
+    private void claimPhased(Walker agent) {
+        int tx = agent.targetX;
+        int ty = agent.targetY;
+        agent.claimed = false;
+        if (!inBounds(tx, ty) || table.getHolder(tx, ty) != 0) return;   // holders are stable now
+
+        strongest.accumulateAndGet(ty * SIDE + tx, strength(agent), Math::max);
+        agent.claimed = table.claim(tx, ty, agent);
+    }
+
+    private void commitPhased(Walker agent) {
+        if (!agent.claimed) return;
+        int tx   = agent.targetX;
+        int ty   = agent.targetY;
+        boolean strongestClaimant = strongest.get(ty * SIDE + tx) == strength(agent);
+
+        unmark(agent, agent.posX, agent.posY);
+        if (table.commitMove(agent)) {
+            if (!strongestClaimant) violation("weaker claimant won", agent);
+            mark(agent, tx, ty);
+            agent.standOn(tx, ty);
+            moves.incrementAndGet();
+        } else {
+            if (strongestClaimant) violation("strongest claimant lost", agent);
+            mark(agent, agent.posX, agent.posY);
+        }
+    }
+
+    /** Orders agents like the table does: priority first, then the lower id. */
+    private static long strength(Walker agent) {
+        return ((long) agent.getPriority() << 32) | (Integer.MAX_VALUE - agent.getAgentId());
+    }
+
+    // -------------------------------------------------------------------------
+    // Invariants
+    // -------------------------------------------------------------------------
+
+    private void mark(Walker agent, int x, int y) {
+        int other = witness.compareAndExchange(y * SIDE + x, 0, agent.getAgentId());
+        if (other != 0) violation("tile " + x + "," + y + " also held by agent " + other, agent);
+    }
+
+    private void unmark(Walker agent, int x, int y) {
+        if (!witness.compareAndSet(y * SIDE + x, agent.getAgentId(), 0)) {
+            violation("lost tile " + x + "," + y, agent);
+        }
+    }
+
+    private void checkFinalState() {
+        for (Walker agent : agents) {
+            if (table.getHolder(agent.posX, agent.posY) != agent.getAgentId()) {
+                violation("table does not hold the agent's tile", agent);
+            }
+        }
+        for (int node = 0; node < SIDE * SIDE; node++) {
+            if (table.getHolder(node % SIDE, node / SIDE) != witness.get(node)) {
+                violation("table and witness disagree on node " + node, null);
+            }
+        }
+    }
+
+    private void violation(String message, Walker agent) {
+        if (violations.incrementAndGet() <= 10) {
+            firstViolations.append(message).append(agent != null ? " (agent " + agent.getAgentId() + ")" : "")
+                    .append(System.lineSeparator());
+        }
+    }
+
+    private static boolean inBounds(int x, int y) {
+        return x >= 0 && y >= 0 && x < SIDE && y < SIDE;
+    }
+
+    // -------------------------------------------------------------------------
+    // Fixtures
+    // -------------------------------------------------------------------------
+
+    /** Tracks its own position; the Person movement code is not exercised here. */
+    private static final class Walker extends Person {
+        int posX;
+        int posY;
+        int targetX;
+        int targetY;
+        boolean claimed;
+
+        Walker(int x, int y, int priority, SimulationContext context) {
+            super(x, y, priority, context, null);
+            this.posX = x;
+            this.posY = y;
+        }
+
+        void standOn(int x, int y) {
+            this.posX = x;
+            this.posY = y;
+        }
+
+        @Override
+        protected Color getFallbackColor() {
+            return Color.GRAY;
+        }
+    }
+}
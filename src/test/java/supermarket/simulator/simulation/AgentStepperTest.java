@@ -0,0 +1,57 @@
+package supermarket.simulator.simulation;
+
+import org.junit.jupiter.api.Test;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.services.TilesetLoader;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The two-phase update must give the same world for every thread count. A busy hypermarket
+ * runs with one thread and with several; the running checksum covers every tick, so the first
+ * tick that differs makes the test fail.
+ */
+class AgentStepperTest {
+
+    private static final long SEED      = 42L;
+    private static final int SIZE       = 120;
+    private static final int CUSTOMERS  = 600;   // well above the stepper's parallel threshold
+    private static final int TICKS      = 400;
+
+    @Test
+    void sameWorldForEveryThreadCount() {
+        SimulationKernel single = busyHypermarket(1);
+        assertTrue(single.getCustomers().size() > 256, "too few customers to step in parallel");
+        single.run(TICKS);
+
+        for (int threads : new int[]{2, 4, 8}) {
+            SimulationKernel parallel = busyHypermarket(threads);
+            parallel.run(TICKS);
+            assertEquals(single.getChecksum(), parallel.getChecksum(), threads + " threads diverged");
+            assertEquals(single.getServedCount(), parallel.getServedCount());
+            parallel.setThreads(1);   // stops the worker pool
+        }
+    }
+
+    /** A floor filled at once, like the benchmarks do, instead of waiting for arrivals. */
+    private static SimulationKernel busyHypermarket(int threads) {
+        SimulationContext context = new SimulationContext(new Grid(SIZE, SIZE, 42), SEED);
+        context.setLogging(false);
+        SimulationKernel kernel = SimulationKernel.hypermarket(context, TilesetLoader.headless());
+        kernel.setThreads(threads);
+
+        Grid grid = kernel.getGrid();
+        Random random = new Random(SEED);
+        for (int placed = 0, tries = 0; placed < CUSTOMERS && tries < CUSTOMERS * 20; tries++) {
+            int x = random.nextInt(grid.getWidth());
+            int y = random.nextInt(grid.getHeight());
+            if (grid.getTile(x, y).isWalkable() && kernel.spawnCustomerAt(x, y)) placed++;
+        }
+        kernel.setSpawning(CUSTOMERS, 1, 3);
+        return kernel;
+    }
+}
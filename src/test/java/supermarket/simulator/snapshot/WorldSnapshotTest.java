@@ -0,0 +1,72 @@
+package supermarket.simulator.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import supermarket.simulator.model.SimulationContext;
+import supermarket.simulator.model.world.Grid;
+import supermarket.simulator.services.TilesetLoader;
+import supermarket.simulator.simulation.SimulationKernel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A loaded world must go on exactly as the saved one: same checksum after every later tick,
+ * and saving it again right away gives the same bytes.
+ */
+class WorldSnapshotTest {
+
+    private static final long SEED = 42L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void stockStoreContinuesWithTheSameChecksum() throws IOException {
+        SimulationKernel kernel = SimulationKernel.stockStore(context(20, 24), TilesetLoader.headless());
+        kernel.setSpawning(20, 10, 3);
+        roundTrip(kernel, 3000, 2000);
+    }
+
+    @Test
+    void hypermarketContinuesWithTheSameChecksum() throws IOException {
+        SimulationKernel kernel = SimulationKernel.hypermarket(context(100, 100), TilesetLoader.headless());
+        kernel.setSpawning(150, 3, 3);
+        roundTrip(kernel, 2000, 1000);
+    }
+
+    private void roundTrip(SimulationKernel original, int before, int after) throws IOException {
+        original.run(before);
+        assertTrue(original.getCustomers().size() > 0, "nobody inside to save");
+
+        Path saved = dir.resolve("saved.snap");
+        WorldSnapshot.save(original, saved);
+        SimulationKernel loaded = WorldSnapshot.load(saved, TilesetLoader.headless());
+        loaded.getContext().setLogging(false);
+        assertEquals(original.getTickCount(), loaded.getTickCount());
+        assertEquals(original.getChecksum(), loaded.getChecksum());
+        assertEquals(original.stateHash(), loaded.stateHash());
+
+        Path again = dir.resolve("again.snap");
+        WorldSnapshot.save(loaded, again);
+        assertArrayEquals(Files.readAllBytes(saved), Files.readAllBytes(again), "saving a loaded world changed it");
+
+        for (int i = 0; i < after; i++) {
+            original.run(1);
+            loaded.run(1);
+            assertEquals(original.getChecksum(), loaded.getChecksum(), "diverged at tick " + original.getTickCount());
+        }
+        assertEquals(original.getServedCount(), loaded.getServedCount());
+    }
+
+    private static SimulationContext context(int width, int height) {
+        SimulationContext context = new SimulationContext(new Grid(width, height, 42), SEED);
+        context.setLogging(false);
+        return context;
+    }
+}